@@ -15,6 +15,22 @@ public interface CatalogRequestHandler {
      */
     public Response queryItem(HttpExchange httpExchange);
 
+    /**
+     * Method to handle the batch query request. This method should return the item details for every requested item,
+     * items which are not found are reported inline.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the details of all items.
+     */
+    public Response queryItems(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the list request. This method should return a page of items in name order, those whose name
+     * starts with the prefix and comes after the cursor, with the cursor of next page.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the items of the page and the name to list the next page after, null on last page.
+     */
+    public Response listItems(HttpExchange httpExchange);
+
     /**
      * Method to handle the update request. This method should update the item details for the given item name.
      * @param httpExchange - Incoming request
@@ -22,4 +38,50 @@ public interface CatalogRequestHandler {
      */
     public Response updateItem(HttpExchange httpExchange);
 
+    /**
+     * Method to handle the multi-item update request. This method should apply the changes of all items atomically.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the status of update.
+     */
+    public Response updateItems(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the reserve request. This method should hold the requested quantity of an item and return a
+     * reservation token with its expiry.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the reservation token.
+     */
+    public Response reserveItem(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the commit and release requests of a reservation.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the status of reservation.
+     */
+    public Response completeReservation(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the change stream request of read replicas and other subscribers. This method should return the
+     * item records changed after the given sequence, or ask the subscriber to resync if they are no longer available or
+     * the sequence is from another epoch. With waitMs the request is held till a change is made (long-poll).
+     * @param httpExchange - Incoming request
+     * @return - Response object with the changes and latest sequence, null if the request is held for a change.
+     */
+    public Response getChanges(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the snapshot request of read replicas. This method should return every item with the sequence
+     * of change stream the snapshot covers.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the items and sequence.
+     */
+    public Response getSnapshot(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the replication status request. This method should return the role of the catalog, and the
+     * replication lag of a replica.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the replication status.
+     */
+    public Response getReplicationStatus(HttpExchange httpExchange);
 }
@@ -2,13 +2,19 @@ import db.ProductCatalog;
 import handlers.CacheInvalidationHandler;
 import handlers.CustomHttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import enums.LogLevel;
+import utils.Logger;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class CatalogService {
+    private static final Logger LOGGER = Logger.getLogger(CatalogService.class);
     private static final int THREAD_POOL_SIZE = 10;
     private static ProductCatalog productCatalog;
 
@@ -16,21 +22,23 @@ public class CatalogService {
     private static String frontServiceURL = "http://localhost:8889";
 
     private static Boolean isCacheEnabled = false;
+
+    private static Properties config = new Properties();
     public static void main(String[] args) throws IOException {
         int port = 9999;
 
         if(args!=null){
             if(args.length>=1){
                 port = Integer.parseInt(args[0]);
-                System.out.println("Reading port from args "+port);
+                LOGGER.info("Reading port from args "+port);
             }
             if(args.length>=2){
                 catalogFilePath = args[1];
-                System.out.println("Reading order file path from args "+catalogFilePath);
+                LOGGER.info("Reading order file path from args "+catalogFilePath);
             }
             if(args.length>=3){
                 frontServiceURL = args[2];
-                System.out.println("Front-end service URL "+frontServiceURL);
+                LOGGER.info("Front-end service URL "+frontServiceURL);
             }
             if(args.length>=4 && args[3]!=null){
                 if(args[3].equals("true")){
@@ -38,6 +46,7 @@ public class CatalogService {
                 }
             }
         }
+        loadConfig(args!=null && args.length>=5 ? args[4] : null);
 
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
@@ -50,13 +59,36 @@ public class CatalogService {
         server.setExecutor(executor);
 
         server.start();
-        System.out.println("Catalog Service started on port " + port);
+        LOGGER.info("Catalog Service started on port " + port);
         // Shutdown the database when the service exits
         Runtime.getRuntime().addShutdownHook(new Thread(CatalogService::shutdownDb));
     }
 
     private static void initDb(String catalogFilePath,CacheInvalidationHandler cacheInvalidationHandler){
-        productCatalog = new ProductCatalog(catalogFilePath,cacheInvalidationHandler);
+        productCatalog = new ProductCatalog(catalogFilePath,cacheInvalidationHandler,config);
+    }
+
+    /**
+     * Method to load catalog tuning options from config file, if no path is given config.properties from classpath is used.
+     * @param configFilePath - path of config file
+     */
+    private static void loadConfig(String configFilePath){
+        try {
+            InputStream input;
+            if(configFilePath!=null){
+                input = new FileInputStream(configFilePath);
+                LOGGER.info("Reading catalog config from "+configFilePath);
+            }else{
+                input = CatalogService.class.getClassLoader().getResourceAsStream("config.properties");
+            }
+            if(input!=null){
+                config.load(input);
+                input.close();
+                Logger.setLevel(LogLevel.fromString(config.getProperty("log.level"), Logger.getLevel()));
+            }
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while reading catalog config, using defaults "+e);
+        }
     }
 
     /**
@@ -65,7 +97,7 @@ public class CatalogService {
     private static void shutdownDb() {
         if (productCatalog != null) {
             productCatalog.shutdown();
-            System.out.println("Database shutdown successfully.");
+            LOGGER.info("Database shutdown successfully.");
         }
     }
 }
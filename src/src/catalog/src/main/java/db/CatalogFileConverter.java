@@ -0,0 +1,80 @@
+package db;
+
+import model.Item;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CatalogFileConverter converts the product catalog between csv file and the binary file used by mmap storage backend.
+ * Usage: java -cp catalog.jar db.CatalogFileConverter csv-to-mmap|mmap-to-csv inputFilePath outputFilePath
+ * The catalog service should be stopped while converting, the journal is not applied to the converted file.
+ */
+public class CatalogFileConverter {
+
+    public static void main(String[] args) throws IOException {
+        if(args==null || args.length!=3){
+            System.out.println("Usage: db.CatalogFileConverter csv-to-mmap|mmap-to-csv inputFilePath outputFilePath");
+            return;
+        }
+        List<Item> items;
+        if(args[0].equals("csv-to-mmap")){
+            items = readCSV(args[1]);
+            MappedCatalogFile.create(args[2], items);
+        }else if(args[0].equals("mmap-to-csv")){
+            MappedCatalogFile mappedFile = new MappedCatalogFile(args[1]);
+            items = mappedFile.readItems();
+            mappedFile.shutdown();
+            writeCSV(args[2], items);
+        }else{
+            System.out.println("Unknown conversion " + args[0] + ", expected csv-to-mmap or mmap-to-csv");
+            return;
+        }
+        System.out.println("Converted " + items.size() + " items from " + args[1] + " to " + args[2]);
+    }
+
+    /**
+     * Method to read items from csv file, rows are name,quantity,price with an optional version.
+     * @param csvFilePath - path of csv file
+     * @return - items in file order
+     */
+    static List<Item> readCSV(String csvFilePath) throws IOException {
+        List<Item> items = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(csvFilePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length == 3 || parts.length == 4) {
+                    try {
+                        long version = parts.length == 4 ? Long.parseLong(parts[3]) : 0;
+                        items.add(new Item(parts[0], Integer.parseInt(parts[1]), Double.parseDouble(parts[2]), version));
+                    } catch (NumberFormatException e) {
+                        System.out.println("Some error while reading line from file: " + line);
+                    }
+                } else {
+                    System.out.println("Line is not in expected format: " + line);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Method to write items to csv file.
+     * @param csvFilePath - path of csv file
+     * @param items - items to write
+     */
+    static void writeCSV(String csvFilePath, List<Item> items) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(csvFilePath)))) {
+            for (Item item : items) {
+                writer.println(item.getName() + "," + item.getQuantity() + "," + item.getPrice() + "," + item.getVersion());
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package db;
+
+import model.Item;
+import utils.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CatalogFileLoader loads the catalog csv file in parallel. The file is mapped in ranges of RANGE_SIZE bytes, a line
+ * belongs to the range its first byte is in, and the ranges are parsed by a fork/join pool straight from the mapped
+ * bytes, without reading the file line by line or splitting lines with a regex.
+ *
+ * While ranges are still loading an item can be looked up on demand: the ranges not loaded yet are scanned for a line
+ * starting with the item's name, which only compares bytes and is much cheaper than parsing them. Item records are
+ * merged with the records recovered from checkpoint delta and journal before they are handed out, so an item is never
+ * seen older than it was before the restart.
+ */
+class CatalogFileLoader implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(CatalogFileLoader.class);
+    static final long RANGE_SIZE = 8L << 20;
+    // a range is mapped with this much of the next one, for its last line
+    private static final long MAX_LINE_LENGTH = 64L << 10;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final MappedByteBuffer[] ranges;
+    private final AtomicIntegerArray loadedRanges; // 1 once every item of the range is in the catalog
+    private final Map<String, ItemRecord> recoveredRecords;
+    private final LongAdder loadedItems = new LongAdder();
+
+    /**
+     * Constructor to map the catalog file.
+     * @param filePath - path of catalog csv file
+     * @param recoveredRecords - latest record of items updated after the file was written, empty if the journal is
+     *                         replayed after the load
+     * @throws IOException - if the file can't be mapped
+     */
+    CatalogFileLoader(String filePath, Map<String, ItemRecord> recoveredRecords) throws IOException {
+        this.recoveredRecords = recoveredRecords;
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        int rangeCount = (int) ((fileSize + RANGE_SIZE - 1) / RANGE_SIZE);
+        this.ranges = new MappedByteBuffer[rangeCount];
+        for(int i=0;i<rangeCount;i++){
+            long start = i * RANGE_SIZE;
+            ranges[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(fileSize - start, RANGE_SIZE + MAX_LINE_LENGTH));
+        }
+        this.loadedRanges = new AtomicIntegerArray(rangeCount);
+    }
+
+    /**
+     * Method to parse every range into the catalog. Items already in the catalog (looked up on demand) are kept.
+     * @param items - catalog to load the items into
+     * @param threads - parallelism of the fork/join pool
+     * @return - number of items loaded
+     */
+    int load(ConcurrentHashMap<String, AtomicReference<Item>> items, int threads){
+        if(ranges.length>0){
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            try{
+                pool.invoke(new LoadRanges(items, 0, ranges.length));
+            }finally {
+                pool.shutdown();
+            }
+        }
+        return (int) loadedItems.sum();
+    }
+
+    /**
+     * Fork/join task loading a span of ranges, split in halves till one range is left.
+     */
+    private class LoadRanges extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ConcurrentHashMap<String, AtomicReference<Item>> items;
+        private final int from;
+        private final int to;
+
+        private LoadRanges(ConcurrentHashMap<String, AtomicReference<Item>> items, int from, int to) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from==1){
+                loadRange(items, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LoadRanges(items, from, middle), new LoadRanges(items, middle, to));
+        }
+    }
+
+    private void loadRange(ConcurrentHashMap<String, AtomicReference<Item>> items, int range){
+        MappedByteBuffer buffer = ranges[range];
+        int end = rangeEnd(range);
+        int position = firstLineStart(range);
+        while(position<end){
+            int lineEnd = lineEnd(buffer, position);
+            Item item = parseLine(buffer, position, lineEnd);
+            if(item!=null){
+                items.putIfAbsent(item.getName(), new AtomicReference<>(item));
+                loadedItems.increment();
+            }
+            position = lineEnd + 1;
+        }
+        loadedRanges.set(range, 1);
+    }
+
+    /**
+     * Method to find an item in the ranges which are not loaded yet.
+     * @param name - name of item
+     * @return - item record, null if it is not in any range left to load
+     */
+    Item find(String name){
+        byte[] prefix = (name + ",").getBytes(StandardCharsets.UTF_8);
+        for(int range=0;range<ranges.length;range++){
+            if(loadedRanges.get(range)==1){
+                continue;
+            }
+            MappedByteBuffer buffer = ranges[range];
+            int end = rangeEnd(range);
+            int position = firstLineStart(range);
+            while(position<end){
+                int lineEnd = lineEnd(buffer, position);
+                if(startsWith(buffer, position, lineEnd, prefix)){
+                    return parseLine(buffer, position, lineEnd);
+                }
+                position = lineEnd + 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to estimate the number of items from the length of the lines at the start of the file, to size the
+     * catalog map so it isn't resized over and over while loading.
+     * @return - estimated number of items
+     */
+    int estimateItemCount(){
+        if(ranges.length==0){
+            return 0;
+        }
+        int sampleEnd = (int) Math.min(fileSize, MAX_LINE_LENGTH);
+        int lines = 0;
+        for(int i=0;i<sampleEnd;i++){
+            if(ranges[0].get(i)=='\n'){
+                lines++;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE / 2, fileSize * Math.max(1, lines) / sampleEnd);
+    }
+
+    /**
+     * Method to get the end of a range, relative to its buffer.
+     */
+    private int rangeEnd(int range){
+        return (int) Math.min(RANGE_SIZE, fileSize - range * RANGE_SIZE);
+    }
+
+    /**
+     * Method to find the first line starting in a range, a line running into it from the previous range belongs to
+     * that range.
+     */
+    private int firstLineStart(int range){
+        if(range==0){
+            return 0;
+        }
+        // the byte before the range is the last byte of the previous range's buffer
+        MappedByteBuffer previous = ranges[range - 1];
+        if(previous.get((int) RANGE_SIZE - 1)=='\n'){
+            return 0;
+        }
+        MappedByteBuffer buffer = ranges[range];
+        int end = rangeEnd(range);
+        int position = 0;
+        while(position<end && buffer.get(position)!='\n'){
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static int lineEnd(MappedByteBuffer buffer, int position){
+        int limit = buffer.limit();
+        while(position<limit && buffer.get(position)!='\n'){
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean startsWith(MappedByteBuffer buffer, int position, int lineEnd, byte[] prefix){
+        if(lineEnd-position<prefix.length){
+            return false;
+        }
+        for(int i=0;i<prefix.length;i++){
+            if(buffer.get(position + i)!=prefix[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to parse a line name,quantity,price[,version] and merge it with the recovered record of the item.
+     * @return - item record, null if the line is not in expected format
+     */
+    private Item parseLine(MappedByteBuffer buffer, int start, int end){
+        if(end>start && buffer.get(end - 1)=='\r'){
+            end--;
+        }
+        if(end==start){
+            return null;
+        }
+        byte[] line = new byte[end - start];
+        for(int i=0;i<line.length;i++){
+            line[i] = buffer.get(start + i);
+        }
+        int[] commas = new int[3];
+        int commaCount = 0;
+        for(int i=0;i<line.length;i++){
+            if(line[i]==','){
+                if(commaCount==3){
+                    commaCount++;
+                    break;
+                }
+                commas[commaCount++] = i;
+            }
+        }
+        if(commaCount<2 || commaCount>3){
+            LOGGER.warn(() -> "Line is not in expected format: " + new String(line, StandardCharsets.UTF_8));
+            return null;
+        }
+        try{
+            String name = new String(line, 0, commas[0], StandardCharsets.UTF_8);
+            int quantity = Math.toIntExact(parseLong(line, commas[0] + 1, commas[1]));
+            int priceEnd = commaCount==3 ? commas[2] : line.length;
+            double price = Double.parseDouble(new String(line, commas[1] + 1, priceEnd - commas[1] - 1, StandardCharsets.US_ASCII));
+            long version = commaCount==3 ? parseLong(line, commas[2] + 1, line.length) : 0;
+            ItemRecord record = recoveredRecords.get(name);
+            if(record!=null && record.version>version){
+                return new Item(name, record.quantity, price, record.version);
+            }
+            return new Item(name, quantity, price, version);
+        }catch (Exception e){
+            LOGGER.warn(() -> "Some error while reading line from file: " + new String(line, StandardCharsets.UTF_8));
+            return null;
+        }
+    }
+
+    /**
+     * Method to parse a decimal number without creating a string for it.
+     * @throws NumberFormatException - if the bytes are not a number of at most 18 digits
+     */
+    private static long parseLong(byte[] line, int start, int end){
+        boolean isNegative = start<end && line[start]=='-';
+        int position = isNegative ? start + 1 : start;
+        if(position==end || end-position>18){
+            throw new NumberFormatException(new String(line, start, end - start, StandardCharsets.US_ASCII));
+        }
+        long value = 0;
+        for(;position<end;position++){
+            int digit = line[position] - '0';
+            if(digit<0 || digit>9){
+                throw new NumberFormatException(new String(line, start, end - start, StandardCharsets.US_ASCII));
+            }
+            value = value * 10 + digit;
+        }
+        return isNegative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // mapped ranges stay readable for lookups still running, they are unmapped once collected
+        channel.close();
+    }
+}
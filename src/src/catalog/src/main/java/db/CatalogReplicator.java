@@ -0,0 +1,219 @@
+package db;
+
+import enums.StatusCode;
+import model.Item;
+import model.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static utils.HttpUtils.makeGetRequest;
+
+/**
+ * CatalogReplicator keeps a read replica of the product catalog in sync with the primary catalog service.
+ * It loads a snapshot of the primary, then tails its change stream (GET /changes?since=N&amp;epoch=E) and applies every
+ * changed item record which is newer than the one the replica has. When the primary no longer has the changes the
+ * replica asks for, or was restarted (new epoch), the snapshot is loaded again and replaces the replica's items.
+ * Once caught up, the replica long-polls the stream (waitMs) so a change reaches it as soon as it is made, with
+ * replicationWaitMs=0 it polls every replicationPollMs instead.
+ *
+ * Replication lag is reported as the changes the replica is behind the primary and the time since the replica last
+ * caught up with the primary, a replica is at most that old. While a long-poll made by a caught up replica is pending,
+ * the replica is current: the primary would have answered it on a change.
+ */
+class CatalogReplicator {
+    private static final Logger LOGGER = Logger.getLogger(CatalogReplicator.class);
+    private static final int BATCH_SIZE = 1000;
+    private static final long TIMEOUT_MARGIN_MILLIS = 5000;
+
+    private final ProductCatalog productCatalog;
+    private final String primaryUrl;
+    private final long pollIntervalMillis;
+    private final long waitMillis;
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    private volatile long epoch;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long caughtUpAt; // 0 till the first snapshot is loaded
+    private volatile long waitingSince; // start of pending long-poll made while caught up, 0 if none
+    private final AtomicLong appliedChanges = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Constructor to create the replicator.
+     * @param productCatalog - replica catalog the changes are applied to
+     * @param primaryUrl - URL of primary catalog service
+     * @param config - catalog config (replicationPollMs, replicationWaitMs)
+     */
+    CatalogReplicator(ProductCatalog productCatalog, String primaryUrl, Properties config) {
+        this.productCatalog = productCatalog;
+        this.primaryUrl = primaryUrl;
+        this.pollIntervalMillis = Long.parseLong(config.getProperty("replicationPollMs", "100"));
+        this.waitMillis = Long.parseLong(config.getProperty("replicationWaitMs", "5000"));
+        this.thread = new Thread(this::replicate, "catalog-replicator");
+        this.thread.setDaemon(true);
+    }
+
+    void start(){
+        thread.start();
+    }
+
+    void stop(){
+        isRunning = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Replicator thread loop, loads snapshot when needed and polls the change stream of primary.
+     */
+    private void replicate(){
+        boolean needsSnapshot = true;
+        while(isRunning){
+            try{
+                if(needsSnapshot){
+                    loadSnapshot();
+                    needsSnapshot = false;
+                }
+                int pending = pollChanges();
+                if(pending<0){
+                    LOGGER.warn(() -> "Changes after "+appliedSequence+" of epoch "+epoch+" are no longer available on primary, reloading snapshot");
+                    needsSnapshot = true;
+                    continue;
+                }
+                if(pending==0 && waitMillis<=0){
+                    Thread.sleep(pollIntervalMillis);
+                }
+            }catch (InterruptedException e){
+                return;
+            }catch (Exception e){
+                waitingSince = 0;
+                errors.incrementAndGet();
+                LOGGER.warn(() -> "Error while replicating from primary "+primaryUrl+" "+e);
+                try{
+                    Thread.sleep(Math.max(pollIntervalMillis, 1000));
+                }catch (InterruptedException interrupted){
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to load the current items of primary. The snapshot is taken after its sequence is read, so it may already
+     * contain later changes, which are skipped by version when they are polled.
+     */
+    private void loadSnapshot() throws Exception {
+        Response response = makeGetRequest(primaryUrl + "/snapshot");
+        if(response.getStatusCode()!=StatusCode.OK.getCode()){
+            throw new IllegalStateException("Snapshot request failed with status " + response.getStatusCode());
+        }
+        JSONObject snapshot = new JSONObject(response.getMessage());
+        JSONArray itemsJson = snapshot.getJSONArray("items");
+        List<Item> items = new ArrayList<>(itemsJson.length());
+        for(int i=0;i<itemsJson.length();i++){
+            items.add(toItem(itemsJson.getJSONObject(i)));
+        }
+        productCatalog.loadReplicaSnapshot(items);
+        long sequence = snapshot.getLong("sequence");
+        epoch = snapshot.getLong("epoch");
+        appliedSequence = sequence;
+        primarySequence = sequence;
+        caughtUpAt = System.currentTimeMillis();
+        snapshots.incrementAndGet();
+        LOGGER.info(() -> "Loaded snapshot of "+items.size()+" items at sequence "+sequence+" from primary "+primaryUrl);
+    }
+
+    /**
+     * Method to read and apply the next batch of changes from primary.
+     * @return - changes still pending on primary after this batch, -1 if snapshot has to be loaded again
+     */
+    private int pollChanges() throws Exception {
+        long requestedAt = System.currentTimeMillis();
+        // wait for the next change only when caught up, a replica which is behind reads its batches right away
+        boolean isWaiting = waitMillis>0 && appliedSequence>=primarySequence;
+        String url = primaryUrl + "/changes?since=" + appliedSequence + "&epoch=" + epoch + "&limit=" + BATCH_SIZE;
+        Response response;
+        if(isWaiting){
+            waitingSince = requestedAt;
+            try{
+                // a primary which doesn't answer well after the wait is treated as failed
+                response = makeGetRequest(url + "&waitMs=" + waitMillis, (int) (waitMillis + TIMEOUT_MARGIN_MILLIS));
+            }finally {
+                waitingSince = 0;
+            }
+        }else{
+            response = makeGetRequest(url);
+        }
+        if(response.getStatusCode()!=StatusCode.OK.getCode()){
+            throw new IllegalStateException("Changes request failed with status " + response.getStatusCode());
+        }
+        long receivedAt = System.currentTimeMillis();
+        JSONObject batch = new JSONObject(response.getMessage());
+        primarySequence = batch.getLong("sequence");
+        if(batch.optBoolean("resync", false)){
+            return -1;
+        }
+        JSONArray changes = batch.getJSONArray("changes");
+        for(int i=0;i<changes.length();i++){
+            productCatalog.applyReplicatedItem(toItem(changes.getJSONObject(i)));
+        }
+        appliedSequence = batch.getLong("next");
+        appliedChanges.addAndGet(changes.length());
+        long pending = primarySequence - appliedSequence;
+        if(pending<=0){
+            // replica had every change primary made before the request, a long-poll is answered as soon as there is a
+            // change, so the replica was current till the response was received
+            caughtUpAt = isWaiting ? receivedAt : requestedAt;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, pending));
+    }
+
+    private static Item toItem(JSONObject itemJson){
+        return new Item(itemJson.getString("name"), itemJson.getInt("quantity"), itemJson.getDouble("price"), itemJson.getLong("version"));
+    }
+
+    /**
+     * Method to get how old the replica may be.
+     * @return - milliseconds since the replica last caught up with primary, -1 if no snapshot is loaded yet
+     */
+    long getLagMillis(){
+        long caughtUp = caughtUpAt;
+        if(caughtUp==0){
+            return -1;
+        }
+        long now = System.currentTimeMillis();
+        long waiting = waitingSince;
+        if(waiting!=0){
+            // nothing changed on primary since the long-poll was made, unless it is overdue
+            return Math.max(0, now - waiting - waitMillis);
+        }
+        return now - caughtUp;
+    }
+
+    /**
+     * Method to convert the replication state to JSON for /metrics and /replication endpoints.
+     * @return - JSON object with primary, sequences, lag and counters
+     */
+    JSONObject toJson(){
+        JSONObject json = new JSONObject();
+        json.put("role", "replica");
+        json.put("primary", primaryUrl);
+        json.put("epoch", epoch);
+        json.put("appliedSequence", appliedSequence);
+        json.put("primarySequence", primarySequence);
+        json.put("lagChanges", Math.max(0, primarySequence - appliedSequence));
+        json.put("lagMillis", getLagMillis());
+        json.put("appliedChanges", appliedChanges.get());
+        json.put("snapshots", snapshots.get());
+        json.put("errors", errors.get());
+        return json;
+    }
+}
@@ -0,0 +1,85 @@
+package db;
+
+import model.Item;
+import utils.ShardMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CatalogShardSplitter splits catalog csv files into one file per shard of the shard map, outputPrefix + shardId + ".csv".
+ * Usage: java -cp catalog.jar db.CatalogShardSplitter [--previous oldShardMap] shardMap outputPrefix csvFilePath...
+ *
+ * To shard a catalog pass the full catalog file. To add a shard pass the current shard files with the new map, items
+ * are only moved to the new shard since the map is a consistent hash, and --previous reports how many moved.
+ * The catalog services should be stopped while splitting, mmap catalog files are converted to csv first.
+ */
+public class CatalogShardSplitter {
+
+    public static void main(String[] args) throws IOException {
+        int index = 0;
+        ShardMap previousShardMap = null;
+        if(args!=null && args.length>=2 && args[0].equals("--previous")){
+            previousShardMap = ShardMap.load(args[1]);
+            index = 2;
+        }
+        if(args==null || args.length-index<3){
+            System.out.println("Usage: db.CatalogShardSplitter [--previous oldShardMap] shardMap outputPrefix csvFilePath...");
+            return;
+        }
+        ShardMap shardMap = ShardMap.load(args[index]);
+        String outputPrefix = args[index+1];
+        List<Item> items = new ArrayList<>();
+        for(int i=index+2;i<args.length;i++){
+            items.addAll(CatalogFileConverter.readCSV(args[i]));
+        }
+
+        Map<String, List<Item>> shards = split(items, shardMap);
+        for(Map.Entry<String, List<Item>> shard:shards.entrySet()){
+            String shardFilePath = outputPrefix + shard.getKey() + ".csv";
+            CatalogFileConverter.writeCSV(shardFilePath, shard.getValue());
+            System.out.println("Shard " + shard.getKey() + " (" + shardMap.getShardUrls().get(shard.getKey()) + "): "
+                    + shard.getValue().size() + " items written to " + shardFilePath);
+        }
+        if(previousShardMap!=null){
+            System.out.println("Moved " + countMoved(items, previousShardMap, shardMap) + " of " + items.size() + " items to another shard");
+        }
+    }
+
+    /**
+     * Method to group items by the shard owning them, every shard of the map gets an entry even if it owns no item.
+     * @param items - items of the catalog
+     * @param shardMap - shard map
+     * @return - shard id to its items
+     */
+    static Map<String, List<Item>> split(List<Item> items, ShardMap shardMap){
+        Map<String, List<Item>> shards = new LinkedHashMap<>();
+        for(String shardId:shardMap.getShardUrls().keySet()){
+            shards.put(shardId, new ArrayList<>());
+        }
+        for(Item item:items){
+            shards.get(shardMap.shardOf(item.getName())).add(item);
+        }
+        return shards;
+    }
+
+    /**
+     * Method to count the items owned by a different shard in the new map.
+     * @param items - items of the catalog
+     * @param previousShardMap - map the shard files were split with
+     * @param shardMap - new map
+     * @return - number of items moving to another shard
+     */
+    static int countMoved(List<Item> items, ShardMap previousShardMap, ShardMap shardMap){
+        int moved = 0;
+        for(Item item:items){
+            if(!previousShardMap.shardOf(item.getName()).equals(shardMap.shardOf(item.getName()))){
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,179 @@
+package db;
+
+import model.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ChangeStream is the ordered stream of item records changed in the product catalog, read replicas and other
+ * subscribers (front-end caches, analytics) tail it to follow the primary. Every change gets the next sequence number
+ * and the last changes are kept in a ring, a reader asking for changes older than the ring (or a sequence the primary
+ * never handed out) has to resync from a snapshot.
+ * Sequences are only meaningful within an epoch, a new epoch is chosen every time the catalog starts, so a reader
+ * resuming with the sequence of an earlier run is told to resync instead of being sent unrelated changes.
+ * Changes hold the whole item record with its version, so applying a change twice or out of order is harmless: a
+ * replica only applies a record newer than the one it has.
+ *
+ * Readers waiting for the next change (long-poll) don't hold a thread: they register a callback which is run on the
+ * stream's notifier thread when a change is appended or the wait times out.
+ */
+public class ChangeStream {
+    private static final int MAX_WAITERS = 1000;
+
+    private final Item[] changes;
+    private final long epoch;
+    private long lastSequence;
+    private List<Waiter> waiters = new ArrayList<>();
+    private ScheduledExecutorService notifier;
+
+    /**
+     * Reader waiting for a change, its callback runs once, either on a change or on timeout.
+     */
+    private static class Waiter {
+        private final Runnable callback;
+        private final AtomicBoolean isDone = new AtomicBoolean();
+        private ScheduledFuture<?> timeout;
+
+        private Waiter(Runnable callback) {
+            this.callback = callback;
+        }
+
+        private void complete(){
+            if(isDone.compareAndSet(false,true)){
+                if(timeout!=null){
+                    timeout.cancel(false);
+                }
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * Constructor to create the stream.
+     * @param capacity - number of latest changes kept for readers
+     */
+    ChangeStream(int capacity) {
+        this.changes = new Item[Math.max(1, capacity)];
+        this.epoch = System.currentTimeMillis();
+    }
+
+    /**
+     * Method to add a changed item record to the stream and wake up the readers waiting for it.
+     * @param item - item record after the change
+     */
+    void append(Item item){
+        List<Waiter> woken = null;
+        synchronized (this){
+            lastSequence++;
+            changes[(int) (lastSequence % changes.length)] = item;
+            if(!waiters.isEmpty()){
+                woken = waiters;
+                waiters = new ArrayList<>();
+            }
+        }
+        if(woken!=null){
+            // responses are sent on the notifier thread, the update which made the change doesn't wait for them
+            for(Waiter waiter:woken){
+                notifier.execute(waiter::complete);
+            }
+        }
+    }
+
+    /**
+     * Method to get the sequence of latest change, a snapshot read after this call contains every change up to it.
+     * @return - sequence of latest change, 0 if nothing changed yet
+     */
+    public synchronized long getLastSequence(){
+        return lastSequence;
+    }
+
+    /**
+     * Method to get the epoch of the stream, sequences of different epochs are unrelated.
+     * @return - epoch, start time of the catalog in milliseconds
+     */
+    public long getEpoch(){
+        return epoch;
+    }
+
+    /**
+     * Method to read the changes after a sequence.
+     * @param since - sequence of the last change the reader has
+     * @param limit - maximum number of changes to read
+     * @return - changes in sequence order starting at since+1, null if they are no longer (or never were) in the stream
+     */
+    public synchronized List<Item> readSince(long since, int limit){
+        long oldestSequence = Math.max(1, lastSequence - changes.length + 1);
+        if(since>lastSequence || since+1<oldestSequence){
+            return null;
+        }
+        long until = Math.min(lastSequence, since + limit);
+        List<Item> items = new ArrayList<>((int) (until - since));
+        for(long sequence=since+1;sequence<=until;sequence++){
+            items.add(changes[(int) (sequence % changes.length)]);
+        }
+        return items;
+    }
+
+    /**
+     * Method to run a callback once there is a change after a sequence, without blocking the caller. The callback runs
+     * exactly once on the notifier thread: when the change is appended, when the wait times out, or right away if the
+     * change is already there or too many readers are waiting.
+     * @param since - sequence of the last change the reader has
+     * @param timeoutMillis - maximum time to wait for a change
+     * @param callback - reads the changes and responds to the reader
+     */
+    public void awaitChange(long since, long timeoutMillis, Runnable callback){
+        Waiter waiter = new Waiter(callback);
+        boolean isWaiting = false;
+        synchronized (this){
+            if(notifier==null){
+                notifier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "change-stream-notifier");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            if(lastSequence<=since && waiters.size()<MAX_WAITERS){
+                waiters.add(waiter);
+                isWaiting = true;
+            }
+        }
+        if(!isWaiting){
+            notifier.execute(waiter::complete);
+            return;
+        }
+        waiter.timeout = notifier.schedule(() -> {
+            synchronized (this){
+                waiters.remove(waiter);
+            }
+            waiter.complete();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to get the number of readers waiting for a change.
+     * @return - waiting readers
+     */
+    public synchronized int getWaiters(){
+        return waiters.size();
+    }
+
+    public int capacity(){
+        return changes.length;
+    }
+
+    /**
+     * Method to stop the notifier thread, waiting readers are not answered.
+     */
+    synchronized void close(){
+        if(notifier!=null){
+            notifier.shutdownNow();
+        }
+    }
+}
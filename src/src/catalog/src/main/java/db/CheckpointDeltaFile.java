@@ -0,0 +1,116 @@
+package db;
+
+import model.Item;
+import utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CheckpointDeltaFile keeps the items changed since the catalog file was last rewritten.
+ * Incremental checkpoints append only the dirty items to this file, and it is merged into the catalog file once it
+ * grows past the configured ratio of catalog size. Rows have the same format as catalog file (name,quantity,price,version),
+ * so the latest row of an item is the one with highest version.
+ */
+class CheckpointDeltaFile {
+    private static final Logger LOGGER = Logger.getLogger(CheckpointDeltaFile.class);
+    private final String deltaFilePath;
+    private long recordCount;
+
+    CheckpointDeltaFile(String deltaFilePath) {
+        this.deltaFilePath = deltaFilePath;
+        this.recordCount = 0;
+    }
+
+    /**
+     * Method to append changed items to delta file and fsync it.
+     * @param items - changed items
+     * @return - true if items are durable
+     */
+    boolean append(List<Item> items){
+        if(items.isEmpty()){
+            return true;
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(deltaFilePath, true);
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outputStream)))) {
+            for (Item item : items) {
+                writer.println(item.getName() + "," + item.getQuantity() + "," + item.getPrice() + "," + item.getVersion());
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+            recordCount += items.size();
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while writing checkpoint delta file " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Method to read the latest row of every item from delta file.
+     * A torn row at the end of file (crash in the middle of a checkpoint) is skipped.
+     * @return - map of item name to its latest record
+     */
+    Map<String, ItemRecord> readLatestRecords(){
+        Map<String, ItemRecord> latestRecords = new HashMap<>();
+        recordCount = 0;
+        File file = new File(deltaFilePath);
+        if(!file.exists()){
+            return latestRecords;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if(parts.length!=4){
+                    LOGGER.warn("Skipping checkpoint delta row in unexpected format: " + line);
+                    continue;
+                }
+                try{
+                    ItemRecord record = new ItemRecord(parts[0], Integer.parseInt(parts[1]), Long.parseLong(parts[3]));
+                    ItemRecord latest = latestRecords.get(record.name);
+                    if(latest==null || record.version>latest.version){
+                        latestRecords.put(record.name, record);
+                    }
+                    recordCount++;
+                }catch (NumberFormatException e){
+                    LOGGER.warn("Skipping checkpoint delta row in unexpected format: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while reading checkpoint delta file " + e);
+        }
+        return latestRecords;
+    }
+
+    /**
+     * Method to delete delta file once it is merged into catalog file.
+     */
+    void delete(){
+        try{
+            Files.deleteIfExists(Paths.get(deltaFilePath));
+            recordCount = 0;
+        }catch (IOException e){
+            LOGGER.warn(() -> "Error while deleting checkpoint delta file " + e);
+        }
+    }
+
+    /**
+     * Method to get number of rows appended since last merge.
+     * @return - number of rows in delta file
+     */
+    long getRecordCount(){
+        return recordCount;
+    }
+}
@@ -0,0 +1,356 @@
+package db;
+
+import enums.DurabilityPolicy;
+import metrics.CatalogMetrics;
+import model.Item;
+import model.Reservation;
+import utils.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * InventoryJournal is an append-only write-ahead journal of stock updates of the product catalog.
+ * Each record has the resulting quantity and version of the item, so replaying it is idempotent: for every item only
+ * the record with the highest version newer than the catalog file is applied.
+ * Records are written by a single writer thread. Buyers only enqueue their record, the writer drains everything queued
+ * so far, writes it and fsyncs once for the whole batch (group commit), so no fsync ever happens under an item update.
+ * Reservations of stock are journaled too, as records starting with RESERVATION: one when a reservation is taken and
+ * one when it is committed, released or expires, so the reservations still open can be rebuilt after a restart.
+ */
+class InventoryJournal {
+    private static final Logger LOGGER = Logger.getLogger(InventoryJournal.class);
+    private final Path journalFile;
+    private final Path rotatedJournalFile;
+    private final DurabilityPolicy durabilityPolicy;
+    private final CatalogMetrics metrics;
+    private final LinkedBlockingQueue<PendingRecord> queue;
+    private final Thread writerThread;
+    private FileChannel channel;
+    private volatile boolean isRunning = true;
+
+    // marker records handled by writer thread
+    private static final String ROTATE = "#rotate";
+    private static final String CLOSE = "#close";
+
+    static final String RESERVATION = "#reservation";
+    static final String RESERVATION_OPEN = "open";
+
+    /**
+     * Constructor to open the journal file and start the writer thread.
+     * @param journalFilePath - path of journal file
+     * @param durabilityPolicy - SYNC/ASYNC (OFF should not create a journal)
+     * @param metrics - catalog metrics
+     */
+    InventoryJournal(String journalFilePath, DurabilityPolicy durabilityPolicy, CatalogMetrics metrics) throws IOException {
+        this.journalFile = Paths.get(journalFilePath);
+        this.rotatedJournalFile = Paths.get(journalFilePath + ".old");
+        this.durabilityPolicy = durabilityPolicy;
+        this.metrics = metrics;
+        this.queue = new LinkedBlockingQueue<>();
+        this.channel = openChannel();
+        this.writerThread = new Thread(this::writeRecords, "catalog-journal-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Method to append the stock update of an item to journal.
+     * @param operation - remove/add/restock
+     * @param delta - quantity removed or added
+     * @param item - item record after the update
+     * @return - future which completes once the record is durable
+     */
+    CompletableFuture<Void> append(String operation, int delta, Item item){
+        return appendRecords(formatRecord(operation, delta, item));
+    }
+
+    /**
+     * Method to append several formatted records to journal, they are written with a single write and fsync, so an
+     * update of several items becomes durable together.
+     * @param records - records created with formatRecord
+     * @return - future which completes once the records are durable
+     */
+    CompletableFuture<Void> appendRecords(String records){
+        PendingRecord record = new PendingRecord(records);
+        if(!isRunning){
+            record.future.completeExceptionally(new IOException("Inventory journal is closed"));
+            return record.future;
+        }
+        queue.add(record);
+        return record.future;
+    }
+
+    /**
+     * Method to format the stock update of an item as a journal record.
+     * @param operation - remove/add/restock
+     * @param delta - quantity removed or added
+     * @param item - item record after the update
+     * @return - journal record line
+     */
+    static String formatRecord(String operation, int delta, Item item){
+        return item.getName() + "," + operation + "," + delta + "," + item.getQuantity() + "," + item.getVersion() + "\n";
+    }
+
+    /**
+     * Method to format an event of a reservation as a journal record.
+     * @param event - open/commit/release/expire
+     * @param reservation - reservation
+     * @return - journal record line, an open record has the item, quantity and expiry of the reservation
+     */
+    static String formatReservationRecord(String event, Reservation reservation){
+        if(RESERVATION_OPEN.equals(event)){
+            return RESERVATION + "," + event + "," + reservation.getToken() + "," + reservation.getItemName() + ","
+                    + reservation.getQuantity() + "," + reservation.getExpiresAt() + "\n";
+        }
+        return RESERVATION + "," + event + "," + reservation.getToken() + "\n";
+    }
+
+    /**
+     * Method to wait for the journal record according to durability policy, in SYNC mode buyers wait for group commit.
+     * @param future - future returned by append
+     */
+    void awaitDurability(CompletableFuture<Void> future){
+        if(durabilityPolicy==DurabilityPolicy.SYNC){
+            try{
+                future.join();
+            }catch (Exception e){
+                LOGGER.warn(() -> "Error while waiting for journal commit " + e);
+            }
+        }
+    }
+
+    /**
+     * Method to start a new journal file before the catalog is checkpointed. Every record queued before this call ends up
+     * in the rotated file, which can be discarded once the checkpoint is durable.
+     */
+    void rotate(){
+        PendingRecord marker = new PendingRecord(ROTATE);
+        queue.add(marker);
+        marker.future.join();
+    }
+
+    /**
+     * Method to delete the rotated journal file once the catalog file covering it is durable.
+     */
+    void discardRotated(){
+        try{
+            Files.deleteIfExists(rotatedJournalFile);
+        }catch (IOException e){
+            LOGGER.warn(() -> "Error while deleting rotated journal " + e);
+        }
+    }
+
+    /**
+     * Method to flush pending records and stop the writer thread.
+     */
+    void close(){
+        if(isRunning){
+            PendingRecord marker = new PendingRecord(CLOSE);
+            queue.add(marker);
+            marker.future.join();
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writer thread loop, drains all the queued records, writes them in one go and fsyncs once per batch.
+     */
+    private void writeRecords(){
+        List<PendingRecord> batch = new ArrayList<>();
+        while(isRunning){
+            try{
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                StringBuilder lines = new StringBuilder();
+                List<PendingRecord> committed = new ArrayList<>(batch.size());
+                for(PendingRecord record:batch){
+                    if(record.line==ROTATE || record.line==CLOSE){
+                        // everything before the marker belongs to the current file
+                        commit(lines,committed);
+                        if(record.line==ROTATE){
+                            rotateFile();
+                        }else{
+                            channel.close();
+                            isRunning = false;
+                        }
+                        record.future.complete(null);
+                    }else{
+                        lines.append(record.line);
+                        committed.add(record);
+                    }
+                }
+                commit(lines,committed);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }catch (IOException e){
+                LOGGER.warn(() -> "Error while writing inventory journal " + e);
+                for(PendingRecord record:batch){
+                    record.future.completeExceptionally(e);
+                }
+            }finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(StringBuilder lines, List<PendingRecord> committed) throws IOException {
+        if(committed.isEmpty()){
+            return;
+        }
+        long startTime = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        channel.force(false);
+        metrics.recordJournalCommit(committed.size(), System.nanoTime()-startTime);
+        for(PendingRecord record:committed){
+            record.future.complete(null);
+        }
+        lines.setLength(0);
+        committed.clear();
+    }
+
+    private void rotateFile() throws IOException {
+        channel.close();
+        if(Files.exists(rotatedJournalFile)){
+            // previous checkpoint failed before discarding, keep its records in front of the current ones
+            appendFile(journalFile,rotatedJournalFile);
+            Files.delete(journalFile);
+        }else{
+            Files.move(journalFile, rotatedJournalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = openChannel();
+    }
+
+    private static void appendFile(Path source, Path target) throws IOException {
+        try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = sourceChannel.size();
+            while(position<size){
+                position += sourceChannel.transferTo(position, size-position, targetChannel);
+            }
+            targetChannel.force(false);
+        }
+    }
+
+    /**
+     * Method to read the latest journal record of every item from rotated and current journal files.
+     * A torn record at the end of file (crash in the middle of a write) is skipped.
+     * @param journalFilePath - path of journal file
+     * @return - map of item name to its latest record
+     */
+    static Map<String, ItemRecord> readLatestRecords(String journalFilePath){
+        Map<String, ItemRecord> latestRecords = new HashMap<>();
+        readRecords(new File(journalFilePath + ".old"), latestRecords);
+        readRecords(new File(journalFilePath), latestRecords);
+        return latestRecords;
+    }
+
+    private static void readRecords(File file, Map<String, ItemRecord> latestRecords){
+        if(!file.exists()){
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.startsWith(RESERVATION)){
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if(parts.length!=5){
+                    LOGGER.warn("Skipping journal record in unexpected format: " + line);
+                    continue;
+                }
+                try{
+                    ItemRecord record = new ItemRecord(parts[0], Integer.parseInt(parts[3]), Long.parseLong(parts[4]));
+                    ItemRecord latest = latestRecords.get(record.name);
+                    if(latest==null || record.version>latest.version){
+                        latestRecords.put(record.name, record);
+                    }
+                }catch (NumberFormatException e){
+                    LOGGER.warn("Skipping journal record in unexpected format: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while reading inventory journal " + e);
+        }
+    }
+
+    /**
+     * Method to read the reservations which were opened and not completed from rotated and current journal files.
+     * A completion may be journaled before the open record when the open reservations are journaled again after a
+     * rotation, so a completed token is left out wherever its records are.
+     * @param journalFilePath - path of journal file
+     * @return - map of token to open reservation
+     */
+    static Map<String, Reservation> readOpenReservations(String journalFilePath){
+        Map<String, Reservation> openReservations = new HashMap<>();
+        Set<String> completedTokens = new HashSet<>();
+        readReservations(new File(journalFilePath + ".old"), openReservations, completedTokens);
+        readReservations(new File(journalFilePath), openReservations, completedTokens);
+        openReservations.keySet().removeAll(completedTokens);
+        return openReservations;
+    }
+
+    private static void readReservations(File file, Map<String, Reservation> openReservations, Set<String> completedTokens){
+        if(!file.exists()){
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(!line.startsWith(RESERVATION)){
+                    continue;
+                }
+                String[] parts = line.split(",");
+                try{
+                    if(parts.length==6 && RESERVATION_OPEN.equals(parts[1])){
+                        openReservations.put(parts[2], new Reservation(parts[2], parts[3], Integer.parseInt(parts[4]), Long.parseLong(parts[5])));
+                    }else if(parts.length==3){
+                        completedTokens.add(parts[2]);
+                    }else{
+                        LOGGER.warn("Skipping journal record in unexpected format: " + line);
+                    }
+                }catch (NumberFormatException e){
+                    LOGGER.warn("Skipping journal record in unexpected format: " + line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while reading inventory journal " + e);
+        }
+    }
+
+    private static class PendingRecord {
+        private final String line;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingRecord(String line) {
+            this.line = line;
+        }
+    }
+}
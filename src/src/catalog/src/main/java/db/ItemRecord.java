@@ -0,0 +1,17 @@
+package db;
+
+/**
+ * ItemRecord is the persisted state of an item (from journal or checkpoint delta file) used while recovering the catalog.
+ * Records are applied only if their version is newer than the loaded item.
+ */
+class ItemRecord {
+    final String name;
+    final int quantity;
+    final long version;
+
+    ItemRecord(String name, int quantity, long version) {
+        this.name = name;
+        this.quantity = quantity;
+        this.version = version;
+    }
+}
@@ -0,0 +1,185 @@
+package db;
+
+import model.Item;
+import utils.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MappedCatalogFile is a binary catalog store kept in a memory-mapped file of fixed-width records.
+ * Opening the file only maps it and builds the item name to slot index, no text is parsed. Stock updates are written
+ * in place into the slot of the item and the OS flushes the dirty pages, force() can be used to flush them explicitly.
+ *
+ * File layout:
+ * header  - magic(4) | format version(4) | record size(4) | record count(4)
+ * record  - version(8) | price(8) | quantity(4) | name length(2) | name (UTF-8, zero padded to MAX_NAME_BYTES)
+ */
+public class MappedCatalogFile implements DB {
+    private static final Logger LOGGER = Logger.getLogger(MappedCatalogFile.class);
+    private static final int MAGIC = 0x4341544d; // "CATM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    static final int MAX_NAME_BYTES = 74;
+    static final int RECORD_SIZE = 96;
+
+    private static final int VERSION_OFFSET = 0;
+    private static final int PRICE_OFFSET = 8;
+    private static final int QUANTITY_OFFSET = 16;
+    private static final int NAME_LENGTH_OFFSET = 20;
+    private static final int NAME_OFFSET = 22;
+
+    // in-place writes of a slot are ordered by item version, striped locks keep the version check and write together
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> slotIndex;
+    private final Object[] slotLocks;
+
+    /**
+     * Constructor to map an existing catalog file and build the name to slot index.
+     * @param filePath - path of binary catalog file
+     * @throws IOException - if file can't be mapped or is not a catalog file
+     */
+    public MappedCatalogFile(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC || buffer.getInt(4)!=FORMAT_VERSION || buffer.getInt(8)!=RECORD_SIZE){
+            channel.close();
+            throw new IOException("Not a catalog file: " + filePath);
+        }
+        int recordCount = buffer.getInt(12);
+        Map<String, Integer> index = new HashMap<>(recordCount * 2);
+        for(int slot=0;slot<recordCount;slot++){
+            index.put(readName(slot), slot);
+        }
+        this.slotIndex = Collections.unmodifiableMap(index);
+        this.slotLocks = new Object[LOCK_STRIPES];
+        for(int i=0;i<LOCK_STRIPES;i++){
+            slotLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Method to create a new binary catalog file with given items.
+     * @param filePath - path of binary catalog file
+     * @param items - items to write
+     * @throws IOException - if file can't be written or an item name is too long
+     */
+    public static void create(String filePath, List<Item> items) throws IOException {
+        Path path = Paths.get(filePath);
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + items.size() * RECORD_SIZE);
+        data.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(RECORD_SIZE).putInt(items.size());
+        for(int slot=0;slot<items.size();slot++){
+            Item item = items.get(slot);
+            byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+            if(name.length>MAX_NAME_BYTES){
+                throw new IOException("Item name is longer than " + MAX_NAME_BYTES + " bytes: " + item.getName());
+            }
+            int offset = HEADER_SIZE + slot * RECORD_SIZE;
+            data.putLong(offset + VERSION_OFFSET, item.getVersion());
+            data.putDouble(offset + PRICE_OFFSET, item.getPrice());
+            data.putInt(offset + QUANTITY_OFFSET, item.getQuantity());
+            data.putShort(offset + NAME_LENGTH_OFFSET, (short) name.length);
+            for(int i=0;i<name.length;i++){
+                data.put(offset + NAME_OFFSET + i, name[i]);
+            }
+        }
+        data.position(0);
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(data.hasRemaining()){
+                fileChannel.write(data);
+            }
+            fileChannel.force(true);
+        }
+    }
+
+    /**
+     * Method to read all the items stored in the file.
+     * @return - items in slot order
+     */
+    public List<Item> readItems(){
+        List<Item> items = new ArrayList<>(slotIndex.size());
+        for(int slot=0;slot<slotIndex.size();slot++){
+            items.add(readItem(slot));
+        }
+        return items;
+    }
+
+    /**
+     * Method to write the quantity and version of an item in place. Older versions never overwrite newer ones, so
+     * concurrent buyers of the same item can write in any order.
+     * @param item - item record after the update
+     * @return - false if the item has no slot in this file
+     */
+    public boolean write(Item item){
+        Integer slot = slotIndex.get(item.getName());
+        if(slot==null){
+            return false;
+        }
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        synchronized (slotLocks[slot % LOCK_STRIPES]) {
+            if(buffer.getLong(offset + VERSION_OFFSET)<item.getVersion()){
+                buffer.putInt(offset + QUANTITY_OFFSET, item.getQuantity());
+                // version is written last, a crash in between is fixed by journal replay
+                buffer.putLong(offset + VERSION_OFFSET, item.getVersion());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to flush the dirty pages of the mapped file to disk.
+     */
+    public void force(){
+        buffer.force();
+    }
+
+    /**
+     * Method to get number of items in the file.
+     * @return - number of records
+     */
+    public int size(){
+        return slotIndex.size();
+    }
+
+    private Item readItem(int slot){
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        return new Item(readName(slot), buffer.getInt(offset + QUANTITY_OFFSET), buffer.getDouble(offset + PRICE_OFFSET), buffer.getLong(offset + VERSION_OFFSET));
+    }
+
+    private String readName(int slot){
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        int nameLength = buffer.getShort(offset + NAME_LENGTH_OFFSET);
+        byte[] name = new byte[nameLength];
+        for(int i=0;i<nameLength;i++){
+            name[i] = buffer.get(offset + NAME_OFFSET + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to flush the mapped file and close it.
+     */
+    @Override
+    public void shutdown() {
+        force();
+        try{
+            channel.close();
+        }catch (IOException e){
+            LOGGER.warn(() -> "Error while closing mapped catalog file " + e);
+        }
+    }
+}
@@ -1,60 +1,185 @@
 package db;
 
+import enums.DurabilityPolicy;
+import enums.PersistenceMode;
+import enums.StorageBackend;
 import handlers.CacheInvalidationHandler;
+import metrics.CatalogMetrics;
 import model.Item;
+import model.Reservation;
 import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.Logger;
 
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ProductCatalog class is used to manage the product catalog data.
  * In real-scenario, this class should be only accessible from catalog service. But for simplicity purpose we have kept it here.
  */
 public class ProductCatalog implements db.DB {
-    private ConcurrentHashMap<String, Item> productCatalog;
+    private static final Logger LOGGER = Logger.getLogger(ProductCatalog.class);
+    private ConcurrentHashMap<String, AtomicReference<Item>> productCatalog;
+    // items by name in order, for listing; shares the records of productCatalog
+    private final ConcurrentSkipListMap<String, AtomicReference<Item>> sortedIndex = new ConcurrentSkipListMap<>();
+    private final CountDownLatch indexLatch = new CountDownLatch(1); // released once loaded items are indexed
     private static String CSV_FILE_PATH = "/Users/ajithkrishnakanduri/Desktop/CS677/labs/lab2/spring24-lab2-spring24-lab2-ajithkanduri0-spoorthi33/src/part1/src/main/java/catalog/src/main/resources/productcatalog.csv";
-    private final HashMap<String, Object> locks;
     private final Object loadLock; // Lock for loading data from CSV
-    private boolean isDataLoaded = false; // Flag to track if data is loaded
+    private volatile boolean isDataLoaded = false; // Flag to track if data is loaded
+    private final int loadThreads; // parallelism of catalog file load
+    private volatile CatalogFileLoader lazyLoader; // loader of a catalog served while loading, null once loaded
     private final ScheduledExecutorService executorService;
 
     private final ScheduledExecutorService restockExecutorService;
+    private final RestockPolicy defaultRestockPolicy;
+    private final Map<String, RestockPolicy> restockPolicies; // items with their own restock policy
+    private final Set<String> pendingRestocks; // items queued for restock
 
     private CacheInvalidationHandler cacheInvalidationHandler;
 
+    private final PersistenceMode persistenceMode;
+    private final CatalogMetrics metrics;
+
+    private final DurabilityPolicy durabilityPolicy;
+    private String journalFilePath;
+    private InventoryJournal journal; // null if journal is turned off
+
+    // items changed since last incremental checkpoint
+    private final Set<String> dirtyItems;
+    private CheckpointDeltaFile deltaFile;
+    private final double deltaMergeRatio;
+
+    private final StorageBackend storageBackend;
+    private MappedCatalogFile mappedFile; // null for csv backend
+
+    // stock held by orders which are not placed yet, token -> reservation
+    private final ConcurrentHashMap<String, Reservation> reservations;
+    private final long reservationTtlMillis;
+
+    // ordered stream of changed items, tailed by read replicas
+    private final ChangeStream changeStream;
+    private CatalogReplicator replicator; // null on primary
+
+    // hot items, their stock is striped once their updates contend for the record
+    private final ConcurrentHashMap<String, StripedStock> hotItems;
+    private final long hotItemRetryThreshold;
+    private final int hotItemStripes;
+    private final Map<String, Long> checkedCasRetries; // retries of every item at the last hot item check
+
     /**
-     * Here we are using 2 locks to synchronize the access to the product catalog data.
-     * 1. loadLock - Lock to synchronize the loading of data from CSV.
-     * 2. locks - Locks to synchronize the access to the individual items in the product catalog as we need not lock entire product catalog, we can just take lock on the item which is being accessed. 
-     * We are using ConcurrentHashMap to store the product catalog data as it provides thread-safe operations.
+     * Here we are using loadLock only to synchronize the loading of data from CSV.
+     * Items are stored as immutable, versioned records, each one held in its own AtomicReference in a ConcurrentHashMap.
+     * Reads never take a lock, and stock updates compare-and-set the next version of the record, retrying only when
+     * another buyer changed the same item in between.
+     * Every successful stock update is also appended to an inventory journal, which is replayed on top of the catalog
+     * file at startup, so a crash doesn't lose the updates made since the last flush.
+     * In incremental persistence mode updated items are tracked as dirty, and a checkpoint writes only those items.
+     * With mmap storage backend the catalog file is a memory-mapped binary file, every stock update is written in place
+     * into the item's record and the periodic flush only forces the mapped pages to disk.
      * Constructor to initialize the product catalog and load the data from CSV and schedule task to write data to CSV.
      */
     public ProductCatalog(String catalogFilePath, CacheInvalidationHandler cacheInvalidationHandler){
-        this.locks = new HashMap<>();
+        this(catalogFilePath,cacheInvalidationHandler,new Properties());
+    }
+
+    /**
+     * Constructor to initialize the product catalog with tuning options read from catalog config file.
+     * @param catalogFilePath - path of catalog csv file
+     * @param cacheInvalidationHandler - Cache Invalidation Handler
+     * @param config - catalog config (persistenceMode=snapshot|blocking|incremental, deltaMergeRatio,
+     *                 journalDurability=sync|async|off, journalPath, storageBackend=csv|mmap, reservationTtlMs,
+     *                 restock.default.amount|threshold|delayMs and restock.<item>.amount|threshold|delayMs,
+     *                 changeStreamCapacity, replicaOf=primary catalog url to run as read replica, replicationPollMs,
+     *                 replicationWaitMs, hotItem.casRetryThreshold|checkIntervalMs|stripes, loadThreads,
+     *                 serveWhileLoading)
+     */
+    public ProductCatalog(String catalogFilePath, CacheInvalidationHandler cacheInvalidationHandler, Properties config){
+        this.persistenceMode = PersistenceMode.fromString(config.getProperty("persistenceMode"));
+        this.durabilityPolicy = DurabilityPolicy.fromString(config.getProperty("journalDurability"));
+        this.deltaMergeRatio = Double.parseDouble(config.getProperty("deltaMergeRatio","1.0"));
+        this.storageBackend = StorageBackend.fromString(config.getProperty("storageBackend"));
+        this.reservationTtlMillis = Long.parseLong(config.getProperty("reservationTtlMs","30000"));
+        this.reservations = new ConcurrentHashMap<>();
+        this.dirtyItems = ConcurrentHashMap.newKeySet();
+        this.metrics = new CatalogMetrics();
         this.loadLock = new Object();
         this.executorService = Executors.newScheduledThreadPool(1);
         this.restockExecutorService = Executors.newScheduledThreadPool(1);
+        this.defaultRestockPolicy = RestockPolicy.defaultPolicy(config);
+        this.restockPolicies = RestockPolicy.itemPolicies(config,defaultRestockPolicy);
+        this.pendingRestocks = ConcurrentHashMap.newKeySet();
         this.cacheInvalidationHandler = cacheInvalidationHandler;
+        this.changeStream = new ChangeStream(Integer.parseInt(config.getProperty("changeStreamCapacity","10000")));
+        this.hotItems = new ConcurrentHashMap<>();
+        this.hotItemRetryThreshold = Long.parseLong(config.getProperty("hotItem.casRetryThreshold","1000"));
+        int stripes = Integer.parseInt(config.getProperty("hotItem.stripes","0"));
+        this.hotItemStripes = stripes>0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.checkedCasRetries = new HashMap<>();
+        int threads = Integer.parseInt(config.getProperty("loadThreads","0"));
+        this.loadThreads = threads>0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        String primaryUrl = config.getProperty("replicaOf");
+        if(primaryUrl!=null && !primaryUrl.trim().isEmpty()){
+            // read replica keeps no files of its own, items are loaded from primary and follow its change stream
+            this.productCatalog = new ConcurrentHashMap<>();
+            this.replicator = new CatalogReplicator(this,primaryUrl.trim(),config);
+            indexLatch.countDown(); // items are indexed as they are replicated
+            replicator.start();
+            LOGGER.info(() -> "Catalog is a read replica of "+primaryUrl);
+            return;
+        }
 
         if(catalogFilePath!=null){
             CSV_FILE_PATH = catalogFilePath;
         }
 
         if(System.getenv("isContainer")!=null){
-            CSV_FILE_PATH = "/app/src/main/resources/productcatalog.csv";
+            CSV_FILE_PATH = storageBackend==StorageBackend.MMAP ? "/app/src/main/resources/productcatalog.bin" : "/app/src/main/resources/productcatalog.csv";
         }
-        loadDataFromCSV(); // Load data from CSV
-        scheduleCsvUpdateTask(); // Schedule task to write data to CSV
-        scheduleRestock(); // Schedule restocking of items
+        this.journalFilePath = config.getProperty("journalPath", CSV_FILE_PATH + ".journal");
+        this.deltaFile = new CheckpointDeltaFile(CSV_FILE_PATH + ".delta");
+        boolean isServingWhileLoading = storageBackend==StorageBackend.CSV && Boolean.parseBoolean(config.getProperty("serveWhileLoading","false"));
+        if(storageBackend==StorageBackend.MMAP){
+            loadDataFromMappedFile(); // Map catalog file and replay journal
+        }else if(isServingWhileLoading){
+            openCatalogFileLoader(); // Map CSV, items are looked up on demand till it is loaded
+        }else{
+            loadDataFromCSV(); // Load data from CSV and replay journal
+        }
+        recoverReservations(); // Rebuild reservations still open before the restart
+        openJournal(); // Open journal to record stock updates
+        if(lazyLoader!=null){
+            startLoadingDataFromCSV(); // Load data from CSV in background, tasks needing the whole catalog wait for it
+        }else{
+            scheduleLoadedCatalogTasks();
+        }
+        scheduleReservationSweeper(); // Schedule release of expired reservations
+        scheduleHotItemCheck(Long.parseLong(config.getProperty("hotItem.checkIntervalMs","1000"))); // Stripe contended items
     }
 
     /**
@@ -63,13 +188,57 @@ public class ProductCatalog implements db.DB {
      */
     public Item queryItem(String name){
         // check if data is loaded, if not wait until data is loaded
+        if(!isDataLoaded && lazyLoader==null){
+            waitUntilDataIsLoaded();
+        }
+        // Records are immutable, so the current one can be handed out without a lock
+        AtomicReference<Item> itemRef = getItemRef(name);
+        return itemRef==null ? null : itemRef.get();
+    }
+
+    /**
+     * Method to get the current record of every item, records are immutable so no lock is taken.
+     * @return - items of the catalog
+     */
+    public List<Item> getItems(){
         if(!isDataLoaded){
             waitUntilDataIsLoaded();
         }
-        // Acquire lock before accessing the item
-        synchronized (getLock(name)) {
-            return this.productCatalog.get(name);
+        List<Item> items = new ArrayList<>(productCatalog.size());
+        for(AtomicReference<Item> itemRef:productCatalog.values()){
+            items.add(itemRef.get());
         }
+        return items;
+    }
+
+    /**
+     * Method to list items in name order, a page at a time. Records are immutable so no lock is taken, a page shows
+     * every item at its current record.
+     * @param prefix - only items whose name starts with it are listed, empty to list all
+     * @param after - name of the last item of previous page, null for the first page
+     * @param limit - maximum number of items
+     * @return - items of the page in name order
+     */
+    public List<Item> listItems(String prefix, String after, int limit){
+        if(!isDataLoaded){
+            waitUntilDataIsLoaded();
+        }
+        try{
+            indexLatch.await();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        }
+        NavigableMap<String, AtomicReference<Item>> items = after!=null && after.compareTo(prefix)>=0
+                ? sortedIndex.tailMap(after,false) : sortedIndex.tailMap(prefix,true);
+        List<Item> page = new ArrayList<>(Math.min(limit,100));
+        for(Map.Entry<String, AtomicReference<Item>> entry:items.entrySet()){
+            if(page.size()==limit || !entry.getKey().startsWith(prefix)){
+                break;
+            }
+            page.add(entry.getValue().get());
+        }
+        return page;
     }
 
     /**
@@ -81,35 +250,18 @@ public class ProductCatalog implements db.DB {
      */
     public int buyItem(String name,int quantity,String operation){
         // check if data is loaded, if not wait until data is loaded
-        System.out.println("Requested item: "+name+" quantity: "+quantity);
-        if(!isDataLoaded){
+        LOGGER.debug(() -> "Requested item: "+name+" quantity: "+quantity);
+        if(!isDataLoaded && lazyLoader==null){
             waitUntilDataIsLoaded();
         }
 
         try{
-            // Acquire lock before accessing the item
-            synchronized (getLock(name)) {
-                Item itemDetails = this.productCatalog.get(name);
-                if(itemDetails!=null){
-                    int availableQuantity = itemDetails.getQuantity();
-                    if(operation.equals("remove")){
-                        System.out.println("Available"+availableQuantity);
-                        if(availableQuantity>=quantity){
-                            itemDetails.setQuantity(availableQuantity-quantity);
-                            System.out.println("Update Successful!!");
-                            return 1; // Return 1 if item is successfully bought
-                        }else{
-                            return 0; // Return 0 if item is out of stock
-                        }
-                    }else if(operation.equals("add")){
-                        itemDetails.setQuantity(availableQuantity+quantity);
-                        return 1;
-                    }else{
-                        return -1;
-                    }
-                }else{
-                    return -1;
-                }
+            if(operation.equals("remove")){
+                return removeQuantity(name,quantity,"remove");
+            }else if(operation.equals("add")){
+                return addQuantity(name,quantity,"add");
+            }else{
+                return -1;
             }
         }catch (Exception e) {
             return -1; // Return -1 for item not found
@@ -117,33 +269,674 @@ public class ProductCatalog implements db.DB {
     }
 
     /**
-     * Method to load data from csv file.
+     * Method to decrement the stock of an item if requested quantity is available.
+     * @param name - Name of the item.
+     * @param quantity - Quantity to remove.
+     * @param operation - operation recorded in journal (remove/reserve)
+     * @return - 1 if stock is removed, 0 if requested quantity is not available, -1 if item is not found
+     */
+    private int removeQuantity(String name,int quantity,String operation){
+        AtomicReference<Item> itemRef = getItemRef(name);
+        if(itemRef==null){
+            return -1;
+        }
+        while(true){
+            StripedStock stock = hotItems.get(name);
+            if(stock!=null){
+                return removeStriped(itemRef,stock,quantity,operation);
+            }
+            Item itemDetails = itemRef.get();
+            if(itemDetails.isLocked()){
+                waitForUnlock(name);
+                continue;
+            }
+            int availableQuantity = itemDetails.getQuantity();
+            LOGGER.debug(() -> "Available"+availableQuantity);
+            if(availableQuantity<quantity){
+                return 0; // Return 0 if item is out of stock
+            }
+            Item updatedItem = itemDetails.withQuantity(availableQuantity-quantity);
+            if(itemRef.compareAndSet(itemDetails,updatedItem)){
+                LOGGER.debug("Update Successful!!");
+                journalUpdate(operation,quantity,updatedItem);
+                checkLowStock(updatedItem);
+                return 1; // Return 1 if item is successfully bought
+            }
+            // another buyer updated the item in between, retry with the latest record
+            metrics.recordCasRetry(name);
+        }
+    }
+
+    /**
+     * Method to increment the stock of an item.
+     * @param name - Name of the item.
+     * @param quantity - Quantity to add.
+     * @param operation - operation recorded in journal (add/release)
+     * @return - 1 if stock is added, -1 if item is not found
+     */
+    private int addQuantity(String name,int quantity,String operation){
+        AtomicReference<Item> itemRef = getItemRef(name);
+        if(itemRef==null){
+            return -1;
+        }
+        while(true){
+            StripedStock stock = hotItems.get(name);
+            if(stock!=null){
+                stock.add(quantity);
+                publishStriped(itemRef,stock,operation,quantity);
+                return 1;
+            }
+            Item itemDetails = itemRef.get();
+            if(itemDetails.isLocked()){
+                waitForUnlock(name);
+                continue;
+            }
+            Item updatedItem = itemDetails.withQuantity(itemDetails.getQuantity()+quantity);
+            if(itemRef.compareAndSet(itemDetails,updatedItem)){
+                journalUpdate(operation,quantity,updatedItem);
+                return 1;
+            }
+            metrics.recordCasRetry(name);
+        }
+    }
+
+    /**
+     * Method to decrement the stock of a hot item from its stripes and publish the item record covering it.
+     * @param itemRef - reference of the item
+     * @param stock - striped stock of the item
+     * @param quantity - Quantity to remove.
+     * @param operation - operation recorded in journal (remove/reserve)
+     * @return - 1 if stock is removed, 0 if requested quantity is not available
+     */
+    private int removeStriped(AtomicReference<Item> itemRef,StripedStock stock,int quantity,String operation){
+        while(true){
+            Item itemDetails = itemRef.get();
+            if(itemDetails.isLocked()){
+                // a multi-item update may hold the stock of the item
+                waitForUnlock(itemDetails.getName());
+                continue;
+            }
+            if(stock.tryRemove(quantity)){
+                break;
+            }
+            if(itemRef.get()==itemDetails){
+                return 0; // Return 0 if item is out of stock
+            }
+            // the item changed while stripes were read, it may have been restocked or released
+        }
+        Item updatedItem = publishStriped(itemRef,stock,operation,quantity);
+        checkLowStock(updatedItem);
+        return 1;
+    }
+
+    /**
+     * Method to make sure a change of the stripes of a hot item is in a published item record, and wait for the
+     * record as per durability policy. The change is covered by any record published after it, so under contention
+     * most buyers find their change already published by another buyer and don't update the record themselves.
+     * @param itemRef - reference of the item
+     * @param stock - striped stock of the item
+     * @param operation - operation recorded in journal
+     * @param quantity - quantity removed or added
+     * @return - item record covering the change
+     */
+    private Item publishStriped(AtomicReference<Item> itemRef,StripedStock stock,String operation,int quantity){
+        long ticket = stock.takeTicket();
+        while(true){
+            StripedStock.Publication publication = stock.getPublication();
+            if(publication.ticket>=ticket){
+                metrics.recordCoveredUpdate();
+                if(journal!=null){
+                    journal.awaitDurability(publication.durability);
+                }
+                return itemRef.get();
+            }
+            // the record is read before the ticket and the ticket before the sum, so a newer sum is never replaced
+            Item itemDetails = itemRef.get();
+            if(itemDetails.isLocked()){
+                waitForUnlock(itemDetails.getName());
+                continue;
+            }
+            long latestTicket = stock.getLatestTicket();
+            Item updatedItem = itemDetails.withQuantity(stock.sum());
+            if(itemRef.compareAndSet(itemDetails,updatedItem)){
+                writeThrough(updatedItem);
+                CompletableFuture<Void> durability = journal==null ? null : journal.append(operation,quantity,updatedItem);
+                stock.published(latestTicket,durability);
+                if(journal!=null){
+                    journal.awaitDurability(durability);
+                }
+                changeStream.append(updatedItem);
+                return updatedItem;
+            }
+            // another buyer published in between, its record may already cover this change
+        }
+    }
+
+    /**
+     * Method to switch an item to striped stock, called for items whose updates keep retrying compare-and-set.
+     * @param name - Name of the item
+     * @return - true if the item is striped now, false if it is not found or already striped
+     */
+    public boolean promoteHotItem(String name){
+        AtomicReference<Item> itemRef = getItemRef(name);
+        if(itemRef==null || hotItems.containsKey(name)){
+            return false;
+        }
+        // claimed like a multi-item update, so no compare-and-set of the record is in flight while stock moves
+        Item item = lockItem(itemRef);
+        hotItems.put(name,new StripedStock(item.getQuantity(),hotItemStripes));
+        metrics.recordHotItem(name,hotItemStripes);
+        // released with a new object, a buyer holding the old record can't compare-and-set it past the stripes
+        itemRef.set(new Item(item.getName(),item.getQuantity(),item.getPrice(),item.getVersion()));
+        LOGGER.info(() -> "Item "+name+" is hot, its stock is split into "+hotItemStripes+" stripes");
+        return true;
+    }
+
+    /**
+     * Method to promote the items whose compare-and-set retries since the last check reached the threshold.
+     */
+    private void checkHotItems(){
+        try{
+            for(String name:productCatalog.keySet()){
+                long retries = metrics.getCasRetries(name);
+                Long checked = checkedCasRetries.put(name,retries);
+                if(retries-(checked==null ? 0 : checked)>=hotItemRetryThreshold){
+                    promoteHotItem(name);
+                }
+            }
+        }catch (Exception e){ LOGGER.warn(() -> "Error while checking hot items "+e);}
+    }
+
+    /**
+     * Method to reserve stock of an item for an order. The quantity is removed from the item right away, so it can't be
+     * sold to anyone else, and it is given back if the reservation is released or not committed before it expires.
+     * @param name - Name of the item
+     * @param quantity - Quantity to reserve
+     * @return - reservation, null if item is not found or requested quantity is not available
+     */
+    public Reservation reserveItem(String name,int quantity){
+        if(!isDataLoaded && lazyLoader==null){
+            waitUntilDataIsLoaded();
+        }
+        if(removeQuantity(name,quantity,"reserve")!=1){
+            return null;
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(),name,quantity,System.currentTimeMillis()+reservationTtlMillis);
+        reservations.put(reservation.getToken(),reservation);
+        // queued after the stock removal, so a restart which finds the reservation finds its stock removed too
+        journalReservation(InventoryJournal.RESERVATION_OPEN,reservation);
+        metrics.recordReservationCreated();
+        return reservation;
+    }
+
+    /**
+     * Method to commit a reservation once its order is placed, the reserved stock stays removed.
+     * The commit is journaled before it is acknowledged, so a restart doesn't give the stock of a placed order back.
+     * @param token - reservation token
+     * @return - committed reservation, null if it is unknown or has already expired
+     */
+    public Reservation commitReservation(String token){
+        Reservation reservation = reservations.remove(token);
+        if(reservation==null){
+            LOGGER.warn(() -> "Commit of unknown or expired reservation "+token);
+            return null;
+        }
+        journalReservation("commit",reservation);
+        metrics.recordReservationCommitted();
+        return reservation;
+    }
+
+    /**
+     * Method to release a reservation of an order which failed, the reserved stock is added back to the item.
+     * @param token - reservation token
+     * @return - released reservation, null if it is unknown or has already expired
+     */
+    public Reservation releaseReservation(String token){
+        Reservation reservation = reservations.remove(token);
+        if(reservation==null){
+            return null;
+        }
+        // journaled before the stock is given back, a crash in between can't give it back twice
+        journalReservation("release",reservation);
+        addQuantity(reservation.getItemName(),reservation.getQuantity(),"release");
+        metrics.recordReservationReleased();
+        return reservation;
+    }
+
+    /**
+     * Method to give back the stock of reservations which were neither committed nor released before their expiry.
+     */
+    private void releaseExpiredReservations(){
+        long now = System.currentTimeMillis();
+        JSONArray releasedItems = new JSONArray();
+        try{
+            for(Reservation reservation:reservations.values()){
+                // remove only if it is still the same reservation, a concurrent commit/release wins
+                if(reservation.getExpiresAt()<=now && reservations.remove(reservation.getToken(),reservation)){
+                    LOGGER.info(() -> "Reservation "+reservation.getToken()+" expired, releasing "+reservation.getQuantity()+" of "+reservation.getItemName());
+                    journalReservation("expire",reservation);
+                    addQuantity(reservation.getItemName(),reservation.getQuantity(),"release");
+                    metrics.recordReservationExpired();
+                    releasedItems.put(reservation.getItemName());
+                }
+            }
+        }catch (Exception e){ LOGGER.warn(() -> "Error while releasing expired reservations "+e);}
+
+        if(!releasedItems.isEmpty() && cacheInvalidationHandler!=null){
+            cacheInvalidationHandler.makeBulkInvalidateCacheRequest(releasedItems);
+        }
+    }
+
+    /**
+     * Method to update the stock of several items atomically, either every change is applied or none of them.
+     * Items are claimed in name order by swapping in a locked copy of their record, so overlapping updates never
+     * deadlock, and the locks are held only while the changes are validated and applied in memory. Single item buyers
+     * of a claimed item wait for it to be released, readers are never blocked and see the record before the update.
+     * @param quantityChanges - Name of the item to quantity change (negative to remove stock)
+     * @return - 1 if all the changes are applied, 0 if requested quantity of some item is not available, -1 if some item is not found
+     */
+    public int updateItems(Map<String,Integer> quantityChanges){
+        if(!isDataLoaded && lazyLoader==null){
+            waitUntilDataIsLoaded();
+        }
+        List<String> names = new ArrayList<>(quantityChanges.keySet());
+        Collections.sort(names);
+        List<AtomicReference<Item>> itemRefs = new ArrayList<>(names.size());
+        for(String name:names){
+            AtomicReference<Item> itemRef = getItemRef(name);
+            if(itemRef==null){
+                return -1;
+            }
+            itemRefs.add(itemRef);
+        }
+
+        List<Item> items = new ArrayList<>(names.size());
+        int[] quantities = new int[names.size()];
+        for(int i=0;i<names.size();i++){
+            Item item = lockItem(itemRefs.get(i));
+            items.add(item);
+            // stock of a hot item is held by the update till it is released
+            StripedStock stock = hotItems.get(names.get(i));
+            quantities[i] = stock==null ? item.getQuantity() : stock.drain();
+        }
+        boolean isAvailable = true;
+        for(int i=0;i<names.size();i++){
+            if(quantities[i]+quantityChanges.get(names.get(i))<0){
+                isAvailable = false;
+                break;
+            }
+        }
+        if(!isAvailable){
+            // release the items with their original records
+            for(int i=0;i<names.size();i++){
+                StripedStock stock = hotItems.get(names.get(i));
+                if(stock==null){
+                    itemRefs.get(i).set(items.get(i));
+                }else{
+                    stock.refill(quantities[i]);
+                    // new object, so a record read before the lock can't be compare-and-set past the refill
+                    Item item = items.get(i);
+                    itemRefs.get(i).set(new Item(item.getName(),item.getQuantity(),item.getPrice(),item.getVersion()));
+                }
+            }
+            return 0;
+        }
+        List<Item> updatedItems = new ArrayList<>(names.size());
+        for(int i=0;i<names.size();i++){
+            Item item = items.get(i);
+            StripedStock stock = hotItems.get(names.get(i));
+            Item updatedItem;
+            if(stock==null){
+                updatedItem = item.withQuantity(quantities[i]+quantityChanges.get(names.get(i)));
+            }else{
+                stock.refill(quantities[i]+quantityChanges.get(names.get(i)));
+                updatedItem = item.withQuantity(stock.sum());
+            }
+            itemRefs.get(i).set(updatedItem);
+            updatedItems.add(updatedItem);
+        }
+        journalUpdates(quantityChanges,updatedItems);
+        for(Item updatedItem:updatedItems){
+            checkLowStock(updatedItem);
+        }
+        return 1;
+    }
+
+    /**
+     * Method to claim an item for a multi-item update by swapping its record with a locked copy.
+     * @param itemRef - reference of the item
+     * @return - record of the item before it was locked
+     */
+    private Item lockItem(AtomicReference<Item> itemRef){
+        while(true){
+            Item item = itemRef.get();
+            if(!item.isLocked() && itemRef.compareAndSet(item,item.asLocked())){
+                return item;
+            }
+            waitForUnlock(item.getName());
+        }
+    }
+
+    /**
+     * Method to back off while an item is claimed by another update, claims are only held for in-memory work.
+     * @param name - Name of the item
+     */
+    private void waitForUnlock(String name){
+        metrics.recordCasRetry(name);
+        Thread.yield();
+    }
+
+    /**
+     * Method to append the stock updates of a multi-item update to journal as one batch of records.
+     * @param quantityChanges - Name of the item to quantity change
+     * @param updatedItems - item records after the update
+     */
+    private void journalUpdates(Map<String,Integer> quantityChanges,List<Item> updatedItems){
+        StringBuilder records = new StringBuilder();
+        for(Item updatedItem:updatedItems){
+            writeThrough(updatedItem);
+            int quantityChange = quantityChanges.get(updatedItem.getName());
+            records.append(InventoryJournal.formatRecord(quantityChange<0 ? "remove" : "add",Math.abs(quantityChange),updatedItem));
+        }
+        if(journal!=null){
+            journal.awaitDurability(journal.appendRecords(records.toString()));
+        }
+        for(Item updatedItem:updatedItems){
+            changeStream.append(updatedItem);
+        }
+    }
+
+    /**
+     * Method to append a successful stock update to journal and wait for it as per durability policy.
+     * This is called after the compare-and-set, so buyers of the same item never wait on each other's fsync.
+     * The item is marked dirty before its journal record is queued, so a checkpoint that rotated the journal past this
+     * record is guaranteed to see the item as dirty. Replicas are told about the update only after the wait, so with
+     * SYNC durability they never see an update a crash of primary could lose.
+     * @param operation - remove/add
+     * @param quantity - quantity removed or added
+     * @param updatedItem - item record after the update
+     */
+    private void journalUpdate(String operation,int quantity,Item updatedItem){
+        writeThrough(updatedItem);
+        if(journal!=null){
+            CompletableFuture<Void> future = journal.append(operation,quantity,updatedItem);
+            journal.awaitDurability(future);
+        }
+        changeStream.append(updatedItem);
+    }
+
+    /**
+     * Method to hand an updated item to the storage backend, it is marked dirty for incremental checkpoint or written
+     * in place into mapped catalog file. Callers add the item to the change stream for read replicas once its journal
+     * record is queued (and waited for as per durability policy).
+     * @param updatedItem - item record after the update
+     */
+    private void writeThrough(Item updatedItem){
+        markDirty(updatedItem.getName());
+        if(mappedFile!=null){
+            mappedFile.write(updatedItem);
+        }
+    }
+
+    /**
+     * Method to journal an event of a reservation and wait for it as per durability policy.
+     * @param event - open/commit/release/expire
+     * @param reservation - reservation
+     */
+    private void journalReservation(String event,Reservation reservation){
+        if(journal!=null){
+            journal.awaitDurability(journal.appendRecords(InventoryJournal.formatReservationRecord(event,reservation)));
+        }
+    }
+
+    /**
+     * Method to journal every open reservation again after the journal is rotated, their open records are in the
+     * rotated journal which is discarded after the checkpoint.
+     * @return - future which completes once the records are durable
+     */
+    private CompletableFuture<Void> journalOpenReservations(){
+        StringBuilder records = new StringBuilder();
+        for(Reservation reservation:reservations.values()){
+            records.append(InventoryJournal.formatReservationRecord(InventoryJournal.RESERVATION_OPEN,reservation));
+        }
+        return records.length()==0 ? CompletableFuture.completedFuture(null) : journal.appendRecords(records.toString());
+    }
+
+    /**
+     * Method to rebuild the reservations which were open before a restart from the journal. Their stock is removed in
+     * the recovered items, and it is given back by the sweeper if they expire before their order completes them.
+     */
+    private void recoverReservations(){
+        if(durabilityPolicy==DurabilityPolicy.OFF){
+            return;
+        }
+        Map<String, Reservation> openReservations = InventoryJournal.readOpenReservations(journalFilePath);
+        reservations.putAll(openReservations);
+        if(!openReservations.isEmpty()){
+            LOGGER.info(() -> "Recovered "+openReservations.size()+" open reservations from journal");
+        }
+    }
+
+    /**
+     * Method to open the inventory journal as per durability policy.
+     */
+    private void openJournal(){
+        if(durabilityPolicy==DurabilityPolicy.OFF){
+            LOGGER.warn("Inventory journal is turned off");
+            return;
+        }
+        try{
+            journal = new InventoryJournal(journalFilePath,durabilityPolicy,metrics);
+            LOGGER.info(() -> "Inventory journal opened in "+durabilityPolicy+" mode at "+journalFilePath);
+        }catch (IOException e){
+            LOGGER.warn(() -> "Error while opening inventory journal, stock updates will not be journaled "+e);
+        }
+    }
+
+    /**
+     * Method to mark an item as changed since last incremental checkpoint.
+     * @param name - Name of the item
+     */
+    private void markDirty(String name){
+        if(persistenceMode==PersistenceMode.INCREMENTAL && mappedFile==null){
+            dirtyItems.add(name);
+        }
+    }
+
+    /**
+     * Method to replay checkpoint delta file and inventory journal on top of the data loaded from csv file.
+     */
+    private void replayJournal(){
+        int replayedDelta = applyRecords(deltaFile.readLatestRecords());
+        if(replayedDelta>0){
+            LOGGER.info(() -> "Applied checkpoint delta for "+replayedDelta+" items");
+        }
+        int replayed = applyRecords(InventoryJournal.readLatestRecords(journalFilePath));
+        if(replayed>0){
+            LOGGER.info(() -> "Replayed journal for "+replayed+" items");
+        }
+    }
+
+    /**
+     * Method to apply recovered item records, only records with a version newer than the loaded item are applied.
+     * @param latestRecords - latest record of every item
+     * @return - number of items updated
+     */
+    private int applyRecords(Map<String, ItemRecord> latestRecords){
+        int replayed = 0;
+        for(ItemRecord record:latestRecords.values()){
+            AtomicReference<Item> itemRef = productCatalog.get(record.name);
+            if(itemRef!=null && record.version>itemRef.get().getVersion()){
+                Item item = itemRef.get();
+                Item replayedItem = new Item(item.getName(),record.quantity,item.getPrice(),record.version);
+                itemRef.set(replayedItem);
+                if(mappedFile!=null){
+                    mappedFile.write(replayedItem);
+                }
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Method to load data from csv file, ranges of the file are parsed in parallel by loadThreads threads.
      */
     private void loadDataFromCSV(){
         // Taking lock to load data from CSV
+        synchronized (loadLock) {
+            long startTime = System.nanoTime();
+            try (CatalogFileLoader loader = new CatalogFileLoader(CSV_FILE_PATH, Collections.<String, ItemRecord>emptyMap())) {
+                productCatalog = new ConcurrentHashMap<>(loader.estimateItemCount());
+                int loaded = loader.load(productCatalog, loadThreads);
+                long loadNanos = System.nanoTime()-startTime;
+                metrics.recordLoad(loadNanos, loaded);
+                LOGGER.info(() -> "Loaded "+loaded+" items in "+loadNanos/1_000_000+" ms with "+loadThreads+" threads");
+                replayJournal();
+            } catch (IOException e) {
+                LOGGER.error("Error while reading catalog file " + CSV_FILE_PATH, e);
+                productCatalog = new ConcurrentHashMap<>();
+            } finally {
+                executorService.execute(this::indexItems); // Index in background, only listing waits for it
+                isDataLoaded = true; // Set flag to indicate data is loaded
+                loadLock.notifyAll(); // Notify waiting threads that data loading is complete
+            }
+        }
+    }
+
+    /**
+     * Method to map csv file to serve the catalog while loading it. Queries and updates of an item not loaded yet look
+     * it up on demand in the part of the file still to be loaded, only requests which need the whole catalog wait for
+     * the load. Records recovered from checkpoint delta and journal are read before the journal is opened and merged
+     * into items as they are loaded, so no item is served older than it was before the restart.
+     */
+    private void openCatalogFileLoader(){
+        productCatalog = new ConcurrentHashMap<>();
+        try{
+            lazyLoader = new CatalogFileLoader(CSV_FILE_PATH, readRecoveredRecords());
+            productCatalog = new ConcurrentHashMap<>(lazyLoader.estimateItemCount());
+        }catch (IOException e){
+            LOGGER.error("Error while reading catalog file " + CSV_FILE_PATH, e);
+            indexLatch.countDown();
+            synchronized (loadLock){
+                isDataLoaded = true;
+                loadLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method to load data from mapped csv file in background, the tasks which need the whole catalog are scheduled
+     * once it is loaded.
+     */
+    private void startLoadingDataFromCSV(){
+        CatalogFileLoader loader = lazyLoader;
+        Thread loaderThread = new Thread(() -> {
+            long startTime = System.nanoTime();
+            try{
+                int loaded = loader.load(productCatalog, loadThreads);
+                long loadNanos = System.nanoTime()-startTime;
+                metrics.recordLoad(loadNanos, loaded);
+                LOGGER.info(() -> "Loaded "+loaded+" items in "+loadNanos/1_000_000+" ms with "+loadThreads+" threads while serving");
+            }catch (Exception e){
+                LOGGER.error("Error while loading catalog file " + CSV_FILE_PATH, e);
+            }finally {
+                // every item is in the map now, items looked up on demand included
+                executorService.execute(this::indexItems);
+                synchronized (loadLock){
+                    isDataLoaded = true;
+                    loadLock.notifyAll();
+                }
+                // on demand lookups see the flag before the loader goes away
+                lazyLoader = null;
+                try{
+                    loader.close();
+                }catch (IOException e){
+                    LOGGER.warn(() -> "Error while closing catalog file "+e);
+                }
+                scheduleLoadedCatalogTasks();
+            }
+        }, "catalog-loader");
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
+
+    /**
+     * Method to get the reference of an item, an item not loaded yet is looked up on demand while the catalog is
+     * served while loading.
+     * @param name - Name of the item
+     * @return - reference of the item, null if it is not in catalog
+     */
+    private AtomicReference<Item> getItemRef(String name){
+        AtomicReference<Item> itemRef = productCatalog.get(name);
+        if(itemRef!=null){
+            return itemRef;
+        }
+        CatalogFileLoader loader = lazyLoader;
+        if(loader==null){
+            return null;
+        }
+        Item item = loader.find(name);
+        if(item==null){
+            // loader may have loaded the item meanwhile
+            return productCatalog.get(name);
+        }
+        metrics.recordOnDemandLoad();
+        AtomicReference<Item> loadedRef = productCatalog.putIfAbsent(name, new AtomicReference<>(item));
+        return loadedRef!=null ? loadedRef : productCatalog.get(name);
+    }
+
+    /**
+     * Method to build the sorted index of loaded items, it runs after the load so startup doesn't wait for it.
+     * Names are sorted first, so every put appends at the end of the skip list.
+     */
+    private void indexItems(){
+        try{
+            long startTime = System.nanoTime();
+            String[] names = productCatalog.keySet().toArray(new String[0]);
+            Arrays.parallelSort(names);
+            for(String name:names){
+                sortedIndex.put(name,productCatalog.get(name));
+            }
+            LOGGER.info(() -> "Indexed "+names.length+" items in "+(System.nanoTime()-startTime)/1_000_000+" ms");
+        }finally {
+            indexLatch.countDown();
+        }
+    }
+
+    /**
+     * Method to read the latest record of every item updated after the catalog file was written, from checkpoint delta
+     * file and journal.
+     * @return - item name to its latest record
+     */
+    private Map<String, ItemRecord> readRecoveredRecords(){
+        Map<String, ItemRecord> records = new HashMap<>(deltaFile.readLatestRecords());
+        for(ItemRecord record:InventoryJournal.readLatestRecords(journalFilePath).values()){
+            ItemRecord current = records.get(record.name);
+            if(current==null || record.version>current.version){
+                records.put(record.name, record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Method to map the binary catalog file and load its records. Records are fixed-width, so nothing is parsed, and the
+     * journal is replayed on top of them as with csv file.
+     */
+    private void loadDataFromMappedFile(){
         synchronized (loadLock) {
             productCatalog = new ConcurrentHashMap<>();
-            try (BufferedReader reader = new BufferedReader(new FileReader(CSV_FILE_PATH))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 3) {
-                        try {
-                            String itemName = parts[0];
-                            int quantity = Integer.parseInt(parts[1]);
-                            Double price = Double.parseDouble(parts[2]);
-                            Item item = new Item(itemName, quantity, price);
-                            productCatalog.put(itemName, item);
-                        } catch (Exception e) {
-                            System.out.println("Some error while reading line from file: " + line);
-                        }
-                    } else {
-                        System.out.println("Line is not in expected format: " + line);
-                    }
+            try {
+                mappedFile = new MappedCatalogFile(CSV_FILE_PATH);
+                for(Item item:mappedFile.readItems()){
+                    productCatalog.put(item.getName(), new AtomicReference<>(item));
                 }
+                replayJournal();
             } catch (IOException e) {
-                e.printStackTrace();
+                LOGGER.warn(() -> "Error while mapping catalog file, convert the csv file with db.CatalogFileConverter first " + e);
             } finally {
+                executorService.execute(this::indexItems); // Index in background, only listing waits for it
                 isDataLoaded = true; // Set flag to indicate data is loaded
                 loadLock.notifyAll(); // Notify waiting threads that data loading is complete
             }
@@ -151,18 +944,109 @@ public class ProductCatalog implements db.DB {
     }
 
     /**
-     * Method to write data to csv file.
+     * Method to write data to csv file using the configured persistence mode.
+     * Journal is rotated before the catalog is copied, and the rotated journal is discarded only after the new catalog
+     * file is durable, so every update is always in at least one of them.
      */
-    private void writeDataToCSV(){
+    private synchronized void writeDataToCSV(){
+        if(lazyLoader!=null){
+            // catalog file is still being loaded, updates made meanwhile are in the journal
+            LOGGER.warn("Catalog is still loading, skipping write of catalog file");
+            return;
+        }
+        long startTime = System.nanoTime();
+        boolean isRotated = false;
+        CompletableFuture<Void> reservationsJournaled = null;
+        if(journal!=null){
+            try{
+                journal.rotate();
+                reservationsJournaled = journalOpenReservations();
+                isRotated = true;
+            }catch (Exception e){
+                LOGGER.warn(() -> "Error while rotating inventory journal "+e);
+            }
+        }
+        int itemsWritten;
+        if(mappedFile!=null){
+            itemsWritten = forceMappedFile();
+        }else if(persistenceMode==PersistenceMode.INCREMENTAL){
+            itemsWritten = writeCheckpoint();
+        }else if(persistenceMode==PersistenceMode.SNAPSHOT){
+            itemsWritten = writeSnapshotToCSV();
+        }else{
+            itemsWritten = writeDataToCSVBlocking();
+        }
+        if(itemsWritten>=0 && isRotated){
+            try{
+                reservationsJournaled.join();
+                journal.discardRotated();
+            }catch (Exception e){
+                LOGGER.warn(() -> "Error while journaling open reservations, keeping rotated journal "+e);
+            }
+        }
+        metrics.recordFlush(System.nanoTime()-startTime,itemsWritten);
+    }
+
+    /**
+     * Method to flush the in-place updates of mapped catalog file to disk.
+     * @return - number of items in mapped file, -1 if flush failed
+     */
+    private int forceMappedFile(){
+        try{
+            mappedFile.force();
+            return mappedFile.size();
+        }catch (Exception e){
+            LOGGER.warn(() -> "Error while flushing mapped catalog file " + e);
+            return -1;
+        }
+    }
+
+    /**
+     * Method to write an incremental checkpoint, only items changed since last checkpoint are appended to delta file.
+     * Once delta file has more rows than deltaMergeRatio times the catalog size, it is merged into catalog file with a
+     * full snapshot, so the merge cost is amortized over the changes and checkpoint cost scales with changed items.
+     * @return - number of items written, -1 if checkpoint failed
+     */
+    private int writeCheckpoint(){
+        List<Item> changedItems = new ArrayList<>();
+        Iterator<String> iterator = dirtyItems.iterator();
+        while(iterator.hasNext()){
+            String name = iterator.next();
+            iterator.remove(); // an update after this point marks the item dirty again for next checkpoint
+            changedItems.add(productCatalog.get(name).get());
+        }
+        if(!deltaFile.append(changedItems)){
+            for(Item item:changedItems){
+                dirtyItems.add(item.getName());
+            }
+            return -1;
+        }
+        if(deltaFile.getRecordCount()>=deltaMergeRatio*productCatalog.size()){
+            LOGGER.info("Merging checkpoint delta file into catalog file");
+            int itemsWritten = writeSnapshotToCSV();
+            if(itemsWritten<0){
+                return -1;
+            }
+            // catalog file now has every item at least as new as the delta rows
+            deltaFile.delete();
+            metrics.recordDeltaMerge();
+            return changedItems.size()+itemsWritten;
+        }
+        return changedItems.size();
+    }
+
+    /**
+     * Method to write data to csv file while holding the load barrier, all queries and buys wait till the write is done.
+     */
+    private int writeDataToCSVBlocking(){
         isDataLoaded = false;
         synchronized (loadLock) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(CSV_FILE_PATH))) {
-                for (Map.Entry<String, Item> entry : productCatalog.entrySet()) {
-                    Item item = entry.getValue();
-                    writer.println(item.getName() + "," + item.getQuantity() + "," + item.getPrice());
+            try {
+                List<Item> rows = new ArrayList<>(productCatalog.size());
+                for (AtomicReference<Item> itemRef : productCatalog.values()) {
+                    rows.add(itemRef.get());
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                return writeItemsToCSV(rows);
             } finally {
                 isDataLoaded = true; // Set flag to indicate data is written
                 loadLock.notifyAll(); // Notify waiting threads that data writing is complete.
@@ -171,74 +1055,306 @@ public class ProductCatalog implements db.DB {
     }
 
     /**
-     * Method to restock items in catalog.
+     * Method to write a snapshot of the catalog to csv file without blocking readers or buyers.
+     * Item records are immutable, so copying the current reference of each item is enough to get a state the item
+     * actually had, and the file I/O happens on the copy.
      */
-    private void restockCatalog(){
-        isDataLoaded = false;
-        JSONArray emptyItems = new JSONArray();
-        synchronized (loadLock){
-            try {
-                for(Item item:productCatalog.values()){
-                    if(item.getQuantity()<=0){
-                        System.out.println("Restocking for item "+item);
-                        item.setQuantity(100);
-                        emptyItems.put(item.getName());
-                    }
-                }
-            } catch (Exception e){ System.out.println("Error while restocking items");}
-            finally {
-                isDataLoaded = true; // Set flag to indicate data is updated
-                loadLock.notifyAll(); // Notify waiting threads that data updates is complete.
+    private int writeSnapshotToCSV(){
+        List<Item> rows = new ArrayList<>(productCatalog.size());
+        for (AtomicReference<Item> itemRef : productCatalog.values()) {
+            rows.add(itemRef.get());
+        }
+        return writeItemsToCSV(rows);
+    }
+
+    /**
+     * Method to write items to csv file. Items are written to a temp file, fsynced and moved over the catalog file, so a
+     * crash in the middle of a flush never leaves a half-written catalog.
+     * @param rows - items to write
+     * @return - number of items written, -1 if catalog file is not replaced
+     */
+    private int writeItemsToCSV(List<Item> rows){
+        Path catalogFile = Paths.get(CSV_FILE_PATH);
+        Path tempFile = Paths.get(CSV_FILE_PATH + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile.toFile());
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outputStream)))) {
+            for (Item item : rows) {
+                writer.println(item.getName() + "," + item.getQuantity() + "," + item.getPrice() + "," + item.getVersion());
             }
+            writer.flush();
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            LOGGER.error("Error while writing catalog file", e);
+            return -1;
         }
+        try {
+            Files.move(tempFile, catalogFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return rows.size();
+        } catch (IOException e) {
+            LOGGER.warn(() -> "Error while replacing catalog file with snapshot " + e);
+            return -1;
+        }
+    }
 
-        // now call invalidate cache if there are any emptyItems.
-        if(!emptyItems.isEmpty()){
-            System.out.println("Invalidating cache for re-stocked items");
-            cacheInvalidationHandler.makeBulkInvalidateCacheRequest(emptyItems);
+    /**
+     * Method to queue an item for restock once its stock drops to the low-water mark of its restock policy.
+     * Called after every stock removal, so only items which actually ran low are ever looked at.
+     * @param item - item record after the update
+     */
+    private void checkLowStock(Item item){
+        RestockPolicy policy = getRestockPolicy(item.getName());
+        if(item.getQuantity()<=policy.threshold && pendingRestocks.add(item.getName())){
+            restockExecutorService.schedule(() -> restockItem(item.getName()), policy.delayMillis, TimeUnit.MILLISECONDS);
         }
     }
 
+    /**
+     * Method to top up an item queued for restock. The item is restocked with compare-and-set (a hot item in its
+     * stripes), so buyers are never blocked, and it is left as is if its stock went back above the low-water mark in
+     * the meantime.
+     * @param name - Name of the item
+     */
+    private void restockItem(String name){
+        // removed before the update, a buyer draining the restocked item queues it again
+        pendingRestocks.remove(name);
+        RestockPolicy policy = getRestockPolicy(name);
+        AtomicReference<Item> itemRef = productCatalog.get(name);
+        try{
+            while(true){
+                StripedStock stock = hotItems.get(name);
+                Item item = itemRef.get();
+                if(item.isLocked()){
+                    // a multi-item update may hold the stock of the item
+                    waitForUnlock(name);
+                    continue;
+                }
+                int added;
+                Item restockedItem;
+                if(stock!=null){
+                    added = stock.topUp(policy.threshold,policy.amount);
+                    restockedItem = added>0 ? publishStriped(itemRef,stock,"restock",added) : null;
+                }else{
+                    if(item.getQuantity()>policy.threshold || item.getQuantity()>=policy.amount){
+                        return;
+                    }
+                    added = policy.amount-item.getQuantity();
+                    restockedItem = item.withQuantity(policy.amount);
+                    if(!itemRef.compareAndSet(item,restockedItem)){
+                        waitForUnlock(name);
+                        continue;
+                    }
+                    writeThrough(restockedItem);
+                    if(journal!=null){
+                        journal.awaitDurability(journal.append("restock",added,restockedItem));
+                    }
+                    changeStream.append(restockedItem);
+                }
+                if(restockedItem!=null){
+                    LOGGER.info(() -> "Restocking for item "+name);
+                    metrics.recordRestock();
+                    if(cacheInvalidationHandler!=null){
+                        cacheInvalidationHandler.makeInvalidateCacheRequest(name);
+                    }
+                }
+                return;
+            }
+        }catch (Exception e){ LOGGER.warn(() -> "Error while restocking item "+name+" "+e);}
+    }
+
+    /**
+     * Method to get the restock policy of an item.
+     * @param name - Name of the item
+     * @return - policy of the item, default policy if it has none of its own
+     */
+    private RestockPolicy getRestockPolicy(String name){
+        RestockPolicy policy = restockPolicies.get(name);
+        return policy==null ? defaultRestockPolicy : policy;
+    }
+
     private void waitUntilDataIsLoaded(){
+        long startTime = System.nanoTime();
         synchronized (loadLock) {
             while (!isDataLoaded) {
                 try {
                     loadLock.wait(); // Wait until data is loaded
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    LOGGER.warn("Interrupted while waiting for catalog to load", e);
                 }
             }
         }
+        metrics.recordReaderStall(System.nanoTime()-startTime);
     }
 
-    // Get lock for individual item
-    private Object getLock(String itemName) {
-        locks.putIfAbsent(itemName, new Object());
-        return locks.get(itemName);
+    /**
+     * Method to get the metrics of product catalog.
+     * @return - catalog metrics
+     */
+    public CatalogMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Method to schedule task to restock items every 10 seconds.
+     * Method to queue restock of items which are already low when the catalog is loaded, after that restock is driven
+     * by stock removals.
      */
-    private void scheduleRestock() {
-        System.out.println("Initiating task to restock items every 10 seconds.");
-        executorService.scheduleAtFixedRate(this::restockCatalog, 10, 10, TimeUnit.SECONDS);
+    private void scheduleInitialRestock() {
+        LOGGER.info("Initiating restock of items below their low-water mark.");
+        for(AtomicReference<Item> itemRef:productCatalog.values()){
+            checkLowStock(itemRef.get());
+        }
+    }
+
+    /**
+     * Method to schedule task to release expired reservations every second.
+     */
+    private void scheduleReservationSweeper() {
+        executorService.scheduleAtFixedRate(this::releaseExpiredReservations, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method to schedule the tasks which need the whole catalog, once it is loaded.
+     */
+    private void scheduleLoadedCatalogTasks() {
+        scheduleCsvUpdateTask(); // Schedule task to write data to CSV
+        scheduleInitialRestock(); // Restock items loaded below their low-water mark
+    }
+
+    /**
+     * Method to schedule the check for items which became hot.
+     * @param intervalMillis - interval of the check
+     */
+    private void scheduleHotItemCheck(long intervalMillis) {
+        if(hotItemRetryThreshold>0){
+            executorService.scheduleWithFixedDelay(this::checkHotItems, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
      * Method to schedule task to write data to CSV every minute.
      */
     private void scheduleCsvUpdateTask() {
-        System.out.println("Initiating task to write data to CSV every minute.");
+        LOGGER.info(() -> "Initiating task to write data to CSV every minute in "+(mappedFile!=null ? "MMAP" : persistenceMode)+" mode.");
         executorService.scheduleAtFixedRate(this::writeDataToCSV, 0, 1, TimeUnit.MINUTES);
     }
 
+    /**
+     * Method to check if this catalog is a read replica, replicas only serve queries.
+     * @return - true if catalog follows a primary
+     */
+    public boolean isReplica(){
+        return replicator!=null;
+    }
+
+    public ChangeStream getChangeStream(){
+        return changeStream;
+    }
+
+    /**
+     * Method to get how old the data of a replica may be.
+     * @return - milliseconds since replica last caught up with primary, -1 if it has not loaded yet, 0 on primary
+     */
+    public long getReplicationLagMillis(){
+        return replicator==null ? 0 : replicator.getLagMillis();
+    }
+
+    /**
+     * Method to get the replication state for /metrics and /replication endpoints.
+     * @return - JSON object with role, and sequences and lag of a replica
+     */
+    public JSONObject getReplicationStatus(){
+        if(replicator!=null){
+            return replicator.toJson();
+        }
+        JSONObject status = new JSONObject();
+        status.put("role","primary");
+        status.put("epoch",changeStream.getEpoch());
+        status.put("sequence",changeStream.getLastSequence());
+        status.put("changeStreamCapacity",changeStream.capacity());
+        status.put("waitingSubscribers",changeStream.getWaiters());
+        return status;
+    }
+
+    /**
+     * Method to replace the items of a replica with a snapshot of primary, queries waiting for the first snapshot are
+     * released once it is loaded.
+     * Snapshot records are installed whatever their version: a primary restarted without its latest updates (not yet
+     * durable when it crashed) is behind the replica, and will number its next updates with the versions the replica
+     * already has. Items primary doesn't have are dropped. Changes polled after the snapshot are still applied by
+     * version, the snapshot may already contain them.
+     * @param items - items of primary
+     */
+    void loadReplicaSnapshot(List<Item> items){
+        Set<String> snapshotNames = new HashSet<>(items.size()*2);
+        for(Item item:items){
+            snapshotNames.add(item.getName());
+            AtomicReference<Item> itemRef = productCatalog.get(item.getName());
+            if(itemRef==null){
+                AtomicReference<Item> newRef = new AtomicReference<>(item);
+                itemRef = productCatalog.putIfAbsent(item.getName(),newRef);
+                if(itemRef==null){
+                    sortedIndex.put(item.getName(),newRef);
+                    continue;
+                }
+            }
+            itemRef.set(item);
+        }
+        for(String name:new ArrayList<>(productCatalog.keySet())){
+            if(!snapshotNames.contains(name)){
+                sortedIndex.remove(name);
+                productCatalog.remove(name);
+            }
+        }
+        if(!isDataLoaded){
+            synchronized (loadLock){
+                isDataLoaded = true;
+                loadLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method to apply an item record polled from the change stream of primary, it is applied only if it is newer than
+     * the replica's.
+     * @param item - item record of primary
+     */
+    void applyReplicatedItem(Item item){
+        AtomicReference<Item> itemRef = productCatalog.get(item.getName());
+        if(itemRef==null){
+            AtomicReference<Item> newRef = new AtomicReference<>(item);
+            itemRef = productCatalog.putIfAbsent(item.getName(),newRef);
+            if(itemRef==null){
+                sortedIndex.put(item.getName(),newRef);
+                return;
+            }
+        }
+        while(true){
+            Item current = itemRef.get();
+            if(current.getVersion()>=item.getVersion() || itemRef.compareAndSet(current,item)){
+                return;
+            }
+        }
+    }
+
     /**
      * Method to gracefully shut down the executor service.
      */
     @Override
     public void shutdown() {
+        if(replicator!=null){
+            // replica has nothing of its own to persist
+            replicator.stop();
+            executorService.shutdown();
+            restockExecutorService.shutdown();
+            return;
+        }
         writeDataToCSV(); // Write data to CSV before shutting down to avoid data loss
+        if(journal!=null){
+            journal.close();
+        }
+        if(mappedFile!=null){
+            mappedFile.shutdown();
+        }
+        changeStream.close();
         executorService.shutdown();
         restockExecutorService.shutdown();
     }
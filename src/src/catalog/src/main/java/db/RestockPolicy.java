@@ -0,0 +1,56 @@
+package db;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * RestockPolicy decides when and how an item is restocked.
+ * An item whose quantity drops to threshold or below is topped up to amount after delayMillis.
+ * Policies are read from catalog config, restock.default.* keys apply to every item and restock.<item>.* keys override
+ * them for one item, e.g. restock.Tux.amount=500
+ */
+class RestockPolicy {
+    final int amount;
+    final int threshold;
+    final long delayMillis;
+
+    RestockPolicy(int amount, int threshold, long delayMillis) {
+        this.amount = amount;
+        this.threshold = threshold;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Method to read the default policy from catalog config.
+     * @param config - catalog config
+     * @return - default restock policy
+     */
+    static RestockPolicy defaultPolicy(Properties config){
+        return readPolicy(config, "restock.default.", new RestockPolicy(100, 0, 0));
+    }
+
+    /**
+     * Method to read the policies overridden for single items from catalog config.
+     * @param config - catalog config
+     * @param defaultPolicy - policy for settings not overridden
+     * @return - map of item name to its restock policy
+     */
+    static Map<String, RestockPolicy> itemPolicies(Properties config, RestockPolicy defaultPolicy){
+        Map<String, RestockPolicy> policies = new HashMap<>();
+        for(String key:config.stringPropertyNames()){
+            String[] parts = key.split("\\.");
+            if(parts.length==3 && parts[0].equals("restock") && !parts[1].equals("default") && !policies.containsKey(parts[1])){
+                policies.put(parts[1], readPolicy(config, "restock." + parts[1] + ".", defaultPolicy));
+            }
+        }
+        return policies;
+    }
+
+    private static RestockPolicy readPolicy(Properties config, String prefix, RestockPolicy defaults){
+        int amount = Integer.parseInt(config.getProperty(prefix + "amount", String.valueOf(defaults.amount)));
+        int threshold = Integer.parseInt(config.getProperty(prefix + "threshold", String.valueOf(defaults.threshold)));
+        long delayMillis = Long.parseLong(config.getProperty(prefix + "delayMs", String.valueOf(defaults.delayMillis)));
+        return new RestockPolicy(amount, threshold, delayMillis);
+    }
+}
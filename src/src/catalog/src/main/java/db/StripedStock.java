@@ -0,0 +1,195 @@
+package db;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * StripedStock holds the stock of a hot item split over several counters (stripes), so buyers of the item don't all
+ * compare-and-set the same record. A buyer takes the quantity from the stripe of its thread, borrows it from another
+ * stripe when its own has too little, and only when no single stripe has enough the stripes are gathered under the
+ * stock's monitor. Units only move between stripes, so the sum of the stripes is always the stock of the item.
+ *
+ * The item record is still the one read by queries, journal and change stream. After changing a stripe, a buyer takes
+ * a ticket and waits for a record covering its ticket: whoever publishes the next record sums the stripes after
+ * reading the latest ticket, so one record covers every buyer which took a ticket before it, and buyers whose change
+ * is already covered return without a compare-and-set of their own.
+ */
+class StripedStock {
+    // stripes are spaced a cache line apart so buyers on different stripes don't share one
+    private static final int PADDING = 16;
+
+    private final AtomicIntegerArray stripes;
+    private final int stripeCount;
+    private final AtomicLong tickets = new AtomicLong();
+    private final AtomicReference<Publication> publication = new AtomicReference<>(new Publication(0, null));
+
+    /**
+     * Latest item record published for the stock.
+     */
+    static class Publication {
+        final long ticket; // every change with a ticket up to this one is in the record
+        final CompletableFuture<Void> durability; // journal write of the record, null without journal
+
+        private Publication(long ticket, CompletableFuture<Void> durability) {
+            this.ticket = ticket;
+            this.durability = durability;
+        }
+    }
+
+    /**
+     * Constructor to spread the stock of an item over the stripes.
+     * @param quantity - stock of the item
+     * @param stripeCount - number of stripes
+     */
+    StripedStock(int quantity, int stripeCount) {
+        this.stripeCount = Math.max(1, stripeCount);
+        this.stripes = new AtomicIntegerArray(this.stripeCount * PADDING);
+        refill(quantity);
+    }
+
+    /**
+     * Method to remove stock, from the stripe of current thread or borrowed from another stripe.
+     * @param quantity - quantity to remove
+     * @return - true if removed, false if the stripes together don't have it
+     */
+    boolean tryRemove(int quantity){
+        int home = homeStripe();
+        for(int i=0;i<stripeCount;i++){
+            if(tryRemove((home + i) % stripeCount, quantity)){
+                return true;
+            }
+        }
+        // no stripe has enough on its own
+        return removeGathered(quantity);
+    }
+
+    private boolean tryRemove(int stripe, int quantity){
+        int index = stripe * PADDING;
+        int available = stripes.get(index);
+        while(available>=quantity){
+            if(stripes.compareAndSet(index, available, available - quantity)){
+                return true;
+            }
+            available = stripes.get(index);
+        }
+        return false;
+    }
+
+    /**
+     * Method to remove stock spread over several stripes, the stripes are gathered and the rest is spread again.
+     * @param quantity - quantity to remove
+     * @return - true if removed
+     */
+    private synchronized boolean removeGathered(int quantity){
+        int total = drainStripes();
+        boolean isAvailable = total>=quantity;
+        refill(isAvailable ? total - quantity : total);
+        return isAvailable;
+    }
+
+    /**
+     * Method to add stock to the stripe of current thread.
+     * @param quantity - quantity to add
+     */
+    void add(int quantity){
+        stripes.addAndGet(homeStripe() * PADDING, quantity);
+    }
+
+    /**
+     * Method to top up the stock if it is at or below a threshold.
+     * @param threshold - low-water mark
+     * @param amount - stock after top up
+     * @return - quantity added, 0 if the stock is above threshold
+     */
+    synchronized int topUp(int threshold, int amount){
+        int total = drainStripes();
+        int added = total<=threshold && total<amount ? amount - total : 0;
+        refill(total + added);
+        return added;
+    }
+
+    /**
+     * Method to take all the stock out of the stripes, a multi-item update holds it till it calls refill.
+     * Buyers find the stripes empty meanwhile, the update has the item record locked so they wait for it.
+     * @return - stock taken out
+     */
+    synchronized int drain(){
+        return drainStripes();
+    }
+
+    private int drainStripes(){
+        int total = 0;
+        for(int i=0;i<stripeCount;i++){
+            total += stripes.getAndSet(i * PADDING, 0);
+        }
+        return total;
+    }
+
+    /**
+     * Method to spread stock evenly over the stripes.
+     * @param quantity - quantity to add
+     */
+    void refill(int quantity){
+        int share = quantity / stripeCount;
+        for(int i=0;i<stripeCount;i++){
+            stripes.addAndGet(i * PADDING, i==0 ? share + quantity % stripeCount : share);
+        }
+    }
+
+    /**
+     * Method to get the stock of the item, taken under the monitor so stock gathered by a buyer is not missed.
+     * @return - sum of the stripes
+     */
+    synchronized int sum(){
+        int total = 0;
+        for(int i=0;i<stripeCount;i++){
+            total += stripes.get(i * PADDING);
+        }
+        return total;
+    }
+
+    /**
+     * Method to get a ticket for a change made to the stripes.
+     * @return - ticket, covered by the first record published with a sum taken after it
+     */
+    long takeTicket(){
+        return tickets.incrementAndGet();
+    }
+
+    /**
+     * Method to get the latest ticket, read before the sum of a record to be published.
+     * @return - latest ticket
+     */
+    long getLatestTicket(){
+        return tickets.get();
+    }
+
+    Publication getPublication(){
+        return publication.get();
+    }
+
+    /**
+     * Method to record a published item record, a record of an older ticket never replaces a newer one.
+     * @param ticket - latest ticket read before the sum of the record
+     * @param durability - journal write of the record
+     */
+    void published(long ticket, CompletableFuture<Void> durability){
+        Publication next = new Publication(ticket, durability);
+        Publication current = publication.get();
+        while(current.ticket<ticket && !publication.compareAndSet(current, next)){
+            current = publication.get();
+        }
+    }
+
+    int getStripeCount(){
+        return stripeCount;
+    }
+
+    private int homeStripe(){
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids over the stripes
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 33) % stripeCount;
+    }
+}
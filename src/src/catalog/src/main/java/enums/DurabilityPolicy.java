@@ -0,0 +1,29 @@
+package enums;
+
+/**
+ * DurabilityPolicy decides when a stock update is acknowledged with respect to the inventory journal.
+ * SYNC - buyer waits till its journal record is fsynced, concurrent buyers share one fsync (group commit).
+ * ASYNC - buyer doesn't wait, journal records are written and fsynced in batches in the background.
+ * OFF - stock updates are not journaled, only the periodic catalog flush persists them.
+ */
+public enum DurabilityPolicy {
+    SYNC,
+    ASYNC,
+    OFF;
+
+    /**
+     * Method to read the durability policy from config value, falls back to SYNC for unknown values.
+     * @param value - value from config file
+     * @return - durability policy
+     */
+    public static DurabilityPolicy fromString(String value){
+        if(value!=null){
+            for(DurabilityPolicy policy:values()){
+                if(policy.name().equalsIgnoreCase(value.trim())){
+                    return policy;
+                }
+            }
+        }
+        return SYNC;
+    }
+}
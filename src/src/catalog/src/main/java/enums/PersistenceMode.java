@@ -0,0 +1,29 @@
+package enums;
+
+/**
+ * PersistenceMode decides how the product catalog is written back to disk.
+ * BLOCKING - stops all readers and buyers while the whole file is rewritten (legacy behaviour).
+ * SNAPSHOT - copies a point-in-time snapshot of the catalog and writes it in the background without blocking anyone.
+ * INCREMENTAL - writes only the items changed since last checkpoint to a delta file, merged into catalog file periodically.
+ */
+public enum PersistenceMode {
+    BLOCKING,
+    SNAPSHOT,
+    INCREMENTAL;
+
+    /**
+     * Method to read the persistence mode from config value, falls back to SNAPSHOT for unknown values.
+     * @param value - value from config file
+     * @return - persistence mode
+     */
+    public static PersistenceMode fromString(String value){
+        if(value!=null){
+            for(PersistenceMode mode:values()){
+                if(mode.name().equalsIgnoreCase(value.trim())){
+                    return mode;
+                }
+            }
+        }
+        return SNAPSHOT;
+    }
+}
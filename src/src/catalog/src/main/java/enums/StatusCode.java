@@ -2,6 +2,7 @@ package enums;
 
 public enum StatusCode {
     OK(200),
+    NOT_MODIFIED(304),
     BAD_REQUEST(400),
     NOT_FOUND(404),
     METHOD_NOT_ALLOWED(405),
@@ -0,0 +1,27 @@
+package enums;
+
+/**
+ * StorageBackend decides how the product catalog is stored on disk.
+ * CSV - text catalog file, parsed at startup and rewritten by the periodic flush as per persistence mode.
+ * MMAP - binary catalog file of fixed-width records mapped into memory, stock updates are written in place.
+ */
+public enum StorageBackend {
+    CSV,
+    MMAP;
+
+    /**
+     * Method to read the storage backend from config value, falls back to CSV for unknown values.
+     * @param value - value from config file
+     * @return - storage backend
+     */
+    public static StorageBackend fromString(String value){
+        if(value!=null){
+            for(StorageBackend backend:values()){
+                if(backend.name().equalsIgnoreCase(value.trim())){
+                    return backend;
+                }
+            }
+        }
+        return CSV;
+    }
+}
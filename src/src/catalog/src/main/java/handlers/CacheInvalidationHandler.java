@@ -2,12 +2,14 @@ package handlers;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.Logger;
 
 import java.util.List;
 
 import static utils.HttpUtils.makePostRequest;
 
 public class CacheInvalidationHandler {
+    private static final Logger LOGGER = Logger.getLogger(CacheInvalidationHandler.class);
 
     private String frontendUrl;
     private Boolean isCacheEnabled;
@@ -33,7 +35,7 @@ public class CacheInvalidationHandler {
             try{
                 makePostRequest(frontEndURI,requestBodyJson);
             }catch (Exception e){
-                System.out.println("Error while making invalidate cache request");
+                LOGGER.warn("Error while making invalidate cache request");
             }
         }
 
@@ -55,7 +57,7 @@ public class CacheInvalidationHandler {
                 makePostRequest(frontEndURI,requestBodyJson);
             }catch (Exception e){
 
-                System.out.println("Error while making invalidate cache request");
+                LOGGER.warn("Error while making invalidate cache request");
             }
         }
 
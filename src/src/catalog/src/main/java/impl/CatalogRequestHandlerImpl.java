@@ -2,18 +2,28 @@ package impl;
 
 import catalog.src.main.java.CatalogRequestHandler;
 import com.sun.net.httpserver.HttpExchange;
+import db.ChangeStream;
 import db.DB;
 import db.ProductCatalog;
 import dto.OrderDto;
+import enums.LogLevel;
 import enums.StatusCode;
 import handlers.CacheInvalidationHandler;
 import model.Item;
+import model.Reservation;
 import model.Response;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.JsonWriter;
+import utils.RouteTable;
+import utils.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static utils.HttpUtils.*;
@@ -23,6 +33,33 @@ import static utils.HttpUtils.*;
  * CatalogRequestHandlerImpl class is used to handle the incoming requests for the catalog service.
  */
 public class CatalogRequestHandlerImpl implements Runnable, CatalogRequestHandler {
+    private static final Logger LOGGER = Logger.getLogger(CatalogRequestHandlerImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_CHANGES = 1000;
+    private static final long MAX_CHANGES_WAIT_MILLIS = 30000;
+    private static final String REPLICATION_LAG_HEADER = "X-Replication-Lag-Ms";
+    // bodies which never change are encoded once
+    private static final byte[] ITEM_NOT_FOUND_BODY = prepareErrorResponse(StatusCode.NOT_FOUND.getCode(),"Item not found");
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private static final byte[] BATCH_PREFIX = "{\"items\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_VERSIONS = "],\"versions\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+    // routes of catalog service, resolved without running any regex per request
+    private static final RouteTable<CatalogRequestHandlerImpl> ROUTES = new RouteTable<CatalogRequestHandlerImpl>()
+            .add("GET", "/products/{name}", (handler, exchange, params) -> handler.queryItem(exchange, params.get("name")))
+            .add("GET", "/products", (handler, exchange, params) -> getQueryParam(exchange.getRequestURI(),"names")!=null
+                    ? handler.queryItems(exchange) : handler.listItems(exchange))
+            .add("GET", "/metrics", (handler, exchange, params) -> handler.getMetrics(exchange))
+            .add("GET", "/changes", (handler, exchange, params) -> handler.getChanges(exchange))
+            .add("GET", "/snapshot", (handler, exchange, params) -> handler.getSnapshot(exchange))
+            .add("GET", "/replication", (handler, exchange, params) -> handler.getReplicationStatus(exchange))
+            .add("POST", "/updateItem", (handler, exchange, params) -> handler.updateItem(exchange))
+            .add("POST", "/updateItems", (handler, exchange, params) -> handler.updateItems(exchange))
+            .add("POST", "/reserveItem", (handler, exchange, params) -> handler.reserveItem(exchange))
+            .add("POST", "/commitReservation", (handler, exchange, params) -> handler.completeReservation(exchange))
+            .add("POST", "/releaseReservation", (handler, exchange, params) -> handler.completeReservation(exchange));
     private final HttpExchange exchange;
     private ProductCatalog productCatalog;
 
@@ -40,104 +77,178 @@ public class CatalogRequestHandlerImpl implements Runnable, CatalogRequestHandle
     public void run() {
         try {
             String requestMethod = exchange.getRequestMethod();
-            if (requestMethod.equalsIgnoreCase("GET")) {
-                handleGetRequest(exchange);
-            } else if (requestMethod.equalsIgnoreCase("POST")) {
-                handlePostRequest(exchange);
-            } else {
+            if (!requestMethod.equalsIgnoreCase("GET") && !requestMethod.equalsIgnoreCase("POST")) {
                 // Only GET and POST methods are supported
                 // Unsupported request method, return 405 Method Not Allowed
                 exchange.sendResponseHeaders(StatusCode.METHOD_NOT_ALLOWED.getCode(), 0); // Method Not Allowed
                 exchange.close();
+            } else if (productCatalog.isReplica() && requestMethod.equalsIgnoreCase("POST")) {
+                // read replica only serves queries, updates are made on primary and replicated
+                int errorCode = StatusCode.METHOD_NOT_ALLOWED.getCode();
+                sendResponse(exchange, new Response(errorCode, prepareErrorResponse(errorCode,"Catalog replica is read-only")));
+            } else if (!ROUTES.dispatch(this, exchange)) {
+                // Invalid URI, return 404 Not Found
+                sendResponse(exchange, new Response(StatusCode.NOT_FOUND.getCode(),"{\"message\":\"Invalid URL\"}"));
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.warn("Error while handling request", e);
         }
     }
 
-    /**
-     * Method to validate the get request
-     * @param uri - should be of the format /products/{product_name}
-     * @return - true if format is correct,else false
-     */
-    private Boolean isQueryURI(URI uri) {
-        return uri.getPath().matches("/products/\\w+");
+    @Override
+    public Response queryItem(HttpExchange exchange) {
+        return queryItem(exchange, exchange.getRequestURI().getPath().substring("/products/".length()));
     }
 
     /**
-     * Method to handle the GET request and route them to the appropriate controller function.
-     * @param exchange
-     * @throws IOException
+     * Method to handle the query request of an item.
+     * @param exchange - Incoming request
+     * @param itemName - Name of the item from request path
+     * @return - Response object with the item details
      */
-    private void handleGetRequest(HttpExchange exchange) throws IOException{
-        URI uri = exchange.getRequestURI();
-        // checking if request is for query
-        if(isQueryURI(uri)){
-            queryItem(exchange);
-        } else {
-            // Invalid URI, return 404 Not Found
-            sendResponse(exchange, new Response(StatusCode.NOT_FOUND.getCode(),"{\"message\":\"Invalid URL\"}"));
+    private Response queryItem(HttpExchange exchange, String itemName) {
+        Response response ;
+        try{
+            LOGGER.debug(() -> "Received query request by catalog service for item: "+itemName);
+            Item item = productCatalog.queryItem(itemName);
+            if(item==null){
+                response = new Response(StatusCode.NOT_FOUND.getCode(),ITEM_NOT_FOUND_BODY,null);
+            }else{
+                // version of the item is its ETag, client holding the current version gets 304 without body
+                String etag = item.getETag();
+                if(isETagMatch(exchange.getRequestHeaders().getFirst("If-None-Match"),etag)){
+                    response = new Response(StatusCode.NOT_MODIFIED.getCode(),EMPTY_BODY,etag);
+                }else{
+                    response = new Response(StatusCode.OK.getCode(),getEncodedResponse(item),etag);
+                }
+            }
+        }catch (Exception e){
+            LOGGER.warn(() -> "Error sending response!!" + e);
+            int errorCode = StatusCode.BAD_REQUEST.getCode();
+            String message = "Bad Request";
+            response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response status by catalog service for query request: "+ response.getStatusCode());
+        }
+        setReplicationLagHeader(exchange);
+        sendResponse(exchange,response);
+        return response;
     }
 
-    /**
-     * Method to validate the post request
-     * @param uri - uri should be of format /updateItem
-     * @throws IOException
-     */
-    private Boolean isUpdateUri(URI uri) {
-        Boolean isValidUri = uri.getPath().matches("/updateItem");
-        Boolean isValidBody = true; // TO-DO: Add proper validation here.
-        return isValidUri && isValidBody;
-    }
-
-    /**
-     * Method to handle the POST request and route them to the appropriate controller function.
-     * @param exchange
-     * @throws IOException
-     */
-    private void handlePostRequest(HttpExchange exchange) throws IOException{
-        URI uri = exchange.getRequestURI();
-        if(isUpdateUri(uri)){
-            updateItem(exchange);
+    @Override
+    public Response queryItems(HttpExchange exchange) {
+        Response response;
+        String names = getQueryParam(exchange.getRequestURI(),"names");
+        String[] itemNames = names==null ? new String[0] : names.split(",");
+        LOGGER.debug(() -> "Received batch query request by catalog service for "+itemNames.length+" items");
+        if(names==null || !names.matches("\\w+(,\\w+)*") || itemNames.length>MAX_BATCH_SIZE){
+            int errorCode = StatusCode.BAD_REQUEST.getCode();
+            response = new Response(errorCode,prepareErrorResponse(errorCode,"Bad Request"));
+        }else{
+            // every item is answered inline in requested order, so a missing item doesn't fail the whole batch.
+            // An item is sent with the same bytes as its single query and its version separately, in "versions" at
+            // the same index (null for a missing item), so front-end can cache it as if it was queried alone
+            ByteArrayOutputStream items = new ByteArrayOutputStream();
+            StringBuilder versions = new StringBuilder();
+            items.write(BATCH_PREFIX,0,BATCH_PREFIX.length);
+            for(int i=0;i<itemNames.length;i++){
+                if(i>0){
+                    items.write(',');
+                    versions.append(',');
+                }
+                Item item = productCatalog.queryItem(itemNames[i]);
+                byte[] itemBody;
+                if(item==null){
+                    itemBody = prepareErrorResponse(StatusCode.NOT_FOUND.getCode(),"Item not found",itemNames[i]);
+                    versions.append("null");
+                }else{
+                    itemBody = getEncodedResponse(item);
+                    versions.append(item.getVersion());
+                }
+                items.write(itemBody,0,itemBody.length);
+            }
+            items.write(BATCH_VERSIONS,0,BATCH_VERSIONS.length);
+            byte[] versionBytes = versions.toString().getBytes(StandardCharsets.US_ASCII);
+            items.write(versionBytes,0,versionBytes.length);
+            items.write(BATCH_SUFFIX,0,BATCH_SUFFIX.length);
+            response = new Response(StatusCode.OK.getCode(),items.toByteArray(),null);
         }
+        setReplicationLagHeader(exchange);
+        sendResponse(exchange,response);
+        return response;
     }
 
     @Override
-    public Response queryItem(HttpExchange exchange) {
-        Response response ;
+    public Response listItems(HttpExchange exchange) {
+        Response response;
         try{
-            String itemName = exchange.getRequestURI().getPath().split("/")[2];
-            System.out.println("Received query request by catalog service for item: "+itemName);
-            Item item = productCatalog.queryItem(itemName);
-            if(item==null){
-                int errorCode = StatusCode.NOT_FOUND.getCode();
-                String message = "Item not found";
-                String errorResponse = prepareErrorResponse(errorCode,message);
-                response = new Response(errorCode,errorResponse);
-            }else{
-                int successCode = StatusCode.OK.getCode();
-                response = new Response(successCode,prepareSuccessResponse(item));
+            URI uri = exchange.getRequestURI();
+            String prefixParam = getQueryParam(uri,"prefix");
+            String after = getQueryParam(uri,"after");
+            String limitParam = getQueryParam(uri,"limit");
+            String prefix = prefixParam==null ? "" : prefixParam;
+            int limit = limitParam==null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+            if(!prefix.matches("\\w*") || (after!=null && !after.matches("\\w+")) || limit<=0 || limit>MAX_PAGE_SIZE){
+                throw new IllegalArgumentException("Invalid prefix "+prefix+", after "+after+" or limit "+limit);
+            }
+            LOGGER.debug(() -> "Received list request by catalog service for prefix: "+prefix+" after: "+after);
+            // one more item than the page tells if there is a next page
+            List<Item> items = productCatalog.listItems(prefix,after,limit+1);
+            // item bodies are encoded before the page, encoding shares the thread's writer
+            byte[][] itemBodies = new byte[Math.min(limit,items.size())][];
+            for(int i=0;i<itemBodies.length;i++){
+                itemBodies[i] = getEncodedResponse(items.get(i));
+            }
+            JsonWriter json = JsonWriter.get().beginObject().name("items").beginArray();
+            for(byte[] itemBody:itemBodies){
+                json.rawValue(itemBody);
             }
+            json.endArray().name("next").value(items.size()>limit ? items.get(limit-1).getName() : null);
+            response = new Response(StatusCode.OK.getCode(),json.endObject().toByteArray(),null);
         }catch (Exception e){
-            System.out.println("Error sending response!!" + e);
+            LOGGER.warn(() -> "Error while listing items " + e);
             int errorCode = StatusCode.BAD_REQUEST.getCode();
-            String message = "Bad Request";
-            response = new Response(errorCode,prepareErrorResponse(errorCode,message));
+            response = new Response(errorCode,prepareErrorResponse(errorCode,"Bad Request"));
         }
-        System.out.println("Response message by catalog service for query request: "+ response.getMessage());
+        setReplicationLagHeader(exchange);
         sendResponse(exchange,response);
         return response;
     }
 
+    /**
+     * Method to report how old the data of a replica may be with a query response, primary doesn't set it.
+     * @param exchange - Incoming request
+     */
+    private void setReplicationLagHeader(HttpExchange exchange){
+        if(productCatalog.isReplica()){
+            exchange.getResponseHeaders().set(REPLICATION_LAG_HEADER, String.valueOf(productCatalog.getReplicationLagMillis()));
+        }
+    }
+
+    /**
+     * Method to get the encoded success response of an item. It is built once per item version and kept on the item
+     * record, so queries of an item which didn't change write the same bytes without building anything.
+     * @param item - Item object
+     * @return - UTF-8 response body
+     */
+    private byte[] getEncodedResponse(Item item) {
+        byte[] body = item.getEncodedResponse();
+        if(body==null){
+            body = prepareSuccessResponse(item);
+            item.setEncodedResponse(body);
+        }
+        return body;
+    }
+
     @Override
     public Response updateItem(HttpExchange exchange) {
         Response response = null;
         String requestBody = getRequestBody(exchange);
-        System.out.println(requestBody);
+        LOGGER.debug(() -> requestBody);
         if(requestBody!= null){
             try{
-                System.out.println("Received update item request by catalog service");
+                LOGGER.debug("Received update item request by catalog service");
                 JSONObject requestObj = new JSONObject(requestBody);
                 String itemName = requestObj.getString("name");
                 int quantity = requestObj.getInt("quantity");
@@ -153,37 +264,266 @@ public class CatalogRequestHandlerImpl implements Runnable, CatalogRequestHandle
                     response = new Response(StatusCode.NOT_FOUND.getCode(),"Item not found");
                 }
             }catch (Exception e){
-               System.out.println("Error while parsing request body"+e);
+               LOGGER.warn(() -> "Error while parsing request body"+e);
+                response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
+            }
+        }else{
+            response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
+        }
+        sendResponse(exchange,response);
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by catalog service for create_order request: "+ response.getMessage());
+        }
+        return response;
+    }
+
+
+
+    @Override
+    public Response updateItems(HttpExchange exchange) {
+        Response response;
+        String requestBody = getRequestBody(exchange);
+        if(requestBody!= null){
+            try{
+                LOGGER.debug("Received update items request by catalog service");
+                JSONArray items = new JSONObject(requestBody).getJSONArray("items");
+                // changes of the same item are merged, remove is a negative change
+                Map<String,Integer> quantityChanges = new LinkedHashMap<>();
+                for(int i=0;i<items.length();i++){
+                    JSONObject item = items.getJSONObject(i);
+                    int quantity = item.getInt("quantity");
+                    String operation = item.optString("operation","remove");
+                    if(quantity<=0 || !(operation.equals("remove") || operation.equals("add"))){
+                        throw new IllegalArgumentException("Invalid item "+item);
+                    }
+                    quantityChanges.merge(item.getString("name"),operation.equals("remove") ? -quantity : quantity,Integer::sum);
+                }
+                if(quantityChanges.isEmpty()){
+                    throw new IllegalArgumentException("No items");
+                }
+                int isUpdateSuccess = productCatalog.updateItems(quantityChanges);
+                if(isUpdateSuccess==1){
+                    response = new Response(StatusCode.OK.getCode(),"Success");
+                    // Send one invalidate cache request to front-end service for all the updated items.
+                    cacheInvalidationHandler.makeBulkInvalidateCacheRequest(new JSONArray(quantityChanges.keySet()));
+                }else if(isUpdateSuccess==0){
+                    response = new Response(StatusCode.NOT_FOUND.getCode(),"Requested quantity is not available");
+                }else{
+                    response = new Response(StatusCode.NOT_FOUND.getCode(),"Item not found");
+                }
+            }catch (Exception e){
+                LOGGER.warn(() -> "Error while parsing request body"+e);
                 response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
             }
         }else{
             response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
         }
         sendResponse(exchange,response);
-        System.out.println("Response message by catalog service for create_order request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by catalog service for update items request: "+ response.getMessage());
+        }
+        return response;
+    }
+
+    @Override
+    public Response reserveItem(HttpExchange exchange) {
+        Response response;
+        String requestBody = getRequestBody(exchange);
+        try{
+            JSONObject requestObj = new JSONObject(requestBody);
+            String itemName = requestObj.getString("name");
+            int quantity = requestObj.getInt("quantity");
+            if(quantity<=0){
+                throw new IllegalArgumentException("Invalid quantity "+quantity);
+            }
+            Reservation reservation = productCatalog.reserveItem(itemName,quantity);
+            if(reservation!=null){
+                JSONObject responseObj = new JSONObject();
+                responseObj.put("token",reservation.getToken());
+                responseObj.put("expiresAt",reservation.getExpiresAt());
+                responseObj.put("expiresInMs",reservation.getExpiresAt()-System.currentTimeMillis());
+                response = new Response(StatusCode.OK.getCode(),responseObj.toString());
+                cacheInvalidationHandler.makeInvalidateCacheRequest(itemName);
+            }else if(productCatalog.queryItem(itemName)==null){
+                response = new Response(StatusCode.NOT_FOUND.getCode(),"Item not found");
+            }else{
+                response = new Response(StatusCode.NOT_FOUND.getCode(),"Requested quantity is not available");
+            }
+        }catch (Exception e){
+            LOGGER.warn(() -> "Error while parsing request body"+e);
+            response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
+        }
+        sendResponse(exchange,response);
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by catalog service for reserve request: "+ response.getMessage());
+        }
         return response;
     }
 
+    @Override
+    public Response completeReservation(HttpExchange exchange) {
+        Response response;
+        String requestBody = getRequestBody(exchange);
+        try{
+            String token = new JSONObject(requestBody).getString("token");
+            Reservation reservation;
+            if(exchange.getRequestURI().getPath().equals("/commitReservation")){
+                reservation = productCatalog.commitReservation(token);
+            }else{
+                reservation = productCatalog.releaseReservation(token);
+                if(reservation!=null){
+                    // stock is given back, send invalidate cache request to front-end service
+                    cacheInvalidationHandler.makeInvalidateCacheRequest(reservation.getItemName());
+                }
+            }
+            if(reservation!=null){
+                response = new Response(StatusCode.OK.getCode(),"Success");
+            }else{
+                response = new Response(StatusCode.NOT_FOUND.getCode(),"Reservation not found");
+            }
+        }catch (Exception e){
+            LOGGER.warn(() -> "Error while parsing request body"+e);
+            response = new Response(StatusCode.BAD_REQUEST.getCode(),"Invalid Request");
+        }
+        sendResponse(exchange,response);
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by catalog service for reservation request: "+ response.getMessage());
+        }
+        return response;
+    }
 
+    @Override
+    public Response getChanges(HttpExchange exchange) {
+        Response response;
+        try{
+            if(productCatalog.isReplica()){
+                throw new IllegalStateException("Change stream is served by primary catalog");
+            }
+            ChangeStream changeStream = productCatalog.getChangeStream();
+            URI uri = exchange.getRequestURI();
+            String sinceParam = getQueryParam(uri,"since");
+            String epochParam = getQueryParam(uri,"epoch");
+            String limitParam = getQueryParam(uri,"limit");
+            String waitParam = getQueryParam(uri,"waitMs");
+            // a reader without a sequence starts at the latest change
+            long since = sinceParam==null ? changeStream.getLastSequence() : Long.parseLong(sinceParam);
+            int limit = limitParam==null ? MAX_CHANGES : Math.min(MAX_CHANGES, Integer.parseInt(limitParam));
+            long waitMillis = waitParam==null ? 0 : Math.min(MAX_CHANGES_WAIT_MILLIS, Long.parseLong(waitParam));
+            if(since<0 || limit<=0 || waitMillis<0){
+                throw new IllegalArgumentException("Invalid since "+since+", limit "+limit+" or waitMs "+waitMillis);
+            }
+            // sequences of an earlier run of catalog are unrelated to the current ones
+            boolean isSameEpoch = epochParam==null || Long.parseLong(epochParam)==changeStream.getEpoch();
+            if(isSameEpoch && waitMillis>0 && since==changeStream.getLastSequence()){
+                // long-poll, the request is answered from the stream's notifier thread once a change is made or the
+                // wait is over, without holding a request thread meanwhile
+                changeStream.awaitChange(since, waitMillis, () -> sendResponse(exchange, prepareChangesResponse(changeStream, since, limit, true)));
+                return null;
+            }
+            response = prepareChangesResponse(changeStream, since, limit, isSameEpoch);
+        }catch (Exception e){
+            int errorCode = StatusCode.BAD_REQUEST.getCode();
+            response = new Response(errorCode,prepareErrorResponse(errorCode,"Bad Request"));
+        }
+        sendResponse(exchange,response);
+        return response;
+    }
 
     /**
-     * Method to prepare the success response
-     * @param item - Item object
-     * @return - JSON response of format {"data": {"name": "Tux","price": 100,"quantity": 10}}
+     * Method to prepare a batch of the change stream.
+     * @param changeStream - change stream of catalog
+     * @param since - sequence of the last change the reader has
+     * @param limit - maximum number of changes in the batch
+     * @param isSameEpoch - false if the reader's sequence is from an earlier run of catalog
+     * @return - Response with epoch, latest sequence and the changes with the sequence of the last one (next), or
+     * resync if the reader has to reload everything
      */
-    private String prepareSuccessResponse(Item item) {
-        // Create a map for the success response
-        Map<String, Object> successObject = new HashMap<>();
-        successObject.put("name", item.getName());
-        successObject.put("price", item.getPrice());
-        successObject.put("quantity", item.getQuantity());
+    private static Response prepareChangesResponse(ChangeStream changeStream, long since, int limit, boolean isSameEpoch) {
+        // sequence is read before the changes, so the reader is never told it is newer than it is
+        long sequence = changeStream.getLastSequence();
+        List<Item> changes = isSameEpoch ? changeStream.readSince(since, limit) : null;
+        JsonWriter json = JsonWriter.get().beginObject()
+                .name("epoch").value(changeStream.getEpoch())
+                .name("sequence").value(sequence);
+        if(changes==null){
+            json.name("resync").value(true);
+        }else{
+            json.name("next").value(since + changes.size());
+            json.name("changes").beginArray();
+            for(Item item:changes){
+                writeItemRecord(json,item);
+            }
+            json.endArray();
+        }
+        return new Response(StatusCode.OK.getCode(),json.endObject().toByteArray());
+    }
+
+    @Override
+    public Response getSnapshot(HttpExchange exchange) {
+        // sequence is read before the items, so every change up to it is in the snapshot
+        ChangeStream changeStream = productCatalog.getChangeStream();
+        long sequence = changeStream.getLastSequence();
+        JsonWriter json = JsonWriter.get().beginObject()
+                .name("epoch").value(changeStream.getEpoch())
+                .name("sequence").value(sequence)
+                .name("items").beginArray();
+        for(Item item:productCatalog.getItems()){
+            writeItemRecord(json,item);
+        }
+        Response response = new Response(StatusCode.OK.getCode(),json.endArray().endObject().toByteArray());
+        sendResponse(exchange,response);
+        return response;
+    }
 
-        // Create a map for the response body
-        Map<String, Object> responseBody = new HashMap<>();
-        responseBody.put("data", successObject);
+    @Override
+    public Response getReplicationStatus(HttpExchange exchange) {
+        Response response = new Response(StatusCode.OK.getCode(),productCatalog.getReplicationStatus().toString());
+        sendResponse(exchange,response);
+        return response;
+    }
+
+    /**
+     * Method to write an item record replicated to read replicas.
+     * @param json - writer
+     * @param item - item record
+     */
+    private static void writeItemRecord(JsonWriter json, Item item){
+        json.beginObject()
+                .name("name").value(item.getName())
+                .name("quantity").value(item.getQuantity())
+                .name("price").value(item.getPrice())
+                .name("version").value(item.getVersion())
+                .endObject();
+    }
+
+    /**
+     * Method to return the metrics of catalog service.
+     * @param exchange - Incoming request
+     * @return - Response object with the catalog metrics.
+     */
+    public Response getMetrics(HttpExchange exchange) {
+        JSONObject metrics = productCatalog.getMetrics().toJson();
+        metrics.put("routes", ROUTES.statsToJson());
+        metrics.put("logging", Logger.statsToJson());
+        metrics.put("replication", productCatalog.getReplicationStatus());
+        Response response = new Response(StatusCode.OK.getCode(),metrics.toString());
+        sendResponse(exchange,response);
+        return response;
+    }
 
-        // Convert the map to JSON string
-        return mapToJson(responseBody);
+    /**
+     * Method to prepare the success response
+     * @param item - Item object
+     * @return - JSON response of format {"data": {"name": "Tux","price": 100.0,"quantity": 10}}
+     */
+    private static byte[] prepareSuccessResponse(Item item) {
+        return JsonWriter.get()
+                .beginObject().name("data").beginObject()
+                .name("name").value(item.getName())
+                .name("price").value(item.getPrice())
+                .name("quantity").value(item.getQuantity())
+                .endObject().endObject()
+                .toByteArray();
     }
 
     /**
@@ -192,46 +532,25 @@ public class CatalogRequestHandlerImpl implements Runnable, CatalogRequestHandle
      * @param errorMessage - Error message
      * @return - JSON response of format {"error": {"code": 404,"message": "Item not found"}}
      */
-    private String prepareErrorResponse(int errorCode,String errorMessage){
-        System.out.println("Preparing error response");
-        try {
-            // Create a map for the error details
-            Map<String, Object> errorObject = new HashMap<>();
-            errorObject.put("code", errorCode);
-            errorObject.put("message", errorMessage);
-
-            // Create a map for the error response
-            Map<String, Object> responseBody = new HashMap<>();
-            responseBody.put("error", errorObject);
-
-            // Convert the map to JSON string
-            String jsonResponse = mapToJson(responseBody);
-
-            // Print the JSON response
-            System.out.println("Response string: " + jsonResponse);
-
-            return jsonResponse;
-        } catch (Exception e) {
-            System.out.println("Error while preparing response body: " + e);
-            return null;
-        }
+    private static byte[] prepareErrorResponse(int errorCode,String errorMessage){
+        return prepareErrorResponse(errorCode,errorMessage,null);
     }
 
-    // Helper method to convert Map to JSON string
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (json.length() > 1) {
-                json.append(",");
-            }
-            json.append("\"").append(entry.getKey()).append("\":");
-            if (entry.getValue() instanceof Map) {
-                json.append(mapToJson((Map<String, Object>) entry.getValue()));
-            } else {
-                json.append("\"").append(entry.getValue()).append("\"");
-            }
+    /**
+     * Method to prepare the error response for an item of batch query
+     * @param errorCode - Error code
+     * @param errorMessage - Error message
+     * @param itemName - Name of the item, skipped if null
+     * @return - JSON response of format {"error": {"code": 404,"message": "Item not found","name": "Tux"}}
+     */
+    private static byte[] prepareErrorResponse(int errorCode,String errorMessage,String itemName){
+        JsonWriter writer = JsonWriter.get()
+                .beginObject().name("error").beginObject()
+                .name("code").value(errorCode)
+                .name("message").value(errorMessage);
+        if(itemName!=null){
+            writer.name("name").value(itemName);
         }
-        json.append("}");
-        return json.toString();
+        return writer.endObject().endObject().toByteArray();
     }
 }
@@ -0,0 +1,264 @@
+package metrics;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CatalogMetrics class keeps the counters of the product catalog which are exposed on /metrics endpoint.
+ */
+public class CatalogMetrics {
+    // flush (catalog file write) metrics
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong lastFlushItems = new AtomicLong();
+    private final LongAdder totalFlushItems = new LongAdder();
+    private final LongAdder deltaMerges = new LongAdder();
+
+    // time spent by queries and buys waiting on the catalog load barrier
+    private final LongAdder readerStallCount = new LongAdder();
+    private final LongAdder totalReaderStallNanos = new LongAdder();
+    private final AtomicLong maxReaderStallNanos = new AtomicLong();
+
+    // inventory journal group commits
+    private final LongAdder journalRecords = new LongAdder();
+    private final LongAdder journalCommits = new LongAdder();
+    private final LongAdder totalJournalCommitNanos = new LongAdder();
+    private final AtomicLong maxJournalCommitNanos = new AtomicLong();
+    private final AtomicLong maxJournalBatchSize = new AtomicLong();
+
+    // inventory reservations taken by orders
+    private final LongAdder reservationsCreated = new LongAdder();
+    private final LongAdder reservationsCommitted = new LongAdder();
+    private final LongAdder reservationsReleased = new LongAdder();
+    private final LongAdder reservationsExpired = new LongAdder();
+
+    // items topped up by restock worker
+    private final LongAdder restocks = new LongAdder();
+
+    // compare-and-set retries of stock updates per item, shows hot-item contention
+    private final ConcurrentHashMap<String, LongAdder> casRetries = new ConcurrentHashMap<>();
+
+    // items switched to striped stock, and their updates already published in another buyer's record
+    private final ConcurrentHashMap<String, Integer> hotItems = new ConcurrentHashMap<>();
+    private final LongAdder coveredUpdates = new LongAdder();
+
+    // catalog file load, and items looked up on demand while it was loading
+    private final AtomicLong loadNanos = new AtomicLong(-1);
+    private final AtomicLong loadedItems = new AtomicLong();
+    private final LongAdder onDemandLoads = new LongAdder();
+
+    /**
+     * Method to record the time taken to write catalog file.
+     * @param nanos - duration of flush in nanoseconds
+     * @param itemsWritten - number of item rows written by the flush
+     */
+    public void recordFlush(long nanos, int itemsWritten){
+        lastFlushItems.set(itemsWritten);
+        totalFlushItems.add(Math.max(itemsWritten,0));
+        flushCount.increment();
+        totalFlushNanos.add(nanos);
+        lastFlushNanos.set(nanos);
+        updateMax(maxFlushNanos,nanos);
+    }
+
+    /**
+     * Method to record a merge of checkpoint delta file into catalog file.
+     */
+    public void recordDeltaMerge(){
+        deltaMerges.increment();
+    }
+
+    /**
+     * Method to record the time a reader/buyer was parked waiting for the catalog.
+     * @param nanos - duration of stall in nanoseconds
+     */
+    public void recordReaderStall(long nanos){
+        readerStallCount.increment();
+        totalReaderStallNanos.add(nanos);
+        updateMax(maxReaderStallNanos,nanos);
+    }
+
+    /**
+     * Method to record a group commit of inventory journal.
+     * @param batchSize - number of records written with one fsync
+     * @param nanos - time taken by write and fsync in nanoseconds
+     */
+    public void recordJournalCommit(int batchSize, long nanos){
+        journalRecords.add(batchSize);
+        journalCommits.increment();
+        totalJournalCommitNanos.add(nanos);
+        updateMax(maxJournalCommitNanos,nanos);
+        updateMax(maxJournalBatchSize,batchSize);
+    }
+
+    /**
+     * Method to record a new reservation.
+     */
+    public void recordReservationCreated(){
+        reservationsCreated.increment();
+    }
+
+    /**
+     * Method to record a reservation which was committed by its order.
+     */
+    public void recordReservationCommitted(){
+        reservationsCommitted.increment();
+    }
+
+    /**
+     * Method to record a reservation which was released by its order.
+     */
+    public void recordReservationReleased(){
+        reservationsReleased.increment();
+    }
+
+    /**
+     * Method to record a reservation which expired and was reclaimed by the sweeper.
+     */
+    public void recordReservationExpired(){
+        reservationsExpired.increment();
+    }
+
+    /**
+     * Method to record an item topped up by restock worker.
+     */
+    public void recordRestock(){
+        restocks.increment();
+    }
+
+    /**
+     * Method to record a failed compare-and-set of an item record which had to be retried.
+     * @param itemName - name of the contended item
+     */
+    public void recordCasRetry(String itemName){
+        casRetries.computeIfAbsent(itemName, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Method to get the compare-and-set retries of an item.
+     * @param itemName - name of the item
+     * @return - number of retries
+     */
+    public long getCasRetries(String itemName){
+        LongAdder retries = casRetries.get(itemName);
+        return retries==null ? 0 : retries.sum();
+    }
+
+    /**
+     * Method to record an item switched to striped stock.
+     * @param itemName - name of the item
+     * @param stripes - number of stripes of its stock
+     */
+    public void recordHotItem(String itemName, int stripes){
+        hotItems.put(itemName,stripes);
+    }
+
+    /**
+     * Method to record an update of a hot item which was published in the record of another update.
+     */
+    public void recordCoveredUpdate(){
+        coveredUpdates.increment();
+    }
+
+    /**
+     * Method to record the load of catalog file.
+     * @param nanos - duration of load in nanoseconds
+     * @param items - number of items loaded
+     */
+    public void recordLoad(long nanos, int items){
+        loadedItems.set(items);
+        loadNanos.set(nanos);
+    }
+
+    /**
+     * Method to record an item looked up in catalog file before the load reached it.
+     */
+    public void recordOnDemandLoad(){
+        onDemandLoads.increment();
+    }
+
+    private static void updateMax(AtomicLong max,long value){
+        long current = max.get();
+        while(value>current && !max.compareAndSet(current,value)){
+            current = max.get();
+        }
+    }
+
+    /**
+     * Method to convert metrics to json.
+     * @return - JSON object with all the catalog metrics
+     */
+    public JSONObject toJson(){
+        JSONObject flush = new JSONObject();
+        flush.put("count",flushCount.sum());
+        flush.put("lastMs",toMillis(lastFlushNanos.get()));
+        flush.put("maxMs",toMillis(maxFlushNanos.get()));
+        flush.put("totalMs",toMillis(totalFlushNanos.sum()));
+        flush.put("lastItemsWritten",lastFlushItems.get());
+        flush.put("totalItemsWritten",totalFlushItems.sum());
+        flush.put("deltaMerges",deltaMerges.sum());
+
+        JSONObject readerStall = new JSONObject();
+        readerStall.put("count",readerStallCount.sum());
+        readerStall.put("maxMs",toMillis(maxReaderStallNanos.get()));
+        readerStall.put("totalMs",toMillis(totalReaderStallNanos.sum()));
+
+        JSONObject journal = new JSONObject();
+        long commits = journalCommits.sum();
+        journal.put("records",journalRecords.sum());
+        journal.put("commits",commits);
+        journal.put("avgBatchSize",commits==0 ? 0 : (double) journalRecords.sum()/commits);
+        journal.put("maxBatchSize",maxJournalBatchSize.get());
+        journal.put("avgCommitMs",commits==0 ? 0 : toMillis(totalJournalCommitNanos.sum())/commits);
+        journal.put("maxCommitMs",toMillis(maxJournalCommitNanos.get()));
+
+        JSONObject reservations = new JSONObject();
+        reservations.put("created",reservationsCreated.sum());
+        reservations.put("committed",reservationsCommitted.sum());
+        reservations.put("released",reservationsReleased.sum());
+        reservations.put("expired",reservationsExpired.sum());
+
+        JSONObject retries = new JSONObject();
+        long totalRetries = 0;
+        for(Map.Entry<String, LongAdder> entry:casRetries.entrySet()){
+            long count = entry.getValue().sum();
+            retries.put(entry.getKey(),count);
+            totalRetries+=count;
+        }
+        JSONObject casRetriesObj = new JSONObject();
+        casRetriesObj.put("total",totalRetries);
+        casRetriesObj.put("perItem",retries);
+
+        JSONObject hotItemsObj = new JSONObject();
+        hotItemsObj.put("stripes",new JSONObject(hotItems));
+        hotItemsObj.put("coveredUpdates",coveredUpdates.sum());
+
+        JSONObject load = new JSONObject();
+        long nanos = loadNanos.get();
+        load.put("complete",nanos>=0);
+        load.put("ms",nanos>=0 ? toMillis(nanos) : 0);
+        load.put("items",loadedItems.get());
+        load.put("onDemandLoads",onDemandLoads.sum());
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("load",load);
+        metrics.put("flush",flush);
+        metrics.put("readerStall",readerStall);
+        metrics.put("journal",journal);
+        metrics.put("reservations",reservations);
+        metrics.put("restocks",restocks.sum());
+        metrics.put("casRetries",casRetriesObj);
+        metrics.put("hotItems",hotItemsObj);
+        return metrics;
+    }
+
+    private static double toMillis(long nanos){
+        return nanos/1_000_000.0;
+    }
+}
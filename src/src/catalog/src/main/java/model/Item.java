@@ -1,43 +1,110 @@
 package model;
 
+/**
+ * Item class is an immutable, versioned record of a product in the catalog.
+ * Every change to the stock creates a new Item with the next version, so an Item handed out to readers never changes.
+ * Item intentionally doesn't override equals, the catalog relies on reference equality to compare-and-set records.
+ * A locked record is held by a multi-item update, it has the same state as the record it replaced and stock updates of
+ * the item wait till it is replaced by the next version or unlocked.
+ */
 public class Item {
     public Item(String name, Integer quantity, Double price) {
+        this(name, quantity, price, 0);
+    }
+
+    public Item(String name, int quantity, double price, long version) {
+        this(name, quantity, price, version, false);
+    }
+
+    private Item(String name, int quantity, double price, long version, boolean locked) {
         this.name = name;
         this.quantity = quantity;
         this.price = price;
+        this.version = version;
+        this.locked = locked;
     }
 
     public String getName() {
         return name;
     }
 
-    public Integer getQuantity() {
+    public int getQuantity() {
         return quantity;
     }
 
-    public Double getPrice() {
+    public double getPrice() {
         return price;
     }
 
+    public long getVersion() {
+        return version;
+    }
 
-    public void setName(String name) {
-        this.name = name;
+    public boolean isLocked() {
+        return locked;
     }
 
-    public void setQuantity(Integer quantity) {
-        this.quantity = quantity;
+    /**
+     * Method to get the version tag of this record, used as ETag of item responses.
+     * @return - quoted version
+     */
+    public String getETag() {
+        String tag = etag;
+        if(tag == null){
+            tag = "\"" + version + "\"";
+            etag = tag;
+        }
+        return tag;
     }
 
-    public void setPrice(Double price) {
-        this.price = price;
+    /**
+     * Method to get the encoded query response of this record, null until it is first queried.
+     * @return - UTF-8 response body
+     */
+    public byte[] getEncodedResponse() {
+        return encodedResponse;
+    }
+
+    /**
+     * Method to keep the encoded query response of this record. Records never change, so it is valid till the item
+     * gets a new version, and two queries racing to set it produce the same bytes.
+     * @param encodedResponse - UTF-8 response body
+     */
+    public void setEncodedResponse(byte[] encodedResponse) {
+        this.encodedResponse = encodedResponse;
+    }
+
+    /**
+     * Method to create the next version of this item with updated quantity.
+     * @param quantity - new quantity
+     * @return - new Item record
+     */
+    public Item withQuantity(int quantity) {
+        return new Item(name, quantity, price, version + 1);
+    }
+
+    /**
+     * Method to create a locked copy of this item, used by multi-item updates to claim the item.
+     * @return - new locked Item record with same version
+     */
+    public Item asLocked() {
+        Item lockedItem = new Item(name, quantity, price, version, true);
+        lockedItem.encodedResponse = encodedResponse;
+        lockedItem.etag = etag;
+        return lockedItem;
     }
 
-    private String name;
-    private Integer quantity;
-    private Double price;
+    private final String name;
+    private final int quantity;
+    private final double price;
+    private final long version;
+    private final boolean locked;
+    // serialized forms of this record, built lazily on first query
+    private volatile byte[] encodedResponse;
+    private volatile String etag;
 
     @Override
     public String toString(){
-        return "{\"name\":\""+name+"\",\"quantity\":"+quantity+",\"price\":"+price+"}";
+        return "{\"name\":\""+name+"\",\"quantity\":"+quantity+",\"price\":"+price+",\"version\":"+version+"}";
     }
 }
@@ -0,0 +1,36 @@
+package model;
+
+/**
+ * Reservation class is a hold on the stock of an item taken by an order before it is placed.
+ * The reserved quantity is already removed from the item, committing the reservation keeps it removed and releasing
+ * or expiry of the reservation gives it back.
+ */
+public class Reservation {
+    public Reservation(String token, String itemName, int quantity, long expiresAt) {
+        this.token = token;
+        this.itemName = itemName;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    private final String token;
+    private final String itemName;
+    private final int quantity;
+    private final long expiresAt; // epoch millis
+}
@@ -1,15 +1,35 @@
 package model;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Response class is used to send the response back to the client.
+ * Response can be created from an already encoded body, which is written to the client as is.
  */
 public class Response {
     private int statusCode;
     private String message;
+    private byte[] body;
+    private String etag; // version tag of the resource, null if response can't be revalidated
 
     public Response(int statusCode, String message) {
+        this(statusCode, message, null);
+    }
+
+    public Response(int statusCode, String message, String etag) {
         this.statusCode = statusCode;
         this.message = message;
+        this.etag = etag;
+    }
+
+    public Response(int statusCode, byte[] body) {
+        this(statusCode, body, null);
+    }
+
+    public Response(int statusCode, byte[] body, String etag) {
+        this.statusCode = statusCode;
+        this.body = body;
+        this.etag = etag;
     }
 
     public int getStatusCode() {
@@ -17,6 +37,24 @@ public class Response {
     }
 
     public String getMessage() {
+        if(message == null && body != null){
+            message = new String(body, StandardCharsets.UTF_8);
+        }
         return message;
     }
+
+    /**
+     * Method to get the UTF-8 encoded body of response.
+     * @return - body bytes
+     */
+    public byte[] getBody() {
+        if(body == null){
+            body = message.getBytes(StandardCharsets.UTF_8);
+        }
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
 }
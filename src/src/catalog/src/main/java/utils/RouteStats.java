@@ -0,0 +1,85 @@
+package utils;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RouteStats class keeps the request counter and latency histogram of one route.
+ * Latencies are counted in power of two microsecond buckets (bucket i holds latencies below 2^i us), so recording is a
+ * couple of atomic adds and percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class RouteStats {
+    private static final int BUCKETS = 32; // last bucket holds everything above ~18 minutes
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Method to record a request served by the route.
+     * @param nanos - time taken to handle the request in nanoseconds
+     */
+    public void record(long nanos){
+        requests.increment();
+        totalNanos.add(nanos);
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        latencyBuckets.incrementAndGet(bucket);
+        long max = maxNanos.get();
+        while(nanos>max && !maxNanos.compareAndSet(max,nanos)){
+            max = maxNanos.get();
+        }
+    }
+
+    public long getRequests(){
+        return requests.sum();
+    }
+
+    /**
+     * Method to convert the stats to JSON for /metrics endpoint.
+     * @return - JSON object with request count, latency percentiles and histogram
+     */
+    public JSONObject toJson(){
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i=0;i<BUCKETS;i++){
+            counts[i] = latencyBuckets.get(i);
+            total += counts[i];
+        }
+        JSONObject json = new JSONObject();
+        long requestCount = requests.sum();
+        json.put("requests", requestCount);
+        json.put("avgLatencyMicros", requestCount==0 ? 0 : totalNanos.sum() / requestCount / 1000);
+        json.put("maxLatencyMicros", maxNanos.get() / 1000);
+        json.put("p50LatencyMicros", percentile(counts,total,0.50));
+        json.put("p90LatencyMicros", percentile(counts,total,0.90));
+        json.put("p99LatencyMicros", percentile(counts,total,0.99));
+        JSONObject histogram = new JSONObject();
+        for(int i=0;i<BUCKETS;i++){
+            if(counts[i]>0){
+                histogram.put("<" + (1L << i) + "us", counts[i]);
+            }
+        }
+        json.put("latencyHistogram", histogram);
+        return json;
+    }
+
+    private static long percentile(long[] counts, long total, double fraction){
+        if(total==0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for(int i=0;i<counts.length;i++){
+            seen += counts[i];
+            if(seen>=rank){
+                return 1L << i;
+            }
+        }
+        return 1L << (counts.length - 1);
+    }
+}
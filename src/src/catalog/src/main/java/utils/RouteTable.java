@@ -0,0 +1,160 @@
+package utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import model.Response;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RouteTable class maps the method and path of a request to its handler.
+ * Routes are registered once as method + path pattern, e.g. ("GET", "/products/{name}"), and compiled into a trie of
+ * path segments. A request is resolved by walking its path segment by segment (a literal segment is a hash lookup,
+ * a {param} segment matches any value and is passed to the handler), no regex is run per request.
+ * Empty segments are ignored, so "/products/" resolves like "/products".
+ * Each route counts its requests and keeps a latency histogram (see RouteStats).
+ *
+ * @param <T> - type of the request handler the routes are dispatched to
+ */
+public class RouteTable<T> {
+
+    /**
+     * Handler of a route.
+     * @param <T> - type of the request handler
+     */
+    public interface RouteHandler<T> {
+        /**
+         * Method to handle a request matched by the route.
+         * @param handler - request handler
+         * @param exchange - incoming request
+         * @param pathParams - values of the {param} segments of route pattern
+         * @return - Response sent to the client
+         */
+        Response handle(T handler, HttpExchange exchange, Map<String, String> pathParams) throws IOException;
+    }
+
+    private static class Route<T> {
+        private final String name;
+        private final RouteHandler<T> handler;
+        private final RouteStats stats = new RouteStats();
+
+        private Route(String name, RouteHandler<T> handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private Node<T> paramChild;
+        private String paramName;
+        private final Map<String, Route<T>> routes = new HashMap<>();
+    }
+
+    private final Node<T> root = new Node<>();
+    private final List<Route<T>> allRoutes = new ArrayList<>();
+
+    /**
+     * Method to register a route. Routes should be registered before the table is used for dispatch.
+     * @param method - HTTP method, e.g. GET
+     * @param pattern - path pattern, segments in braces are path parameters, e.g. /products/{name}
+     * @param handler - handler of the route
+     * @return - this table, to chain the registrations
+     */
+    public RouteTable<T> add(String method, String pattern, RouteHandler<T> handler){
+        Node<T> node = root;
+        for(String segment:pattern.split("/")){
+            if(segment.isEmpty()){
+                continue;
+            }
+            if(segment.startsWith("{") && segment.endsWith("}")){
+                String paramName = segment.substring(1, segment.length() - 1);
+                if(node.paramChild==null){
+                    node.paramChild = new Node<>();
+                    node.paramName = paramName;
+                }else if(!node.paramName.equals(paramName)){
+                    throw new IllegalArgumentException("Conflicting path parameter {" + paramName + "} in " + pattern);
+                }
+                node = node.paramChild;
+            }else{
+                Node<T> child = node.children.get(segment);
+                if(child==null){
+                    child = new Node<>();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        String routeMethod = method.toUpperCase(Locale.ROOT);
+        if(node.routes.containsKey(routeMethod)){
+            throw new IllegalArgumentException("Route registered twice: " + method + " " + pattern);
+        }
+        Route<T> route = new Route<>(routeMethod + " " + pattern, handler);
+        node.routes.put(routeMethod, route);
+        allRoutes.add(route);
+        return this;
+    }
+
+    /**
+     * Method to find the route of the request and call its handler.
+     * @param handler - request handler the route is dispatched to
+     * @param exchange - incoming request
+     * @return - false if no route matches the method and path of request, nothing is sent in that case
+     * @throws IOException - if handler fails to send the response
+     */
+    public boolean dispatch(T handler, HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> pathParams = Collections.emptyMap();
+        Node<T> node = root;
+        int start = 0;
+        int length = path.length();
+        while(node!=null && start<length){
+            int end = path.indexOf('/', start);
+            if(end<0){
+                end = length;
+            }
+            if(end>start){
+                String segment = path.substring(start, end);
+                Node<T> child = node.children.get(segment);
+                if(child==null && node.paramChild!=null){
+                    if(pathParams.isEmpty()){
+                        pathParams = new HashMap<>(4);
+                    }
+                    pathParams.put(node.paramName, segment);
+                    child = node.paramChild;
+                }
+                node = child;
+            }
+            start = end + 1;
+        }
+        Route<T> route = node==null ? null : node.routes.get(exchange.getRequestMethod().toUpperCase(Locale.ROOT));
+        if(route==null){
+            return false;
+        }
+        long startNanos = System.nanoTime();
+        try{
+            route.handler.handle(handler, exchange, pathParams);
+        }finally {
+            route.stats.record(System.nanoTime() - startNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Method to convert the stats of all routes to JSON for /metrics endpoint.
+     * @return - JSON object of route name to its stats
+     */
+    public JSONObject statsToJson(){
+        JSONObject json = new JSONObject();
+        for(Route<T> route:allRoutes){
+            json.put(route.name, route.stats.toJson());
+        }
+        return json;
+    }
+}
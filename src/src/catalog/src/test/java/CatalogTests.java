@@ -1,6 +1,33 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import db.ChangeStream;
 import db.ProductCatalog;
 import model.Item;
+import model.Reservation;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Test;
+import utils.JsonWriter;
+import utils.RingBuffer;
+import utils.ShardMap;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -38,4 +65,383 @@ public class CatalogTests {
         System.out.println(status);
         assertEquals(-1 , status);
     }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        Item before = productCatalog.queryItem("Fox");
+        List<Thread> buyers = new ArrayList<>();
+        for(int i=0;i<4;i++){
+            buyers.add(new Thread(() -> {
+                for(int j=0;j<50;j++){
+                    productCatalog.buyItem("Fox",1,"remove");
+                }
+            }));
+        }
+        for(Thread buyer:buyers){
+            buyer.start();
+        }
+        for(Thread buyer:buyers){
+            buyer.join();
+        }
+        Item after = productCatalog.queryItem("Fox");
+
+        // Verify that no update is lost and every update created a new version
+        assertEquals(before.getQuantity()-200, after.getQuantity());
+        assertEquals(before.getVersion()+200, after.getVersion());
+    }
+
+    @Test
+    public void testAtomicUpdateItems(){
+        Item whale = productCatalog.queryItem("Whale");
+        Item tux = productCatalog.queryItem("Tux");
+
+        // Tux doesn't have enough stock, so Whale must not be updated either
+        Map<String,Integer> quantityChanges = new HashMap<>();
+        quantityChanges.put("Whale",-1);
+        quantityChanges.put("Tux",-(tux.getQuantity()+1));
+        assertEquals(0, productCatalog.updateItems(quantityChanges));
+        assertSame(whale, productCatalog.queryItem("Whale"));
+        assertSame(tux, productCatalog.queryItem("Tux"));
+
+        quantityChanges.put("Tux",-1);
+        assertEquals(1, productCatalog.updateItems(quantityChanges));
+        assertEquals(whale.getQuantity()-1, productCatalog.queryItem("Whale").getQuantity());
+        assertEquals(tux.getQuantity()-1, productCatalog.queryItem("Tux").getQuantity());
+
+        quantityChanges.put("Item1",-1);
+        assertEquals(-1, productCatalog.updateItems(quantityChanges));
+    }
+
+    @Test
+    public void testReservation(){
+        Item before = productCatalog.queryItem("Python");
+
+        // reserved stock is removed right away and given back on release
+        Reservation reservation = productCatalog.reserveItem("Python",2);
+        assertNotNull(reservation);
+        assertEquals(before.getQuantity()-2, productCatalog.queryItem("Python").getQuantity());
+        assertNotNull(productCatalog.releaseReservation(reservation.getToken()));
+        assertEquals(before.getQuantity(), productCatalog.queryItem("Python").getQuantity());
+        assertNull(productCatalog.releaseReservation(reservation.getToken()));
+
+        // committed stock stays removed
+        reservation = productCatalog.reserveItem("Python",2);
+        assertNotNull(productCatalog.commitReservation(reservation.getToken()));
+        assertNull(productCatalog.releaseReservation(reservation.getToken()));
+        assertEquals(before.getQuantity()-2, productCatalog.queryItem("Python").getQuantity());
+
+        assertNull(productCatalog.reserveItem("Python",before.getQuantity()));
+        assertNull(productCatalog.reserveItem("Item1",1));
+    }
+
+    @Test
+    public void testListItems(){
+        // pages are in name order and a cursor continues after the last item of previous page
+        List<Item> firstPage = productCatalog.listItems("",null,2);
+        assertEquals(2, firstPage.size());
+        assertTrue(firstPage.get(0).getName().compareTo(firstPage.get(1).getName())<0);
+        List<Item> nextPage = productCatalog.listItems("",firstPage.get(1).getName(),2);
+        assertTrue(nextPage.isEmpty() || nextPage.get(0).getName().compareTo(firstPage.get(1).getName())>0);
+
+        List<Item> prefixPage = productCatalog.listItems("Tu",null,10);
+        assertEquals(1, prefixPage.size());
+        assertEquals("Tux", prefixPage.get(0).getName());
+        assertTrue(productCatalog.listItems("Tu","Tux",10).isEmpty());
+        assertEquals(prefixPage, productCatalog.listItems("Tu","A",10));
+        assertTrue(productCatalog.listItems("NoSuchPrefix",null,10).isEmpty());
+    }
+
+    @Test
+    public void testJsonWriter(){
+        String json = JsonWriter.get()
+                .beginObject().name("data").beginObject()
+                .name("name").value("Tux \"x\"\n\u00e9")
+                .name("price").value(15.99)
+                .name("quantity").value(-120)
+                .name("tags").beginArray().value(true).value(1.0).rawValue("{}").endArray()
+                .endObject().endObject()
+                .toString();
+        assertEquals("{\"data\":{\"name\":\"Tux \\\"x\\\"\\u000a\u00e9\",\"price\":15.99,\"quantity\":-120,\"tags\":[true,1.0,{}]}}", json);
+
+        // values keep their JSON types when parsed back
+        JSONObject data = new JSONObject(json).getJSONObject("data");
+        assertEquals("Tux \"x\"\n\u00e9", data.getString("name"));
+        assertEquals(-120, data.get("quantity"));
+        assertEquals(15.99, data.getDouble("price"), 0);
+    }
+
+    @Test
+    public void testRingBuffer(){
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for(int i=0;i<4;i++){
+            assertTrue(buffer.offer(i));
+        }
+        // full buffer rejects instead of blocking
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        for(int i=1;i<=4;i++){
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testShardMapMovesOnlyKeysOfNewShard(){
+        Map<String, String> shardUrls = new LinkedHashMap<>();
+        shardUrls.put("1", "http://localhost:9999");
+        shardUrls.put("2", "http://localhost:9998");
+        shardUrls.put("3", "http://localhost:9997");
+        ShardMap threeShards = new ShardMap(shardUrls, ShardMap.DEFAULT_VIRTUAL_NODES);
+        shardUrls.put("4", "http://localhost:9996");
+        ShardMap fourShards = new ShardMap(shardUrls, ShardMap.DEFAULT_VIRTUAL_NODES);
+
+        int moved = 0;
+        int items = 10000;
+        for(int i=0;i<items;i++){
+            String itemName = "Item" + i;
+            String before = threeShards.shardOf(itemName);
+            String after = fourShards.shardOf(itemName);
+            if(!before.equals(after)){
+                // an item only ever moves to the added shard
+                assertEquals("4", after);
+                moved++;
+            }
+            assertEquals(shardUrls.get(after), fourShards.urlOf(itemName));
+        }
+        // new shard takes about a quarter of the items
+        assertTrue(moved>items/8 && moved<items/2);
+        assertEquals(1, ShardMap.singleShard("http://localhost:9999").groupByShard(Arrays.asList("Tux","Fox")).size());
+    }
+
+    @Test
+    public void testChangeStream(){
+        long since = productCatalog.getChangeStream().getLastSequence();
+        assertEquals(1, productCatalog.buyItem("Whale",1,"remove"));
+        assertEquals(1, productCatalog.buyItem("Whale",1,"add"));
+
+        // replicas read every change after their sequence, in order, with the item record after the change
+        List<Item> changes = productCatalog.getChangeStream().readSince(since, 10);
+        assertEquals(2, changes.size());
+        assertEquals(changes.get(0).getVersion()+1, changes.get(1).getVersion());
+        assertEquals(productCatalog.queryItem("Whale").getVersion(), changes.get(1).getVersion());
+        assertEquals(1, productCatalog.getChangeStream().readSince(since, 1).size());
+        assertTrue(productCatalog.getChangeStream().readSince(since+2, 10).isEmpty());
+
+        // sequence the primary never handed out means the replica has to load a snapshot again
+        assertNull(productCatalog.getChangeStream().readSince(since+3, 10));
+    }
+
+    @Test
+    public void testChangeStreamLongPoll() throws InterruptedException {
+        ChangeStream changeStream = productCatalog.getChangeStream();
+        long since = changeStream.getLastSequence();
+
+        // a waiting reader is woken by the next change
+        CountDownLatch changed = new CountDownLatch(1);
+        changeStream.awaitChange(since, 10000, changed::countDown);
+        assertEquals(1, changeStream.getWaiters());
+        assertEquals(1, productCatalog.buyItem("Whale",1,"remove"));
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, changeStream.getWaiters());
+
+        // a reader behind the stream is answered right away, one with no change is answered once the wait is over
+        CountDownLatch behind = new CountDownLatch(1);
+        changeStream.awaitChange(since, 10000, behind::countDown);
+        assertTrue(behind.await(5, TimeUnit.SECONDS));
+        CountDownLatch timedOut = new CountDownLatch(1);
+        changeStream.awaitChange(since+1, 50, timedOut::countDown);
+        assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        assertEquals(0, changeStream.getWaiters());
+        assertEquals(1, productCatalog.buyItem("Whale",1,"add"));
+    }
+
+    @Test
+    public void testStripedHotItem() throws InterruptedException {
+        Item before = productCatalog.queryItem("Python");
+        assertTrue(productCatalog.promoteHotItem("Python"));
+        assertFalse(productCatalog.promoteHotItem("Python"));
+
+        List<Thread> buyers = new ArrayList<>();
+        for(int i=0;i<4;i++){
+            buyers.add(new Thread(() -> {
+                for(int j=0;j<100;j++){
+                    assertEquals(1, productCatalog.buyItem("Python",2,"remove"));
+                    assertEquals(1, productCatalog.buyItem("Python",1,"add"));
+                }
+            }));
+        }
+        for(Thread buyer:buyers){
+            buyer.start();
+        }
+        for(Thread buyer:buyers){
+            buyer.join();
+        }
+
+        // no update is lost, and updates published in another buyer's record don't need a version of their own
+        Item after = productCatalog.queryItem("Python");
+        assertEquals(before.getQuantity()-400, after.getQuantity());
+        assertTrue(after.getVersion()>before.getVersion() && after.getVersion()<=before.getVersion()+800);
+
+        // stock spread over stripes is sold out exactly, a multi-item update takes it from every stripe
+        Map<String,Integer> quantityChanges = new HashMap<>();
+        quantityChanges.put("Python",-(after.getQuantity()-4));
+        assertEquals(1, productCatalog.updateItems(quantityChanges));
+        assertEquals(4, productCatalog.queryItem("Python").getQuantity());
+        assertEquals(1, productCatalog.buyItem("Python",2,"remove"));
+        assertEquals(0, productCatalog.buyItem("Python",3,"remove"));
+        assertEquals(1, productCatalog.buyItem("Python",1,"remove"));
+        assertEquals(1, productCatalog.queryItem("Python").getQuantity());
+        assertEquals(1, productCatalog.buyItem("Python",before.getQuantity()-1,"add"));
+        assertEquals(before.getQuantity(), productCatalog.queryItem("Python").getQuantity());
+    }
+
+    @Test
+    public void testReservationSurvivesRestart() throws IOException {
+        File file = File.createTempFile("catalog", ".csv");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("Kite,10,2.5,0");
+            writer.newLine();
+        }
+        Properties config = new Properties();
+        config.setProperty("journalDurability","sync");
+        ProductCatalog catalog = new ProductCatalog(file.getPath(),null,config);
+        Reservation open;
+        Reservation committed;
+        try{
+            open = catalog.reserveItem("Kite",3);
+            committed = catalog.reserveItem("Kite",2);
+            assertNotNull(catalog.commitReservation(committed.getToken()));
+        }finally {
+            catalog.shutdown();
+        }
+
+        // the open reservation is rebuilt from the journal, across the checkpoint written on shutdown
+        catalog = new ProductCatalog(file.getPath(),null,config);
+        try{
+            assertEquals(5, catalog.queryItem("Kite").getQuantity());
+            assertNull(catalog.commitReservation(committed.getToken()));
+            assertNotNull(catalog.releaseReservation(open.getToken()));
+            assertEquals(8, catalog.queryItem("Kite").getQuantity());
+        }finally {
+            catalog.shutdown();
+            new File(file.getPath() + ".journal").delete();
+            new File(file.getPath() + ".journal.old").delete();
+            new File(file.getPath() + ".delta").delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testServeWhileLoading() throws IOException {
+        // catalog file of several ranges, so lines running across a range boundary are loaded too
+        File file = File.createTempFile("catalog", ".csv");
+        int items = 700_000;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for(int i=0;i<items;i++){
+                writer.write("LoadItem" + i + "," + (i % 10 + 5) + ",1.5," + (i % 3));
+                writer.newLine();
+            }
+        }
+        Properties config = new Properties();
+        config.setProperty("serveWhileLoading","true");
+        config.setProperty("loadThreads","2");
+        config.setProperty("journalDurability","off");
+        config.setProperty("persistenceMode","incremental");
+        ProductCatalog catalog = new ProductCatalog(file.getPath(),null,config);
+        try{
+            // an item at the end of the file is served before the load reaches it, and its update survives the load
+            String lastItem = "LoadItem" + (items - 1);
+            assertEquals((items - 1) % 10 + 5, catalog.queryItem(lastItem).getQuantity());
+            assertEquals(1, catalog.buyItem(lastItem,2,"remove"));
+            assertNull(catalog.queryItem("NoSuchItem"));
+
+            assertEquals(items, catalog.getItems().size());
+            assertEquals((items - 1) % 10 + 3, catalog.queryItem(lastItem).getQuantity());
+            for(int i=0;i<items;i+=99_999){
+                assertEquals(i % 3, catalog.queryItem("LoadItem" + i).getVersion());
+            }
+            // items looked up on demand are in the sorted index too
+            List<Item> page = catalog.listItems("LoadItem69999",null,20);
+            assertEquals(11, page.size());
+            assertEquals("LoadItem69999", page.get(0).getName());
+            assertEquals(lastItem, page.get(10).getName());
+        }finally {
+            catalog.shutdown();
+            new File(file.getPath() + ".delta").delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReplicaResyncReplacesNewerItems() throws Exception {
+        // stub primary: epoch 1 loses its last change of Kite in a crash and comes back as epoch 2 one version behind
+        AtomicInteger primaryEpoch = new AtomicInteger(1);
+        HttpServer primary = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        primary.createContext("/snapshot", exchange -> {
+            JSONObject snapshot = new JSONObject().put("epoch", primaryEpoch.get()).put("sequence", 0);
+            snapshot.append("items", replicatedItem("Kite", 10, 5));
+            if(primaryEpoch.get()==1){
+                snapshot.append("items", replicatedItem("Gone", 1, 1));
+            }
+            sendJson(exchange, snapshot);
+        });
+        primary.createContext("/changes", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            JSONObject batch = new JSONObject().put("sequence", 1).put("next", 1).put("changes", new JSONArray());
+            if(!query.contains("epoch=" + primaryEpoch.get())){
+                batch.put("resync", true);
+            }else if(query.contains("since=0")){
+                // epoch 1 sells 3 Kites, epoch 2 restocks Kite with the version the lost change had
+                batch.getJSONArray("changes").put(primaryEpoch.get()==1 ? replicatedItem("Kite", 7, 6) : replicatedItem("Kite", 20, 6));
+            }
+            sendJson(exchange, batch);
+        });
+        primary.start();
+        Properties config = new Properties();
+        config.setProperty("replicaOf", "http://localhost:" + primary.getAddress().getPort());
+        config.setProperty("replicationWaitMs", "0");
+        config.setProperty("replicationPollMs", "20");
+        ProductCatalog replica = new ProductCatalog(null, null, config);
+        try{
+            assertTrue(awaitQuantity(replica, "Kite", 7));
+            assertNotNull(replica.queryItem("Gone"));
+
+            primaryEpoch.set(2);
+            // the snapshot of epoch 2 replaces Kite of version 6, so its restock to version 6 is applied too
+            assertTrue(awaitQuantity(replica, "Kite", 20));
+            assertEquals(6, replica.queryItem("Kite").getVersion());
+            assertNull(replica.queryItem("Gone"));
+            assertEquals(1, replica.listItems("", null, 20).size());
+        }finally {
+            replica.shutdown();
+            primary.stop(0);
+        }
+    }
+
+    private static JSONObject replicatedItem(String name, int quantity, long version){
+        return new JSONObject().put("name", name).put("quantity", quantity).put("price", 2.5).put("version", version);
+    }
+
+    private static void sendJson(HttpExchange exchange, JSONObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static boolean awaitQuantity(ProductCatalog catalog, String name, int quantity) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis()<deadline){
+            Item item = catalog.queryItem(name);
+            if(item!=null && item.getQuantity()==quantity){
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,109 @@
+import utils.JsonWriter;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JsonWriterBenchmark compares the throughput and allocation of JsonWriter with the map based encoder the response
+ * builders used before (kept below as the baseline). It encodes the item success response and the error response.
+ * Allocated bytes are read from the JVM per-thread allocation counter, so run it on a HotSpot JVM.
+ *
+ * Run: mvn test-compile && java -cp target/classes:target/test-classes:<json jar> JsonWriterBenchmark [iterations]
+ */
+public class JsonWriterBenchmark {
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        for(int round=0;round<2;round++){
+            // first round is warmup
+            int count = round==0 ? WARMUP_ITERATIONS : iterations;
+            boolean print = round==1;
+            run("map encoder, item", count, print, i -> mapEncodedItem("Whale", 15.99, i).getBytes(StandardCharsets.UTF_8));
+            run("json writer, item", count, print, i -> writerEncodedItem("Whale", 15.99, i));
+            run("map encoder, error", count, print, i -> mapEncodedError(404, "Item not found").getBytes(StandardCharsets.UTF_8));
+            run("json writer, error", count, print, i -> writerEncodedError(404, "Item not found"));
+        }
+    }
+
+    private interface Encoder {
+        byte[] encode(int i);
+    }
+
+    private static void run(String name, int iterations, boolean print, Encoder encoder){
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int bytes = 0;
+        for(int i=0;i<iterations;i++){
+            bytes += encoder.encode(i).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        sink = bytes;
+        if(print){
+            System.out.printf("%-20s %12.0f ops/s %8.1f bytes allocated/op%n", name, iterations * 1e9 / elapsed, (double) allocated / iterations);
+        }
+    }
+
+    private static byte[] writerEncodedItem(String name, double price, int quantity){
+        return JsonWriter.get()
+                .beginObject().name("data").beginObject()
+                .name("name").value(name)
+                .name("price").value(price)
+                .name("quantity").value(quantity)
+                .endObject().endObject()
+                .toByteArray();
+    }
+
+    private static byte[] writerEncodedError(int errorCode, String errorMessage){
+        return JsonWriter.get()
+                .beginObject().name("error").beginObject()
+                .name("code").value(errorCode)
+                .name("message").value(errorMessage)
+                .endObject().endObject()
+                .toByteArray();
+    }
+
+    private static String mapEncodedItem(String name, double price, int quantity){
+        Map<String, Object> successObject = new HashMap<>();
+        successObject.put("name", name);
+        successObject.put("price", price);
+        successObject.put("quantity", quantity);
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put("data", successObject);
+        return mapToJson(responseBody);
+    }
+
+    private static String mapEncodedError(int errorCode, String errorMessage){
+        Map<String, Object> errorObject = new HashMap<>();
+        errorObject.put("code", errorCode);
+        errorObject.put("message", errorMessage);
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put("error", errorObject);
+        return mapToJson(responseBody);
+    }
+
+    // map encoder the response builders used before JsonWriter
+    @SuppressWarnings("unchecked")
+    private static String mapToJson(Map<String, Object> map) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (json.length() > 1) {
+                json.append(",");
+            }
+            json.append("\"").append(entry.getKey()).append("\":");
+            if (entry.getValue() instanceof Map) {
+                json.append(mapToJson((Map<String, Object>) entry.getValue()));
+            } else {
+                json.append("\"").append(entry.getValue()).append("\"");
+            }
+        }
+        json.append("}");
+        return json.toString();
+    }
+}
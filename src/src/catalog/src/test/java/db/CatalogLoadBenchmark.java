@@ -0,0 +1,145 @@
+package db;
+
+import model.Item;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CatalogLoadBenchmark measures the startup load of catalog csv files of growing size.
+ * Run: mvn test-compile && java -cp target/classes:target/test-classes db.CatalogLoadBenchmark workDir [itemCount...]
+ *
+ * For every size a catalog file is generated in workDir and loaded by: the line by line reader catalog used before
+ * (readLine and split), the range loader with one thread and with every processor, and the range loader serving while
+ * loading, for which the time till an item near the end of the file is found on demand is reported next to the time
+ * the whole load takes. Every time is the best of RUNS runs, the generated files are deleted at the end.
+ */
+public class CatalogLoadBenchmark {
+    private static final int RUNS = 3;
+    private static final int[] DEFAULT_ITEM_COUNTS = {100_000, 1_000_000, 4_000_000};
+
+    public static void main(String[] args) throws IOException {
+        if(args==null || args.length<1){
+            System.out.println("Usage: db.CatalogLoadBenchmark workDir [itemCount...]");
+            return;
+        }
+        int[] itemCounts = DEFAULT_ITEM_COUNTS;
+        if(args.length>1){
+            itemCounts = new int[args.length-1];
+            for(int i=1;i<args.length;i++){
+                itemCounts[i-1] = Integer.parseInt(args[i]);
+            }
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("processors=" + processors);
+        System.out.println("items,fileMB,lineByLineMs,rangeLoader1ThreadMs,rangeLoader" + processors + "ThreadsMs,lazyFirstQueryMs,lazyFullLoadMs");
+        for(int itemCount:itemCounts){
+            File file = new File(args[0], "catalog-load-" + itemCount + ".csv");
+            writeCatalog(file, itemCount);
+            // the late item is the worst case for a lookup on demand
+            String lateItem = "Item" + (itemCount - 1);
+            double lineByLine = Double.MAX_VALUE;
+            double oneThread = Double.MAX_VALUE;
+            double allThreads = Double.MAX_VALUE;
+            double firstQuery = Double.MAX_VALUE;
+            double fullLoad = Double.MAX_VALUE;
+            for(int run=0;run<RUNS;run++){
+                lineByLine = Math.min(lineByLine, loadLineByLine(file.getPath(), itemCount));
+                oneThread = Math.min(oneThread, loadRanges(file.getPath(), 1, itemCount));
+                allThreads = Math.min(allThreads, loadRanges(file.getPath(), processors, itemCount));
+                double[] lazy = loadServingWhileLoading(file.getPath(), processors, lateItem, itemCount);
+                firstQuery = Math.min(firstQuery, lazy[0]);
+                fullLoad = Math.min(fullLoad, lazy[1]);
+            }
+            System.out.println(itemCount + "," + format(file.length() / (1024.0 * 1024.0)) + "," + format(lineByLine)
+                    + "," + format(oneThread) + "," + format(allThreads) + "," + format(firstQuery) + "," + format(fullLoad));
+            if(!file.delete()){
+                System.out.println("Could not delete " + file);
+            }
+        }
+    }
+
+    private static void writeCatalog(File file, int itemCount) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for(int i=0;i<itemCount;i++){
+                writer.write("Item" + i + "," + (i % 1000) + "," + (i % 100) + ".99," + (i % 7));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Method to load a catalog file the way catalog did before the range loader, one line at a time.
+     */
+    private static double loadLineByLine(String filePath, int itemCount) throws IOException {
+        long start = System.nanoTime();
+        ConcurrentHashMap<String, AtomicReference<Item>> items = new ConcurrentHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length == 3 || parts.length == 4) {
+                    long version = parts.length == 4 ? Long.parseLong(parts[3]) : 0;
+                    items.put(parts[0], new AtomicReference<>(new Item(parts[0], Integer.parseInt(parts[1]), Double.parseDouble(parts[2]), version)));
+                }
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        check(items, itemCount);
+        return millis;
+    }
+
+    private static double loadRanges(String filePath, int threads, int itemCount) throws IOException {
+        long start = System.nanoTime();
+        ConcurrentHashMap<String, AtomicReference<Item>> items;
+        try (CatalogFileLoader loader = new CatalogFileLoader(filePath, Collections.<String, ItemRecord>emptyMap())) {
+            items = new ConcurrentHashMap<>(loader.estimateItemCount());
+            loader.load(items, threads);
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        check(items, itemCount);
+        return millis;
+    }
+
+    /**
+     * Method to load a catalog file in background, as serveWhileLoading does, and look up an item meanwhile.
+     * @return - milliseconds till the item was found, and till the load was complete
+     */
+    private static double[] loadServingWhileLoading(String filePath, int threads, String itemName, int itemCount) throws IOException {
+        long start = System.nanoTime();
+        try (CatalogFileLoader loader = new CatalogFileLoader(filePath, Collections.<String, ItemRecord>emptyMap())) {
+            ConcurrentHashMap<String, AtomicReference<Item>> items = new ConcurrentHashMap<>(loader.estimateItemCount());
+            Thread loaderThread = new Thread(() -> loader.load(items, threads), "catalog-loader");
+            loaderThread.start();
+            AtomicReference<Item> itemRef = items.get(itemName);
+            if(itemRef==null && loader.find(itemName)==null && items.get(itemName)==null){
+                throw new IllegalStateException(itemName + " not found");
+            }
+            double firstQuery = (System.nanoTime() - start) / 1_000_000.0;
+            loaderThread.join();
+            double fullLoad = (System.nanoTime() - start) / 1_000_000.0;
+            check(items, itemCount);
+            return new double[]{firstQuery, fullLoad};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static void check(ConcurrentHashMap<String, AtomicReference<Item>> items, int itemCount){
+        if(items.size()!=itemCount){
+            throw new IllegalStateException("Loaded " + items.size() + " of " + itemCount + " items");
+        }
+    }
+
+    private static String format(double value){
+        return String.format("%.1f", value);
+    }
+}
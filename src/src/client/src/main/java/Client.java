@@ -2,6 +2,7 @@
 import enums.StatusCode;
 import model.PlacedOrder;
 import model.Response;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
@@ -17,6 +18,7 @@ public class Client {
 
     private static String FRONT_END_SERVICE_URL = "http://localhost:8889";
 
+    // items queried and bought, replaced by the items listed by front-end service when it can list them
     private static String[] itemsList = {"Lego","Barbie","Tinkertoy","Marbles","Bicycle","Crayolacrayon","Rollerskates","Frisbee","Monopoly","LincolnLogs","Whale", "Tux", "Fox", "Python"};
     private static final double ORDER_PROBABILITY = 0.5;
 
@@ -31,6 +33,10 @@ public class Client {
             }
         }
         System.out.println(FRONT_END_SERVICE_URL);
+        List<String> listedItems = listItems();
+        if(!listedItems.isEmpty()){
+            itemsList = listedItems.toArray(new String[0]);
+        }
         List<Double> orderProbabilities = getProbabilityList();
         Map<Double,Double> pQueryLatencyMap = new HashMap<>();
         Map<Double,Double> pOrderLatencyMap = new HashMap<>();
@@ -136,6 +142,35 @@ public class Client {
     }
 
 
+    /**
+     * Method to list every item of the catalog, a page at a time.
+     * @return - names of the items, empty if front-end service can't list them
+     */
+    private static List<String> listItems() {
+        List<String> itemNames = new ArrayList<>();
+        String after = null;
+        try {
+            do {
+                String getUrl = FRONT_END_SERVICE_URL+"/products?limit=100"+(after==null ? "" : "&after="+after);
+                Response response = makeGetRequest(getUrl);
+                if (response.getStatusCode()!=StatusCode.OK.getCode()) {
+                    System.out.println("List Response: "+response.getMessage());
+                    return new ArrayList<>();
+                }
+                JSONObject page = new JSONObject(response.getMessage());
+                JSONArray items = page.getJSONArray("items");
+                for (int i=0;i<items.length();i++) {
+                    itemNames.add(items.getJSONObject(i).getJSONObject("data").getString("name"));
+                }
+                after = page.isNull("next") ? null : page.getString("next");
+            } while (after!=null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+        return itemNames;
+    }
+
     /**
      * Method to query item.
      * @param itemName - Name of the item to query.
@@ -149,15 +184,10 @@ public class Client {
             String responseString = response.getMessage();
             System.out.println("GET Response: "+responseString);
             // Extracting the quantity from the response string
-            int dataIndex = responseString.indexOf("\"data\":{");
-            if (dataIndex != -1) {
-                int quantityIndex = responseString.indexOf("\"quantity\":\"", dataIndex);
-                if (quantityIndex != -1) {
-                    int endIndex = responseString.indexOf("\"", quantityIndex + "\"quantity\":\"".length());
-                    String quantityString = responseString.substring(quantityIndex + "\"quantity\":\"".length(), endIndex);
-                    quantity = Integer.parseInt(quantityString);
-                   // System.out.println("Quantity: " + quantity);
-                }
+            JSONObject data = new JSONObject(responseString).optJSONObject("data");
+            if (data != null) {
+                quantity = data.getInt("quantity");
+                // System.out.println("Quantity: " + quantity);
             }
 
         } catch (IOException e) {
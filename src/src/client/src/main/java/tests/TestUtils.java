@@ -1,6 +1,7 @@
 package tests;
 
 import model.Response;
+import org.json.JSONObject;
 
 import java.io.IOException;
 
@@ -24,15 +25,10 @@ public class TestUtils {
             String responseString = response.getMessage();
 
             // Extracting the quantity from the response string
-            int dataIndex = responseString.indexOf("\"data\":{");
-            if (dataIndex != -1) {
-                int quantityIndex = responseString.indexOf("\"quantity\":\"", dataIndex);
-                if (quantityIndex != -1) {
-                    int endIndex = responseString.indexOf("\"", quantityIndex + "\"quantity\":\"".length());
-                    String quantityString = responseString.substring(quantityIndex + "\"quantity\":\"".length(), endIndex);
-                    quantity = Integer.parseInt(quantityString);
-                    System.out.println("Quantity: " + quantity);
-                }
+            JSONObject data = new JSONObject(responseString).optJSONObject("data");
+            if (data != null) {
+                quantity = data.getInt("quantity");
+                System.out.println("Quantity: " + quantity);
             }
 
         } catch (IOException e) {
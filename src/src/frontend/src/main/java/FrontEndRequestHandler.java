@@ -13,6 +13,23 @@ public interface FrontEndRequestHandler {
      */
     public Response query(HttpExchange httpExchange);
 
+    /**
+     * Method to handle the batch query request. Cached items are answered locally and the rest are fetched from catalog
+     * service in a single request, items which are not found are reported inline.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the details of all items.
+     */
+    public Response queryBatch(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the list request. Every catalog shard is asked for its page of items in name order after the
+     * cursor, and the first items of all shards make the page. Pages are cached like item responses, and dropped when
+     * one of their items changes.
+     * @param httpExchange - Incoming request
+     * @return - Response object with the items of the page and the name to list the next page after, null on last page.
+     */
+    public Response listItems(HttpExchange httpExchange);
+
     /**
      * Method to handle the buy request. This method will call order service and returns order id.
      * @param httpExchange - Incoming request
@@ -47,4 +64,11 @@ public interface FrontEndRequestHandler {
      * @return - Response object
      */
     public Response queryOrder(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the metrics request.
+     * @param httpExchange - Incoming request
+     * @return - Response object with request count and latency histogram of every route
+     */
+    public Response getMetrics(HttpExchange httpExchange);
 }
@@ -1,10 +1,19 @@
 package frontend.src.main.java;
 
 import com.sun.net.httpserver.HttpServer;
+import handlers.CatalogChangeSubscriber;
 import handlers.CustomHttpHandler;
+import metadata.CachedPagesMetadata;
+import metadata.CatalogReplicasMetadata;
 import metadata.OrderServiceReplicasMetadata;
 import model.OrderServerReplica;
-import model.Response;
+import model.CacheEntry;
+import enums.LogLevel;
+import utils.CachePolicy;
+import utils.Logger;
+import utils.ShardMap;
+import utils.SlabStore;
+import utils.TinyLfuCache;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -16,11 +25,27 @@ import java.util.concurrent.Executors;
 
 
 public class FrontEndService {
+    private static final Logger LOGGER = Logger.getLogger(FrontEndService.class);
     private static final int THREAD_POOL_SIZE = 10;
     private static String catalogServiceURL = "http://localhost:9999";
+    private static String catalogShardMapPath;
+    private static String catalogReplicaURLs;
+    private static long catalogReplicaMaxLagMs = 1000;
+    private static long catalogReplicaPollMs = 500;
+    private static boolean isCatalogChangeFeedEnabled = true;
+    private static long catalogChangeFeedWaitMs = 10000;
     private static String orderServiceURL = "http://localhost:11111";
-    private static Map<String, Response> cache; // ToyName -> Response
-    private static int CACHE_SIZE = 10;
+    private static TinyLfuCache<String, CacheEntry> cache; // ToyName -> cached Response
+    private static final int EXPECTED_CACHE_ENTRY_BYTES = 1024; // sizes the frequency sketch of cache
+    private static final int SLAB_HEADROOM_SHARE = 16; // 1/16 of cache memory is left for free chunks of slabs in use
+    private static long cacheMaxBytes = 64L << 20;
+    private static int cacheSlabBytes = 1 << 20;
+    private static long cacheTtlMs = 30000;
+    private static long cacheNotFoundTtlMs = 5000;
+    private static long cacheStaleWhileRevalidateMs = 10000;
+    private static long cacheStaleIfErrorMs = 60000;
+    private static int cacheStaleIfErrorTimeoutMs = 1000;
+    private static int cacheRefreshThreads = 2;
 
     private static Boolean isCacheEnabled = false;
 
@@ -47,8 +72,15 @@ public class FrontEndService {
             }
             if (input != null) {
                 props.load(input);
+                Logger.setLevel(LogLevel.fromString(props.getProperty("log.level"), Logger.getLevel()));
                 port = Integer.parseInt(props.getProperty("port"));
                 catalogServiceURL = props.getProperty("catalogServiceURL");
+                catalogShardMapPath = props.getProperty("catalogShardMap");
+                catalogReplicaURLs = props.getProperty("catalogReplicaURLs");
+                catalogReplicaMaxLagMs = Long.parseLong(props.getProperty("catalogReplicaMaxLagMs",String.valueOf(catalogReplicaMaxLagMs)));
+                catalogReplicaPollMs = Long.parseLong(props.getProperty("catalogReplicaPollMs",String.valueOf(catalogReplicaPollMs)));
+                isCatalogChangeFeedEnabled = Boolean.parseBoolean(props.getProperty("catalogChangeFeed",String.valueOf(isCatalogChangeFeedEnabled)));
+                catalogChangeFeedWaitMs = Long.parseLong(props.getProperty("catalogChangeFeedWaitMs",String.valueOf(catalogChangeFeedWaitMs)));
 
                 orderServiceReplica1Id = Integer.parseInt(props.getProperty("orderServiceReplica1Id"));
                 orderServiceReplica1URL = props.getProperty("orderServiceReplica1URL");
@@ -68,24 +100,50 @@ public class FrontEndService {
                 if(props.getProperty("isCacheEnabled").equals("true")){
                     isCacheEnabled = true;
                 }
-
-                System.out.println("Read props from config file"+port+" "+catalogServiceURL);
+                cacheMaxBytes = Long.parseLong(props.getProperty("cacheMaxBytes",String.valueOf(cacheMaxBytes)));
+                cacheSlabBytes = Integer.parseInt(props.getProperty("cacheSlabBytes",String.valueOf(cacheSlabBytes)));
+                cacheTtlMs = Long.parseLong(props.getProperty("cacheTtlMs",String.valueOf(cacheTtlMs)));
+                cacheNotFoundTtlMs = Long.parseLong(props.getProperty("cacheNotFoundTtlMs",String.valueOf(cacheNotFoundTtlMs)));
+                cacheStaleWhileRevalidateMs = Long.parseLong(props.getProperty("cacheStaleWhileRevalidateMs",String.valueOf(cacheStaleWhileRevalidateMs)));
+                cacheStaleIfErrorMs = Long.parseLong(props.getProperty("cacheStaleIfErrorMs",String.valueOf(cacheStaleIfErrorMs)));
+                cacheStaleIfErrorTimeoutMs = Integer.parseInt(props.getProperty("cacheStaleIfErrorTimeoutMs",String.valueOf(cacheStaleIfErrorTimeoutMs)));
+                cacheRefreshThreads = Integer.parseInt(props.getProperty("cacheRefreshThreads",String.valueOf(cacheRefreshThreads)));
+
+                LOGGER.info("Read props from config file"+port+" "+catalogServiceURL);
             }
         } catch (IOException ex) {
-            ex.printStackTrace();
+            LOGGER.error("Error while reading config file", ex);
         }
 
-        // init cache if its enabled.
+        ShardMap catalogShards = loadCatalogShards();
+        CatalogReplicasMetadata catalogReplicasMetadata = new CatalogReplicasMetadata(catalogShards,catalogReplicaMaxLagMs,catalogReplicaPollMs);
+
+        // init cache if its enabled, it holds item responses by item name and listing pages by their request uri.
+        // Cache is bounded by the bytes its response bodies take in the off-heap slab store, so a body leaving the
+        // cache frees its chunk. Bodies are bounded a bit below the store's budget, as slabs in use keep some free
+        // chunks, so the eviction policy makes room before the store has to drop bodies by reassigning slabs
+        CachedPagesMetadata cachedPagesMetadata = new CachedPagesMetadata();
+        SlabStore slabStore = new SlabStore(cacheMaxBytes,cacheSlabBytes);
+        CachePolicy cachePolicy = new CachePolicy(cacheTtlMs,cacheNotFoundTtlMs,cacheStaleWhileRevalidateMs,cacheStaleIfErrorMs,cacheStaleIfErrorTimeoutMs,cacheRefreshThreads,slabStore);
         if(isCacheEnabled){
-            cache = new LinkedHashMap<String, Response>(CACHE_SIZE, 0.75F, true) {
-                protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
-                    boolean isEvicting = size() > CACHE_SIZE;
-                    if (isEvicting) {
-                        System.out.println("Evicted item from cache: " + eldest.getKey());
-                    }
-                    return isEvicting;
+            int expectedEntries = (int) Math.min(Integer.MAX_VALUE, cacheMaxBytes / EXPECTED_CACHE_ENTRY_BYTES);
+            long cacheMaxWeight = cacheMaxBytes - cacheMaxBytes / SLAB_HEADROOM_SHARE;
+            cache = new TinyLfuCache<>(cacheMaxWeight, expectedEntries, CacheEntry::getWeight, (key, cacheEntry, isEvicted) -> {
+                cacheEntry.release();
+                if(isEvicted){
+                    LOGGER.debug(() -> "Evicted item from cache: " + key);
+                    cachedPagesMetadata.removePage(key);
                 }
-            };
+            });
+            // a body dropped to make room for bodies of another size can't be served, its entry is evicted at once
+            slabStore.setDropListener(key -> cache.evictIf(key, CacheEntry::isDropped));
+        }
+
+        // follow the change streams of catalog, so a lost invalidate request can't leave a stale item in cache
+        CatalogChangeSubscriber catalogChangeSubscriber = null;
+        if(isCacheEnabled && isCatalogChangeFeedEnabled){
+            catalogChangeSubscriber = new CatalogChangeSubscriber(catalogShards,cache,cachedPagesMetadata,catalogChangeFeedWaitMs);
+            catalogChangeSubscriber.start();
         }
 
 
@@ -93,18 +151,42 @@ public class FrontEndService {
         orderServiceReplicasMetadata.setOrderServiceReplicas(orderServerReplicas);
         OrderServerReplica leaderReplica = orderServiceReplicasMetadata.findLeaderNode();
         if(leaderReplica.getId()==-1){
-            System.out.println("None of the order service replicas are alive, start any of order service replicas");
+            LOGGER.warn("None of the order service replicas are alive, start any of order service replicas");
             System.exit(-1);
         }
 
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
 
-        server.createContext("/", new CustomHttpHandler(executor,isCacheEnabled,cache,catalogServiceURL,orderServiceReplicasMetadata));
+        server.createContext("/", new CustomHttpHandler(executor,isCacheEnabled,cache,cachedPagesMetadata,cachePolicy,catalogShards,catalogReplicasMetadata,catalogChangeSubscriber,orderServiceReplicasMetadata));
         server.setExecutor(executor);
 
         server.start();
-        System.out.println("Front-End Service started on port " + port);
+        LOGGER.info("Front-End Service started on port " + port);
+    }
+
+    /**
+     * Method to create the catalog shard map, from the shard map file if one is configured, else the catalog service URL
+     * (CATALOG_HOST and CATALOG_PORT env variables override it) with its read replicas owns every item.
+     * @return - catalog shard map
+     */
+    private static ShardMap loadCatalogShards(){
+        if(catalogShardMapPath!=null && !catalogShardMapPath.trim().isEmpty()){
+            try{
+                ShardMap shardMap = ShardMap.load(catalogShardMapPath.trim());
+                LOGGER.info("Catalog is split into "+shardMap.size()+" shards "+shardMap.getShardUrls());
+                return shardMap;
+            }catch (IOException | RuntimeException e){
+                LOGGER.error("Error while reading catalog shard map "+catalogShardMapPath, e);
+                System.exit(-1);
+            }
+        }
+        String catalogHost = System.getenv("CATALOG_HOST");
+        String catalogPort = System.getenv("CATALOG_PORT");
+        if(catalogHost!=null && catalogPort!=null){
+            catalogServiceURL = "http://" + catalogHost + ":" + catalogPort;
+        }
+        return ShardMap.singleShard(catalogServiceURL==null ? "http://localhost:9999" : catalogServiceURL,ShardMap.parseUrls(catalogReplicaURLs));
     }
 
 
@@ -1,6 +1,7 @@
 package dto;
 
 import org.json.JSONObject;
+import utils.Logger;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -9,6 +10,7 @@ import java.util.Map;
  * OrderDto class is used to map the incoming order request.
  */
 public class InvalidateCacheDto {
+    private static final Logger LOGGER = Logger.getLogger(InvalidateCacheDto.class);
     private String name;
 
     public String getName() {
@@ -30,7 +32,7 @@ public class InvalidateCacheDto {
             JSONObject jsonObject = new JSONObject(jsonString);
             return new InvalidateCacheDto(jsonObject.getString("itemName"));
         }catch (Exception e){
-            System.out.println("Error parsing request"+e);
+            LOGGER.warn(() -> "Error parsing request"+e);
             return null;
         }
     }
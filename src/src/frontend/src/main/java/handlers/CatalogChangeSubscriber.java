@@ -0,0 +1,166 @@
+package handlers;
+
+import enums.StatusCode;
+import impl.FrontEndRequestHandlerImpl;
+import metadata.CachedPagesMetadata;
+import model.CacheEntry;
+import model.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.Logger;
+import utils.ShardMap;
+import utils.TinyLfuCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static utils.HttpUtils.makeGetRequest;
+
+/**
+ * CatalogChangeSubscriber keeps the front-end cache coherent with the catalog by following the change stream of every
+ * catalog shard (GET /changes long-poll) and marking the cached responses of changed items stale. Unlike the
+ * invalidate requests pushed by catalog, a change can't get lost: the subscriber asks for the changes after the last
+ * sequence it has, so after a failed request or a restart of catalog it carries on from there.
+ * When the catalog no longer has those changes (it was restarted, a new epoch, or the subscriber fell behind its
+ * change stream) every cached response is dropped and the subscriber starts over from the latest change.
+ */
+public class CatalogChangeSubscriber {
+    private static final Logger LOGGER = Logger.getLogger(CatalogChangeSubscriber.class);
+    private static final int BATCH_SIZE = 1000;
+    private static final long RETRY_MILLIS = 1000;
+    private static final long TIMEOUT_MARGIN_MILLIS = 5000;
+
+    private final TinyLfuCache<String, CacheEntry> cache;
+    private final CachedPagesMetadata cachedPagesMetadata;
+    private final long waitMillis;
+    private final List<ShardFeed> feeds = new ArrayList<>();
+
+    /**
+     * Change stream of one catalog shard, followed by its own thread.
+     */
+    private class ShardFeed implements Runnable {
+        private final String shardId;
+        private final String url;
+        private volatile long epoch;
+        private volatile long sequence = -1; // -1 till the subscriber has a position in the stream
+        private volatile boolean isConnected;
+        private final AtomicLong appliedChanges = new AtomicLong();
+        private final AtomicLong resyncs = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private ShardFeed(String shardId, String url) {
+            this.shardId = shardId;
+            this.url = url;
+        }
+
+        @Override
+        public void run() {
+            while(!Thread.currentThread().isInterrupted()){
+                try{
+                    poll();
+                    isConnected = true;
+                }catch (Exception e){
+                    if(isConnected){
+                        LOGGER.warn(() -> "Lost change stream of catalog "+url+", resuming after sequence "+sequence+" "+e);
+                    }
+                    isConnected = false;
+                    errors.incrementAndGet();
+                    try{
+                        Thread.sleep(RETRY_MILLIS);
+                    }catch (InterruptedException interrupted){
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Method to wait for the next batch of changes and mark the cached items stale.
+         */
+        private void poll() throws Exception {
+            // first request only takes the position of latest change, later ones wait for the next change
+            String changesUrl = url + "/changes?limit=" + BATCH_SIZE;
+            if(sequence>=0){
+                changesUrl += "&since=" + sequence + "&epoch=" + epoch + "&waitMs=" + waitMillis;
+            }
+            // a catalog which doesn't answer well after the wait is treated as failed
+            Response response = makeGetRequest(changesUrl, (int) (waitMillis + TIMEOUT_MARGIN_MILLIS));
+            if(response.getStatusCode()!=StatusCode.OK.getCode()){
+                throw new IllegalStateException("Changes request failed with status " + response.getStatusCode());
+            }
+            JSONObject batch = new JSONObject(response.getMessage());
+            if(batch.optBoolean("resync", false)){
+                // changes after our sequence are lost, any cached item may be older than them
+                resyncs.incrementAndGet();
+                LOGGER.warn(() -> "Changes after "+sequence+" are no longer available on catalog "+url+", dropping cached items");
+                cache.clear();
+                cachedPagesMetadata.clear();
+                epoch = batch.getLong("epoch");
+                sequence = batch.getLong("sequence");
+                return;
+            }
+            if(sequence<0){
+                // items cached before the subscriber had a position may miss changes made before it
+                cache.clear();
+                cachedPagesMetadata.clear();
+            }
+            JSONArray changes = batch.getJSONArray("changes");
+            for(int i=0;i<changes.length();i++){
+                FrontEndRequestHandlerImpl.markStale(cache, cachedPagesMetadata, changes.getJSONObject(i).getString("name"));
+            }
+            appliedChanges.addAndGet(changes.length());
+            epoch = batch.getLong("epoch");
+            sequence = batch.getLong("next");
+        }
+    }
+
+    /**
+     * Constructor to create a change stream subscriber for the primary of every catalog shard.
+     * @param catalogShards - catalog shard map
+     * @param cache - front-end cache
+     * @param cachedPagesMetadata - items on the listing pages held in cache
+     * @param waitMillis - time a change stream request waits for the next change
+     */
+    public CatalogChangeSubscriber(ShardMap catalogShards, TinyLfuCache<String, CacheEntry> cache, CachedPagesMetadata cachedPagesMetadata, long waitMillis) {
+        this.cache = cache;
+        this.cachedPagesMetadata = cachedPagesMetadata;
+        this.waitMillis = waitMillis;
+        for(Map.Entry<String, String> shard:catalogShards.getShardUrls().entrySet()){
+            feeds.add(new ShardFeed(shard.getKey(), shard.getValue()));
+        }
+    }
+
+    /**
+     * Method to start following the change streams.
+     */
+    public void start(){
+        for(ShardFeed feed:feeds){
+            Thread thread = new Thread(feed, "catalog-change-feed-" + feed.shardId);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Method to convert the position and counters of every change stream to JSON for /metrics endpoint.
+     * @return - JSON array with epoch, sequence, changes applied, resyncs and errors of every shard
+     */
+    public JSONArray toJson(){
+        JSONArray json = new JSONArray();
+        for(ShardFeed feed:feeds){
+            JSONObject feedJson = new JSONObject();
+            feedJson.put("shard", feed.shardId);
+            feedJson.put("url", feed.url);
+            feedJson.put("connected", feed.isConnected);
+            feedJson.put("epoch", feed.epoch);
+            feedJson.put("sequence", feed.sequence);
+            feedJson.put("appliedChanges", feed.appliedChanges.get());
+            feedJson.put("resyncs", feed.resyncs.get());
+            feedJson.put("errors", feed.errors.get());
+            json.put(feedJson);
+        }
+        return json;
+    }
+}
@@ -4,37 +4,53 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 import impl.FrontEndRequestHandlerImpl;
+import metadata.CachedPagesMetadata;
+import metadata.CatalogReplicasMetadata;
 import metadata.OrderServiceReplicasMetadata;
-import model.Response;
+import model.CacheEntry;
+import utils.CachePolicy;
+import utils.ShardMap;
+import utils.TinyLfuCache;
 
 import java.io.IOException;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 public class CustomHttpHandler implements HttpHandler {
     private ExecutorService executorService;
-    private String catalogServiceUrl;
+    private ShardMap catalogShards;
+    private CatalogReplicasMetadata catalogReplicasMetadata;
+    private CatalogChangeSubscriber catalogChangeSubscriber;
     private OrderServiceReplicasMetadata orderServiceReplicasMetadata;
-    private Map<String, Response> cache;
+    private TinyLfuCache<String, CacheEntry> cache;
+    private CachedPagesMetadata cachedPagesMetadata;
+    private CachePolicy cachePolicy;
 
     private Boolean isCacheEnabled;
 
     /**
      * Constructor to initialize the executor service and service name.
      * @param executorService - Thread pool to handle the incoming requests.
-     * @param catalogServiceUrl - Catalog service URL.
+     * @param cachedPagesMetadata - Items on the listing pages held in cache.
+     * @param cachePolicy - Time to live of cache entries and their background refresh.
+     * @param catalogShards - Catalog shard map, URL of catalog instance owning each item.
+     * @param catalogReplicasMetadata - Catalog read replicas, picks the catalog instance a read is sent to.
+     * @param catalogChangeSubscriber - Follower of catalog change streams keeping the cache coherent, null if not used.
      * @param orderServiceReplicasMetadata - orderServiceReplicasMetadata
      */
-    public CustomHttpHandler(ExecutorService executorService,Boolean isCacheEnabled, Map<String, Response> cache, String catalogServiceUrl, OrderServiceReplicasMetadata orderServiceReplicasMetadata){
+    public CustomHttpHandler(ExecutorService executorService,Boolean isCacheEnabled, TinyLfuCache<String, CacheEntry> cache, CachedPagesMetadata cachedPagesMetadata, CachePolicy cachePolicy, ShardMap catalogShards, CatalogReplicasMetadata catalogReplicasMetadata, CatalogChangeSubscriber catalogChangeSubscriber, OrderServiceReplicasMetadata orderServiceReplicasMetadata){
         this.executorService = executorService;
-        this.catalogServiceUrl = catalogServiceUrl;
+        this.catalogShards = catalogShards;
+        this.catalogReplicasMetadata = catalogReplicasMetadata;
+        this.catalogChangeSubscriber = catalogChangeSubscriber;
         this.orderServiceReplicasMetadata = orderServiceReplicasMetadata;
         this.cache = cache;
+        this.cachedPagesMetadata = cachedPagesMetadata;
+        this.cachePolicy = cachePolicy;
         this.isCacheEnabled = isCacheEnabled;
     }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        executorService.submit(new FrontEndRequestHandlerImpl(exchange,isCacheEnabled,cache,catalogServiceUrl,orderServiceReplicasMetadata));
+        executorService.submit(new FrontEndRequestHandlerImpl(exchange,isCacheEnabled,cache,cachedPagesMetadata,cachePolicy,catalogShards,catalogReplicasMetadata,catalogChangeSubscriber,orderServiceReplicasMetadata));
     }
 }
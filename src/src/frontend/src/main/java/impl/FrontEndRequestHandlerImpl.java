@@ -4,19 +4,38 @@ import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import dto.InvalidateCacheDto;
 import frontend.src.main.java.FrontEndRequestHandler;
+import enums.LogLevel;
 import enums.StatusCode;
+import handlers.CatalogChangeSubscriber;
+import metadata.CachedPagesMetadata;
+import metadata.CatalogReplicasMetadata;
 import metadata.OrderServiceReplicasMetadata;
+import model.CacheEntry;
 import model.OrderServerReplica;
 import model.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.CachePolicy;
+import utils.JsonWriter;
+import utils.RouteTable;
+import utils.Logger;
+import utils.ShardMap;
+import utils.SingleFlight;
+import utils.TinyLfuCache;
 
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static utils.HttpUtils.*;
 
@@ -25,153 +44,74 @@ import static utils.HttpUtils.*;
  * FrontEndRequestHandler class is used to handle the incoming requests for the front-end service.
  */
 public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHandler {
+    private static final Logger LOGGER = Logger.getLogger(FrontEndRequestHandlerImpl.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final byte[] BATCH_PREFIX = "{\"items\":[".getBytes(StandardCharsets.UTF_8);
+    // catalog requests of missed or stale items and order service requests of orders in flight, by key
+    private static final SingleFlight<String, Response> PRODUCT_FETCHES = new SingleFlight<>();
+    private static final SingleFlight<String, Response> ORDER_FETCHES = new SingleFlight<>();
+    // routes of front-end service, resolved without running any regex per request
+    private static final RouteTable<FrontEndRequestHandlerImpl> ROUTES = new RouteTable<FrontEndRequestHandlerImpl>()
+            .add("GET", "/products/{name}", (handler, exchange, params) -> handler.query(exchange, params.get("name")))
+            .add("GET", "/products", (handler, exchange, params) -> getQueryParam(exchange.getRequestURI(),"names")!=null
+                    ? handler.queryBatch(exchange) : handler.listItems(exchange))
+            .add("GET", "/orders/{id}", (handler, exchange, params) -> handler.queryOrder(exchange))
+            .add("GET", "/metrics", (handler, exchange, params) -> handler.getMetrics(exchange))
+            .add("POST", "/orders", (handler, exchange, params) -> handler.buy(exchange))
+            .add("POST", "/invalidate", (handler, exchange, params) -> handler.invalidateCache(exchange))
+            .add("POST", "/invalidateBulk", (handler, exchange, params) -> handler.invalidateCacheBulk(exchange))
+            .add("POST", "/joinOrderCluster", (handler, exchange, params) -> handler.joinCluster(exchange));
     private final HttpExchange exchange;
-    private String CATALOG_SERVICE_URL = "http://localhost:9999";
+    private final ShardMap catalogShards;
+    private final CatalogReplicasMetadata catalogReplicasMetadata;
+    private final CatalogChangeSubscriber catalogChangeSubscriber;
     private String ORDER_SERVICE_URL = "http://localhost:11111";
-    private Map<String, Response> cache;
+    private TinyLfuCache<String, CacheEntry> cache;
+    private final CachedPagesMetadata cachedPagesMetadata;
+    private final CachePolicy cachePolicy;
 
     private Boolean isCacheEnabled;
 
     private OrderServiceReplicasMetadata orderServiceReplicasMetadata;
-    public FrontEndRequestHandlerImpl(HttpExchange exchange,Boolean isCacheEnabled, Map<String, Response> cache, String catalogServiceUrl, OrderServiceReplicasMetadata orderServiceReplicasMetadata) {
+    public FrontEndRequestHandlerImpl(HttpExchange exchange,Boolean isCacheEnabled, TinyLfuCache<String, CacheEntry> cache, CachedPagesMetadata cachedPagesMetadata, CachePolicy cachePolicy, ShardMap catalogShards, CatalogReplicasMetadata catalogReplicasMetadata, CatalogChangeSubscriber catalogChangeSubscriber, OrderServiceReplicasMetadata orderServiceReplicasMetadata) {
         this.exchange = exchange;
         this.cache = cache;
+        this.cachedPagesMetadata = cachedPagesMetadata;
+        this.cachePolicy = cachePolicy;
         this.orderServiceReplicasMetadata = orderServiceReplicasMetadata;
         this.isCacheEnabled = isCacheEnabled;
+        this.catalogShards = catalogShards;
+        this.catalogReplicasMetadata = catalogReplicasMetadata;
+        this.catalogChangeSubscriber = catalogChangeSubscriber;
 
         OrderServerReplica leaderNode = orderServiceReplicasMetadata.getLeaderNode();
         if(leaderNode!=null){
             ORDER_SERVICE_URL = leaderNode.getUrl();
         }
-
-        if(catalogServiceUrl!=null){
-            CATALOG_SERVICE_URL = catalogServiceUrl;
-        }
-        String catalogHost = System.getenv("CATALOG_HOST");
-        String catalogPort = System.getenv("CATALOG_PORT");
-        //System.out.println("Env variable's catalogHost" + catalogHost);
-        if(catalogHost!=null && catalogPort!=null){
-            CATALOG_SERVICE_URL = "http://" + catalogHost + ":" + catalogPort;
-        }
     }
 
     @Override
     public void run() {
         try {
             String requestMethod = exchange.getRequestMethod();
-            if (requestMethod.equalsIgnoreCase("GET")) {
-                handleGetRequest(exchange);
-            } else if (requestMethod.equalsIgnoreCase("POST")) {
-                handlePostRequest(exchange);
-            } else {
+            if (!requestMethod.equalsIgnoreCase("GET") && !requestMethod.equalsIgnoreCase("POST")) {
                 // Only GET and POST methods are supported
                 // Unsupported request method, return 405 Method Not Allowed
                 int errorCode = StatusCode.METHOD_NOT_ALLOWED.getCode();
                 String message = "Invalid Request Type";
                 Response response = new Response(errorCode,prepareErrorResponse(errorCode,message));
                 sendResponse(exchange,response);
+            } else if (!ROUTES.dispatch(this, exchange)) {
+                // Invalid URI, return 404 Not Found
+                int errorCode = StatusCode.NOT_FOUND.getCode();
+                String message = "Invalid URI";
+                Response response = new Response(errorCode,prepareErrorResponse(errorCode,message));
+                sendResponse(exchange,response);
             }
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Method to validate the get request
-     * @param uri - should be of the format /products/{product_name}
-     * @return
-     */
-    private Boolean isQueryURI(URI uri) {
-        return uri.getPath().matches("/products/\\w+");
-    }
-
-    /**
-     * Method to validate the order query request
-     * @param uri - uri should be of format /orders
-     * @throws IOException
-     */
-    private Boolean isQueryBuyURI(URI uri) {
-        return uri.getPath().matches("/orders/\\w+");
-    }
-
-    /**
-     * Method to handle the GET request.
-     * @param exchange 
-     * @throws IOException
-     */
-    private void handleGetRequest(HttpExchange exchange) throws IOException {
-        URI uri = exchange.getRequestURI();
-        if(isQueryURI(uri)){
-            query(exchange);
-        } else if (isQueryBuyURI(uri)) {
-            queryOrder(exchange);
-        } else {
-            // Invalid URI, return 404 Not Found
-            int errorCode = StatusCode.NOT_FOUND.getCode();
-            String message = "Invalid URI";
-            Response response = new Response(errorCode,prepareErrorResponse(errorCode,message));
-            sendResponse(exchange,response);
-        }
-    }
-
-    /**
-     * Method to validate the post request
-     * @param uri - uri should be of format /orders
-     * @throws IOException
-     */
-    private Boolean isBuyURI(URI uri) {
-        return uri.getPath().matches("/orders");
-    }
-
-
-    /**
-     * Method to validate the invalidate cache requests
-     * @param uri - uri should be of format /invalidate
-     * @throws IOException
-     */
-    private Boolean isInvalidateCacheURI(URI uri) {
-        return uri.getPath().matches("/invalidate");
-    }
-
-    /**
-     * Method to validate the invalidate cache bulk requests
-     * @param uri - uri should be of format /invalidateBulk
-     *
-     */
-    private Boolean isInvalidateCacheBulkURI(URI uri) {
-        return uri.getPath().matches("/invalidateBulk");
-    }
-
-    /**
-     * Method to validate the joining cluster requests
-     * @param uri - uri should be of format /joinOrderCluster
-     *
-     */
-    private Boolean isJoiningClusterURI(URI uri){
-        return  uri.getPath().matches("/joinOrderCluster");
-    }
-
-    /**
-     * Method to handle the POST request.
-     * @param exchange 
-     * @throws IOException
-     */
-    private void handlePostRequest(HttpExchange exchange) throws IOException {
-        URI uri = exchange.getRequestURI();
-        if(isBuyURI(uri)){
-            buy(exchange);
-        } else if (isInvalidateCacheBulkURI(uri)) {
-            invalidateCacheBulk(exchange);
-        } else if (isInvalidateCacheURI(uri)) {
-            invalidateCache(exchange);
-        } else if (isJoiningClusterURI(uri)) {
-            joinCluster(exchange);
-        } else {
-            // Invalid URI or request body, return 400 Bad Request
-            int errorCode = StatusCode.NOT_FOUND.getCode();
-            String message = "Invalid URI";
-            Response response = new Response(errorCode,prepareErrorResponse(errorCode,message));
-            sendResponse(exchange,response);
+            LOGGER.warn("Error while handling request", e);
         }
     }
 
@@ -185,7 +125,7 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
                 OrderServerReplica newNode = new OrderServerReplica(reqObj.optInt("id",-1),reqObj.optString("url",""));
 
                 if(newNode.getId()!=-1){
-                    System.out.println("A new node with Id "+ newNode.getId()+ "is trying to join the cluster ");
+                    LOGGER.info(() -> "A new node with Id "+ newNode.getId()+ "is trying to join the cluster ");
                     // node has joined the cluster.
                     Boolean hasJoined = orderServiceReplicasMetadata.addNodeToPool(newNode);
                     if(hasJoined){
@@ -202,7 +142,7 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
                     response = new Response(StatusCode.BAD_REQUEST.getCode(),"Failed to join");
                 }
             }catch (Exception e){
-                System.out.println(e.toString());
+                LOGGER.warn("Error while adding node to cluster", e);
                 response = new Response(StatusCode.BAD_REQUEST.getCode(),"Failed to join");
             }
         }else{
@@ -218,63 +158,441 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
 
     @Override
     public Response query(HttpExchange exchange) {
+        return query(exchange, exchange.getRequestURI().getPath().substring("/products/".length()));
+    }
+
+    /**
+     * Method to handle the query request of an item.
+     * @param exchange - Incoming request
+     * @param toyName - Name of the item from request path
+     * @return - Response object with the item details
+     */
+    private Response query(HttpExchange exchange, String toyName) {
         Response response;
         // Send get request to the catalog service using same uri
         URI uri = exchange.getRequestURI();
-        System.out.println("Received query request by front-end service for item: "+uri);
-        String toyName = uri.getPath().substring("/products/".length());
+        LOGGER.debug(() -> "Received query request by front-end service for item: "+uri);
+        String clientETag = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+        // checking if toy is available in cache, the body of an entry evicted meanwhile may be reused already,
+        // such an entry is a miss
+        CacheEntry cachedEntry = isCacheEnabled ? cache.get(toyName) : null;
+        Response cachedResponse = cachedEntry!=null ? cachedEntry.getResponse() : null;
+        CacheEntry cacheEntry = cachedResponse!=null ? cachedEntry : null;
+        long now = System.nanoTime();
+        if (cacheEntry!=null && cacheEntry.isFresh(now)) {
+            LOGGER.debug(() -> "Fetching item from cache "+toyName);
+            response = cachedResponse;
+        } else if (cacheEntry!=null && cachePolicy.canServeWhileRevalidating(cacheEntry,now)) {
+            // expired but not invalidated, serve it and let one background refresh revalidate it
+            LOGGER.debug(() -> "Cache entry expired, serving it while it is refreshed "+toyName);
+            response = cachedResponse;
+            cachePolicy.recordServedWhileRevalidating();
+            cachePolicy.refreshInBackground(cacheEntry, () -> {
+                long generation = cache.getGeneration(toyName);
+                return PRODUCT_FETCHES.execute(toyName + '\n' + cacheEntry.getEtag() + '\n' + generation,
+                        () -> fetchItem(toyName,uri,cachedResponse,null,0,generation));
+            });
+        } else {
+            int timeoutMillis = cachePolicy.getRevalidateTimeoutMs(cacheEntry,now);
+            try{
+                // concurrent misses of the toy, e.g. right after a buy invalidated it, share one request to catalog.
+                // The request is keyed by the version tag it carries, so a 304 is only shared by the clients it is for,
+                // and by the invalidation generation of the toy, so a request after an invalidation doesn't get the
+                // answer of a fetch started before it
+                String etag = cacheEntry!=null ? cacheEntry.getEtag() : clientETag;
+                long generation = isCacheEnabled ? cache.getGeneration(toyName) : 0;
+                response = PRODUCT_FETCHES.execute(toyName + '\n' + etag + '\n' + generation,
+                        () -> fetchItem(toyName,uri,cacheEntry!=null ? cachedResponse : null,clientETag,timeoutMillis,generation));
+            }catch (Exception exception){
+                int errorCode = StatusCode.INTERNAL_SERVER_ERROR.getCode();
+                String message = "INTERNAL_SERVER_ERROR";
+                response = new Response(errorCode,prepareErrorResponse(errorCode,message));
+            }
+            if(response.getStatusCode()>=StatusCode.INTERNAL_SERVER_ERROR.getCode() && cachePolicy.canServeOnError(cacheEntry,System.nanoTime())){
+                // catalog is down or slow, the last good copy is better than an error
+                LOGGER.debug(() -> "Catalog failed, serving out of date cache entry "+toyName);
+                response = cachedResponse;
+                cachePolicy.recordServedOnError();
+            }
+        }
+        if(response.getStatusCode()==StatusCode.OK.getCode() && isETagMatch(clientETag,response.getEtag())){
+            // client already has this version
+            response = new Response(StatusCode.NOT_MODIFIED.getCode(),"",response.getEtag());
+        }
+        sendResponse(exchange,response);
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by front-end service for query request: "+ response.getMessage());
+        }
+        return response;
+    }
 
-        // checking if toy is available in cache
-        if (isCacheEnabled && cache.containsKey(toyName)) {
-            System.out.println("Fetching item from cache "+toyName);
-            Response cachedResponse = cache.get(toyName);
-            sendResponse(exchange, cachedResponse);
-            return cachedResponse;
+    /**
+     * Method to fetch an item missed or out of date in cache from catalog and cache it.
+     * @param toyName - Name of the item
+     * @param uri - Request uri
+     * @param cachedResponse - Stale or expired cached copy to revalidate, null if the item is not cached
+     * @param clientETag - Version tag sent by client, passed on without a cached copy
+     * @param timeoutMillis - Time to wait for catalog to revalidate the cached copy, 0 to wait till it answers
+     * @param generation - Invalidation generation of the item read before the fetch, the response isn't cached if the
+     *                   item was invalidated since
+     * @return - Response of catalog
+     * @throws IOException - if catalog can't be reached
+     */
+    private Response fetchItem(String toyName, URI uri, Response cachedResponse, String clientETag, int timeoutMillis, long generation) throws IOException {
+        Response response;
+        if(cachedResponse!=null){
+            // item was invalidated, revalidate cached copy with its version tag on the primary of its shard,
+            // a read replica may not have the change yet
+            LOGGER.debug("Cache entry is out of date, revalidating with catalog service");
+            response = makeGetRequest(catalogShards.urlOf(toyName) + uri,cachedResponse.getEtag(),timeoutMillis);
+            if(response.getStatusCode()==StatusCode.NOT_MODIFIED.getCode()){
+                response = cachedResponse;
+            }
+        }else{
+            // without a cached copy client's version tag is passed on, catalog answers 304 if it is current
+            LOGGER.debug("Cache missed, calling catalog service");
+            response = readFromCatalog(toyName,uri,clientETag);
+        }
+        // Cache the whole response object, because we don't want to construct it.
+        // NOT_FOUND responses are cached too, with their own shorter time to live, server errors are not.
+        // A response whose body doesn't fit in cache memory is not cached either
+        CacheEntry cacheEntry = isCacheEnabled && cachePolicy.isCacheable(response) ? cachePolicy.newEntry(toyName,response) : null;
+        if(cacheEntry!=null && !cache.putIfNotInvalidated(toyName,cacheEntry,generation)){
+            LOGGER.debug(() -> "Item was invalidated while it was fetched, not caching it "+toyName);
+        }
+        return response;
+    }
+
+    @Override
+    public Response queryBatch(HttpExchange exchange) {
+        Response response;
+        String names = getQueryParam(exchange.getRequestURI(),"names");
+        String[] itemNames = names==null ? new String[0] : names.split(",");
+        LOGGER.debug(() -> "Received batch query request by front-end service for "+itemNames.length+" items");
+        if(names==null || !names.matches("\\w+(,\\w+)*") || itemNames.length>MAX_BATCH_SIZE){
+            int errorCode = StatusCode.BAD_REQUEST.getCode();
+            response = new Response(errorCode,prepareErrorResponse(errorCode,"Bad Request"));
+            sendResponse(exchange,response);
+            return response;
         }
-        System.out.println("Cache missed, calling catalog service");
+
+        // answer cached items locally and collect the misses for a single request to each catalog shard
+        Map<String, byte[]> itemResponses = new HashMap<>();
+        List<String> missedItems = new ArrayList<>();
+        Set<String> staleItems = new HashSet<>();
+        long now = System.nanoTime();
+        for(String itemName:itemNames){
+            CacheEntry cacheEntry = isCacheEnabled ? cache.get(itemName) : null;
+            Response cachedResponse = cacheEntry!=null && cacheEntry.isFresh(now) ? cacheEntry.getResponse() : null;
+            if(cachedResponse!=null){
+                itemResponses.put(itemName,cachedResponse.getBody());
+            }else if(!missedItems.contains(itemName)){
+                missedItems.add(itemName);
+                if(cacheEntry!=null && cacheEntry.isStale()){
+                    staleItems.add(itemName);
+                }
+            }
+        }
+        if(!missedItems.isEmpty()){
+            LOGGER.debug(() -> "Cache missed for "+missedItems.size()+" items, calling catalog service");
+            for(Map.Entry<String, List<String>> shardItems:catalogShards.groupByShard(missedItems).entrySet()){
+                // invalidated items are read from primary, a read replica may not have their change yet
+                boolean isReplicaAllowed = Collections.disjoint(shardItems.getValue(),staleItems);
+                fetchShardBatch(shardItems.getKey(),shardItems.getValue(),isReplicaAllowed,itemResponses);
+            }
+        }
+
+        JsonWriter items = JsonWriter.get().beginObject().name("items").beginArray();
+        for(String itemName:itemNames){
+            items.rawValue(itemResponses.get(itemName));
+        }
+        response = new Response(StatusCode.OK.getCode(),items.endArray().endObject().toByteArray());
+        sendResponse(exchange,response);
+        return response;
+    }
+
+    @Override
+    public Response listItems(HttpExchange exchange) {
+        Response response;
+        URI uri = exchange.getRequestURI();
+        String prefixParam = getQueryParam(uri,"prefix");
+        String after = getQueryParam(uri,"after");
+        String limitParam = getQueryParam(uri,"limit");
+        String prefix = prefixParam==null ? "" : prefixParam;
+        int limit = DEFAULT_PAGE_SIZE;
         try{
-            String url = CATALOG_SERVICE_URL + uri;
-            response = makeGetRequest(url);
-            // Cache the whole response object, because we don't want to construct it.
-            // Caching even NOT_FOUND requests because, we are not making any changes to our product catalog in this lab, if real-time additions can be done to file then this is not possible or have to do invalidation
-            if(isCacheEnabled){
-                cache.put(toyName,response);
+            if(limitParam!=null){
+                limit = Integer.parseInt(limitParam);
+            }
+        }catch (NumberFormatException e){
+            limit = -1;
+        }
+        if(!prefix.matches("\\w*") || (after!=null && !after.matches("\\w+")) || limit<=0 || limit>MAX_PAGE_SIZE){
+            int errorCode = StatusCode.BAD_REQUEST.getCode();
+            response = new Response(errorCode,prepareErrorResponse(errorCode,"Bad Request"));
+            sendResponse(exchange,response);
+            return response;
+        }
+        LOGGER.debug(() -> "Received list request by front-end service "+uri);
+
+        // pages are cached by their normalized request uri, which can't be an item name
+        String pageUri = "/products?prefix=" + prefix + (after==null ? "" : "&after=" + after) + "&limit=" + limit;
+        CacheEntry cacheEntry = isCacheEnabled ? cache.get(pageUri) : null;
+        Response cachedResponse = cacheEntry!=null && cacheEntry.isFresh(System.nanoTime()) ? cacheEntry.getResponse() : null;
+        if(cachedResponse!=null){
+            LOGGER.debug(() -> "Fetching page from cache "+pageUri);
+            response = cachedResponse;
+        }else{
+            // an item of the page invalidated while the shards are read drops the page instead of caching it
+            long generation = isCacheEnabled ? cache.getGeneration() : 0;
+            try{
+                // every shard lists its own items, the page is the first items of all shards in name order
+                // items keep the bytes catalog encoded them with, the same as their single query and batch responses
+                TreeMap<String, byte[]> items = new TreeMap<>();
+                boolean hasMore = false;
+                for(String shardId:catalogShards.getShardUrls().keySet()){
+                    Response shardPage = fetchShardPage(shardId,pageUri);
+                    JSONObject shardJson = new JSONObject(shardPage.getMessage());
+                    JSONArray shardItems = shardJson.getJSONArray("items");
+                    List<byte[]> itemBodies = splitItems(shardPage.getBody());
+                    if(itemBodies.size()!=shardItems.length()){
+                        throw new IOException("Page of catalog shard "+shardId+" doesn't match its items");
+                    }
+                    for(int i=0;i<shardItems.length();i++){
+                        items.put(shardItems.getJSONObject(i).getJSONObject("data").getString("name"),itemBodies.get(i));
+                    }
+                    hasMore |= !shardJson.isNull("next");
+                }
+                List<String> itemNames = new ArrayList<>();
+                JsonWriter page = JsonWriter.get().beginObject().name("items").beginArray();
+                for(Map.Entry<String, byte[]> item:items.entrySet()){
+                    if(itemNames.size()==limit){
+                        hasMore = true;
+                        break;
+                    }
+                    page.rawValue(item.getValue());
+                    itemNames.add(item.getKey());
+                }
+                String next = hasMore && !itemNames.isEmpty() ? itemNames.get(itemNames.size()-1) : null;
+                response = new Response(StatusCode.OK.getCode(),page.endArray().name("next").value(next).endObject().toByteArray());
+                CacheEntry pageEntry = isCacheEnabled ? cachePolicy.newEntry(pageUri,response) : null;
+                if(pageEntry!=null){
+                    // page is recorded first, an invalidation of its items after the put finds and drops it
+                    cachedPagesMetadata.addPage(pageUri,itemNames);
+                    if(!cache.putIfNoneInvalidated(pageUri,pageEntry,generation)){
+                        cachedPagesMetadata.removePage(pageUri);
+                    }
+                }
+            }catch (Exception exception){
+                LOGGER.warn(() -> "Error while listing items from catalog service "+exception);
+                int errorCode = StatusCode.INTERNAL_SERVER_ERROR.getCode();
+                response = new Response(errorCode,prepareErrorResponse(errorCode,"INTERNAL_SERVER_ERROR"));
             }
-        }catch (Exception exception){
-            int errorCode = StatusCode.INTERNAL_SERVER_ERROR.getCode();
-            String message = "INTERNAL_SERVER_ERROR";
-            response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange,response);
-        System.out.println("Response message by front-end service for query request: "+ response.getMessage());
         return response;
     }
 
+    /**
+     * Method to fetch a page of a catalog shard, from a read replica within the lag bound or from the shard's primary.
+     * A read failed on a replica is retried on primary.
+     * @param shardId - id of shard
+     * @param pageUri - uri of the page
+     * @return - response with the page of the shard, its items and the cursor of its next page
+     * @throws IOException - if catalog can't be reached or fails the request
+     */
+    private Response fetchShardPage(String shardId, String pageUri) throws IOException {
+        String catalogServiceUrl = catalogReplicasMetadata.readUrl(shardId);
+        Response catalogResponse;
+        try{
+            catalogResponse = makeGetRequest(catalogServiceUrl + pageUri);
+        }catch (IOException e){
+            if(!catalogReplicasMetadata.isReplica(catalogServiceUrl)){
+                throw e;
+            }
+            catalogReplicasMetadata.markDown(catalogServiceUrl);
+            catalogResponse = makeGetRequest(catalogShards.getUrl(shardId) + pageUri);
+        }
+        if(catalogResponse.getStatusCode()!=StatusCode.OK.getCode()){
+            throw new IOException("List request failed with status "+catalogResponse.getStatusCode());
+        }
+        return catalogResponse;
+    }
+
+    /**
+     * Method to read an item from a read replica of its shard within the lag bound, or from the shard's primary.
+     * A read failed on a replica is retried on primary.
+     * @param toyName - Name of the item
+     * @param uri - request uri
+     * @param ifNoneMatch - version tag held by client, may be null
+     * @return - Response of catalog service
+     */
+    private Response readFromCatalog(String toyName, URI uri, String ifNoneMatch) throws IOException {
+        String catalogServiceUrl = catalogReplicasMetadata.readUrlOf(toyName);
+        try{
+            return makeGetRequest(catalogServiceUrl + uri,ifNoneMatch);
+        }catch (IOException e){
+            if(!catalogReplicasMetadata.isReplica(catalogServiceUrl)){
+                throw e;
+            }
+            catalogReplicasMetadata.markDown(catalogServiceUrl);
+            return makeGetRequest(catalogShards.urlOf(toyName) + uri,ifNoneMatch);
+        }
+    }
+
+    /**
+     * Method to fetch items of a catalog shard in one request, from a read replica within the lag bound if allowed,
+     * else from the shard's primary. Items catalog couldn't answer are reported inline.
+     * @param shardId - id of shard owning the items
+     * @param itemNames - names of items
+     * @param isReplicaAllowed - false to read from primary
+     * @param itemResponses - item name to its encoded response, filled with the fetched items
+     */
+    private void fetchShardBatch(String shardId, List<String> itemNames, boolean isReplicaAllowed, Map<String, byte[]> itemResponses){
+        String catalogServiceUrl = isReplicaAllowed ? catalogReplicasMetadata.readUrl(shardId) : catalogShards.getUrl(shardId);
+        try{
+            try{
+                fetchBatch(catalogServiceUrl,itemNames,itemResponses);
+            }catch (IOException e){
+                if(!catalogReplicasMetadata.isReplica(catalogServiceUrl)){
+                    throw e;
+                }
+                catalogReplicasMetadata.markDown(catalogServiceUrl);
+                fetchBatch(catalogShards.getUrl(shardId),itemNames,itemResponses);
+            }
+        }catch (Exception exception){
+            LOGGER.warn(() -> "Error while fetching batch from catalog service "+catalogServiceUrl+" "+exception);
+            // report the items catalog couldn't answer inline, items of other shards are still returned
+            int errorCode = StatusCode.INTERNAL_SERVER_ERROR.getCode();
+            for(String itemName:itemNames){
+                if(!itemResponses.containsKey(itemName)){
+                    itemResponses.put(itemName,prepareErrorResponse(errorCode,"INTERNAL_SERVER_ERROR"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to fetch items from a catalog instance in one request and cache them.
+     * @param catalogServiceUrl - URL of catalog instance
+     * @param itemNames - names of items
+     * @param itemResponses - item name to its encoded response, filled with the fetched items
+     * @throws IOException - if catalog can't be reached
+     */
+    private void fetchBatch(String catalogServiceUrl, List<String> itemNames, Map<String, byte[]> itemResponses) throws IOException {
+        long[] generations = new long[itemNames.size()];
+        for(int i=0;isCacheEnabled && i<generations.length;i++){
+            generations[i] = cache.getGeneration(itemNames.get(i));
+        }
+        Response catalogResponse = makeGetRequest(catalogServiceUrl + "/products?names=" + String.join(",",itemNames));
+        byte[] body = catalogResponse.getBody();
+        JSONObject batch = new JSONObject(catalogResponse.getMessage());
+        JSONArray items = batch.getJSONArray("items");
+        JSONArray versions = batch.optJSONArray("versions");
+        List<byte[]> itemBodies = splitItems(body);
+        if(items.length()!=itemNames.size() || itemBodies.size()!=itemNames.size()){
+            throw new IOException("Batch response of catalog doesn't match the requested items");
+        }
+        for(int i=0;i<itemNames.size();i++){
+            JSONObject item = items.getJSONObject(i);
+            byte[] itemBody = itemBodies.get(i);
+            // a found item has the bytes and version of its single query, so it is cached with its version tag and
+            // can be revalidated later. A missing item's body names the item unlike a single query's, it isn't cached
+            if(!item.has("error") && versions!=null && !versions.isNull(i)){
+                Response itemResponse = new Response(StatusCode.OK.getCode(),itemBody,"\"" + versions.getLong(i) + "\"");
+                CacheEntry cacheEntry = isCacheEnabled ? cachePolicy.newEntry(itemNames.get(i),itemResponse) : null;
+                if(cacheEntry!=null){
+                    cache.putIfNotInvalidated(itemNames.get(i),cacheEntry,generations[i]);
+                }
+            }
+            itemResponses.put(itemNames.get(i),itemBody);
+        }
+    }
+
+    /**
+     * Method to split the "items" array of a catalog batch response or page into the original bytes of every item, so
+     * they are cached and sent as catalog encoded them instead of being serialized again.
+     * @param body - batch response or page of catalog, starting with {"items":[
+     * @return - bytes of every item in order
+     * @throws IOException - if the response isn't a batch response
+     */
+    private static List<byte[]> splitItems(byte[] body) throws IOException {
+        if(body.length<BATCH_PREFIX.length || !Arrays.equals(Arrays.copyOf(body,BATCH_PREFIX.length),BATCH_PREFIX)){
+            throw new IOException("Unexpected response of catalog, expected a list of items");
+        }
+        List<byte[]> itemBodies = new ArrayList<>();
+        int depth = 0;
+        int start = BATCH_PREFIX.length;
+        boolean isInString = false;
+        for(int i=start;i<body.length;i++){
+            byte b = body[i];
+            if(isInString){
+                if(b=='\\'){
+                    i++;
+                }else if(b=='"'){
+                    isInString = false;
+                }
+            }else if(b=='"'){
+                isInString = true;
+            }else if(b=='{' || b=='['){
+                depth++;
+            }else if(b=='}' || b==']'){
+                if(depth==0){
+                    if(i>start){
+                        itemBodies.add(Arrays.copyOfRange(body,start,i));
+                    }
+                    return itemBodies;
+                }
+                depth--;
+            }else if(b==',' && depth==0){
+                itemBodies.add(Arrays.copyOfRange(body,start,i));
+                start = i+1;
+            }
+        }
+        throw new IOException("Truncated list of items from catalog");
+    }
+
     @Override
     public Response queryOrder(HttpExchange exchange) {
         Response response;
         // Send get request to the catalog service using same uri
         URI uri = exchange.getRequestURI();
-        System.out.println("Front-End received query order details request "+uri);
+        LOGGER.debug(() -> "Front-End received query order details request "+uri);
         String orderId = uri.getPath().substring("/orders/".length());
         try{
-            String url = ORDER_SERVICE_URL + uri;
-            response = makeGetRequest(url);
-        }catch (ConnectException e){
-            // handle connection exception
-            handleConnectionFailure();
-            // retry request after leader re-election
-            return queryOrder(exchange);
+            // concurrent queries of an order share one request to the leader
+            response = ORDER_FETCHES.execute(orderId, () -> fetchOrder(uri));
         }catch (Exception exception){
             int errorCode = StatusCode.INTERNAL_SERVER_ERROR.getCode();
             String message = "INTERNAL_SERVER_ERROR";
             response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange,response);
-        System.out.println("Response message by front-end service for query request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by front-end service for query request: "+ response.getMessage());
+        }
         return response;
     }
 
+    /**
+     * Method to fetch order details from the leader of order service, re-electing the leader if it is down.
+     * @param uri - Request uri
+     * @return - Response of order service
+     * @throws IOException - if order service can't be reached
+     */
+    private Response fetchOrder(URI uri) throws IOException {
+        try{
+            return makeGetRequest(ORDER_SERVICE_URL + uri);
+        }catch (ConnectException e){
+            // handle connection exception
+            handleConnectionFailure();
+            ORDER_SERVICE_URL = orderServiceReplicasMetadata.getLeaderNode().getUrl();
+            // retry request after leader re-election
+            return fetchOrder(uri);
+        }
+    }
+
     @Override
     public Response buy(HttpExchange exchange) {
         Response response;
@@ -283,7 +601,7 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
         if(requestBody!= null){
             try{
                 URI uri = exchange.getRequestURI();
-                System.out.println("Received buy request by front-end service");
+                LOGGER.debug("Received buy request by front-end service");
                 String url = ORDER_SERVICE_URL + uri;
                 response = makePostRequest(url,requestBody);
             } catch (ConnectException e){
@@ -303,13 +621,15 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
             response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange, response);
-        System.out.println("Response message by front-end service for buy request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by front-end service for buy request: "+ response.getMessage());
+        }
         return response;
     }
 
     @Override
     public Response invalidateCache(HttpExchange exchange){
-        System.out.println("Invalidating cache request");
+        LOGGER.debug("Invalidating cache request");
         Response response;
         String requestBody = getRequestBody(exchange);
         // Send create order request to order service.
@@ -317,12 +637,12 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
             try{
                 InvalidateCacheDto invalidateCacheDto = InvalidateCacheDto.fromJsonString(requestBody);
                 String itemName = invalidateCacheDto.getName();
-                // Removing item from cache
-                System.out.println("Invalidating cache for item"+itemName);
-                cache.remove(itemName);
+                // Marking cached item stale, it is revalidated with catalog on next query
+                LOGGER.debug(() -> "Invalidating cache for item"+itemName);
+                markStale(itemName);
                 response = new Response(StatusCode.OK.getCode(), "Success");
             }catch (Exception e){
-                System.out.println(e);
+                LOGGER.warn("Error while invalidating cache", e);
                 int errorCode = StatusCode.BAD_REQUEST.getCode();
                 String message = "Bad Request";
                 response = new Response(errorCode,prepareErrorResponse(errorCode,message));
@@ -333,13 +653,15 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
             response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange, response);
-        System.out.println("Response message by front-end service for buy request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by front-end service for buy request: "+ response.getMessage());
+        }
         return response;
     }
 
     @Override
     public Response invalidateCacheBulk(HttpExchange exchange){
-        System.out.println("Invalidating cache request with bulk payload");
+        LOGGER.debug("Invalidating cache request with bulk payload");
         Response response;
         String requestBody = getRequestBody(exchange);
         // Send create order request to order service.
@@ -347,8 +669,8 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
             try{
                 JSONArray itemsList = new JSONArray(requestBody);
                 for(Object itemName:itemsList){
-                    // Removing item from cache
-                    cache.remove(itemName.toString());
+                    // Marking cached item stale
+                    markStale(itemName.toString());
                 }
 
                 response = new Response(StatusCode.OK.getCode(), "Success");
@@ -363,7 +685,52 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
             response = new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange, response);
-        System.out.println("Response message by front-end service for buy request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by front-end service for buy request: "+ response.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * Method to mark a cached item stale, entries without a version tag can't be revalidated and are removed.
+     * @param itemName - Name of the item
+     */
+    private void markStale(String itemName){
+        markStale(cache, cachedPagesMetadata, itemName);
+    }
+
+    /**
+     * Method to mark the cached response of an item stale, it is revalidated with catalog on the next query.
+     * Responses without a version tag can't be revalidated and are dropped, as are the cached pages showing the item.
+     * Fetches of the item or of any page started before are not cached, see TinyLfuCache.invalidate.
+     * @param cache - front-end cache
+     * @param cachedPagesMetadata - items on the listing pages held in cache
+     * @param itemName - name of item which changed
+     */
+    public static void markStale(TinyLfuCache<String, CacheEntry> cache, CachedPagesMetadata cachedPagesMetadata, String itemName){
+        // the item goes first: a page put after it was fetched before it and is dropped, a page put before it is
+        // already recorded and is found below
+        cache.invalidate(itemName, cacheEntry -> cacheEntry.getEtag()!=null ? cacheEntry.markStale() : null);
+        for(String pageUri:cachedPagesMetadata.removePagesOf(itemName)){
+            cache.invalidate(pageUri, page -> null);
+        }
+    }
+
+    @Override
+    public Response getMetrics(HttpExchange exchange) {
+        JSONObject metrics = new JSONObject();
+        metrics.put("routes", ROUTES.statsToJson());
+        metrics.put("catalogShards", catalogShards.getShardUrls());
+        metrics.put("catalogReplicas", catalogReplicasMetadata.toJson());
+        metrics.put("catalogChangeFeed", catalogChangeSubscriber==null ? new JSONArray() : catalogChangeSubscriber.toJson());
+        metrics.put("cache", cache==null ? JSONObject.NULL : cache.toJson());
+        metrics.put("cachePolicy", cache==null ? JSONObject.NULL : cachePolicy.toJson());
+        metrics.put("cacheMemory", cache==null ? JSONObject.NULL : cachePolicy.getSlabStore().toJson());
+        metrics.put("cachedPages", cachedPagesMetadata.size());
+        metrics.put("singleFlight", new JSONObject().put("products", PRODUCT_FETCHES.toJson()).put("orders", ORDER_FETCHES.toJson()));
+        metrics.put("logging", Logger.statsToJson());
+        Response response = new Response(StatusCode.OK.getCode(),metrics.toString());
+        sendResponse(exchange,response);
         return response;
     }
 
@@ -383,46 +750,12 @@ public class FrontEndRequestHandlerImpl implements Runnable, FrontEndRequestHand
      * @param errorMessage - Error message
      * @return - JSON response of format {"error": {"code": 404,"message": "Item not found"}}
      */
-    private String prepareErrorResponse(int errorCode,String errorMessage){
-        System.out.println("Preparing error response");
-        try {
-            // Create a map for the error details
-            Map<String, Object> errorObject = new HashMap<>();
-            errorObject.put("code", errorCode);
-            errorObject.put("message", errorMessage);
-
-            // Create a map for the error response
-            Map<String, Object> responseBody = new HashMap<>();
-            responseBody.put("error", errorObject);
-
-            // Convert the map to JSON string
-            String jsonResponse = mapToJson(responseBody);
-
-            // Print the JSON response
-            System.out.println("Response string: " + jsonResponse);
-
-            return jsonResponse;
-        } catch (Exception e) {
-            System.out.println("Error while preparing response body: " + e);
-            return null;
-        }
-    }
-
-    // Helper method to convert Map to JSON string
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (json.length() > 1) {
-                json.append(",");
-            }
-            json.append("\"").append(entry.getKey()).append("\":");
-            if (entry.getValue() instanceof Map) {
-                json.append(mapToJson((Map<String, Object>) entry.getValue()));
-            } else {
-                json.append("\"").append(entry.getValue()).append("\"");
-            }
-        }
-        json.append("}");
-        return json.toString();
+    private byte[] prepareErrorResponse(int errorCode,String errorMessage){
+        return JsonWriter.get()
+                .beginObject().name("error").beginObject()
+                .name("code").value(errorCode)
+                .name("message").value(errorMessage)
+                .endObject().endObject()
+                .toByteArray();
     }
 }
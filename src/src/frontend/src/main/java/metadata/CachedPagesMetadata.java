@@ -0,0 +1,84 @@
+package metadata;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CachedPagesMetadata keeps the items on every listing page held in front-end cache, and the reverse index from an item
+ * to the pages it is on. A change of an item drops the cached pages showing it, so a cached page never shows an item
+ * older than the one catalog has told the cache about. A page is forgotten when it is dropped or evicted from cache.
+ */
+public class CachedPagesMetadata {
+    private final Map<String, List<String>> pageItems = new HashMap<>(); // page cache key -> names of its items
+    private final Map<String, Set<String>> itemPages = new HashMap<>(); // item name -> cache keys of its pages
+
+    /**
+     * Method to record a page put in cache.
+     * @param pageKey - cache key of the page
+     * @param itemNames - names of the items on the page
+     */
+    public synchronized void addPage(String pageKey, List<String> itemNames){
+        removePage(pageKey);
+        pageItems.put(pageKey, itemNames);
+        for(String itemName:itemNames){
+            itemPages.computeIfAbsent(itemName, name -> new HashSet<>()).add(pageKey);
+        }
+    }
+
+    /**
+     * Method to forget a page dropped or evicted from cache, keys which are not pages are ignored.
+     * @param pageKey - cache key of the page
+     */
+    public synchronized void removePage(String pageKey){
+        List<String> itemNames = pageItems.remove(pageKey);
+        if(itemNames==null){
+            return;
+        }
+        for(String itemName:itemNames){
+            Set<String> pages = itemPages.get(itemName);
+            if(pages!=null){
+                pages.remove(pageKey);
+                if(pages.isEmpty()){
+                    itemPages.remove(itemName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to forget the pages showing an item which changed.
+     * @param itemName - name of the item
+     * @return - cache keys of the pages to drop from cache
+     */
+    public synchronized Set<String> removePagesOf(String itemName){
+        Set<String> pages = itemPages.get(itemName);
+        if(pages==null){
+            return Collections.emptySet();
+        }
+        Set<String> removedPages = new HashSet<>(pages);
+        for(String pageKey:removedPages){
+            removePage(pageKey);
+        }
+        return removedPages;
+    }
+
+    /**
+     * Method to forget every page, when the whole cache is dropped.
+     */
+    public synchronized void clear(){
+        pageItems.clear();
+        itemPages.clear();
+    }
+
+    /**
+     * Method to get the number of cached pages.
+     * @return - number of pages
+     */
+    public synchronized int size(){
+        return pageItems.size();
+    }
+}
@@ -0,0 +1,184 @@
+package metadata;
+
+import enums.StatusCode;
+import model.CatalogReplica;
+import model.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.Logger;
+import utils.ShardMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static utils.HttpUtils.makeGetRequest;
+
+/**
+ * CatalogReplicasMetadata class keeps the read replicas of every catalog shard and picks the catalog instance a read is
+ * sent to. Reads are spread round robin over the replicas whose replication lag is within the bound, when none of them
+ * is, the read goes to the shard's primary. Lag of the replicas is polled in background from their /replication
+ * endpoint, a replica which fails a request is skipped till it reports its lag again.
+ */
+public class CatalogReplicasMetadata {
+    private static final Logger LOGGER = Logger.getLogger(CatalogReplicasMetadata.class);
+
+    private final ShardMap catalogShards;
+    private final Map<String, List<CatalogReplica>> shardReplicas; // shard id -> its replicas
+    private final Map<String, AtomicInteger> nextReplica; // shard id -> round robin position
+    private final long maxLagMillis;
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private ScheduledExecutorService executorService;
+
+    /**
+     * Constructor to create the replicas of every shard and start polling their lag.
+     * @param catalogShards - catalog shard map with the replicas of each shard
+     * @param maxLagMillis - replicas lagging behind primary by more than this are not read from
+     * @param pollIntervalMillis - interval of polling the lag of replicas
+     */
+    public CatalogReplicasMetadata(ShardMap catalogShards, long maxLagMillis, long pollIntervalMillis){
+        this.catalogShards = catalogShards;
+        this.maxLagMillis = maxLagMillis;
+        this.shardReplicas = new LinkedHashMap<>();
+        this.nextReplica = new LinkedHashMap<>();
+        boolean hasReplicas = false;
+        for(String shardId:catalogShards.getShardUrls().keySet()){
+            List<CatalogReplica> replicas = new ArrayList<>();
+            for(String replicaUrl:catalogShards.getReplicaUrls(shardId)){
+                replicas.add(new CatalogReplica(replicaUrl));
+            }
+            shardReplicas.put(shardId, Collections.unmodifiableList(replicas));
+            nextReplica.put(shardId, new AtomicInteger());
+            hasReplicas |= !replicas.isEmpty();
+        }
+        if(hasReplicas){
+            startPolling(pollIntervalMillis);
+        }
+    }
+
+    /**
+     * Method to pick the catalog instance to read an item from.
+     * @param itemName - name of item
+     * @return - URL of a replica within the lag bound, or of primary
+     */
+    public String readUrlOf(String itemName){
+        return readUrl(catalogShards.shardOf(itemName));
+    }
+
+    /**
+     * Method to pick the catalog instance to read items of a shard from.
+     * @param shardId - id of shard
+     * @return - URL of a replica within the lag bound, or of primary
+     */
+    public String readUrl(String shardId){
+        List<CatalogReplica> replicas = shardReplicas.get(shardId);
+        if(replicas!=null && !replicas.isEmpty()){
+            int start = nextReplica.get(shardId).getAndIncrement();
+            for(int i=0;i<replicas.size();i++){
+                CatalogReplica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                long lagMillis = replica.getLagMillis();
+                if(lagMillis>=0 && lagMillis<=maxLagMillis){
+                    replica.recordRead();
+                    return replica.getUrl();
+                }
+            }
+            // every replica of the shard is down or too far behind
+            fallbacks.increment();
+        }
+        primaryReads.increment();
+        return catalogShards.getUrl(shardId);
+    }
+
+    /**
+     * Method to stop reading from a replica which failed a request, till it reports its lag again.
+     * @param url - URL of the catalog instance which failed
+     */
+    public void markDown(String url){
+        for(List<CatalogReplica> replicas:shardReplicas.values()){
+            for(CatalogReplica replica:replicas){
+                if(replica.getUrl().equals(url)){
+                    replica.setLagMillis(-1);
+                    LOGGER.warn("Catalog replica "+url+" failed, reading from other replicas or primary");
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to check if a URL is a read replica, reads failed on a replica can be retried on primary.
+     * @param url - URL of catalog instance
+     * @return - true if it is a replica
+     */
+    public boolean isReplica(String url){
+        for(List<CatalogReplica> replicas:shardReplicas.values()){
+            for(CatalogReplica replica:replicas){
+                if(replica.getUrl().equals(url)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to schedule polling of replication lag of all replicas.
+     * @param pollIntervalMillis - interval of polling
+     */
+    private void startPolling(long pollIntervalMillis){
+        executorService = Executors.newScheduledThreadPool(1, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-replica-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleWithFixedDelay(this::pollReplicas, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollReplicas(){
+        for(List<CatalogReplica> replicas:shardReplicas.values()){
+            for(CatalogReplica replica:replicas){
+                long lagMillis = -1;
+                try{
+                    Response response = makeGetRequest(replica.getUrl() + "/replication");
+                    if(response.getStatusCode()==StatusCode.OK.getCode()){
+                        lagMillis = new JSONObject(response.getMessage()).optLong("lagMillis",-1);
+                    }
+                }catch (Exception e){
+                    LOGGER.debug(() -> "Catalog replica "+replica.getUrl()+" is not reachable "+e);
+                }
+                replica.setLagMillis(lagMillis);
+            }
+        }
+    }
+
+    /**
+     * Method to convert the replicas and read counters to JSON for /metrics endpoint.
+     * @return - JSON object with lag and reads of every replica, primary reads and fallbacks to primary
+     */
+    public JSONObject toJson(){
+        JSONObject json = new JSONObject();
+        json.put("maxLagMillis", maxLagMillis);
+        json.put("primaryReads", primaryReads.sum());
+        json.put("fallbacksToPrimary", fallbacks.sum());
+        JSONArray replicasJson = new JSONArray();
+        for(Map.Entry<String, List<CatalogReplica>> shard:shardReplicas.entrySet()){
+            for(CatalogReplica replica:shard.getValue()){
+                JSONObject replicaJson = new JSONObject();
+                replicaJson.put("shard", shard.getKey());
+                replicaJson.put("url", replica.getUrl());
+                replicaJson.put("lagMillis", replica.getLagMillis());
+                replicaJson.put("reads", replica.getReads());
+                replicasJson.put(replicaJson);
+            }
+        }
+        json.put("replicas", replicasJson);
+        return json;
+    }
+}
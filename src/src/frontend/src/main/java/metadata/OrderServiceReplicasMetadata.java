@@ -6,6 +6,7 @@ import model.OrderServerReplica;
 import model.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -20,6 +21,7 @@ import static utils.HttpUtils.makeGetRequest;
 import static utils.HttpUtils.makePostRequest;
 
 public class OrderServiceReplicasMetadata {
+    private static final Logger LOGGER = Logger.getLogger(OrderServiceReplicasMetadata.class);
 
     private Map<Integer,OrderServerReplica> orderServiceReplicas;
 
@@ -46,7 +48,7 @@ public class OrderServiceReplicasMetadata {
      */
     public OrderServerReplica findLeaderNode(){
 
-        System.out.println("Trying to find leader node");
+        LOGGER.info("Trying to find leader node");
         // init dummy replica
         OrderServerReplica leaderReplica = new OrderServerReplica(-1,"");
         for(OrderServerReplica replica:orderServiceReplicas.values()){
@@ -56,7 +58,7 @@ public class OrderServiceReplicasMetadata {
                 }
             }
         }
-        System.out.println("Elected leader with Id: "+leaderReplica.getId());
+        LOGGER.info("Elected leader with Id: "+leaderReplica.getId());
         setLeaderNode(leaderReplica);
         // get follower Nodes
         List<OrderServerReplica> followerNodes = new ArrayList<>();
@@ -85,7 +87,7 @@ public class OrderServiceReplicasMetadata {
             Response response = makeGetRequest(serverUrl);
             return response.getStatusCode() == StatusCode.OK.getCode();
         } catch (IOException e) {
-            System.out.println("Error checking health check for replica "+replica.getId());
+            LOGGER.warn(() -> "Error checking health check for replica "+replica.getId());
             return false;
         }
     }
@@ -93,7 +95,7 @@ public class OrderServiceReplicasMetadata {
     private void pollReplicas() {
         for (OrderServerReplica replica : orderServiceReplicas.values()) {
             if (!checkOrderServiceReplicaStatus(replica)) {
-                System.out.println("Health check failed for replica with Id "+replica.getId());
+                LOGGER.warn(() -> "Health check failed for replica with Id "+replica.getId());
                 removeNodeFromPool(replica);
             }
         }
@@ -108,16 +110,16 @@ public class OrderServiceReplicasMetadata {
      * @param faultyReplica - crashed replica
      */
     public void removeNodeFromPool(OrderServerReplica faultyReplica){
-        System.out.println("Removing crashed node from pool of cluster");
+        LOGGER.info("Removing crashed node from pool of cluster");
         this.orderServiceReplicas.remove(faultyReplica.getId());
 
         // if leader node is crashed , re-elect the leader
         if(faultyReplica.getId() == leaderNode.getId()){
-            System.out.println("Crashed replica is leader, so re-electing leader");
+            LOGGER.warn("Crashed replica is leader, so re-electing leader");
             findLeaderNode();
         }else{
             // update leader about faulty node,so that it can stop propagating to faulty/crashed node
-            System.out.println("update leader about faulty node,so that it can stop propagating to faulty/crashed node.");
+            LOGGER.warn("update leader about faulty node,so that it can stop propagating to faulty/crashed node.");
             List<OrderServerReplica> orderServerReplicasList = new ArrayList<>();
             orderServerReplicasList.add(faultyReplica);
             notifyLeaderNode("delete",orderServerReplicasList);
@@ -133,9 +135,9 @@ public class OrderServiceReplicasMetadata {
         // update leaderNode about new node. If update succeeds, add node.
         List<OrderServerReplica> orderServerReplicasList = new ArrayList<>();
         orderServerReplicasList.add(orderServerReplica);
-        System.out.println("Notifying leader about newly joined node..");
+        LOGGER.info("Notifying leader about newly joined node..");
         if(notifyLeaderNode("add",orderServerReplicasList)){
-            System.out.println("Leader has accepted the new node with Id "+orderServerReplica.getId());
+            LOGGER.info(() -> "Leader has accepted the new node with Id "+orderServerReplica.getId());
             this.orderServiceReplicas.put(orderServerReplica.getId(),orderServerReplica);
             return true;
         }
@@ -149,7 +151,7 @@ public class OrderServiceReplicasMetadata {
      * @param followerNodes - follower node details
      */
     public Boolean notifyLeaderNode(String update, List<OrderServerReplica> followerNodes){
-      System.out.println("Notifying leader node about followers...");
+      LOGGER.info("Notifying leader node about followers...");
       OrderServerReplica leaderReplica = getLeaderNode();
       String serverUrl = leaderReplica.getUrl()+"/updateFollowerNodes";
       JSONObject jsonObject = new JSONObject();
@@ -169,7 +171,7 @@ public class OrderServiceReplicasMetadata {
               return true;
           }
       }catch (Exception e){
-          System.out.println("Error while updating leader node about faulty node"+e);
+          LOGGER.warn(() -> "Error while updating leader node about faulty node"+e);
       }
       return false;
     }
@@ -180,7 +182,7 @@ public class OrderServiceReplicasMetadata {
      */
     public void notifyFollowers(OrderServerReplica leaderReplica){
         for(OrderServerReplica replica:orderServiceReplicas.values()){
-            System.out.println("Notifying node "+replica.getId()+"about leader...");
+            LOGGER.info(() -> "Notifying node "+replica.getId()+"about leader...");
             String serverUrl = replica.getUrl()+"/updateLeaderNode";
             JSONObject requestBody = new JSONObject();
             requestBody.put("id",leaderReplica.getId());
@@ -188,7 +190,7 @@ public class OrderServiceReplicasMetadata {
             try{
                 makePostRequest(serverUrl,requestBody.toString());
             }catch (Exception e){
-                System.out.println("Error updating follower node about the leader "+ replica.getId());
+                LOGGER.warn(() -> "Error updating follower node about the leader "+ replica.getId());
             }
         }
     }
@@ -0,0 +1,134 @@
+package model;
+
+import utils.SlabStore;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * CacheEntry class is a product response held in front-end cache.
+ * Invalidation from catalog marks the entry stale instead of dropping it, a stale entry is revalidated with catalog
+ * using its version tag, so an unchanged item costs a 304 without body instead of a full fetch.
+ * An entry also expires when its time to live is over, an expired entry is revalidated the same way.
+ * The body of the response is kept off heap in a SlabStore, on heap the entry only holds status, version tag and the
+ * handle of the body, which is freed by release() once the entry leaves the cache.
+ */
+public class CacheEntry {
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+    private static final AtomicIntegerFieldUpdater<CacheEntry> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "refreshing");
+
+    /**
+     * Constructor to create a fresh entry of a stored response body.
+     * @param store - store holding the body
+     * @param handle - handle of the body in store
+     * @param length - length of the body
+     * @param weight - bytes the body takes in store
+     * @param statusCode - status code of the response
+     * @param etag - version tag of the response, null if it can't be revalidated
+     * @param expiresAt - System.nanoTime() the entry expires at, NO_EXPIRY if it doesn't
+     */
+    public CacheEntry(SlabStore store, long handle, int length, int weight, int statusCode, String etag, long expiresAt) {
+        this.store = store;
+        this.handle = handle;
+        this.length = length;
+        this.weight = weight;
+        this.statusCode = statusCode;
+        this.etag = etag;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Method to read the response from store.
+     * @return - response, null if the entry left the cache and its body was reused meanwhile
+     */
+    public Response getResponse() {
+        byte[] body = store.read(handle, length);
+        return body==null ? null : new Response(statusCode, body, etag);
+    }
+
+    /**
+     * Method to check if the body of the entry was dropped from store to make room for other bodies.
+     * @return - true if the body can't be read anymore
+     */
+    public boolean isDropped() {
+        return !store.contains(handle);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt!=NO_EXPIRY && now - expiresAt>=0;
+    }
+
+    /**
+     * Method to check if the entry can be served without asking catalog.
+     * @param now - current System.nanoTime()
+     * @return - true if neither invalidated nor expired
+     */
+    public boolean isFresh(long now) {
+        return !stale && !isExpired(now);
+    }
+
+    /**
+     * Method to get how long the entry is out of date, since it was invalidated or else since it expired.
+     * @param now - current System.nanoTime()
+     * @return - nanoseconds, negative if the entry is fresh
+     */
+    public long getStaleNanos(long now) {
+        if(stale){
+            return now - invalidatedAt;
+        }
+        return expiresAt==NO_EXPIRY ? -1 : now - expiresAt;
+    }
+
+    /**
+     * Method to mark this entry stale, it keeps the time it was first invalidated at.
+     * @return - this entry
+     */
+    public CacheEntry markStale() {
+        if(!stale){
+            invalidatedAt = System.nanoTime();
+            stale = true;
+        }
+        return this;
+    }
+
+    /**
+     * Method to claim the background refresh of this entry.
+     * @return - true if no refresh of the entry is running
+     */
+    public boolean tryStartRefresh() {
+        return REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    public void endRefresh() {
+        refreshing = 0;
+    }
+
+    /**
+     * Method to free the body of an entry which left the cache.
+     */
+    public void release() {
+        store.free(handle, length);
+    }
+
+    private final SlabStore store;
+    private final long handle;
+    private final int length;
+    private final int weight;
+    private final int statusCode;
+    private final String etag;
+    private final long expiresAt;
+    private volatile boolean stale;
+    private volatile long invalidatedAt; // System.nanoTime() the entry was marked stale at
+    private volatile int refreshing;
+}
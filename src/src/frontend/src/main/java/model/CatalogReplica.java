@@ -0,0 +1,40 @@
+package model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CatalogReplica class is a catalog read replica with its last reported replication lag.
+ */
+public class CatalogReplica {
+    public CatalogReplica(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Method to get how old the data of replica may be, as last reported by the replica.
+     * @return - lag in milliseconds, -1 if replica is down or hasn't loaded its data yet
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+
+    public void recordRead() {
+        reads.increment();
+    }
+
+    public long getReads() {
+        return reads.sum();
+    }
+
+    private final String url;
+    private volatile long lagMillis = -1;
+    private final LongAdder reads = new LongAdder();
+}
@@ -0,0 +1,184 @@
+package utils;
+
+import enums.StatusCode;
+import model.CacheEntry;
+import model.Response;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CachePolicy decides how long front-end cache entries are served and refreshes them in background.
+ *
+ * A response is cached with a time to live, ttlMs for found items and notFoundTtlMs for 404s, 0 for no expiry. After
+ * expiry an entry is still served for staleWhileRevalidateMs while one refresh per entry runs on the refresh executor,
+ * so clients don't wait for catalog. An entry out of date (expired or invalidated) is also served for staleIfErrorMs
+ * when catalog fails or doesn't answer a revalidation within staleIfErrorTimeoutMs.
+ * Bodies of cached responses are kept in slabStore, off the Java heap.
+ */
+public class CachePolicy {
+    private static final Logger LOGGER = Logger.getLogger(CachePolicy.class);
+    private static final int REFRESH_QUEUE_SIZE = 1000;
+
+    private final long ttlNanos;
+    private final long notFoundTtlNanos;
+    private final long staleWhileRevalidateNanos;
+    private final long staleIfErrorNanos;
+    private final int staleIfErrorTimeoutMs;
+    private final ExecutorService refreshExecutor;
+    private final SlabStore slabStore;
+
+    private final LongAdder servedWhileRevalidating = new LongAdder();
+    private final LongAdder servedOnError = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /**
+     * Constructor to create the policy and its refresh executor.
+     * @param ttlMs - time to live of found items, 0 for no expiry
+     * @param notFoundTtlMs - time to live of 404 responses, 0 for no expiry
+     * @param staleWhileRevalidateMs - time after expiry an entry is served while it is refreshed, 0 to disable
+     * @param staleIfErrorMs - time an out of date entry is served when catalog fails, 0 to disable
+     * @param staleIfErrorTimeoutMs - time to wait for catalog when an out of date entry could be served instead
+     * @param refreshThreads - number of threads refreshing entries
+     * @param slabStore - store of the bodies of cached responses
+     */
+    public CachePolicy(long ttlMs, long notFoundTtlMs, long staleWhileRevalidateMs, long staleIfErrorMs, int staleIfErrorTimeoutMs, int refreshThreads, SlabStore slabStore) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.notFoundTtlNanos = TimeUnit.MILLISECONDS.toNanos(notFoundTtlMs);
+        this.staleWhileRevalidateNanos = TimeUnit.MILLISECONDS.toNanos(staleWhileRevalidateMs);
+        this.staleIfErrorNanos = TimeUnit.MILLISECONDS.toNanos(staleIfErrorMs);
+        this.staleIfErrorTimeoutMs = staleIfErrorTimeoutMs;
+        this.slabStore = slabStore;
+        AtomicInteger threadCount = new AtomicInteger();
+        // refreshes run apart from request threads, when too many are queued an entry is refreshed on a later request
+        this.refreshExecutor = new ThreadPoolExecutor(Math.max(1, refreshThreads), Math.max(1, refreshThreads),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Method to create the cache entry of a response, expiring after the time to live of its status. The body is
+     * copied to slabStore, the entry must be released once it leaves the cache (or isn't cached).
+     * @param key - key the entry is cached by
+     * @param response - response to cache
+     * @return - fresh cache entry, null if the body is larger than a slab
+     */
+    public CacheEntry newEntry(String key, Response response){
+        byte[] body = response.getBody();
+        long handle = slabStore.store(body, key);
+        if(handle==SlabStore.NO_HANDLE){
+            return null;
+        }
+        long ttl = response.getStatusCode()==StatusCode.NOT_FOUND.getCode() ? notFoundTtlNanos : ttlNanos;
+        return new CacheEntry(slabStore, handle, body.length, slabStore.chunkSizeOf(body.length), response.getStatusCode(),
+                response.getEtag(), ttl>0 ? System.nanoTime() + ttl : CacheEntry.NO_EXPIRY);
+    }
+
+    public SlabStore getSlabStore(){
+        return slabStore;
+    }
+
+    /**
+     * Method to check if a response can be cached, server errors are not.
+     * @param response - response of catalog
+     * @return - true if it can be cached
+     */
+    public boolean isCacheable(Response response){
+        int statusCode = response.getStatusCode();
+        return statusCode!=StatusCode.NOT_MODIFIED.getCode() && statusCode<StatusCode.INTERNAL_SERVER_ERROR.getCode();
+    }
+
+    /**
+     * Method to check if an expired entry can be served while it is refreshed, an invalidated one can't.
+     * @param cacheEntry - cached entry
+     * @param now - current System.nanoTime()
+     * @return - true if it can be served
+     */
+    public boolean canServeWhileRevalidating(CacheEntry cacheEntry, long now){
+        return !cacheEntry.isStale() && cacheEntry.isExpired(now) && cacheEntry.getStaleNanos(now)<staleWhileRevalidateNanos;
+    }
+
+    /**
+     * Method to check if an out of date entry can be served because catalog failed.
+     * @param cacheEntry - cached entry, may be null
+     * @param now - current System.nanoTime()
+     * @return - true if it can be served
+     */
+    public boolean canServeOnError(CacheEntry cacheEntry, long now){
+        return cacheEntry!=null && staleIfErrorNanos>0 && cacheEntry.getStaleNanos(now)<staleIfErrorNanos;
+    }
+
+    /**
+     * Method to get the time to wait for catalog when revalidating an entry.
+     * @param cacheEntry - cached entry, may be null
+     * @param now - current System.nanoTime()
+     * @return - timeout in milliseconds, 0 to wait till catalog answers if the entry can't be served instead
+     */
+    public int getRevalidateTimeoutMs(CacheEntry cacheEntry, long now){
+        return canServeOnError(cacheEntry, now) ? staleIfErrorTimeoutMs : 0;
+    }
+
+    public void recordServedWhileRevalidating(){
+        servedWhileRevalidating.increment();
+    }
+
+    public void recordServedOnError(){
+        servedOnError.increment();
+    }
+
+    /**
+     * Method to refresh an entry on the refresh executor, unless a refresh of it is already running.
+     * @param cacheEntry - expired entry
+     * @param refresh - fetch of the entry, which caches the result
+     */
+    public void refreshInBackground(CacheEntry cacheEntry, SingleFlight.Fetch<Response> refresh){
+        if(!cacheEntry.tryStartRefresh()){
+            return;
+        }
+        try{
+            refreshExecutor.execute(() -> {
+                try{
+                    refreshes.increment();
+                    Response response = refresh.fetch();
+                    if(!isCacheable(response) && response.getStatusCode()!=StatusCode.NOT_MODIFIED.getCode()){
+                        refreshFailures.increment();
+                    }
+                }catch (Exception e){
+                    refreshFailures.increment();
+                    LOGGER.warn(() -> "Background refresh of cache entry failed: " + e.getMessage());
+                }finally {
+                    cacheEntry.endRefresh();
+                }
+            });
+        }catch (RejectedExecutionException e){
+            cacheEntry.endRefresh();
+        }
+    }
+
+    /**
+     * Method to convert the settings and counters to JSON for /metrics endpoint.
+     * @return - JSON object
+     */
+    public JSONObject toJson(){
+        JSONObject json = new JSONObject();
+        json.put("ttlMs", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+        json.put("notFoundTtlMs", TimeUnit.NANOSECONDS.toMillis(notFoundTtlNanos));
+        json.put("staleWhileRevalidateMs", TimeUnit.NANOSECONDS.toMillis(staleWhileRevalidateNanos));
+        json.put("staleIfErrorMs", TimeUnit.NANOSECONDS.toMillis(staleIfErrorNanos));
+        json.put("servedWhileRevalidating", servedWhileRevalidating.sum());
+        json.put("servedOnError", servedOnError.sum());
+        json.put("refreshes", refreshes.sum());
+        json.put("refreshFailures", refreshFailures.sum());
+        return json;
+    }
+}
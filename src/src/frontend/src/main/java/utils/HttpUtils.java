@@ -1,10 +1,13 @@
 package utils;
 
 import com.sun.net.httpserver.HttpExchange;
+import enums.StatusCode;
 import model.Response;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLDecoder;
 import java.net.URL;
 import java.util.stream.Collectors;
 
@@ -12,6 +15,7 @@ import java.util.stream.Collectors;
  * HttpUtils class has utility methods to handle the HTTP requests.
  */
 public class HttpUtils {
+    private static final Logger LOGGER = Logger.getLogger(HttpUtils.class);
     /**
      * Method to get the request body from the HttpExchange object.
      * @param exchange - Incoming request
@@ -22,12 +26,56 @@ public class HttpUtils {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))) {
             requestBody = reader.lines().collect(Collectors.joining());
         }catch (IOException e){
-            System.out.println("Error parsing request body"+e);
+            LOGGER.warn(() -> "Error parsing request body"+e);
             return null;
         }
         return requestBody;
     }
 
+    /**
+     * Method to read a parameter from query string of the request uri.
+     * @param uri - request uri
+     * @param name - name of the parameter
+     * @return - decoded value of parameter, null if it is not present or can't be decoded
+     */
+    public static String getQueryParam(URI uri, String name){
+        String query = uri.getRawQuery();
+        if(query==null){
+            return null;
+        }
+        for(String param:query.split("&")){
+            int index = param.indexOf('=');
+            if(index>0 && param.substring(0,index).equals(name)){
+                try{
+                    return URLDecoder.decode(param.substring(index+1),"UTF-8");
+                }catch (UnsupportedEncodingException | IllegalArgumentException e){
+                    LOGGER.warn(() -> "Error decoding query parameter "+name+" "+e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to check if If-None-Match header of a request matches the current version tag of a resource.
+     * @param ifNoneMatch - value of If-None-Match header, may be null
+     * @param etag - current version tag of the resource, may be null
+     * @return - true if client already has the current version
+     */
+    public static boolean isETagMatch(String ifNoneMatch, String etag){
+        if(ifNoneMatch==null || etag==null){
+            return false;
+        }
+        for(String tag:ifNoneMatch.split(",")){
+            tag = tag.trim();
+            if(tag.equals("*") || tag.equals(etag) || tag.equals("W/"+etag)){
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Method to make a GET request to the given server URL.
      * @param serverUrl - URL to make the GET request
@@ -35,12 +83,51 @@ public class HttpUtils {
      * @throws IOException
      */
     public static Response makeGetRequest(String serverUrl) throws IOException {
+        return makeGetRequest(serverUrl, null);
+    }
+
+    /**
+     * Method to make a conditional GET request to the given server URL.
+     * @param serverUrl - URL to make the GET request
+     * @param ifNoneMatch - version tag of the copy held by caller, server answers 304 with no body if it is still current
+     * @return - Response object with the status code, response message and version tag of the resource
+     * @throws IOException
+     */
+    public static Response makeGetRequest(String serverUrl, String ifNoneMatch) throws IOException {
+        return makeGetRequest(serverUrl, ifNoneMatch, 0);
+    }
+
+    /**
+     * Method to make a GET request to the given server URL which fails if the server doesn't answer in time.
+     * @param serverUrl - URL to make the GET request
+     * @param timeoutMillis - connect and read timeout, 0 to wait forever
+     * @return - Response object with the status code and response message
+     * @throws IOException
+     */
+    public static Response makeGetRequest(String serverUrl, int timeoutMillis) throws IOException {
+        return makeGetRequest(serverUrl, null, timeoutMillis);
+    }
+
+    /**
+     * Method to make a conditional GET request which fails if the server doesn't answer in time.
+     * @param serverUrl - URL to make the GET request
+     * @param ifNoneMatch - version tag of the copy held by caller, null for an unconditional request
+     * @param timeoutMillis - connect and read timeout, 0 to wait forever
+     * @return - Response object with the status code, response message and version tag of the resource
+     * @throws IOException
+     */
+    public static Response makeGetRequest(String serverUrl, String ifNoneMatch, int timeoutMillis) throws IOException {
         URL url = new URL(serverUrl);
 
         // Open a connection on the URL
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("GET");
         connection.setRequestProperty("Connection", "keep-alive"); // keep connection alive
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        if(ifNoneMatch!=null){
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
 
          // Get status code
         int statusCode = connection.getResponseCode();
@@ -62,10 +149,12 @@ public class HttpUtils {
         inputStream.close();
         in.close();
 
+        String etag = connection.getHeaderField("ETag");
+
         // disconnect the connection
         connection.disconnect();
 
-        return new Response(statusCode,response.toString());
+        return new Response(statusCode,response.toString(),etag);
     }
 
     /**
@@ -121,16 +210,25 @@ public class HttpUtils {
      */
     public static void sendResponse(HttpExchange exchange, Response response)  {
         try{
-            String message = response.getMessage();
+            byte[] body = response.getBody();
             int statusCode = response.getStatusCode();
             exchange.getResponseHeaders().set("Content-Type", "application/json");
             exchange.getResponseHeaders().set("Connection", "keep-alive"); // Keep the connection alive
-            exchange.sendResponseHeaders(statusCode, message.length());
+            if(response.getEtag()!=null){
+                exchange.getResponseHeaders().set("ETag", response.getEtag());
+            }
+            if(statusCode==StatusCode.NOT_MODIFIED.getCode()){
+                // 304 has no body, client reuses its copy of the resource
+                exchange.sendResponseHeaders(statusCode, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(statusCode, body.length);
             OutputStream os = exchange.getResponseBody();
-            os.write(message.getBytes());
+            os.write(body);
             os.close();
         }catch(IOException e){
-            System.out.println("Error sending response!!"); // TO-DO: Retry sending response
+            LOGGER.warn("Error sending response!!");
             exchange.close();
         }
     }
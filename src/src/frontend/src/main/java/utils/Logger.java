@@ -0,0 +1,227 @@
+package utils;
+
+import enums.LogLevel;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Logger class is the levelled logger of the service.
+ * Callers never write to the console themselves: a message of an enabled level is put into a lock-free ring buffer
+ * and a background thread formats and writes it. Messages of disabled levels cost only a level check, pass a Supplier
+ * to skip building the message as well, e.g. LOGGER.debug(() -> "Received query for " + itemName).
+ * When the buffer is full the message is dropped and counted instead of blocking the caller.
+ *
+ * Level is read from the "log.level" system property (default WARN) and can be changed with setLevel().
+ */
+public final class Logger {
+    private static final int BUFFER_CAPACITY = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final RingBuffer<LogRecord> buffer = new RingBuffer<>(BUFFER_CAPACITY);
+    private static final LongAdder droppedMessages = new LongAdder();
+    private static final LongAdder writtenMessages = new LongAdder();
+    private static volatile LogLevel level = LogLevel.fromString(System.getProperty("log.level"), LogLevel.WARN);
+
+    static {
+        startWriter();
+    }
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Method to get the logger of a class.
+     * @param type - class writing the messages
+     * @return - logger named after the class
+     */
+    public static Logger getLogger(Class<?> type){
+        return new Logger(type.getSimpleName());
+    }
+
+    public static void setLevel(LogLevel newLevel){
+        level = newLevel;
+    }
+
+    public static LogLevel getLevel(){
+        return level;
+    }
+
+    /**
+     * Method to check if messages of a level are written, to guard building expensive messages.
+     * @param messageLevel - level of message
+     * @return - true if messages of the level are written
+     */
+    public boolean isEnabled(LogLevel messageLevel){
+        return messageLevel!=LogLevel.OFF && messageLevel.compareTo(level)>=0;
+    }
+
+    public void debug(String message){
+        log(LogLevel.DEBUG, message, null);
+    }
+
+    public void debug(Supplier<String> message){
+        if(isEnabled(LogLevel.DEBUG)){
+            log(LogLevel.DEBUG, message.get(), null);
+        }
+    }
+
+    public void info(String message){
+        log(LogLevel.INFO, message, null);
+    }
+
+    public void info(Supplier<String> message){
+        if(isEnabled(LogLevel.INFO)){
+            log(LogLevel.INFO, message.get(), null);
+        }
+    }
+
+    public void warn(String message){
+        log(LogLevel.WARN, message, null);
+    }
+
+    public void warn(Supplier<String> message){
+        if(isEnabled(LogLevel.WARN)){
+            log(LogLevel.WARN, message.get(), null);
+        }
+    }
+
+    public void warn(String message, Throwable error){
+        log(LogLevel.WARN, message, error);
+    }
+
+    public void error(String message){
+        log(LogLevel.ERROR, message, null);
+    }
+
+    public void error(Supplier<String> message){
+        if(isEnabled(LogLevel.ERROR)){
+            log(LogLevel.ERROR, message.get(), null);
+        }
+    }
+
+    public void error(String message, Throwable error){
+        log(LogLevel.ERROR, message, error);
+    }
+
+    private void log(LogLevel messageLevel, String message, Throwable error){
+        if(!isEnabled(messageLevel)){
+            return;
+        }
+        LogRecord record = new LogRecord(messageLevel, System.currentTimeMillis(), Thread.currentThread().getName(), name, message, error);
+        if(!buffer.offer(record)){
+            droppedMessages.increment();
+        }
+    }
+
+    /**
+     * Method to get number of messages dropped because the buffer was full.
+     * @return - dropped messages since start
+     */
+    public static long getDroppedCount(){
+        return droppedMessages.sum();
+    }
+
+    /**
+     * Method to get number of messages waiting to be written.
+     * @return - queue depth
+     */
+    public static int getQueueDepth(){
+        return buffer.size();
+    }
+
+    /**
+     * Method to convert the logger counters to JSON for /metrics endpoint.
+     * @return - JSON object with level, written and dropped messages and queue depth
+     */
+    public static JSONObject statsToJson(){
+        JSONObject json = new JSONObject();
+        json.put("level", level.name());
+        json.put("writtenMessages", writtenMessages.sum());
+        json.put("droppedMessages", droppedMessages.sum());
+        json.put("queueDepth", buffer.size());
+        json.put("queueCapacity", buffer.capacity());
+        return json;
+    }
+
+    private static void startWriter(){
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8)));
+        Thread thread = new Thread(() -> {
+            while(true){
+                if(!drain(out)){
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        // messages still in the buffer are written before JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(out), "log-flusher"));
+    }
+
+    /**
+     * Method to write all the buffered messages.
+     * @param out - console writer
+     * @return - false if there was nothing to write
+     */
+    private static boolean drain(PrintWriter out){
+        synchronized (out){
+            LogRecord record = buffer.poll();
+            if(record==null){
+                return false;
+            }
+            while(record!=null){
+                out.print(TIME_FORMAT.format(Instant.ofEpochMilli(record.timeMillis)));
+                out.print(' ');
+                out.print(record.level.name());
+                out.print(" [");
+                out.print(record.threadName);
+                out.print("] ");
+                out.print(record.loggerName);
+                out.print(" - ");
+                out.println(record.message);
+                if(record.error!=null){
+                    record.error.printStackTrace(out);
+                }
+                writtenMessages.increment();
+                record = buffer.poll();
+            }
+            out.flush();
+            return true;
+        }
+    }
+
+    private static final class LogRecord {
+        private final LogLevel level;
+        private final long timeMillis;
+        private final String threadName;
+        private final String loggerName;
+        private final String message;
+        private final Throwable error;
+
+        private LogRecord(LogLevel level, long timeMillis, String threadName, String loggerName, String message, Throwable error) {
+            this.level = level;
+            this.timeMillis = timeMillis;
+            this.threadName = threadName;
+            this.loggerName = loggerName;
+            this.message = message;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * ShardMap class maps an item name to the catalog shard owning it, by consistent hashing.
+ * Every shard is placed on a hash ring at a number of points (virtual nodes) derived from its id, an item belongs to
+ * the shard of the first point at or after the hash of its name. Positions of a shard depend only on its id, so when a
+ * shard is added only the items falling on its points move to it and every other item keeps its owner.
+ *
+ * The map is read from a properties file shared by front-end service, order service and the catalog shard splitter:
+ * <pre>
+ * shard.1=http://localhost:9999
+ * shard.1.replicas=http://localhost:9989,http://localhost:9979
+ * shard.2=http://localhost:9998
+ * virtualNodes=128
+ * </pre>
+ * Ids must stay the same when a shard moves to another URL, otherwise its items are reassigned.
+ * Replicas of a shard are optional catalog read replicas following the shard's catalog service.
+ */
+public class ShardMap {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final String SHARD_PREFIX = "shard.";
+    private static final String REPLICAS_SUFFIX = ".replicas";
+
+    private final Map<String, String> shardUrls;
+    private final Map<String, List<String>> shardReplicas;
+    private final int virtualNodes;
+    // ring points sorted by hash, ringShards[i] is the shard id of point ringHashes[i]
+    private final long[] ringHashes;
+    private final String[] ringShards;
+
+    /**
+     * Constructor to build the hash ring of shards.
+     * @param shardUrls - shard id to URL of catalog instance serving it
+     * @param virtualNodes - points of each shard on the ring
+     */
+    public ShardMap(Map<String, String> shardUrls, int virtualNodes) {
+        this(shardUrls, Collections.<String, List<String>>emptyMap(), virtualNodes);
+    }
+
+    /**
+     * Constructor to build the hash ring of shards with their read replicas.
+     * @param shardUrls - shard id to URL of catalog instance serving it
+     * @param shardReplicas - shard id to URLs of its read replicas, shards without replicas can be left out
+     * @param virtualNodes - points of each shard on the ring
+     */
+    public ShardMap(Map<String, String> shardUrls, Map<String, List<String>> shardReplicas, int virtualNodes) {
+        if(shardUrls.isEmpty()){
+            throw new IllegalArgumentException("Shard map has no shards");
+        }
+        if(virtualNodes<1){
+            throw new IllegalArgumentException("virtualNodes should be positive: " + virtualNodes);
+        }
+        this.shardUrls = Collections.unmodifiableMap(new LinkedHashMap<>(shardUrls));
+        Map<String, List<String>> replicas = new LinkedHashMap<>();
+        for(String shardId:shardUrls.keySet()){
+            List<String> replicaUrls = shardReplicas.get(shardId);
+            replicas.put(shardId, replicaUrls==null ? Collections.<String>emptyList() : Collections.unmodifiableList(new ArrayList<>(replicaUrls)));
+        }
+        this.shardReplicas = Collections.unmodifiableMap(replicas);
+        this.virtualNodes = virtualNodes;
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for(String shardId:shardUrls.keySet()){
+            for(int i=0;i<virtualNodes;i++){
+                long point = hash(shardId + "#" + i);
+                // on a collision the smaller id wins, so the ring doesn't depend on the order shards are listed in
+                String owner = ring.get(point);
+                if(owner==null || shardId.compareTo(owner)<0){
+                    ring.put(point, shardId);
+                }
+            }
+        }
+        ringHashes = new long[ring.size()];
+        ringShards = new String[ring.size()];
+        int index = 0;
+        for(Map.Entry<Long, String> point:ring.entrySet()){
+            ringHashes[index] = point.getKey();
+            ringShards[index] = point.getValue();
+            index++;
+        }
+    }
+
+    /**
+     * Method to create the map of a catalog which isn't sharded.
+     * @param catalogServiceUrl - URL of the catalog service
+     * @return - map with one shard owning every item
+     */
+    public static ShardMap singleShard(String catalogServiceUrl){
+        return singleShard(catalogServiceUrl, Collections.<String>emptyList());
+    }
+
+    /**
+     * Method to create the map of a catalog which isn't sharded but has read replicas.
+     * @param catalogServiceUrl - URL of the catalog service
+     * @param replicaUrls - URLs of its read replicas
+     * @return - map with one shard owning every item
+     */
+    public static ShardMap singleShard(String catalogServiceUrl, List<String> replicaUrls){
+        Map<String, String> shardUrls = new LinkedHashMap<>();
+        shardUrls.put("1", catalogServiceUrl);
+        Map<String, List<String>> shardReplicas = new LinkedHashMap<>();
+        shardReplicas.put("1", replicaUrls);
+        return new ShardMap(shardUrls, shardReplicas, 1);
+    }
+
+    /**
+     * Method to read the shard map file.
+     * @param filePath - path of shard map properties file
+     * @return - shard map
+     * @throws IOException - if the file can't be read
+     */
+    public static ShardMap load(String filePath) throws IOException {
+        Properties props = new Properties();
+        try (InputStream input = new FileInputStream(filePath)) {
+            props.load(input);
+        }
+        return fromProperties(props);
+    }
+
+    /**
+     * Method to create the map from shard.&lt;id&gt;=url and shard.&lt;id&gt;.replicas=url,url entries, shards are
+     * listed in order of id.
+     * @param props - shard map properties
+     * @return - shard map
+     */
+    public static ShardMap fromProperties(Properties props){
+        Map<String, String> shardUrls = new TreeMap<>();
+        Map<String, List<String>> shardReplicas = new TreeMap<>();
+        for(String key:props.stringPropertyNames()){
+            if(!key.startsWith(SHARD_PREFIX) || key.length()==SHARD_PREFIX.length()){
+                continue;
+            }
+            String shardId = key.substring(SHARD_PREFIX.length());
+            if(shardId.endsWith(REPLICAS_SUFFIX)){
+                shardReplicas.put(shardId.substring(0, shardId.length() - REPLICAS_SUFFIX.length()), parseUrls(props.getProperty(key)));
+            }else{
+                shardUrls.put(shardId, props.getProperty(key).trim());
+            }
+        }
+        String virtualNodes = props.getProperty("virtualNodes");
+        return new ShardMap(shardUrls, shardReplicas, virtualNodes==null ? DEFAULT_VIRTUAL_NODES : Integer.parseInt(virtualNodes.trim()));
+    }
+
+    /**
+     * Method to split a comma separated list of URLs.
+     * @param urls - comma separated URLs, may be null
+     * @return - URLs, empty if none
+     */
+    public static List<String> parseUrls(String urls){
+        List<String> parsed = new ArrayList<>();
+        if(urls!=null){
+            for(String url:urls.split(",")){
+                if(!url.trim().isEmpty()){
+                    parsed.add(url.trim());
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Method to create the map from a catalog service argument, either a catalog URL or path of a shard map file.
+     * @param catalogServiceUrlOrShardMap - catalog URL (http...) or shard map file path
+     * @return - shard map
+     * @throws IOException - if the shard map file can't be read
+     */
+    public static ShardMap fromArgument(String catalogServiceUrlOrShardMap) throws IOException {
+        if(catalogServiceUrlOrShardMap.startsWith("http://") || catalogServiceUrlOrShardMap.startsWith("https://")){
+            return singleShard(catalogServiceUrlOrShardMap);
+        }
+        return load(catalogServiceUrlOrShardMap);
+    }
+
+    /**
+     * Method to find the shard owning an item.
+     * @param itemName - name of item
+     * @return - id of the shard
+     */
+    public String shardOf(String itemName){
+        if(ringShards.length==1){
+            return ringShards[0];
+        }
+        int index = Arrays.binarySearch(ringHashes, hash(itemName));
+        if(index<0){
+            // insertion point is the first point after the hash
+            index = -index - 1;
+        }
+        return ringShards[index==ringHashes.length ? 0 : index];
+    }
+
+    /**
+     * Method to find the URL of catalog instance owning an item.
+     * @param itemName - name of item
+     * @return - catalog URL
+     */
+    public String urlOf(String itemName){
+        return shardUrls.get(shardOf(itemName));
+    }
+
+    /**
+     * Method to group items by the shard owning them, keeping the order of items in each group.
+     * @param itemNames - names of items
+     * @return - shard id to names of its items
+     */
+    public Map<String, List<String>> groupByShard(Collection<String> itemNames){
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for(String itemName:itemNames){
+            String shardId = shardOf(itemName);
+            List<String> group = groups.get(shardId);
+            if(group==null){
+                group = new ArrayList<>();
+                groups.put(shardId, group);
+            }
+            group.add(itemName);
+        }
+        return groups;
+    }
+
+    public Map<String, String> getShardUrls(){
+        return shardUrls;
+    }
+
+    /**
+     * Method to get the URL of catalog instance serving a shard.
+     * @param shardId - id of shard
+     * @return - catalog URL
+     */
+    public String getUrl(String shardId){
+        return shardUrls.get(shardId);
+    }
+
+    /**
+     * Method to get the read replicas of a shard.
+     * @param shardId - id of shard
+     * @return - URLs of read replicas, empty if it has none
+     */
+    public List<String> getReplicaUrls(String shardId){
+        List<String> replicaUrls = shardReplicas.get(shardId);
+        return replicaUrls==null ? Collections.<String>emptyList() : replicaUrls;
+    }
+
+    public int getVirtualNodes(){
+        return virtualNodes;
+    }
+
+    public int size(){
+        return shardUrls.size();
+    }
+
+    /**
+     * Method to hash a string to a point of the ring, 64 bit FNV-1a spread with murmur3 finalizer.
+     * Hash only depends on the chars of the string, so every service places items the same way.
+     * @param value - item name or virtual node name
+     * @return - position on the ring
+     */
+    static long hash(String value){
+        long hash = 0xcbf29ce484222325L;
+        for(int i=0;i<value.length();i++){
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,78 @@
+package utils;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SingleFlight coalesces concurrent fetches of the same key: the first caller (leader) runs the fetch, and callers
+ * asking for the key while it is in flight wait for the leader's result instead of sending a request of their own.
+ * A key is in flight only while its fetch runs, nothing is kept after it, so a caller coming later fetches again.
+ *
+ * @param <K> - type of keys
+ * @param <V> - type of fetched values
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Fetch of a value, which may fail.
+     */
+    @FunctionalInterface
+    public interface Fetch<V> {
+        V fetch() throws Exception;
+    }
+
+    /**
+     * Method to fetch the value of a key, or wait for the fetch of the key already in flight.
+     * @param key - key
+     * @param fetch - fetch run if no fetch of the key is in flight
+     * @return - fetched value
+     * @throws Exception - exception of the fetch, thrown to the leader and to every caller waiting for it
+     */
+    public V execute(K key, Fetch<V> fetch) throws Exception {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> leaderFuture = inFlight.putIfAbsent(key, future);
+        if(leaderFuture!=null){
+            coalesced.increment();
+            try{
+                return leaderFuture.get();
+            }catch (ExecutionException e){
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        fetches.increment();
+        try{
+            V value = fetch.fetch();
+            // key is released before the waiting callers are, a caller coming now fetches again
+            inFlight.remove(key, future);
+            future.complete(value);
+            return value;
+        }catch (Exception e){
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }catch (Error e){
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Method to convert the counters to JSON for /metrics endpoint.
+     * @return - JSON object with fetches run, callers which waited for another's fetch and keys in flight
+     */
+    public JSONObject toJson(){
+        JSONObject json = new JSONObject();
+        json.put("fetches", fetches.sum());
+        json.put("coalesced", coalesced.sum());
+        json.put("inFlight", inFlight.size());
+        return json;
+    }
+}
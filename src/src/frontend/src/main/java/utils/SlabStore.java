@@ -0,0 +1,404 @@
+package utils;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * SlabStore keeps byte arrays off the Java heap, in direct buffers (slabs) of slabSize bytes allocated as needed up to
+ * a byte budget. A slab is cut into chunks of one size class, the smallest chunk is 64 bytes and every class is 1.25
+ * times the previous one, and a value goes to a free chunk of the smallest class it fits in. A slab whose chunks are
+ * all freed goes back to the pool and can be cut for another class, so memory follows the sizes being stored.
+ *
+ * A stored value is addressed by a handle: slab, chunk and a stamp which is new for every store. Readers don't lock,
+ * they copy the chunk under an optimistic read of the slab's StampedLock and check the stamp, a chunk freed or reused
+ * for another value meanwhile is reported as missing instead of returning the bytes of another value. Free chunks are
+ * linked through their first bytes, so on heap a slab only costs a stamp per chunk.
+ *
+ * Slabs stay cut for their size class while they hold a value, so once the budget is used up a class can run out of
+ * chunks while slabs of other classes have free ones. A store finding no chunk then reassigns the slab with the fewest
+ * values to its class, like memcached's slab rebalancing: the values of that slab are dropped and their handles read
+ * as missing. Every value is stored with the key it is cached by, and the keys of dropped values are handed to the
+ * drop listener once the store is done, so the cache can remove them instead of counting their weight till they are
+ * evicted.
+ */
+public class SlabStore {
+    public static final long NO_HANDLE = -1;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final int MIN_SLAB_SIZE = 64 << 10;
+    // chunk index of a handle has 16 bits
+    private static final int MAX_SLAB_SIZE = MIN_CHUNK_SIZE << 16;
+    private static final int MIN_SLABS = 16;
+    private static final int NO_CHUNK = -1;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int[] chunkSizes; // chunk size of every size class, ascending
+    private final ByteBuffer[] slabs;
+    private final StampedLock[] slabLocks;
+    // written holding the slab's write lock, read by readers under its read lock
+    private final int[][] chunkStamps; // stamp of the value in every chunk of a slab, 0 if the chunk is free
+    private final int[] slabChunkSizes;
+
+    // guarded by this
+    private final int[] slabClasses; // size class of every slab, -1 if not cut
+    private final String[][] chunkKeys; // key of the value in every chunk of a slab
+    private final List<String> droppedKeys = new ArrayList<>(); // keys of values dropped and not reported yet
+    private final int[] freeChunkHeads; // first chunk of the free list of every slab
+    private final int[] unusedChunks; // chunks of every slab never used since it was cut, they follow the free list
+    private final int[] usedChunks;
+    private final long[] slabStoredBytes;
+    private final boolean[] isPartial;
+    private final List<ArrayDeque<Integer>> partialSlabs; // slabs of every size class with a free chunk
+    private final ArrayDeque<Integer> freeSlabs = new ArrayDeque<>(); // slabs allocated but not cut
+    private int allocatedSlabs;
+    private int lastStamp;
+    private long chunkBytes;
+    private long storedBytes;
+    private long stores;
+    private long storeFailures;
+    private long frees;
+    private long slabReassigns;
+    private long droppedValues;
+    private volatile Consumer<String> dropListener;
+
+    /**
+     * Constructor to create an empty store, slabs are allocated as values are stored.
+     * @param maxBytes - budget of off-heap memory, raised to 16 slabs so a small budget doesn't keep reassigning slabs
+     * @param slabSize - size of a slab, kept between 64 KB and 4 MB and to at most 1/64 of the budget, so size classes
+     *                 can have a few slabs each
+     */
+    public SlabStore(long maxBytes, int slabSize) {
+        long size = Math.min(slabSize, Math.max(MIN_SLAB_SIZE, maxBytes / 64));
+        this.slabSize = (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, size));
+        this.maxSlabs = (int) Math.min(0xffff, Math.max(MIN_SLABS, maxBytes / this.slabSize));
+        int classes = 0;
+        int[] sizes = new int[64];
+        for(int chunkSize=MIN_CHUNK_SIZE;chunkSize<this.slabSize;chunkSize=(int) (chunkSize * GROWTH_FACTOR + 7) & ~7){
+            sizes[classes++] = chunkSize;
+        }
+        sizes[classes++] = this.slabSize;
+        this.chunkSizes = new int[classes];
+        System.arraycopy(sizes, 0, chunkSizes, 0, classes);
+        this.slabs = new ByteBuffer[maxSlabs];
+        this.slabLocks = new StampedLock[maxSlabs];
+        this.chunkStamps = new int[maxSlabs][];
+        this.slabChunkSizes = new int[maxSlabs];
+        this.slabClasses = new int[maxSlabs];
+        this.chunkKeys = new String[maxSlabs][];
+        this.freeChunkHeads = new int[maxSlabs];
+        this.unusedChunks = new int[maxSlabs];
+        this.usedChunks = new int[maxSlabs];
+        this.slabStoredBytes = new long[maxSlabs];
+        this.isPartial = new boolean[maxSlabs];
+        this.partialSlabs = new ArrayList<>(classes);
+        for(int i=0;i<classes;i++){
+            partialSlabs.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Method to set the listener told about the keys of values dropped by slab reassignment. It is called on the thread
+     * storing the value which needed the slab, without holding any lock of the store.
+     * @param dropListener - called with the key of every dropped value
+     */
+    public void setDropListener(Consumer<String> dropListener){
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Method to copy a value into a free chunk.
+     * @param value - bytes to store
+     * @param key - key the value is cached by, reported to the drop listener if the value is dropped
+     * @return - handle of the value, NO_HANDLE if it is larger than a slab
+     */
+    public long store(byte[] value, String key){
+        int sizeClass = sizeClassOf(value.length);
+        int slab;
+        int chunk;
+        int stamp;
+        long lockStamp;
+        String[] dropped = null;
+        synchronized (this){
+            slab = sizeClass<0 ? -1 : slabWithFreeChunk(sizeClass);
+            if(slab<0){
+                storeFailures++;
+                return NO_HANDLE;
+            }
+            chunk = takeChunk(slab, sizeClass);
+            chunkKeys[slab][chunk] = key;
+            if(++lastStamp==0){
+                lastStamp = 1;
+            }
+            stamp = lastStamp;
+            usedChunks[slab]++;
+            slabStoredBytes[slab] += value.length;
+            chunkBytes += chunkSizes[sizeClass];
+            storedBytes += value.length;
+            stores++;
+            if(!droppedKeys.isEmpty()){
+                dropped = droppedKeys.toArray(new String[0]);
+                droppedKeys.clear();
+            }
+            // locked before leaving the monitor, so the slab can't be reassigned till the value is in
+            lockStamp = slabLocks[slab].writeLock();
+        }
+        // the chunk is ours, only readers of the value it held before can look at it
+        StampedLock lock = slabLocks[slab];
+        try{
+            chunkStamps[slab][chunk] = stamp;
+            ByteBuffer buffer = slabs[slab].duplicate();
+            buffer.position(chunk * chunkSizes[sizeClass]);
+            buffer.put(value);
+        }finally {
+            lock.unlockWrite(lockStamp);
+        }
+        Consumer<String> listener = dropListener;
+        if(dropped!=null && listener!=null){
+            for(String droppedKey:dropped){
+                listener.accept(droppedKey);
+            }
+        }
+        return ((long) slab << 48) | ((long) chunk << 32) | (stamp & 0xffffffffL);
+    }
+
+    /**
+     * Method to copy a value out of its chunk, without locking unless a write to the slab runs meanwhile.
+     * @param handle - handle of the value
+     * @param length - length of the value
+     * @return - bytes of the value, null if it was freed and its chunk reused
+     */
+    public byte[] read(long handle, int length){
+        int slab = (int) (handle >>> 48);
+        int chunk = (int) (handle >>> 32) & 0xffff;
+        int stamp = (int) handle;
+        byte[] value = new byte[length];
+        StampedLock lock = slabLocks[slab];
+        long lockStamp = lock.tryOptimisticRead();
+        if(lockStamp!=0){
+            try{
+                if(copy(slab, chunk, stamp, value) && lock.validate(lockStamp)){
+                    return value;
+                }
+            }catch (RuntimeException e){
+                // torn read of a slab cut again meanwhile, read once more under the read lock
+            }
+        }
+        lockStamp = lock.readLock();
+        try{
+            return copy(slab, chunk, stamp, value) ? value : null;
+        }finally {
+            lock.unlockRead(lockStamp);
+        }
+    }
+
+    private boolean copy(int slab, int chunk, int stamp, byte[] value){
+        int[] stamps = chunkStamps[slab];
+        if(stamps==null || chunk>=stamps.length || stamps[chunk]!=stamp){
+            return false;
+        }
+        ByteBuffer buffer = slabs[slab].duplicate();
+        buffer.position(chunk * slabChunkSizes[slab]);
+        buffer.get(value);
+        return true;
+    }
+
+    /**
+     * Method to check if a value is still stored, i.e. neither freed nor dropped.
+     * @param handle - handle of the value
+     * @return - true if it can be read
+     */
+    public boolean contains(long handle){
+        int slab = (int) (handle >>> 48);
+        int chunk = (int) (handle >>> 32) & 0xffff;
+        int stamp = (int) handle;
+        StampedLock lock = slabLocks[slab];
+        long lockStamp = lock.readLock();
+        try{
+            int[] stamps = chunkStamps[slab];
+            return stamps!=null && chunk<stamps.length && stamps[chunk]==stamp;
+        }finally {
+            lock.unlockRead(lockStamp);
+        }
+    }
+
+    /**
+     * Method to free the chunk of a value, freeing a value twice does nothing.
+     * @param handle - handle of the value
+     * @param length - length of the value
+     */
+    public synchronized void free(long handle, int length){
+        int slab = (int) (handle >>> 48);
+        int chunk = (int) (handle >>> 32) & 0xffff;
+        int stamp = (int) handle;
+        StampedLock lock = slabLocks[slab];
+        long lockStamp = lock.writeLock();
+        try{
+            int[] stamps = chunkStamps[slab];
+            if(stamps==null || chunk>=stamps.length || stamps[chunk]!=stamp){
+                return;
+            }
+            stamps[chunk] = 0;
+            // free chunk links to the next free chunk
+            slabs[slab].putInt(chunk * chunkSizes[slabClasses[slab]], freeChunkHeads[slab]);
+        }finally {
+            lock.unlockWrite(lockStamp);
+        }
+        int sizeClass = slabClasses[slab];
+        chunkKeys[slab][chunk] = null;
+        freeChunkHeads[slab] = chunk;
+        usedChunks[slab]--;
+        slabStoredBytes[slab] -= length;
+        chunkBytes -= chunkSizes[sizeClass];
+        storedBytes -= length;
+        frees++;
+        if(usedChunks[slab]==0){
+            // an empty slab can be cut for any size class
+            setPartial(slab, sizeClass, false);
+            slabClasses[slab] = -1;
+            freeSlabs.addLast(slab);
+        }else{
+            setPartial(slab, sizeClass, true);
+        }
+    }
+
+    /**
+     * Method to get the chunk size a value takes, to account for it in a byte budget.
+     * @param length - length of the value
+     * @return - chunk size, 0 if the value is larger than a slab
+     */
+    public int chunkSizeOf(int length){
+        int sizeClass = sizeClassOf(length);
+        return sizeClass<0 ? 0 : chunkSizes[sizeClass];
+    }
+
+    private int sizeClassOf(int length){
+        for(int i=0;i<chunkSizes.length;i++){
+            if(length<=chunkSizes[i]){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to find a slab of a size class with a free chunk, cutting a free slab, allocating a new one or
+     * reassigning the slab with the fewest values if needed.
+     * @return - slab
+     */
+    private int slabWithFreeChunk(int sizeClass){
+        Integer partial = partialSlabs.get(sizeClass).peekFirst();
+        if(partial!=null){
+            return partial;
+        }
+        Integer free = freeSlabs.pollFirst();
+        int slab;
+        if(free!=null){
+            slab = free;
+        }else if(allocatedSlabs<maxSlabs){
+            slab = allocatedSlabs++;
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+            slabLocks[slab] = new StampedLock();
+        }else{
+            slab = emptiestSlab();
+            // its values are dropped by cutting it again below, which gives every chunk a new stamp array
+            int[] stamps = chunkStamps[slab];
+            if(dropListener!=null){
+                for(int chunk=0;chunk<stamps.length;chunk++){
+                    if(stamps[chunk]!=0){
+                        droppedKeys.add(chunkKeys[slab][chunk]);
+                    }
+                }
+            }
+            setPartial(slab, slabClasses[slab], false);
+            chunkBytes -= (long) usedChunks[slab] * chunkSizes[slabClasses[slab]];
+            storedBytes -= slabStoredBytes[slab];
+            droppedValues += usedChunks[slab];
+            slabReassigns++;
+            usedChunks[slab] = 0;
+            slabStoredBytes[slab] = 0;
+        }
+        int chunkCount = slabSize / chunkSizes[sizeClass];
+        long lockStamp = slabLocks[slab].writeLock();
+        try{
+            chunkStamps[slab] = new int[chunkCount];
+            chunkKeys[slab] = new String[chunkCount];
+            slabChunkSizes[slab] = chunkSizes[sizeClass];
+        }finally {
+            slabLocks[slab].unlockWrite(lockStamp);
+        }
+        slabClasses[slab] = sizeClass;
+        freeChunkHeads[slab] = NO_CHUNK;
+        unusedChunks[slab] = chunkCount;
+        setPartial(slab, sizeClass, true);
+        return slab;
+    }
+
+    private int emptiestSlab(){
+        int emptiest = 0;
+        for(int slab=1;slab<allocatedSlabs;slab++){
+            if(usedChunks[slab] * chunkSizes[slabClasses[slab]]<usedChunks[emptiest] * chunkSizes[slabClasses[emptiest]]){
+                emptiest = slab;
+            }
+        }
+        return emptiest;
+    }
+
+    private int takeChunk(int slab, int sizeClass){
+        int chunk;
+        int chunkCount = chunkStamps[slab].length;
+        if(freeChunkHeads[slab]!=NO_CHUNK){
+            chunk = freeChunkHeads[slab];
+            freeChunkHeads[slab] = slabs[slab].getInt(chunk * chunkSizes[sizeClass]);
+        }else{
+            chunk = chunkCount - unusedChunks[slab]--;
+        }
+        if(freeChunkHeads[slab]==NO_CHUNK && unusedChunks[slab]==0){
+            setPartial(slab, sizeClass, false);
+        }
+        return chunk;
+    }
+
+    private void setPartial(int slab, int sizeClass, boolean isSlabPartial){
+        if(isPartial[slab]!=isSlabPartial){
+            isPartial[slab] = isSlabPartial;
+            if(isSlabPartial){
+                partialSlabs.get(sizeClass).addLast(slab);
+            }else{
+                partialSlabs.get(sizeClass).remove(slab);
+            }
+        }
+    }
+
+    /**
+     * Method to convert memory use to JSON for /metrics endpoint. Resident bytes are the slabs allocated, chunk bytes
+     * the chunks holding values and stored bytes the values themselves, fragmentation is the share of resident bytes
+     * not holding values (rounding up to a chunk size and free chunks of slabs in use). Slab reassigns count the slabs
+     * cut again for another size class and dropped values the values they held.
+     * @return - JSON object
+     */
+    public synchronized JSONObject toJson(){
+        long residentBytes = (long) allocatedSlabs * slabSize;
+        JSONObject json = new JSONObject();
+        json.put("slabSize", slabSize);
+        json.put("maxSlabs", maxSlabs);
+        json.put("slabs", allocatedSlabs);
+        json.put("freeSlabs", freeSlabs.size());
+        json.put("residentBytes", residentBytes);
+        json.put("chunkBytes", chunkBytes);
+        json.put("storedBytes", storedBytes);
+        json.put("fragmentation", residentBytes==0 ? 0 : 1 - (double) storedBytes / residentBytes);
+        json.put("stores", stores);
+        json.put("storeFailures", storeFailures);
+        json.put("frees", frees);
+        json.put("slabReassigns", slabReassigns);
+        json.put("droppedValues", droppedValues);
+        return json;
+    }
+}
@@ -0,0 +1,663 @@
+package utils;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * TinyLfuCache is a concurrent cache bounded by the total weight of its values, with the W-TinyLFU eviction policy.
+ * The weight of a value is given by a weigher, e.g. the bytes it takes, and every value which leaves the cache
+ * (evicted, replaced, removed or dropped) is handed to a removal listener, which can free what it holds.
+ *
+ * Entries live in a ConcurrentHashMap, so get() is lock-free: the hit is recorded in one of several striped read
+ * buffers and the buffers are replayed on the policy under a lock by whichever thread finds its buffer full, or by the
+ * next write. A full buffer drops the record instead of waiting, the policy only needs most of the accesses.
+ *
+ * The policy keeps a small LRU window (1% of the weight) in front of a segmented LRU main space (probation and
+ * protected, 80% of main). A new entry enters the window, and the entry pushed out of the window is only admitted
+ * into main space if it was accessed more often than the entry main space would evict for it. Frequencies are
+ * estimated by a count-min sketch of 4-bit counters, halved every 10 x expected entries accesses so old popularity
+ * fades.
+ * A one-off scan of rare keys only churns the window and doesn't evict the keys which are read again and again.
+ *
+ * Every key also has an invalidation generation, bumped by invalidate() and clear(). A fetch reads the generation of
+ * its key before it starts and fills the cache with putIfNotInvalidated(), which drops the value if the key was
+ * invalidated meanwhile, so a value fetched before a change can't be cached after the change was announced.
+ * Generations are kept in GENERATION_STRIPES_PER_ENTRY x expected entries counters shared by the keys hashing to them,
+ * a key sharing a counter with an invalidated one only loses a fill.
+ *
+ * @param <K> - type of keys
+ * @param <V> - type of values
+ */
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int GENERATION_STRIPES_PER_ENTRY = 4;
+
+    private final long maximumWeight;
+    private final long maxWindowWeight;
+    private final long maxProtectedWeight;
+    private final ToIntFunction<V> weigher;
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final RemovalListener<K, V> removalListener;
+
+    // only accessed holding evictionLock
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+    private long windowWeight;
+    private long protectedWeight;
+    private volatile long weight; // total, written holding evictionLock
+
+    // written holding evictionLock, read without it
+    private final AtomicLongArray generations;
+    private final AtomicLong clears = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong(); // invalidations of any key and clears
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedWeight = new LongAdder();
+    private final LongAdder admissionRejects = new LongAdder();
+    private final long createdAt = System.nanoTime();
+
+    /**
+     * Listener of values leaving the cache, called holding the cache's lock.
+     */
+    @FunctionalInterface
+    public interface RemovalListener<K, V> {
+        /**
+         * @param key - key
+         * @param value - value which left the cache
+         * @param isEvicted - true if evicted by the policy, false if replaced, removed, cleared or dropped by a put
+         */
+        void onRemoval(K key, V value, boolean isEvicted);
+    }
+
+    /**
+     * Entry of the cache, linked into the queue of its segment.
+     */
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile boolean isRemoved;
+        private int weight;
+        // only accessed holding evictionLock
+        private int queue;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes from least to most recently used.
+     */
+    private static final class AccessQueue<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        private void addLast(Node<K, V> node){
+            node.previous = last;
+            node.next = null;
+            if(last==null){
+                first = node;
+            }else{
+                last.next = node;
+            }
+            last = node;
+        }
+
+        private void remove(Node<K, V> node){
+            if(node.previous==null){
+                first = node.next;
+            }else{
+                node.previous.next = node.next;
+            }
+            if(node.next==null){
+                last = node.previous;
+            }else{
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node<K, V> node){
+            if(node!=last){
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear(){
+            first = null;
+            last = null;
+        }
+    }
+
+    /**
+     * Lossy buffer of reads, written by any thread and drained holding evictionLock.
+     */
+    private static final class ReadBuffer<K, V> {
+        private final AtomicReferenceArray<Node<K, V>> nodes = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads; // only written by the thread draining
+
+        /**
+         * Method to record a read.
+         * @return - false if the buffer is full and should be drained
+         */
+        private boolean offer(Node<K, V> node){
+            long position = writes.get();
+            if(position - reads>=READ_BUFFER_SIZE){
+                return false;
+            }
+            if(writes.compareAndSet(position, position + 1)){
+                nodes.lazySet((int) (position & (READ_BUFFER_SIZE - 1)), node);
+            }
+            // a read lost to another reader is dropped, it's only a hint
+            return true;
+        }
+
+        private void drain(TinyLfuCache<K, V> cache){
+            long position = reads;
+            long end = writes.get();
+            for(;position<end;position++){
+                int index = (int) (position & (READ_BUFFER_SIZE - 1));
+                Node<K, V> node = nodes.get(index);
+                if(node==null){
+                    // writer claimed the slot but hasn't stored the node yet
+                    break;
+                }
+                nodes.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            reads = position;
+        }
+    }
+
+    /**
+     * Constructor to create an empty cache.
+     * @param maximumWeight - maximum total weight of values
+     * @param expectedEntries - number of entries expected at maximum weight, sizes the frequency sketch
+     * @param weigher - weight of a value
+     * @param removalListener - called with every value leaving the cache, may be null
+     */
+    public TinyLfuCache(long maximumWeight, int expectedEntries, ToIntFunction<V> weigher, RemovalListener<K, V> removalListener) {
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.maxWindowWeight = Math.max(1, this.maximumWeight / 100);
+        this.maxProtectedWeight = (long) ((this.maximumWeight - maxWindowWeight) * 0.8);
+        this.weigher = weigher;
+        int entries = Math.max(16, Math.min(1 << 22, expectedEntries));
+        this.data = new ConcurrentHashMap<>(Math.min(entries, 1 << 16));
+        this.sketch = new FrequencySketch(entries);
+        this.removalListener = removalListener;
+        this.generations = new AtomicLongArray(Integer.highestOneBit(Math.max(64, GENERATION_STRIPES_PER_ENTRY * entries - 1)) << 1);
+        int stripes = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.readBuffers = newReadBuffers(stripes);
+        for(int i=0;i<stripes;i++){
+            readBuffers[i] = new ReadBuffer<>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> ReadBuffer<K, V>[] newReadBuffers(int stripes){
+        // generic arrays can't be created, the buffers only ever hold nodes of this cache
+        return (ReadBuffer<K, V>[]) new ReadBuffer<?, ?>[stripes];
+    }
+
+    /**
+     * Method to get a cached value, without taking any lock.
+     * @param key - key
+     * @return - value, null if not cached
+     */
+    public V get(K key){
+        Node<K, V> node = data.get(key);
+        if(node==null){
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        ReadBuffer<K, V> buffer = readBuffers[(int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & (readBuffers.length - 1)];
+        if(!buffer.offer(node) && evictionLock.tryLock()){
+            // some thread has to replay the reads, if the lock is busy its holder will
+            try{
+                drainReadBuffers();
+            }finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Method to cache a value. A new key enters the window, the entry it pushes out of the window may not be admitted
+     * into main space if it isn't used as often as the entry it would replace.
+     * @param key - key
+     * @param value - value
+     */
+    public void put(K key, V value){
+        evictionLock.lock();
+        try{
+            putLocked(key, value);
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to cache a fetched value unless its key was invalidated since the fetch started.
+     * @param key - key
+     * @param value - fetched value
+     * @param generation - getGeneration(key) read before the fetch started
+     * @return - true if cached, false if dropped
+     */
+    public boolean putIfNotInvalidated(K key, V value, long generation){
+        evictionLock.lock();
+        try{
+            if(getGeneration(key)!=generation){
+                notifyRemoval(key, value, false);
+                return false;
+            }
+            return putLocked(key, value);
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to cache a fetched value unless any key was invalidated since the fetch started, for values built from
+     * several keys.
+     * @param key - key
+     * @param value - fetched value
+     * @param generation - getGeneration() read before the fetch started
+     * @return - true if cached, false if dropped
+     */
+    public boolean putIfNoneInvalidated(K key, V value, long generation){
+        evictionLock.lock();
+        try{
+            if(invalidations.get()!=generation){
+                notifyRemoval(key, value, false);
+                return false;
+            }
+            return putLocked(key, value);
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to cache a value holding evictionLock, a value heavier than the whole cache is dropped along with the
+     * value cached for its key.
+     * @return - true if cached
+     */
+    private boolean putLocked(K key, V value){
+        drainReadBuffers();
+        int valueWeight = weigher.applyAsInt(value);
+        Node<K, V> node = data.get(key);
+        if(valueWeight>maximumWeight){
+            if(node!=null){
+                data.remove(key, node);
+                unlink(node);
+                notifyRemoval(key, node.value, false);
+            }
+            notifyRemoval(key, value, false);
+            return false;
+        }
+        if(node!=null){
+            V oldValue = node.value;
+            node.value = value;
+            int delta = valueWeight - node.weight;
+            node.weight = valueWeight;
+            weight += delta;
+            if(node.queue==WINDOW){
+                windowWeight += delta;
+            }else if(node.queue==PROTECTED){
+                protectedWeight += delta;
+            }
+            onAccess(node);
+            if(oldValue!=value){
+                notifyRemoval(key, oldValue, false);
+            }
+            evict();
+            return true;
+        }
+        node = new Node<>(key, value);
+        node.weight = valueWeight;
+        data.put(key, node);
+        sketch.increment(key);
+        node.queue = WINDOW;
+        window.addLast(node);
+        windowWeight += valueWeight;
+        weight += valueWeight;
+        evict();
+        return true;
+    }
+
+    /**
+     * Method to get the invalidation generation of a key, read before fetching a value to cache for it.
+     * @param key - key
+     * @return - generation, changed by every invalidation of the key and by clear
+     */
+    public long getGeneration(K key){
+        return generations.get(generationIndex(key)) + clears.get();
+    }
+
+    /**
+     * Method to get the invalidation generation of the whole cache.
+     * @return - generation, changed by every invalidation of any key and by clear
+     */
+    public long getGeneration(){
+        return invalidations.get();
+    }
+
+    /**
+     * Method to invalidate a key: the cached value is marked stale (or replaced by a stale copy), or removed, and fills
+     * of the key fetched before are dropped. Both happen at once, so a fill lands either before (and is made stale) or
+     * not at all.
+     * @param key - key
+     * @param staleCopy - maps the cached value to the value kept, which may be the value itself, null to remove it
+     */
+    public void invalidate(K key, UnaryOperator<V> staleCopy){
+        evictionLock.lock();
+        try{
+            generations.incrementAndGet(generationIndex(key));
+            invalidations.incrementAndGet();
+            Node<K, V> node = data.get(key);
+            if(node==null){
+                return;
+            }
+            V oldValue = node.value;
+            V value = staleCopy.apply(oldValue);
+            if(value==null){
+                data.remove(key, node);
+                unlink(node);
+                notifyRemoval(key, oldValue, false);
+            }else if(value!=oldValue){
+                putLocked(key, value);
+            }
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to remove a cached value.
+     * @param key - key
+     */
+    public void remove(K key){
+        evictionLock.lock();
+        try{
+            Node<K, V> node = data.remove(key);
+            if(node!=null){
+                unlink(node);
+                notifyRemoval(key, node.value, false);
+            }
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to evict a cached value which can't be served anymore, e.g. because the memory holding it was reclaimed.
+     * @param key - key
+     * @param condition - true for a value to evict, a value cached for the key again meanwhile is kept
+     */
+    public void evictIf(K key, Predicate<V> condition){
+        evictionLock.lock();
+        try{
+            Node<K, V> node = data.get(key);
+            if(node!=null && condition.test(node.value)){
+                evict(node);
+            }
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Method to remove every cached value and drop every fill in flight, frequencies are kept.
+     */
+    public void clear(){
+        evictionLock.lock();
+        try{
+            clears.incrementAndGet();
+            invalidations.incrementAndGet();
+            drainReadBuffers();
+            for(Node<K, V> node:data.values()){
+                node.isRemoved = true;
+                notifyRemoval(node.key, node.value, false);
+            }
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            windowWeight = 0;
+            protectedWeight = 0;
+            weight = 0;
+        }finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size(){
+        return data.size();
+    }
+
+    private int generationIndex(K key){
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (generations.length() - 1);
+    }
+
+    private void drainReadBuffers(){
+        for(ReadBuffer<K, V> buffer:readBuffers){
+            buffer.drain(this);
+        }
+    }
+
+    /**
+     * Method to replay an access on the policy: window and protected entries become most recent, a probation entry is
+     * promoted to protected.
+     * @param node - accessed entry
+     */
+    private void onAccess(Node<K, V> node){
+        if(node.isRemoved){
+            return;
+        }
+        sketch.increment(node.key);
+        if(node.queue==WINDOW){
+            window.moveToLast(node);
+        }else if(node.queue==PROTECTED){
+            protectedQueue.moveToLast(node);
+        }else{
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            protectedWeight += node.weight;
+            while(protectedWeight>maxProtectedWeight){
+                // least recently used protected entry gets another chance in probation
+                Node<K, V> demoted = protectedQueue.first;
+                protectedQueue.remove(demoted);
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        }
+    }
+
+    /**
+     * Method to move entries out of a full window, an entry is admitted into a full main space only if it is more
+     * frequent than each probation entry evicted to make room for it, else it is evicted itself.
+     */
+    private void evict(){
+        while(windowWeight>maxWindowWeight){
+            Node<K, V> candidate = window.first;
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            while(weight>maximumWeight && !candidate.isRemoved){
+                Node<K, V> victim = probation.first!=candidate ? probation.first : protectedQueue.first;
+                if(victim==null){
+                    break;
+                }
+                if(sketch.frequency(candidate.key)>sketch.frequency(victim.key)){
+                    evict(victim);
+                }else{
+                    admissionRejects.increment();
+                    evict(candidate);
+                }
+            }
+        }
+        // a value replaced by a heavier one can leave the cache over its weight with a window under its own
+        while(weight>maximumWeight){
+            evict(probation.first!=null ? probation.first : protectedQueue.first!=null ? protectedQueue.first : window.first);
+        }
+    }
+
+    private void evict(Node<K, V> node){
+        data.remove(node.key, node);
+        unlink(node);
+        evictions.increment();
+        evictedWeight.add(node.weight);
+        notifyRemoval(node.key, node.value, true);
+    }
+
+    private void unlink(Node<K, V> node){
+        node.isRemoved = true;
+        weight -= node.weight;
+        if(node.queue==WINDOW){
+            window.remove(node);
+            windowWeight -= node.weight;
+        }else if(node.queue==PROTECTED){
+            protectedQueue.remove(node);
+            protectedWeight -= node.weight;
+        }else{
+            probation.remove(node);
+        }
+    }
+
+    private void notifyRemoval(K key, V value, boolean isEvicted){
+        if(removalListener!=null){
+            removalListener.onRemoval(key, value, isEvicted);
+        }
+    }
+
+    /**
+     * Method to convert the counters of the cache to JSON for /metrics endpoint.
+     * @return - JSON object with maximum and current weight, size, hits, misses, hit ratio, evictions, evicted weight,
+     * evictions per second since the cache was created and admission rejects
+     */
+    public JSONObject toJson(){
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long evictionCount = evictions.sum();
+        double seconds = Math.max(1, System.nanoTime() - createdAt) / 1e9;
+        JSONObject json = new JSONObject();
+        json.put("policy", "W-TinyLFU");
+        json.put("maximumWeight", maximumWeight);
+        json.put("weight", weight);
+        json.put("size", data.size());
+        json.put("hits", hitCount);
+        json.put("misses", missCount);
+        json.put("hitRatio", hitCount + missCount==0 ? 0 : (double) hitCount / (hitCount + missCount));
+        json.put("evictions", evictionCount);
+        json.put("evictedWeight", evictedWeight.sum());
+        json.put("evictionsPerSecond", evictionCount / seconds);
+        json.put("admissionRejects", admissionRejects.sum());
+        return json;
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often a key was accessed, 4 counters per key spread over the
+     * table, the estimate is the smallest of them. Only used holding evictionLock.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int expectedEntries) {
+            // a long holds 16 counters
+            int size = Integer.highestOneBit(Math.max(8, expectedEntries - 1)) << 1;
+            this.table = new long[size];
+            this.sampleSize = 10 * Math.max(expectedEntries, 16);
+        }
+
+        private int frequency(Object key){
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for(int i=0;i<4;i++){
+                long slotHash = slotHash(hash, i);
+                int offset = counterOffset(slotHash);
+                frequency = Math.min(frequency, (int) ((table[slotIndex(slotHash)] >>> offset) & 0xf));
+            }
+            return frequency;
+        }
+
+        private void increment(Object key){
+            int hash = spread(key.hashCode());
+            boolean isAdded = false;
+            for(int i=0;i<4;i++){
+                long slotHash = slotHash(hash, i);
+                int index = slotIndex(slotHash);
+                int offset = counterOffset(slotHash);
+                if(((table[index] >>> offset) & 0xf)!=0xf){
+                    table[index] += 1L << offset;
+                    isAdded = true;
+                }
+            }
+            if(isAdded && ++additions>=sampleSize){
+                reset();
+            }
+        }
+
+        /**
+         * Method to halve every counter, so keys popular long ago don't stay admitted forever.
+         */
+        private void reset(){
+            for(int i=0;i<table.length;i++){
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int hash){
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+
+        private static long slotHash(int hash, int row){
+            long slotHash = (hash + SEEDS[row]) * SEEDS[row];
+            return slotHash + (slotHash >>> 32);
+        }
+
+        private int slotIndex(long slotHash){
+            return (int) slotHash & (table.length - 1);
+        }
+
+        private static int counterOffset(long slotHash){
+            return (int) ((slotHash >>> 40) & 0xf) << 2;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.Test;
+import utils.TinyLfuCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FrontEndTests {
+
+    @Test
+    public void testAdmissionRejectsRareKey(){
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 10, value -> 1, null);
+        for(int i=0;i<10;i++){
+            cache.put("hot" + i, "hot" + i);
+        }
+        // hot keys are read again and again, the frequency sketch learns them
+        for(int round=0;round<20;round++){
+            for(int i=0;i<10;i++){
+                assertNotNull(cache.get("hot" + i));
+            }
+        }
+        for(int i=0;i<5;i++){
+            cache.put("cold" + i, "cold" + i);
+        }
+
+        // a cold key pushed out of the window loses against the hot key it would replace, the last one is in window
+        for(int i=0;i<4;i++){
+            assertNull(cache.get("cold" + i));
+        }
+        assertNotNull(cache.get("cold4"));
+        int hotKeys = 0;
+        for(int i=0;i<10;i++){
+            if(cache.get("hot" + i)!=null){
+                hotKeys++;
+            }
+        }
+        assertTrue(hotKeys>=9);
+        assertTrue(cache.toJson().getLong("admissionRejects")>=4);
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void testWeightBoundedEviction(){
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 10, String::length, null);
+        for(int i=0;i<20;i++){
+            cache.put("key" + i, new String(new char[30]).replace('\0', 'x'));
+            assertTrue(cache.toJson().getLong("weight")<=100);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(90, cache.toJson().getLong("weight"));
+        assertEquals(17, cache.toJson().getLong("evictions"));
+
+        // a value heavier than the whole cache isn't cached and takes the value of its key along
+        String cachedKey = null;
+        for(int i=0;i<20 && cachedKey==null;i++){
+            cachedKey = cache.get("key" + i)!=null ? "key" + i : null;
+        }
+        assertNotNull(cachedKey);
+        cache.put(cachedKey, new String(new char[101]).replace('\0', 'x'));
+        assertNull(cache.get(cachedKey));
+        assertEquals(2, cache.size());
+        assertEquals(60, cache.toJson().getLong("weight"));
+    }
+
+    @Test
+    public void testRemovalListenerCalledOncePerValue(){
+        Map<String, Integer> removals = new HashMap<>();
+        int[] evictions = new int[1];
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(50, 10, String::length, (key, value, isEvicted) -> {
+            removals.merge(value, 1, Integer::sum);
+            if(isEvicted){
+                evictions[0]++;
+            }
+        });
+        int values = 0;
+        // evicted by weight
+        for(int i=0;i<20;i++){
+            cache.put("key" + i, "value-" + values++);
+        }
+        // replaced, removed, invalidated and heavier than the cache
+        cache.put("key19", "value-" + values++);
+        cache.put("key19", "value-" + values++);
+        cache.remove("key19");
+        cache.put("key18", "value-" + values++);
+        cache.invalidate("key18", value -> null);
+        cache.put("key17", "value-" + values++ + new String(new char[50]));
+        // dropped by a fill which started before an invalidation
+        long generation = cache.getGeneration("key16");
+        cache.invalidate("key16", value -> value);
+        assertFalse(cache.putIfNotInvalidated("key16", "value-" + values++, generation));
+        cache.put("key15", "value-" + values++);
+        cache.clear();
+
+        assertEquals(values, removals.size());
+        for(Map.Entry<String, Integer> removal:removals.entrySet()){
+            assertEquals(removal.getKey(), 1, removal.getValue().intValue());
+        }
+        assertEquals(cache.toJson().getLong("evictions"), evictions[0]);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFillDroppedAfterInvalidation(){
+        Map<String, Integer> removals = new HashMap<>();
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 10, value -> 1, (key, value, isEvicted) -> removals.merge(value, 1, Integer::sum));
+
+        // fill started before the invalidation of its key
+        long generation = cache.getGeneration("Tux");
+        cache.invalidate("Tux", value -> null);
+        assertFalse(cache.putIfNotInvalidated("Tux", "old Tux", generation));
+        assertNull(cache.get("Tux"));
+        assertEquals(1, removals.get("old Tux").intValue());
+
+        // fill started after it
+        generation = cache.getGeneration("Tux");
+        assertTrue(cache.putIfNotInvalidated("Tux", "new Tux", generation));
+        assertEquals("new Tux", cache.get("Tux"));
+    }
+
+}
@@ -81,4 +81,11 @@ public interface OrderRequestHandler {
      * @return - Response object(200 if update is success)
      */
     public Response updateRaftTxnStatus(HttpExchange httpExchange);
+
+    /**
+     * Method to handle the metrics request.
+     * @param httpExchange - Incoming request
+     * @return - Response object with request count and latency histogram of every route
+     */
+    public Response getMetrics(HttpExchange httpExchange);
 }
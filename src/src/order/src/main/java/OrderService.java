@@ -3,6 +3,8 @@ import db.OrderDB;
 import handlers.CustomHttpHandler;
 import metadata.OrderServiceReplicaMetaData;
 import raft.RaftNode;
+import utils.Logger;
+import utils.ShardMap;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -13,6 +15,7 @@ import java.util.concurrent.Executors;
  * OrderService class is used to start the Order service.
  */
 public class OrderService {
+    private static final Logger LOGGER = Logger.getLogger(OrderService.class);
     private static final int THREAD_POOL_SIZE = 10;
 
     private static OrderDB orderDB;
@@ -33,27 +36,27 @@ public class OrderService {
         if(args!=null){
             if(args.length>=1){
                 port = Integer.parseInt(args[0]);
-                System.out.println("Reading port from args "+port);
+                LOGGER.info("Reading port from args "+port);
             }
             if(args.length>=2){
                 ID = Integer.parseInt(args[1]);
-                System.out.println("Id of the replica is "+ID);
+                LOGGER.info("Id of the replica is "+ID);
             }
             if(args.length>=3){
                 orderFilePath = args[2];
-                System.out.println("Reading order file path from args "+orderFilePath);
+                LOGGER.info("Reading order file path from args "+orderFilePath);
             }
             if(args.length>=4){
                 CATALOG_SERVICE_URL = args[3];
-                System.out.println("Reading catalog url from args "+CATALOG_SERVICE_URL);
+                LOGGER.info("Reading catalog url from args "+CATALOG_SERVICE_URL);
             }
             if(args.length>=5){
                 FRONTEND_SERVICE_URL = args[4];
-                System.out.println("Reading frontend url from args "+FRONTEND_SERVICE_URL);
+                LOGGER.info("Reading frontend url from args "+FRONTEND_SERVICE_URL);
             }
             if(args.length>=6){
                 CURRENT_REPLICA_URL = args[5];
-                System.out.println("Reading current replica url from args "+CURRENT_REPLICA_URL);
+                LOGGER.info("Reading current replica url from args "+CURRENT_REPLICA_URL);
             }
             if(args.length>=7 && args[6]!=null){
                 useRaft = args[6].equals("True");
@@ -67,17 +70,20 @@ public class OrderService {
         ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
 
         initDb(orderFilePath);
+        // catalog url arg is either the url of the catalog or path of the catalog shard map file
+        ShardMap catalogShards = ShardMap.fromArgument(CATALOG_SERVICE_URL);
+        LOGGER.info("Catalog shards "+catalogShards.getShardUrls());
 
         OrderServiceReplicaMetaData orderServiceReplicaMetaData = new OrderServiceReplicaMetaData(orderDB);
         orderServiceReplicaMetaData.setReplicaData(ID,CURRENT_REPLICA_URL);
         Boolean hasJoinedCluster = orderServiceReplicaMetaData.joinCluster(FRONTEND_SERVICE_URL,useRaft);
 
-        RaftNode raftNode = new RaftNode(orderServiceReplicaMetaData,CATALOG_SERVICE_URL,orderDB,raftLogFilePath,hasJoinedCluster);
-        server.createContext("/", new CustomHttpHandler(executor,orderServiceReplicaMetaData,orderDB,CATALOG_SERVICE_URL,FRONTEND_SERVICE_URL,useRaft,raftNode));
+        RaftNode raftNode = new RaftNode(orderServiceReplicaMetaData,orderDB,raftLogFilePath,hasJoinedCluster);
+        server.createContext("/", new CustomHttpHandler(executor,orderServiceReplicaMetaData,orderDB,catalogShards,FRONTEND_SERVICE_URL,useRaft,raftNode));
         server.setExecutor(executor);
 
         server.start();
-        System.out.println("Order Service started on port " + port);
+        LOGGER.info("Order Service started on port " + port);
 
         // Shutdown the database when the service exits
         Runtime.getRuntime().addShutdownHook(new Thread(OrderService::shutdownDb));
@@ -99,7 +105,7 @@ public class OrderService {
     private static void shutdownDb() {
         if (orderDB != null) {
             orderDB.shutdown();
-            System.out.println("Database shutdown successfully.");
+            LOGGER.info("Database shutdown successfully.");
         }
     }
 }
\ No newline at end of file
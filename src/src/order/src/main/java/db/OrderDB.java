@@ -4,6 +4,7 @@ package db;
 
 import dto.LostOrdersDto;
 import dto.OrderDto;
+import utils.Logger;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -16,6 +17,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class OrderDB implements DB {
+    private static final Logger LOGGER = Logger.getLogger(OrderDB.class);
     private static String ORDER_FILE_PATH;
     private AtomicInteger orderNumber;
     private ExecutorService executor;
@@ -47,7 +49,7 @@ public class OrderDB implements DB {
                 maxOrderNumber = Math.max(maxOrderNumber, orderId);
             }
         } catch (IOException e) {
-            e.printStackTrace(); // Handle or log the exception properly
+            LOGGER.error("Error while reading order file", e);
         }
         return maxOrderNumber;
     }
@@ -104,7 +106,7 @@ public class OrderDB implements DB {
                 }
                 return orderDto;
             } catch (IOException e) {
-                System.out.println("Error while syncing data"+e);
+                LOGGER.warn(() -> "Error while syncing data"+e);
                 return null;
             }
         }
@@ -126,7 +128,7 @@ public class OrderDB implements DB {
                 }
                 return lostOrdersDtos;
             } catch (IOException e) {
-                System.out.println("Error while syncing data"+e);
+                LOGGER.warn(() -> "Error while syncing data"+e);
                 return null;
             }
         }
@@ -144,7 +146,7 @@ public class OrderDB implements DB {
                 }
                 writer.flush();
             } catch (IOException e) {
-                e.printStackTrace(); // Handle or log the exception properly
+                LOGGER.error("Error while writing lost orders", e);
             }
         }
     }
@@ -163,7 +165,7 @@ public class OrderDB implements DB {
                 writer.append(orderNumber + "," + itemName + "," + quantity + "\n");
                 writer.flush();
             } catch (IOException e) {
-                e.printStackTrace(); // Handle or log the exception properly
+                LOGGER.error("Error while writing order", e);
             }
         }
     }
@@ -1,5 +1,7 @@
 package dto;
 
+import utils.Logger;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,6 +9,7 @@ import java.util.Map;
  * OrderDto class is used to map the incoming order request.
  */
 public class OrderDto {
+    private static final Logger LOGGER = Logger.getLogger(OrderDto.class);
     private String name;
     private int quantity;
 
@@ -64,10 +67,10 @@ public class OrderDto {
                 return new OrderDto(name, quantity);
             }
 
-            System.out.println("Invalid request received: " + jsonString);
+            LOGGER.warn("Invalid request received: " + jsonString);
             return null;
         }catch (Exception e){
-            System.out.println("Error parsing request"+e);
+            LOGGER.warn(() -> "Error parsing request"+e);
             return null;
         }
     }
@@ -0,0 +1,34 @@
+package enums;
+
+/**
+ * LogLevel decides which log messages are written, a logger writes messages of its level and above.
+ * DEBUG - per-request details, e.g. received requests and sent responses.
+ * INFO - lifecycle of the service, e.g. startup, recovery, leader election.
+ * WARN - failures the service recovers from (default).
+ * ERROR - failures which lose a request or data.
+ * OFF - nothing is written.
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF;
+
+    /**
+     * Method to read the log level from config value.
+     * @param value - value from config file or system property
+     * @param defaultLevel - level to use for missing or unknown values
+     * @return - log level
+     */
+    public static LogLevel fromString(String value, LogLevel defaultLevel){
+        if(value!=null){
+            for(LogLevel level:values()){
+                if(level.name().equalsIgnoreCase(value.trim())){
+                    return level;
+                }
+            }
+        }
+        return defaultLevel;
+    }
+}
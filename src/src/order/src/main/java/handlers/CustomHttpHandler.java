@@ -7,6 +7,7 @@ import db.DB;
 import impl.OrderRequestHandlerImpl;
 import metadata.OrderServiceReplicaMetaData;
 import raft.RaftNode;
+import utils.ShardMap;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -14,7 +15,7 @@ import java.util.concurrent.ExecutorService;
 public class CustomHttpHandler implements HttpHandler {
     private ExecutorService executorService;
     private DB db;
-    private String catalogServiceUrl;
+    private ShardMap catalogShards;
     private String frontEndServiceUrl;
     private OrderServiceReplicaMetaData orderServiceReplicaMetaData;
     private Boolean useRaft;
@@ -23,12 +24,13 @@ public class CustomHttpHandler implements HttpHandler {
      * Constructor to initialize the executor service and service name.
      * @param executorService - Thread pool to handle the incoming requests.
      * @param db - DB(product catalog in case of catalog service, order db in case of order service)
+     * @param catalogShards - Catalog shard map, URL of catalog instance owning each item.
      */
-    public CustomHttpHandler(ExecutorService executorService,OrderServiceReplicaMetaData orderServiceReplicaMetaData, DB db,String catalogServiceUrl,String frontEndServiceUrl,Boolean useRaft,RaftNode raftNode){
+    public CustomHttpHandler(ExecutorService executorService,OrderServiceReplicaMetaData orderServiceReplicaMetaData, DB db,ShardMap catalogShards,String frontEndServiceUrl,Boolean useRaft,RaftNode raftNode){
         this.executorService = executorService;
         this.orderServiceReplicaMetaData = orderServiceReplicaMetaData;
         this.db = db;
-        this.catalogServiceUrl = catalogServiceUrl;
+        this.catalogShards = catalogShards;
         this.frontEndServiceUrl = frontEndServiceUrl;
         this.useRaft = useRaft;
         this.raftNode = raftNode;
@@ -36,6 +38,6 @@ public class CustomHttpHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        executorService.submit(new OrderRequestHandlerImpl(exchange,orderServiceReplicaMetaData,db,catalogServiceUrl,frontEndServiceUrl,useRaft,raftNode));
+        executorService.submit(new OrderRequestHandlerImpl(exchange,orderServiceReplicaMetaData,db,catalogShards,frontEndServiceUrl,useRaft,raftNode));
     }
 }
\ No newline at end of file
@@ -8,17 +8,22 @@ import order.src.main.java.OrderRequestHandler;
 import db.DB;
 import db.OrderDB;
 import dto.OrderDto;
+import enums.LogLevel;
 import enums.StatusCode;
 import model.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import raft.LogEntry;
 import raft.RaftNode;
+import utils.HttpUtils;
+import utils.JsonWriter;
+import utils.ReservationCompleter;
+import utils.RouteTable;
+import utils.Logger;
+import utils.ShardMap;
 
 import java.io.IOException;
-import java.net.URI;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,8 +31,27 @@ import static utils.HttpUtils.*;
 
 
 public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
+    private static final Logger LOGGER = Logger.getLogger(OrderRequestHandlerImpl.class);
+    // reservation expiry assumed if catalog doesn't send it, catalog's default reservationTtlMs
+    private static final long DEFAULT_RESERVATION_TTL_MS = 30000;
+    // commits and releases of catalog reservations are sent off the request thread
+    private static final ReservationCompleter RESERVATIONS = new ReservationCompleter(HttpUtils::makePostRequest);
+    // routes of order service, resolved without running any regex per request
+    private static final RouteTable<OrderRequestHandlerImpl> ROUTES = new RouteTable<OrderRequestHandlerImpl>()
+            .add("POST", "/orders", (handler, exchange, params) -> handler.createOrder(exchange))
+            .add("GET", "/orders/{id}", (handler, exchange, params) -> handler.queryOrder(exchange, params.get("id")))
+            .add("GET", "/heartbeat", (handler, exchange, params) -> handler.heartBeat(exchange))
+            .add("GET", "/metrics", (handler, exchange, params) -> handler.getMetrics(exchange))
+            .add("POST", "/updateLeaderNode", (handler, exchange, params) -> handler.updateLeaderNode(exchange))
+            .add("POST", "/propagateOrder", (handler, exchange, params) -> handler.updatePropagatedOrder(exchange))
+            .add("POST", "/syncData", (handler, exchange, params) -> handler.syncData(exchange))
+            .add("POST", "/updateFollowerNodes", (handler, exchange, params) -> handler.updateFollowerNodes(exchange))
+            .add("POST", "/replicateLogEntryRaft", (handler, exchange, params) -> handler.replicateLogEntryRaft(exchange))
+            .add("POST", "/ackLogCommittedRaft", (handler, exchange, params) -> handler.ackLogCommittedRaft(exchange))
+            .add("POST", "/syncLostDataRaft", (handler, exchange, params) -> handler.syncLostDataRaft(exchange))
+            .add("POST", "/updateTxnStatusRaft", (handler, exchange, params) -> handler.updateRaftTxnStatus(exchange));
     private final HttpExchange exchange;
-    private String CATALOG_SERVICE_URL = "http://localhost:9999";
+    private final ShardMap catalogShards;
     private String FRONTEND_SERVICE_URL = "http://localhost:8888";
     private final OrderDB orderDB;
     private OrderServiceReplicaMetaData orderServiceReplicaMetaData;
@@ -35,15 +59,13 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
     private Boolean useRaft;
     private RaftNode raftNode;
 
-    public OrderRequestHandlerImpl(HttpExchange exchange, OrderServiceReplicaMetaData orderServiceReplicaMetaData, DB db, String catalogServiceUrl, String frontEndServiceUrl, Boolean useRaft, RaftNode raftNode) {
+    public OrderRequestHandlerImpl(HttpExchange exchange, OrderServiceReplicaMetaData orderServiceReplicaMetaData, DB db, ShardMap catalogShards, String frontEndServiceUrl, Boolean useRaft, RaftNode raftNode) {
         this.exchange = exchange;
         this.orderDB = (OrderDB) db;
         this.orderServiceReplicaMetaData = orderServiceReplicaMetaData;
         this.useRaft = useRaft;
         this.raftNode = raftNode;
-        if(catalogServiceUrl!=null){
-            CATALOG_SERVICE_URL = catalogServiceUrl;
-        }
+        this.catalogShards = catalogShards;
         if(frontEndServiceUrl!= null){
             FRONTEND_SERVICE_URL = frontEndServiceUrl;
         }
@@ -59,123 +81,18 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
     public void run() {
         try {
             String requestMethod = exchange.getRequestMethod();
-            if (requestMethod.equalsIgnoreCase("POST")) {
-                handlePostRequest(exchange);
-            } else if (requestMethod.equalsIgnoreCase("GET")) {
-                handleGetRequest(exchange);
-            } else {
-                // Only POST method is supported
+            if (!requestMethod.equalsIgnoreCase("POST") && !requestMethod.equalsIgnoreCase("GET")) {
+                // Only POST and GET methods are supported
                 // Unsupported request method, return 405 Method Not Allowed
                 exchange.sendResponseHeaders(StatusCode.METHOD_NOT_ALLOWED.getCode(), 0); // Method Not Allowed
                 exchange.close();
+            } else if (!ROUTES.dispatch(this, exchange)) {
+                // Invalid URI, return 404 Not Found
+                int errorCode = StatusCode.NOT_FOUND.getCode();
+                sendResponse(exchange, new Response(errorCode, prepareErrorResponse(errorCode,"Invalid URI")));
             }
         } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Method to validate the post request
-     * @param uri - uri should be of format /orders
-     * @throws IOException
-     */
-    private Boolean isOrderUri(URI uri) {
-        return uri.getPath().matches("/orders");
-    }
-
-    /**
-     * Method to validate the order query request
-     * @param uri - uri should be of format /orders
-     * @throws IOException
-     */
-    private Boolean isOrderQueryURI(URI uri) {
-        return uri.getPath().matches("/orders/\\w+");
-    }
-    /**
-     * Method to validate the heartbeat request
-     * @param uri - uri should be of format /heartbeat
-     * @throws IOException
-     */
-    private Boolean isHeartBeatUri(URI uri){return uri.getPath().matches("/heartbeat");}
-
-    /**
-     * Method to validate the heartbeat request
-     * @param uri - uri should be of format /updateLeaderNode
-     * @throws IOException
-     */
-    private Boolean isUpdateLeaderNodeUri(URI uri){return uri.getPath().matches("/updateLeaderNode");}
-
-    /**
-     * Method to validate the propagation request
-     * @param uri - uri should be of format /propagateOrder
-     * @throws IOException
-     */
-    private Boolean isPropagationUri(URI uri){return uri.getPath().matches("/propagateOrder");}
-
-    /**
-     * Method to validate the synchronization of data request
-     * @param uri - uri should be of format /syncData
-     * @throws IOException
-     */
-    private Boolean isSyncDataUri(URI uri){return uri.getPath().matches("/syncData");}
-
-    private Boolean isUpdateFollowerNodeUri(URI uri){return uri.getPath().matches("/updateFollowerNodes");}
-
-    private Boolean replicateLogEntryRaftUri(URI uri){
-        return uri.getPath().matches("/replicateLogEntryRaft");
-    }
-
-    private Boolean ackLogCommittedRaftUri(URI uri){
-        return uri.getPath().matches("/ackLogCommittedRaft");
-    }
-
-    private Boolean syncLostDataRaftUri(URI uri){
-        return uri.getPath().matches("/syncLostDataRaft");
-    }
-
-    private Boolean isUpdateRaftTxnStatus(URI uri){
-        return uri.getPath().matches("/updateTxnStatusRaft");
-    }
-
-    /**
-     * Method to handle the POST request and route them to the appropriate controller function.
-     * @param exchange
-     * @throws IOException
-     */
-    private void handlePostRequest(HttpExchange exchange) throws IOException{
-        URI uri = exchange.getRequestURI();
-        if(isOrderUri(uri)){
-            createOrder(exchange);
-        } else if (isUpdateLeaderNodeUri(uri)) {
-            updateLeaderNode(exchange);
-        } else if (isPropagationUri(uri)) {
-            updatePropagatedOrder(exchange);
-        } else if (isSyncDataUri(uri)) {
-            syncData(exchange);
-        } else if (isUpdateFollowerNodeUri(uri)) {
-            updateFollowerNodes(exchange);
-        } else if(replicateLogEntryRaftUri(uri)){
-            replicateLogEntryRaft(exchange);
-        } else if (ackLogCommittedRaftUri(uri)) {
-            ackLogCommittedRaft(exchange);
-        } else if (syncLostDataRaftUri(uri)) {
-            syncLostDataRaft(exchange);
-        } else if(isUpdateRaftTxnStatus(uri)){
-            updateRaftTxnStatus(exchange);
-        }
-    }
-
-    /**
-     * Method to handle the Get request and route them to the appropriate controller function.
-     * @param exchange
-     * @throws IOException
-     */
-    private void handleGetRequest(HttpExchange exchange) throws IOException{
-        URI uri = exchange.getRequestURI();
-        if(isHeartBeatUri(uri)){
-            heartBeat(exchange);
-        } else if (isOrderQueryURI(uri)) {
-            queryOrder(exchange);
+            LOGGER.warn("Error while handling request", e);
         }
     }
 
@@ -191,7 +108,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             raftNode.updateTxnStatus(logId,term,status);
             response = new Response(StatusCode.OK.getCode(),"Success");
         }catch (Exception e){
-            System.out.println(e);
+            LOGGER.warn("Error while updating raft transaction status", e);
         }
         sendResponse(exchange,response);
         return response;
@@ -207,7 +124,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             JSONArray responseArray = raftNode.getLostData(lastCommittedId);
             response = new Response(StatusCode.OK.getCode(), responseArray.toString());
         }catch (Exception e){
-            System.out.println(e);
+            LOGGER.warn("Error while fetching lost raft logs", e);
         }
         sendResponse(exchange,response);
         return response;
@@ -222,7 +139,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             raftNode.ackCommittedLog(requestJson.getInt("logId"),requestJson.getInt("term"),requestJson.getInt("orderId"));
             response = new Response(StatusCode.OK.getCode(), "Success");
         }catch (Exception e){
-            System.out.println(e);
+            LOGGER.warn("Error while acknowledging committed raft log", e);
         }
         sendResponse(exchange,response);
         return response;
@@ -235,13 +152,13 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             String requestBody = getRequestBody(exchange);
             JSONObject requestJson = new JSONObject(requestBody);
             LogEntry logEntry = new LogEntry(requestJson.getInt("logId"),requestJson.getInt("term"),requestJson.getString("orderDetails"));
-            System.out.println("Received replicated log with Id: "+logEntry.getLogId()+" for order :"+logEntry.getOrderDetails());
+            LOGGER.debug(() -> "Received replicated log with Id: "+logEntry.getLogId()+" for order :"+logEntry.getOrderDetails());
             Boolean isAppended = raftNode.appendReplicatedLog(logEntry);
             if(isAppended){
                 response = new Response(StatusCode.OK.getCode(), "Success");
             }
         }catch (Exception e){
-            System.out.println(e);
+            LOGGER.warn("Error while appending replicated raft log", e);
         }
         sendResponse(exchange,response);
         return response;
@@ -255,7 +172,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             JSONObject requestJson = new JSONObject(requestBody);
             String update = requestJson.getString("update");
             JSONArray followerNodes = requestJson.getJSONArray("followerNodes");
-            System.out.println("Update has been made to follower nodes "+update);
+            LOGGER.info(() -> "Update has been made to follower nodes "+update);
             if(update.equalsIgnoreCase("add")){
                 orderServiceReplicaMetaData.addFollowerNodes(followerNodes);
                 response = new Response(StatusCode.OK.getCode(),"Success" );
@@ -266,7 +183,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
                 response = new Response(StatusCode.BAD_REQUEST.getCode(), "Update not supported.");
             }
         }catch (Exception e) {
-            System.out.println(e.toString());
+            LOGGER.warn("Error while updating follower nodes", e);
             response = new Response(StatusCode.BAD_REQUEST.getCode(), "Failed to update");
         }
         sendResponse(exchange,response);
@@ -275,16 +192,16 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
 
     @Override
     public Response updateLeaderNode(HttpExchange exchange){
-        System.out.println("Trying to update leader node");
+        LOGGER.info("Trying to update leader node");
         String requestBody = getRequestBody(exchange);
         JSONObject requestJson = new JSONObject(requestBody);
         int leaderId = requestJson.optInt("id",-1);
         String leaderUrl = requestJson.optString("url","");
         OrderServerReplica leaderNode = new OrderServerReplica(leaderId,leaderUrl);
         int replicaId = orderServiceReplicaMetaData.getReplicaId();
-        System.out.println("Leader Id: "+leaderId);
+        LOGGER.info(() -> "Leader Id: "+leaderId);
         if(leaderId==replicaId){
-            System.out.println("I am leader node");
+            LOGGER.info("I am leader node");
             orderServiceReplicaMetaData.setIsLeaderNode();
         }
         orderServiceReplicaMetaData.setLeaderNode(leaderNode);
@@ -295,7 +212,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
 
     @Override
     public Response updatePropagatedOrder(HttpExchange exchange){
-        System.out.println("Received an propagated order ");
+        LOGGER.debug("Received an propagated order ");
         Response response;
         try{
             String requestBody = getRequestBody(exchange);
@@ -306,7 +223,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             orderDB.writePropagatedOrder(orderId,itemName,quantity);
             response = new Response(StatusCode.OK.getCode(), "Success");
         }catch (Exception e){
-            System.out.println("Error while writing propagated order"+e);
+            LOGGER.warn(() -> "Error while writing propagated order"+e);
             response = new Response(StatusCode.BAD_REQUEST.getCode(), "UPDATE_FAILED");
         }
         sendResponse(exchange,response);
@@ -315,7 +232,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
 
     @Override
     public Response syncData(HttpExchange exchange){
-        System.out.println("Trying to get lost data to sync data.");
+        LOGGER.info("Trying to get lost data to sync data.");
         Response response;
         try{
             String requestBody = getRequestBody(exchange);
@@ -332,7 +249,7 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             }
             response = new Response(StatusCode.OK.getCode(), jsonArray.toString());
         }catch (Exception e){
-            System.out.println("Error while writing propagated order"+e);
+            LOGGER.warn(() -> "Error while writing propagated order"+e);
             response = new Response(StatusCode.BAD_REQUEST.getCode(), "UPDATE_FAILED");
         }
         sendResponse(exchange,response);
@@ -349,29 +266,38 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
 
     @Override
     public Response queryOrder(HttpExchange exchange){
-        System.out.println("Order Service received query order request");
-        JSONObject errorObject = new JSONObject();
-        errorObject.put("code",StatusCode.NOT_FOUND.getCode());
-        errorObject.put("message","Order not found");
-        JSONObject errRespObj = new JSONObject();
-        errRespObj.put("error",errorObject);
-        Response response = new Response(StatusCode.NOT_FOUND.getCode(), errRespObj.toString());
-        URI uri = exchange.getRequestURI();
+        return queryOrder(exchange, exchange.getRequestURI().getPath().substring("/orders/".length()));
+    }
+
+    /**
+     * Method to handle query order request.
+     * @param exchange - Incoming request
+     * @param orderNumber - Order number from request path
+     * @return - Response object with the order details
+     */
+    private Response queryOrder(HttpExchange exchange, String orderNumber){
+        LOGGER.debug("Order Service received query order request");
+        Response response = null;
         try{
-            int orderId = Integer.parseInt(uri.getPath().substring("/orders/".length()));
+            int orderId = Integer.parseInt(orderNumber);
             if(orderId!=-1){
-                System.out.println("Order found");
+                LOGGER.debug("Order found");
                 OrderDto orderDto = orderDB.getOrderInfo(orderId);
-                JSONObject responseBody = new JSONObject();
-                JSONObject dataObj = new JSONObject();
-                dataObj.put("itemName",orderDto.getName());
-                dataObj.put("quantity",orderDto.getQuantity());
-                dataObj.put("orderId",orderId);
-                responseBody.put("data",dataObj);
-                response = new Response(StatusCode.OK.getCode(), responseBody.toString());
+                byte[] responseBody = JsonWriter.get()
+                        .beginObject().name("data").beginObject()
+                        .name("itemName").value(orderDto.getName())
+                        .name("quantity").value(orderDto.getQuantity())
+                        .name("orderId").value(orderId)
+                        .endObject().endObject()
+                        .toByteArray();
+                response = new Response(StatusCode.OK.getCode(), responseBody);
             }
         }catch (Exception e){
-            System.out.println(e);
+            LOGGER.debug(() -> "Order not found "+e);
+        }
+        if(response==null){
+            int errorCode = StatusCode.NOT_FOUND.getCode();
+            response = new Response(errorCode, prepareErrorResponse(errorCode,"Order not found"));
         }
         sendResponse(exchange,response);
         return response;
@@ -385,40 +311,39 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
             JSONObject requestObj = new JSONObject(requestBody);
             String name = requestObj.getString("name");
             int requestedQuantity = requestObj.getInt("quantity");
-            if(isQuantityAvailable(name,requestedQuantity)){
-                try{
-                    String url = CATALOG_SERVICE_URL + "/updateItem";
-                    // System.out.println("Received buy request by order service,calling catalog service to update order DB");
-                    Response catalogResponse = makePostRequest(url,requestBody);
-                    String message = catalogResponse.getMessage();
-                    // System.out.println("Message from catalog service: "+message);
-                    int statusCode = catalogResponse.getStatusCode();
-                    if(statusCode == StatusCode.OK.getCode() && message.equals("Success")){
-                        OrderDto orderDto = OrderDto.fromJsonString(requestBody);
-                        response = placeOrder(orderDto);
-                    }else{
-                        response = new Response(statusCode,prepareErrorResponse(statusCode,message));
-                    }
-                }catch (Exception e){
-                    // System.out.println("Error while making request to catalog service"+e);
+            try{
+                // hold the stock in the catalog shard owning the item, it is committed once the order is placed or released if it fails
+                String catalogServiceUrl = catalogShards.urlOf(name);
+                Response catalogResponse = makePostRequest(catalogServiceUrl + "/reserveItem",requestBody);
+                if(catalogResponse.getStatusCode() == StatusCode.OK.getCode()){
+                    JSONObject reservation = new JSONObject(catalogResponse.getMessage());
+                    String reservationToken = reservation.getString("token");
+                    long expiresInMs = reservation.optLong("expiresInMs",DEFAULT_RESERVATION_TTL_MS);
+                    OrderDto orderDto = OrderDto.fromJsonString(requestBody);
+                    response = placeOrder(orderDto);
+                    RESERVATIONS.complete(catalogServiceUrl,reservationToken,response.getStatusCode() == StatusCode.OK.getCode(),expiresInMs);
+                }else{
+                    LOGGER.warn(() -> "Reservation failed for "+name+" quantity "+requestedQuantity+": "+catalogResponse.getMessage());
                     int errorCode = StatusCode.BAD_REQUEST.getCode();
-                    String message = "Error while making request to catalog service";
+                    String message = "Quantity not available";
                     response =  new Response(errorCode,prepareErrorResponse(errorCode,message));
                 }
-            }else {
+            }catch (Exception e){
+                // System.out.println("Error while making request to catalog service"+e);
                 int errorCode = StatusCode.BAD_REQUEST.getCode();
-                String message = "Quantity not available";
+                String message = "Error while making request to catalog service";
                 response =  new Response(errorCode,prepareErrorResponse(errorCode,message));
             }
-
         }else{
-            System.out.println("Invalid Request Body");
+            LOGGER.warn("Invalid Request Body");
             int errorCode = StatusCode.BAD_REQUEST.getCode();
             String message = "Invalid Request Body";
             response =  new Response(errorCode,prepareErrorResponse(errorCode,message));
         }
         sendResponse(exchange,response);
-        System.out.println("Response message by order service for create order request: "+ response.getMessage());
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Response message by order service for create order request: "+ response.getMessage());
+        }
         return response;
     }
 
@@ -444,22 +369,6 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
        return response;
     }
 
-    private Boolean isQuantityAvailable(String name,int requestedQuantity){
-        String queryUrl = CATALOG_SERVICE_URL+"/products/"+name;
-        try{
-            Response response = makeGetRequest(queryUrl);
-            JSONObject respObj = new JSONObject(response.getMessage());
-            JSONObject dataObj = respObj.getJSONObject("data");
-            int availableQuantity = dataObj.getInt("quantity");
-            if(availableQuantity>=requestedQuantity){
-                return true;
-            }
-        }catch (Exception e){
-            System.out.println("Error getting item details");
-        }
-        return false;
-    }
-
     /**
      * Method to propagate order to follower nodes
      * @param orderId
@@ -467,44 +376,51 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
      * @param quantity
      */
     private void propagateToFollowerNodes(int orderId, String itemName, int quantity){
-        System.out.println("Propagating order to follower nodes");
+        LOGGER.debug("Propagating order to follower nodes");
         JSONObject requestBody = new JSONObject();
         requestBody.put("orderId",orderId);
         requestBody.put("itemName",itemName);
         requestBody.put("quantity",quantity);
         String requestString = requestBody.toString();
         Map<Integer,OrderServerReplica> followerNodes = orderServiceReplicaMetaData.getFollowerNodes();
-        System.out.println("Follower Nodes size:"+followerNodes.size());
+        LOGGER.debug(() -> "Follower Nodes size:"+followerNodes.size());
         for (OrderServerReplica followerNode : followerNodes.values()) {
             // get uri
             int replicaId = followerNode.getId();
             String replicaUrl = followerNode.getUrl();
             String replicaEndpoint = replicaUrl + "/propagateOrder";
-            System.out.println("Propagating order to follower node: "+replicaId);
+            LOGGER.debug(() -> "Propagating order to follower node: "+replicaId);
             try{
                 makePostRequest(replicaEndpoint,requestString);
             }catch (Exception e){
-                System.out.println("Error while propagating request for Id "+ replicaId);
+                LOGGER.warn(() -> "Error while propagating request for Id "+ replicaId);
             }
         }
     }
 
+    @Override
+    public Response getMetrics(HttpExchange exchange) {
+        JSONObject metrics = new JSONObject();
+        metrics.put("routes", ROUTES.statsToJson());
+        metrics.put("logging", Logger.statsToJson());
+        metrics.put("catalogShards", catalogShards.getShardUrls());
+        metrics.put("reservations", RESERVATIONS.toJson());
+        Response response = new Response(StatusCode.OK.getCode(),metrics.toString());
+        sendResponse(exchange,response);
+        return response;
+    }
+
     /**
      * Method to prepare the success response
      * @param orderId
      * @return - JSON response of format {"data": {"order_number": 1}}
      */
-    private String prepareSuccessResponse(int orderId){
-        // Create a map for the success object
-        Map<String, Object> successObject = new HashMap<>();
-        successObject.put("order_number", orderId);
-
-        // Create a map for the response body
-        Map<String, Object> responseBody = new HashMap<>();
-        responseBody.put("data", successObject);
-
-        // Convert the map to JSON string
-        return mapToJson(responseBody);
+    private byte[] prepareSuccessResponse(int orderId){
+        return JsonWriter.get()
+                .beginObject().name("data").beginObject()
+                .name("order_number").value(orderId)
+                .endObject().endObject()
+                .toByteArray();
     }
 
     /**
@@ -513,46 +429,12 @@ public class OrderRequestHandlerImpl implements Runnable, OrderRequestHandler {
      * @param errorMessage
      * @return - JSON response of format {"error": {"code": 400,"message": "Invalid Request Body"}}
      */
-    private String prepareErrorResponse(int errorCode,String errorMessage){
-        System.out.println("Preparing error response");
-        try {
-            // Create a map for the error details
-            Map<String, Object> errorObject = new HashMap<>();
-            errorObject.put("code", errorCode);
-            errorObject.put("message", errorMessage);
-
-            // Create a map for the error response
-            Map<String, Object> responseBody = new HashMap<>();
-            responseBody.put("error", errorObject);
-
-            // Convert the map to JSON string
-            String jsonResponse = mapToJson(responseBody);
-
-            // Print the JSON response
-            System.out.println("Response string: " + jsonResponse);
-
-            return jsonResponse;
-        } catch (Exception e) {
-            System.out.println("Error while preparing response body: " + e);
-            return null;
-        }
-    }
-
-    // Helper method to convert Map to JSON string
-    private String mapToJson(Map<String, Object> map) {
-        StringBuilder json = new StringBuilder("{");
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (json.length() > 1) {
-                json.append(",");
-            }
-            json.append("\"").append(entry.getKey()).append("\":");
-            if (entry.getValue() instanceof Map) {
-                json.append(mapToJson((Map<String, Object>) entry.getValue()));
-            } else {
-                json.append("\"").append(entry.getValue()).append("\"");
-            }
-        }
-        json.append("}");
-        return json.toString();
+    private byte[] prepareErrorResponse(int errorCode,String errorMessage){
+        return JsonWriter.get()
+                .beginObject().name("error").beginObject()
+                .name("code").value(errorCode)
+                .name("message").value(errorMessage)
+                .endObject().endObject()
+                .toByteArray();
     }
-}
\ No newline at end of file
+}
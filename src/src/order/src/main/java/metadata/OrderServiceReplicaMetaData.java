@@ -7,6 +7,7 @@ import model.OrderServerReplica;
 import model.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.Logger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,7 @@ import static utils.HttpUtils.makeGetRequest;
 import static utils.HttpUtils.makePostRequest;
 
 public class OrderServiceReplicaMetaData {
+    private static final Logger LOGGER = Logger.getLogger(OrderServiceReplicaMetaData.class);
 
     public Boolean isLeaderNode;
     public OrderServerReplica replica;
@@ -60,7 +62,7 @@ public class OrderServiceReplicaMetaData {
             JSONObject nodeObj = followerNodes.getJSONObject(i);
             int nodeId = nodeObj.getInt("id");
             String nodeUrl = nodeObj.getString("url");
-            System.out.println("Adding node with Id "+nodeId);
+            LOGGER.info(() -> "Adding node with Id "+nodeId);
             followerNodesMap.put(nodeId,new OrderServerReplica(nodeId,nodeUrl));
         }
     }
@@ -84,7 +86,7 @@ public class OrderServiceReplicaMetaData {
      * Method to join cluster if possible
      */
     public Boolean joinCluster(String frontEndServiceUrl,Boolean useRaft){
-        System.out.println("Trying to join cluster...");
+        LOGGER.info("Trying to join cluster...");
         // call front-end service to check if this replica can join cluster of existing order service nodes.
         String serverUrl = frontEndServiceUrl+"/joinOrderCluster";
         JSONObject requestBody = new JSONObject();
@@ -97,7 +99,7 @@ public class OrderServiceReplicaMetaData {
             if(response.getStatusCode()== StatusCode.OK.getCode()){
                 JSONObject leaderJson = new JSONObject(response.getMessage());
                 OrderServerReplica leaderNode = new OrderServerReplica(leaderJson.optInt("id",-1),leaderJson.optString("url",""));
-                System.out.println("Successfully joined cluster with leaderId"+leaderNode.getId());
+                LOGGER.info(() -> "Successfully joined cluster with leaderId"+leaderNode.getId());
                 setLeaderNode(leaderNode);
                 if(!useRaft){
                     synchronizeData(leaderNode); // if we are using raft, it will take care.
@@ -107,8 +109,8 @@ public class OrderServiceReplicaMetaData {
                 // ackFrontEndSyncCompleted(frontEndServiceUrl);
             }
         }catch (Exception e){
-            System.out.println(e);
-            System.out.println("Failed to join cluster, may be front-end service is still not up...");
+            LOGGER.warn("Error while joining cluster", e);
+            LOGGER.warn("Failed to join cluster, may be front-end service is still not up...");
         }
         return false;
     }
@@ -119,7 +121,7 @@ public class OrderServiceReplicaMetaData {
      */
     public void synchronizeData(OrderServerReplica leaderNode){
         // check max order Id of this replica
-        System.out.println("Trying to get lost data and synchronize");
+        LOGGER.info("Trying to get lost data and synchronize");
         int currentOrderId = orderDB.getCurrentOrderId();
 
         // call leader node to return remaining data
@@ -130,7 +132,7 @@ public class OrderServiceReplicaMetaData {
 
         try{
             Response response = makePostRequest(serverUrl,requestBody.toString());
-            System.out.println("Got lost data from leaderNode");
+            LOGGER.info("Got lost data from leaderNode");
             // write details to order DB
             JSONArray jsonArray = new JSONArray(response.getMessage());
             List<LostOrdersDto> lostOrdersDtos = new ArrayList<>();
@@ -143,7 +145,7 @@ public class OrderServiceReplicaMetaData {
             }
             orderDB.syncLostData(lostOrdersDtos);
         }catch (Exception e){
-            System.out.println("Error while synchronizing data between leader and current replica"+e);
+            LOGGER.warn(() -> "Error while synchronizing data between leader and current replica"+e);
         }
     }
 
@@ -1,22 +1,45 @@
 package model;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Response class is used to send the response back to the client.
+ * Response can be created from an already encoded body, which is written to the client as is.
  */
 public class Response {
     private int statusCode;
     private String message;
+    private byte[] body;
 
     public Response(int statusCode, String message) {
         this.statusCode = statusCode;
         this.message = message;
     }
 
+    public Response(int statusCode, byte[] body) {
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
 
     public String getMessage() {
+        if(message == null && body != null){
+            message = new String(body, StandardCharsets.UTF_8);
+        }
         return message;
     }
+
+    /**
+     * Method to get the UTF-8 encoded body of response.
+     * @return - body bytes
+     */
+    public byte[] getBody() {
+        if(body == null){
+            body = message.getBytes(StandardCharsets.UTF_8);
+        }
+        return body;
+    }
 }
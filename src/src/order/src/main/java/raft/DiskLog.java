@@ -1,5 +1,7 @@
 package raft;
 
+import utils.Logger;
+
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -7,6 +9,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 class DiskLog {
+    private static final Logger LOGGER = Logger.getLogger(DiskLog.class);
     private String LOG_FILE = "log.txt";
     private final Object fileLock = new Object();
     private ExecutorService executor;
@@ -15,7 +18,7 @@ class DiskLog {
 
     public DiskLog(String logFilePath){
         LOG_FILE = logFilePath;
-        System.out.println("Log file path is: "+logFilePath);
+        LOGGER.info(() -> "Log file path is: "+logFilePath);
         this.executor = Executors.newSingleThreadExecutor();
     }
 
@@ -28,13 +31,13 @@ class DiskLog {
                 int term = logEntry.getTerm();
                 String orderDetails = logEntry.getOrderDetails();
                 String txnStatus = logEntry.getTxnStatus();
-                System.out.println("Appending log: " + logId + "," +term +","+ orderDetails + "," + txnStatus );
+                LOGGER.debug(() -> "Appending log: " + logId + "," +term +","+ orderDetails + "," + txnStatus);
                 writer.append( logId + "," +term + ","+ orderDetails + "," + txnStatus+ "\n");
                 writer.flush();
 
                 nextLogId = logId+1; // return next logId.
             } catch (IOException e) {
-                e.printStackTrace(); // Handle or log the exception properly
+                LOGGER.error("Error while appending raft log", e);
             }
         }
     }
@@ -56,7 +59,7 @@ class DiskLog {
                     lastCommitId = Math.max(lastCommitId, commitId);
                 }
             } catch (IOException e) {
-                e.printStackTrace(); // Handle or log the exception properly
+                LOGGER.error("Error while reading raft log", e);
             }
             this.nextLogId = lastCommitId+1;
         }
@@ -87,7 +90,7 @@ class DiskLog {
                     }
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                LOGGER.error("Error while reading raft log", e);
 
             }
             return null;
@@ -116,7 +119,7 @@ class DiskLog {
                     }
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                LOGGER.error("Error while updating raft log", e);
             }
         }
 
@@ -139,7 +142,7 @@ class DiskLog {
                     }
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                LOGGER.error("Error while reading raft log", e);
             }
 
             return uncommittedEntries;
@@ -2,12 +2,14 @@ package raft;
 
 import db.OrderDB;
 import dto.OrderDto;
+import enums.LogLevel;
 import enums.StatusCode;
 import metadata.OrderServiceReplicaMetaData;
 import model.OrderServerReplica;
 import model.Response;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +18,7 @@ import java.util.Map;
 import static utils.HttpUtils.makePostRequest;
 
 public class RaftNode {
+    private static final Logger LOGGER = Logger.getLogger(RaftNode.class);
 
     private OrderServiceReplicaMetaData orderServiceReplicaMetaData;
 
@@ -26,13 +29,10 @@ public class RaftNode {
     private final OrderDB orderDB;
     private Boolean inCluster;
 
-    private String catalogServiceUrl;
-
     private int termId = 1;
 
-    public RaftNode(OrderServiceReplicaMetaData orderServiceReplicaMetaData,String catalogServiceUrl, OrderDB orderDB,String raftFilePath, Boolean inCluster){
+    public RaftNode(OrderServiceReplicaMetaData orderServiceReplicaMetaData, OrderDB orderDB,String raftFilePath, Boolean inCluster){
         this.orderServiceReplicaMetaData = orderServiceReplicaMetaData;
-        this.catalogServiceUrl = catalogServiceUrl;
         this.inCluster = inCluster;
         this.orderDB = orderDB;
         diskLog = new DiskLog(raftFilePath);
@@ -52,7 +52,7 @@ public class RaftNode {
     public Boolean appendReplicatedLog(LogEntry logEntry){
         int nextLogId = diskLog.getNextLogId();
         if(logEntry.getLogId()==nextLogId){
-            System.out.println("Appending log entry to log file: "+logEntry.getLogId()+logEntry.getOrderDetails());
+            LOGGER.debug(() -> "Appending log entry to log file: "+logEntry.getLogId()+logEntry.getOrderDetails());
             diskLog.appendLogEntry(logEntry);
             return true;
         }
@@ -63,7 +63,7 @@ public class RaftNode {
         int logId = diskLog.getNextLogId();
         String orderDetails = orderDto.getTabSeparatedString();
         LogEntry logEntry = new LogEntry(logId,termId,orderDetails);
-        System.out.println("Appending log entry :" +logEntry.getLogId()+ " "+logEntry.getOrderDetails());
+        LOGGER.debug(() -> "Appending log entry :" +logEntry.getLogId()+ " "+logEntry.getOrderDetails());
         diskLog.appendLogEntry(logEntry);
         Map<Integer,OrderServerReplica> followerNodes = orderServiceReplicaMetaData.getFollowerNodes();
         int successRate =1; // inclusive of leader.
@@ -75,7 +75,7 @@ public class RaftNode {
             requestBody.put("logId",logEntry.getLogId());
             requestBody.put("term",logEntry.getTerm());
             requestBody.put("orderDetails",logEntry.getOrderDetails());
-            System.out.println("Replicating log to follower nodes for order :"+logEntry.getOrderDetails());
+            LOGGER.debug(() -> "Replicating log to follower nodes for order :"+logEntry.getOrderDetails());
             try{
                 Response response = makePostRequest(serverUrl,requestBody.toString());
                 if(response.getStatusCode()==StatusCode.OK.getCode()){
@@ -83,16 +83,18 @@ public class RaftNode {
                     successReplicas.add(followerNode);
                 }
             }catch (Exception e){
-                System.out.println("Error while replicating log for nodeId"+e);
+                LOGGER.warn(() -> "Error while replicating log for nodeId"+e);
             }
         }
 
         errorRate = orderServiceReplicaMetaData.getTotalNode()-successRate;
-        System.out.println("Positive Votes: "+successRate);
-        System.out.println("Negative Votes: "+errorRate);
+        if(LOGGER.isEnabled(LogLevel.DEBUG)){
+            LOGGER.debug("Positive Votes: "+successRate);
+            LOGGER.debug("Negative Votes: "+errorRate);
+        }
         // majority voted
         if(successRate>errorRate){
-            System.out.println("Got majority of the votes so committing the transaction");
+            LOGGER.debug("Got majority of the votes so committing the transaction");
 
             // update log file that txn is success...
             diskLog.updateTxnStatus(logId,termId,"S");
@@ -102,13 +104,12 @@ public class RaftNode {
             sendLogCommittedAck(logId,termId,orderId);
             return orderId;
         }else{
-            System.out.println("Rolling back since we didn't receive majority voting");
+            LOGGER.warn("Rolling back since we didn't receive majority voting");
             // update log file that txn has failed.Instead of removing log and waiting for raft to do log compaction I am updating as F, so that in future if replay is needed we can refer to this file
             diskLog.updateTxnStatus(logId,termId,"F");
             // update replicas that transaction has failed.
             updateTransactionStatusToOtherNodes(successReplicas,logId,termId);
-            // Update catalog to re-increment the stock,since txn has failed.
-            updateCatalogAboutFailedTransaction(orderDto);
+            // stock reserved for the order is released in catalog by the caller, since txn has failed.
             return -1;
         }
     }
@@ -123,30 +124,17 @@ public class RaftNode {
                 jsonObject.put("status","F");
                 makePostRequest(serverUrl,jsonObject.toString());
             }catch (Exception e){
-                System.out.println("Error updating txn status for replica"+replica.getId());
+                LOGGER.warn(() -> "Error updating txn status for replica"+replica.getId());
             }
         }
     }
 
-    private void updateCatalogAboutFailedTransaction(OrderDto orderDto){
-        String serverUrl = catalogServiceUrl+"/updateItem";
-        JSONObject requestBody = new JSONObject();
-        requestBody.put("itemName",orderDto.getName());
-        requestBody.put("quantity",orderDto.getQuantity());
-        requestBody.put("operation","add");
-        try{
-            makePostRequest(serverUrl,requestBody.toString());
-        }catch (Exception e){
-            System.out.println("Error updating catalog about failed transaction");
-        }
-    }
-
     public void updateTxnStatus(int logId,int term,String status){
         diskLog.updateTxnStatus(logId,term,status);
     }
 
     public void ackCommittedLog(int logId,int termId,int orderId){
-        System.out.println("Received Ack about committed log: "+logId);
+        LOGGER.debug(() -> "Received Ack about committed log: "+logId);
         try{
             // update txn status to S
             diskLog.updateTxnStatus(logId,termId,"S");
@@ -155,10 +143,10 @@ public class RaftNode {
             OrderDto orderDto = OrderDto.fromTSVString(orderDetails);
             if(orderDto!=null){
                 orderDB.writePropagatedOrder(orderId,orderDto.getName(),orderDto.getQuantity());
-                System.out.println("Committed log for Id: "+logId);
+                LOGGER.debug(() -> "Committed log for Id: "+logId);
             }
         }catch (Exception e){
-            System.out.println(e.toString());
+            LOGGER.warn("Error while committing acknowledged raft log", e);
         }
 
     }
@@ -174,7 +162,7 @@ public class RaftNode {
             try{
                 makePostRequest(serverUrl,requestBody.toString());
             }catch (Exception e){
-                System.out.println("Error while sending committed log ack for nodeId"+e);
+                LOGGER.warn(() -> "Error while sending committed log ack for nodeId"+e);
             }
         }
     }
@@ -193,7 +181,7 @@ public class RaftNode {
     }
 
     public void syncLostData(){
-        System.out.println("Syncing lost data....");
+        LOGGER.info("Syncing lost data....");
         int lastCommittedId = diskLog.getNextLogId()-1;
         OrderServerReplica leaderNode = orderServiceReplicaMetaData.getLeaderNode();
         String serverUrl = leaderNode.getUrl()+"/syncLostDataRaft";
@@ -220,7 +208,7 @@ public class RaftNode {
                 }
             }
         }catch (Exception e){
-            System.out.println("Error while syncing lost data..."+e);
+            LOGGER.warn(() -> "Error while syncing lost data..."+e);
         }
     }
 
@@ -12,6 +12,7 @@ import java.util.stream.Collectors;
  * HttpUtils class has utility methods to handle the HTTP requests.
  */
 public class HttpUtils {
+    private static final Logger LOGGER = Logger.getLogger(HttpUtils.class);
     /**
      * Method to get the request body from the HttpExchange object.
      * @param exchange - Incoming request
@@ -22,7 +23,7 @@ public class HttpUtils {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))) {
             requestBody = reader.lines().collect(Collectors.joining());
         }catch (IOException e){
-            System.out.println("Error parsing request body"+e);
+            LOGGER.warn(() -> "Error parsing request body"+e);
             return null;
         }
         return requestBody;
@@ -121,16 +122,16 @@ public class HttpUtils {
      */
     public static void sendResponse(HttpExchange exchange, Response response)  {
         try{
-            String message = response.getMessage();
+            byte[] body = response.getBody();
             int statusCode = response.getStatusCode();
             exchange.getResponseHeaders().set("Content-Type", "application/json");
             exchange.getResponseHeaders().set("Connection", "keep-alive"); // Keep the connection alive
-            exchange.sendResponseHeaders(statusCode, message.length());
+            exchange.sendResponseHeaders(statusCode, body.length);
             OutputStream os = exchange.getResponseBody();
-            os.write(message.getBytes());
+            os.write(body);
             os.close();
         }catch(IOException e){
-            System.out.println("Error sending response!!"); // TO-DO: Retry sending response
+            LOGGER.warn("Error sending response!!");
             exchange.close();
         }
     }
@@ -0,0 +1,269 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JsonWriter class encodes JSON directly into a byte buffer as UTF-8, without building maps or strings first.
+ * Fields are written with their types, so numbers are emitted as JSON numbers and strings are escaped.
+ * Each thread reuses its own writer (and buffer) through JsonWriter.get(), the encoded bytes are copied out with
+ * toByteArray() before the writer is used again.
+ *
+ * Usage: JsonWriter.get().beginObject().name("data").beginObject().name("quantity").value(10).endObject().endObject().toByteArray()
+ */
+public class JsonWriter {
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private byte[] buffer = new byte[256];
+    private int size;
+    // hasValue[depth] tells if current object/array already has a member, so the next one needs a comma
+    private boolean[] hasValue = new boolean[16];
+    private int depth;
+    private boolean isAfterName;
+
+    /**
+     * Method to get the writer of current thread, emptied and ready to use.
+     * @return - reusable writer
+     */
+    public static JsonWriter get(){
+        JsonWriter writer = WRITERS.get();
+        writer.reset();
+        return writer;
+    }
+
+    /**
+     * Method to empty the writer, a buffer grown by a large response is not kept.
+     */
+    public void reset(){
+        if(buffer.length>MAX_RETAINED_BUFFER){
+            buffer = new byte[256];
+        }
+        size = 0;
+        depth = 0;
+        hasValue[0] = false;
+        isAfterName = false;
+    }
+
+    public JsonWriter beginObject(){
+        return open('{');
+    }
+
+    public JsonWriter endObject(){
+        return close('}');
+    }
+
+    public JsonWriter beginArray(){
+        return open('[');
+    }
+
+    public JsonWriter endArray(){
+        return close(']');
+    }
+
+    /**
+     * Method to write the name of next object member.
+     * @param name - member name
+     */
+    public JsonWriter name(String name){
+        separator();
+        writeString(name);
+        write((byte) ':');
+        isAfterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value){
+        if(value==null){
+            return rawValue(NULL);
+        }
+        separator();
+        writeString(value);
+        return valueWritten();
+    }
+
+    public JsonWriter value(long value){
+        separator();
+        writeLong(value);
+        return valueWritten();
+    }
+
+    public JsonWriter value(double value){
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            // not representable in JSON
+            return rawValue(NULL);
+        }
+        if(value==(long) value && Math.abs(value)<1e15){
+            separator();
+            writeLong((long) value);
+            write((byte) '.');
+            write((byte) '0');
+            return valueWritten();
+        }
+        separator();
+        writeAscii(Double.toString(value));
+        return valueWritten();
+    }
+
+    public JsonWriter value(boolean value){
+        return rawValue(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Method to write an already encoded JSON value as is.
+     * @param json - UTF-8 encoded JSON value
+     */
+    public JsonWriter rawValue(byte[] json){
+        separator();
+        ensureCapacity(json.length);
+        System.arraycopy(json,0,buffer,size,json.length);
+        size+=json.length;
+        return valueWritten();
+    }
+
+    /**
+     * Method to write an already encoded JSON value as is.
+     * @param json - JSON value
+     */
+    public JsonWriter rawValue(String json){
+        return rawValue(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to copy the encoded JSON out of the writer.
+     * @return - UTF-8 encoded JSON
+     */
+    public byte[] toByteArray(){
+        byte[] json = new byte[size];
+        System.arraycopy(buffer,0,json,0,size);
+        return json;
+    }
+
+    @Override
+    public String toString(){
+        return new String(buffer,0,size,StandardCharsets.UTF_8);
+    }
+
+    private JsonWriter open(char bracket){
+        separator();
+        write((byte) bracket);
+        depth++;
+        if(depth==hasValue.length){
+            boolean[] grown = new boolean[depth*2];
+            System.arraycopy(hasValue,0,grown,0,depth);
+            hasValue = grown;
+        }
+        hasValue[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket){
+        write((byte) bracket);
+        depth--;
+        return valueWritten();
+    }
+
+    private void separator(){
+        if(isAfterName){
+            return;
+        }
+        if(hasValue[depth]){
+            write((byte) ',');
+        }
+    }
+
+    private JsonWriter valueWritten(){
+        hasValue[depth] = true;
+        isAfterName = false;
+        return this;
+    }
+
+    private void writeString(String value){
+        int length = value.length();
+        // every char takes at most 6 bytes (escaped control char or 3 byte UTF-8 of a surrogate half), plus quotes
+        ensureCapacity(length*6+2);
+        byte[] bytes = buffer;
+        int position = size;
+        bytes[position++] = '"';
+        for(int i=0;i<length;i++){
+            char c = value.charAt(i);
+            if(c<0x80){
+                if(c=='"' || c=='\\'){
+                    bytes[position++] = '\\';
+                    bytes[position++] = (byte) c;
+                }else if(c<0x20){
+                    bytes[position++] = '\\';
+                    bytes[position++] = 'u';
+                    bytes[position++] = '0';
+                    bytes[position++] = '0';
+                    bytes[position++] = HEX[c>>4];
+                    bytes[position++] = HEX[c&0xF];
+                }else{
+                    bytes[position++] = (byte) c;
+                }
+            }else if(c<0x800){
+                bytes[position++] = (byte) (0xC0 | (c>>6));
+                bytes[position++] = (byte) (0x80 | (c&0x3F));
+            }else if(Character.isHighSurrogate(c) && i+1<length && Character.isLowSurrogate(value.charAt(i+1))){
+                int codePoint = Character.toCodePoint(c,value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint>>18));
+                bytes[position++] = (byte) (0x80 | ((codePoint>>12)&0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint>>6)&0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint&0x3F));
+            }else{
+                // lone surrogates are encoded as is, like the other chars of basic multilingual plane
+                bytes[position++] = (byte) (0xE0 | (c>>12));
+                bytes[position++] = (byte) (0x80 | ((c>>6)&0x3F));
+                bytes[position++] = (byte) (0x80 | (c&0x3F));
+            }
+        }
+        bytes[position++] = '"';
+        size = position;
+    }
+
+    private void writeLong(long value){
+        if(value==Long.MIN_VALUE){
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if(value<0){
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for(long rest=value/10;rest>0;rest/=10){
+            digits++;
+        }
+        int position = size+digits;
+        size = position;
+        do{
+            buffer[--position] = (byte) ('0' + (value%10));
+            value/=10;
+        }while(value>0);
+    }
+
+    private void writeAscii(String value){
+        int length = value.length();
+        ensureCapacity(length);
+        for(int i=0;i<length;i++){
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void write(byte b){
+        ensureCapacity(1);
+        buffer[size++] = b;
+    }
+
+    private void ensureCapacity(int extra){
+        if(size+extra>buffer.length){
+            byte[] grown = new byte[Math.max(buffer.length*2,size+extra)];
+            System.arraycopy(buffer,0,grown,0,size);
+            buffer = grown;
+        }
+    }
+}
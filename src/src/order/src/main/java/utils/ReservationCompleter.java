@@ -0,0 +1,139 @@
+package utils;
+
+import enums.StatusCode;
+import model.Response;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ReservationCompleter commits or releases the catalog reservation of an order off the request thread.
+ *
+ * Catalog gives the stock of a reservation back once it expires, so a commit which arrives after that leaves the order
+ * placed with its stock sold again. Failed calls are therefore retried with backoff till the reservation expires, not a
+ * fixed number of times, and a commit catalog no longer knows (404) or can't reach it before expiry is logged at warn
+ * and counted as lost in /metrics.
+ */
+public class ReservationCompleter {
+    private static final Logger LOGGER = Logger.getLogger(ReservationCompleter.class);
+    private static final long FIRST_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 2000;
+
+    /**
+     * Sends a request to catalog, HttpUtils.makePostRequest outside of tests.
+     */
+    @FunctionalInterface
+    public interface Poster {
+        Response post(String url, String requestBody) throws IOException;
+    }
+
+    private final Poster poster;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder lostCommits = new LongAdder();
+    private final LongAdder failedReleases = new LongAdder();
+
+    /**
+     * Constructor to create a completer with its own daemon thread.
+     * @param poster - sends requests to catalog
+     */
+    public ReservationCompleter(Poster poster) {
+        this.poster = poster;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-reservation-completer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to commit or release a reservation in background.
+     * @param catalogServiceUrl - URL of catalog shard holding the reservation
+     * @param token - token returned by catalog for the reservation
+     * @param isOrderPlaced - true to commit the reservation, false to release it
+     * @param expiresInMs - time till catalog releases the reservation on its own, retries stop then
+     * @return - future completing with true once catalog completed the reservation, false if it didn't
+     */
+    public CompletableFuture<Boolean> complete(String catalogServiceUrl, String token, boolean isOrderPlaced, long expiresInMs){
+        String url = catalogServiceUrl + (isOrderPlaced ? "/commitReservation" : "/releaseReservation");
+        String requestBody = new JSONObject().put("token", token).toString();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expiresInMs);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        schedule(() -> attempt(url, requestBody, token, isOrderPlaced, deadline, FIRST_RETRY_DELAY_MS, result), 0, result);
+        return result;
+    }
+
+    private void attempt(String url, String requestBody, String token, boolean isOrderPlaced, long deadline, long retryDelayMs, CompletableFuture<Boolean> result){
+        String error;
+        try{
+            Response response = poster.post(url, requestBody);
+            int statusCode = response.getStatusCode();
+            if(statusCode < StatusCode.BAD_REQUEST.getCode()){
+                (isOrderPlaced ? commits : releases).increment();
+                result.complete(true);
+                return;
+            }
+            if(statusCode < StatusCode.INTERNAL_SERVER_ERROR.getCode()){
+                // catalog doesn't know the token, the reservation already expired and its stock was given back
+                finish(token, isOrderPlaced, "catalog answered " + statusCode + " " + response.getMessage(), result);
+                return;
+            }
+            error = "catalog answered " + statusCode;
+        }catch (Exception e){
+            error = e.toString();
+        }
+        long delayMs = Math.min(retryDelayMs, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        if(delayMs<=0){
+            finish(token, isOrderPlaced, error + ", reservation expired meanwhile", result);
+            return;
+        }
+        retries.increment();
+        String retryReason = error;
+        LOGGER.debug(() -> "Retrying completion of reservation " + token + " in " + delayMs + " ms, " + retryReason);
+        long nextDelayMs = Math.min(MAX_RETRY_DELAY_MS, retryDelayMs * 2);
+        schedule(() -> attempt(url, requestBody, token, isOrderPlaced, deadline, nextDelayMs, result), delayMs, result);
+    }
+
+    private void finish(String token, boolean isOrderPlaced, String reason, CompletableFuture<Boolean> result){
+        if(isOrderPlaced){
+            // the order stays placed while catalog has given its stock back
+            lostCommits.increment();
+            LOGGER.warn(() -> "Commit of reservation " + token + " failed, its stock may be sold again: " + reason);
+        }else{
+            failedReleases.increment();
+            LOGGER.debug(() -> "Release of reservation " + token + " not acknowledged, catalog releases it on expiry: " + reason);
+        }
+        result.complete(false);
+    }
+
+    private void schedule(Runnable task, long delayMs, CompletableFuture<Boolean> result){
+        try{
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }catch (RejectedExecutionException e){
+            result.complete(false);
+        }
+    }
+
+    /**
+     * Method to convert the counters to JSON for /metrics endpoint.
+     * @return - JSON object with completed commits and releases, retries, lost commits and unacknowledged releases
+     */
+    public JSONObject toJson(){
+        JSONObject json = new JSONObject();
+        json.put("commits", commits.sum());
+        json.put("releases", releases.sum());
+        json.put("retries", retries.sum());
+        json.put("lostCommits", lostCommits.sum());
+        json.put("failedReleases", failedReleases.sum());
+        return json;
+    }
+}
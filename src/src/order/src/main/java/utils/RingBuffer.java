@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RingBuffer is a bounded lock-free queue for many producer threads and a single consumer thread.
+ * Every slot has a sequence number telling if it is free for the producer claiming that position or filled for the
+ * consumer, so producers only compete on one compare-and-set of the tail and never block. When the buffer is full
+ * offer() fails right away instead of waiting.
+ *
+ * @param <E> - type of the elements
+ */
+public class RingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // only written by the consumer
+
+    /**
+     * Constructor to create an empty ring buffer.
+     * @param capacity - maximum number of elements, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i=0;i<size;i++){
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Method to add an element, safe to call from any thread.
+     * @param element - element to add
+     * @return - false if the buffer is full
+     */
+    public boolean offer(E element){
+        long position = tail.get();
+        while(true){
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if(difference==0){
+                if(tail.compareAndSet(position, position + 1)){
+                    elements.lazySet(index, element);
+                    // publishing the sequence makes the element visible to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }else if(difference<0){
+                // slot still holds the element from previous lap, buffer is full
+                return false;
+            }else{
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Method to remove the oldest element, must only be called by the consumer thread.
+     * @return - oldest element, null if the buffer is empty
+     */
+    public E poll(){
+        long position = head;
+        int index = (int) (position & mask);
+        if(sequences.get(index)!=position + 1){
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Method to get the number of elements waiting in the buffer.
+     * @return - number of elements, may be slightly stale while producers are adding
+     */
+    public int size(){
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity(){
+        return mask + 1;
+    }
+}
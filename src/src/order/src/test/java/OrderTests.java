@@ -1,6 +1,13 @@
 import db.OrderDB;
+import model.Response;
 import org.junit.Test;
+import utils.ReservationCompleter;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class OrderTests {
@@ -26,4 +33,35 @@ public class OrderTests {
         assertTrue(orderNumber2 > orderNumber1);
     }
 
+    @Test
+    public void testReservationCommitRetriedTillExpiry() {
+        // catalog is down for two attempts, the commit still lands before the reservation expires
+        AtomicInteger attempts = new AtomicInteger();
+        ReservationCompleter completer = new ReservationCompleter((url, requestBody) -> {
+            if(attempts.incrementAndGet()<=2){
+                throw new IOException("Connection refused");
+            }
+            assertTrue(url.endsWith("/commitReservation"));
+            return new Response(200, "{}");
+        });
+        assertTrue(completer.complete("http://catalog", "token", true, 5000).join());
+        assertEquals(3, attempts.get());
+        assertEquals(2, completer.toJson().getLong("retries"));
+        assertEquals(0, completer.toJson().getLong("lostCommits"));
+    }
+
+    @Test
+    public void testReservationCommitLost() {
+        // catalog already released the reservation, the order is reported instead of being taken as committed
+        ReservationCompleter completer = new ReservationCompleter((url, requestBody) -> new Response(404, "Reservation not found"));
+        assertFalse(completer.complete("http://catalog", "token", true, 5000).join());
+        assertEquals(1, completer.toJson().getLong("lostCommits"));
+
+        // catalog stays down till the reservation expires
+        completer = new ReservationCompleter((url, requestBody) -> new Response(500, "Internal Server Error"));
+        assertFalse(completer.complete("http://catalog", "token", true, 300).join());
+        assertEquals(1, completer.toJson().getLong("lostCommits"));
+        assertTrue(completer.toJson().getLong("retries")>0);
+    }
+
 }